@@ -1,25 +1,142 @@
 package se.hydroleaf;
 
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import se.hydroleaf.config.ClusterProperties;
+import se.hydroleaf.config.WebSocketOutboundProperties;
+import se.hydroleaf.mqtt.DeltaEncodingInterceptor;
+import se.hydroleaf.mqtt.IndexedSubscriptionRegistry;
+import se.hydroleaf.mqtt.SnapshotOnSubscribeInterceptor;
+import se.hydroleaf.mqtt.SubscriptionSelectorInterceptor;
+import se.hydroleaf.websocket.OutboundBackPressureInterceptor;
+import se.hydroleaf.websocket.SessionTrackingHandlerDecorator;
+import se.hydroleaf.websocket.WebSocketSessionTracker;
+
+import java.util.Map;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final SubscriptionSelectorInterceptor selectorInterceptor;
+    private final SnapshotOnSubscribeInterceptor snapshotInterceptor;
+    private final DeltaEncodingInterceptor deltaEncodingInterceptor;
+    private final OutboundBackPressureInterceptor backPressureInterceptor;
+    private final WebSocketSessionTracker sessionTracker;
+    private final WebSocketOutboundProperties outbound;
+    private final ClusterProperties cluster;
+
+    public WebSocketConfig(SubscriptionSelectorInterceptor selectorInterceptor,
+                           SnapshotOnSubscribeInterceptor snapshotInterceptor,
+                           DeltaEncodingInterceptor deltaEncodingInterceptor,
+                           OutboundBackPressureInterceptor backPressureInterceptor,
+                           WebSocketSessionTracker sessionTracker,
+                           WebSocketOutboundProperties outbound,
+                           ClusterProperties cluster) {
+        this.selectorInterceptor = selectorInterceptor;
+        this.snapshotInterceptor = snapshotInterceptor;
+        this.deltaEncodingInterceptor = deltaEncodingInterceptor;
+        this.backPressureInterceptor = backPressureInterceptor;
+        this.sessionTracker = sessionTracker;
+        this.outbound = outbound;
+        this.cluster = cluster;
+    }
+
+    /**
+     * Replaces the simple broker's registry with one that resolves recipients
+     * by destination and selector lookup; see {@link IndexedSubscriptionRegistry}.
+     * With the broker relay, destinations are handled by the external broker
+     * and selectors are rejected by {@link SubscriptionSelectorInterceptor}.
+     */
+    @Bean
+    static BeanPostProcessor indexedSubscriptionRegistryPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof SimpleBrokerMessageHandler broker) {
+                    broker.setSubscriptionRegistry(new IndexedSubscriptionRegistry());
+                }
+                return bean;
+            }
+        };
+    }
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
+        // plain WebSocket: binary frames, and permessage-deflate when the client offers it
+        registry.addEndpoint("/ws-native")
+                .setAllowedOriginPatterns("*")
+                .addInterceptors(new BinaryTransportHandshakeInterceptor());
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // selectors first: a rejected SUBSCRIBE is answered with an ERROR frame and goes no further
+        registration.interceptors(selectorInterceptor, snapshotInterceptor, deltaEncodingInterceptor);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // back-pressure first: frames are re-encoded when they are released, not when they are queued
+        registration.interceptors(backPressureInterceptor, deltaEncodingInterceptor);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit((int) outbound.getSendTimeLimit().toMillis())
+                .setSendBufferSizeLimit((int) outbound.getSendBufferSizeLimit().toBytes())
+                .addDecoratorFactory(handler -> new SessionTrackingHandlerDecorator(handler, sessionTracker));
     }
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topic");
+        ClusterProperties.Relay relay = cluster.getRelay();
+        if (relay.isEnabled()) {
+            // every instance publishes to and subscribes through the external broker
+            var brokerRelay = registry.enableStompBrokerRelay("/topic")
+                    .setRelayHost(relay.getHost())
+                    .setRelayPort(relay.getPort())
+                    .setClientLogin(relay.getClientLogin())
+                    .setClientPasscode(relay.getClientPasscode())
+                    .setSystemLogin(relay.getSystemLogin())
+                    .setSystemPasscode(relay.getSystemPasscode());
+            if (relay.getVirtualHost() != null && !relay.getVirtualHost().isBlank()) {
+                brokerRelay.setVirtualHost(relay.getVirtualHost());
+            }
+        } else {
+            registry.enableSimpleBroker("/topic");
+        }
         registry.setApplicationDestinationPrefixes("/app");
+        // publish order per session is kept by OutboundBackPressureInterceptor
+    }
+
+    private static final class BinaryTransportHandshakeInterceptor implements HandshakeInterceptor {
+
+        @Override
+        public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                       WebSocketHandler wsHandler, Map<String, Object> attributes) {
+            attributes.put(DeltaEncodingInterceptor.BINARY_TRANSPORT_ATTRIBUTE, Boolean.TRUE);
+            return true;
+        }
+
+        @Override
+        public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Exception exception) {
+        }
     }
 }
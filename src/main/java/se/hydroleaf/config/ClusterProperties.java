@@ -0,0 +1,47 @@
+package se.hydroleaf.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Running more than one backend instance against the same MQTT broker and database.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "cluster")
+public class ClusterProperties {
+
+    private boolean enabled = false;
+
+    /**
+     * Appended to {@code mqtt.clientId} so every instance connects with its own
+     * client id; defaults to the host name.
+     */
+    private String instanceId;
+
+    /**
+     * MQTT topics are subscribed as {@code $share/<group>/<topic>}, so the broker
+     * hands each message to one instance of the group.
+     */
+    private String mqttShareGroup = "hydroleaf-backend";
+
+    private Relay relay = new Relay();
+
+    /**
+     * External STOMP broker that fans live feed messages out to the sessions of every instance.
+     */
+    @Getter
+    @Setter
+    public static class Relay {
+
+        private boolean enabled = false;
+        private String host = "localhost";
+        private int port = 61613;
+        private String clientLogin = "guest";
+        private String clientPasscode = "guest";
+        private String systemLogin = "guest";
+        private String systemPasscode = "guest";
+        private String virtualHost;
+    }
+}
@@ -0,0 +1,28 @@
+package se.hydroleaf.config;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * In-memory cache of closed aggregated-history buckets.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "telemetry.history-cache")
+public class HistoryCacheProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Upper bound on cached buckets across all series; least recently used series are evicted first.
+     */
+    private long maxBuckets = 200_000;
+
+    /**
+     * Buckets ending this long before the last history flush are treated as closed.
+     * Samples arriving later than that invalidate the device's cached series.
+     */
+    private Duration closedLag = Duration.ofMinutes(2);
+}
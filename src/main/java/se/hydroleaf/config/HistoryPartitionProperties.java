@@ -0,0 +1,58 @@
+package se.hydroleaf.config;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Partitioning, retention and compression of {@code sensor_value_history}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "telemetry.history-partitions")
+public class HistoryPartitionProperties {
+
+    /**
+     * Pre-create range partitions and apply retention on PostgreSQL, or convert the
+     * table to a hypertable with compression on TimescaleDB.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Width of newly created partitions. Existing partitions keep their bounds when this changes.
+     */
+    private Interval interval = Interval.MONTH;
+
+    /**
+     * Number of partitions kept ahead of the current one.
+     */
+    private int precreate = 3;
+
+    /**
+     * Partitions (or chunks) whose whole range is older than this are removed; unset keeps history forever.
+     * Rollup tiers are not affected, so long-range aggregated history stays available.
+     */
+    private Duration retention;
+
+    /**
+     * Directory receiving a gzip-compressed CSV copy of each partition before it is dropped;
+     * unset drops without archiving. Not used on TimescaleDB.
+     */
+    private String archiveDirectory;
+
+    /**
+     * On TimescaleDB, chunk width used when converting the table to a hypertable.
+     */
+    private Duration chunkInterval = Duration.ofDays(7);
+
+    /**
+     * On TimescaleDB, chunks older than this are compressed.
+     */
+    private Duration compressAfter = Duration.ofDays(7);
+
+    public enum Interval {
+        WEEK,
+        MONTH
+    }
+}
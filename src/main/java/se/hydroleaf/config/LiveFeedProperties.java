@@ -0,0 +1,65 @@
+package se.hydroleaf.config;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Throttling of the STOMP live feed pushed to dashboards.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "livefeed")
+public class LiveFeedProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * How often conflated messages are flushed; a plain number is read as milliseconds.
+     */
+    private Duration rate = Duration.ofMillis(2000);
+
+    /**
+     * Policy per message kind ({@code telemetry}, {@code status}, {@code event}, ...).
+     */
+    private Map<String, Policy> policies = new HashMap<>(Map.of("telemetry", Policy.CONFLATE));
+
+    /**
+     * Policy for kinds not listed in {@code policies}, including messages without a kind.
+     */
+    private Policy defaultPolicy = Policy.PASS_THROUGH;
+
+    private Snapshot snapshot = new Snapshot();
+
+    public enum Policy {
+        /** Publish immediately. */
+        PASS_THROUGH,
+        /** Keep only the latest message per destination and device until the next flush. */
+        CONFLATE
+    }
+
+    /**
+     * Last-value cache replayed to new subscribers that ask for it.
+     */
+    @Getter
+    @Setter
+    public static class Snapshot {
+
+        private boolean enabled = true;
+
+        /**
+         * Kinds whose latest message per destination and device is kept; events are not state and are left out.
+         */
+        private Set<String> kinds = new HashSet<>(Set.of("telemetry", "status"));
+
+        /**
+         * Cached messages older than this are no longer replayed.
+         */
+        private Duration maxAge = Duration.ofMinutes(15);
+    }
+}
@@ -0,0 +1,9 @@
+package se.hydroleaf.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(MqttIngestProperties.class)
+public class MqttIngestConfiguration {
+}
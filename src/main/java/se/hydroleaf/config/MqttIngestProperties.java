@@ -0,0 +1,71 @@
+package se.hydroleaf.config;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Sizing and overflow behaviour of the staged MQTT ingest pipeline
+ * (receive → parse/route → persist).
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "mqtt.ingest")
+public class MqttIngestProperties {
+
+    /**
+     * When disabled, messages are handled synchronously on the Paho callback thread.
+     */
+    private boolean enabled = true;
+
+    private StageProperties parse = new StageProperties(2, 4_096);
+    private StageProperties persist = new StageProperties(4, 8_192);
+
+    private OverflowProperties telemetry = new OverflowProperties(OverflowPolicy.DROP, Duration.ZERO);
+    private OverflowProperties status = new OverflowProperties(OverflowPolicy.BLOCK, Duration.ofSeconds(5));
+    private OverflowProperties event = new OverflowProperties(OverflowPolicy.BLOCK, Duration.ofSeconds(5));
+    private OverflowProperties other = new OverflowProperties(OverflowPolicy.BLOCK, Duration.ofSeconds(1));
+
+    /**
+     * How long shutdown waits for queued messages to drain.
+     */
+    private Duration shutdownTimeout = Duration.ofSeconds(10);
+
+    public enum OverflowPolicy {
+        /** Wait up to {@code offerTimeout} for queue space, then drop. */
+        BLOCK,
+        /** Drop the incoming message immediately when the queue is full. */
+        DROP
+    }
+
+    @Getter
+    @Setter
+    public static class StageProperties {
+        private int workers;
+        private int queueCapacity;
+
+        public StageProperties() {
+        }
+
+        public StageProperties(int workers, int queueCapacity) {
+            this.workers = workers;
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class OverflowProperties {
+        private OverflowPolicy policy;
+        private Duration offerTimeout;
+
+        public OverflowProperties() {
+        }
+
+        public OverflowProperties(OverflowPolicy policy, Duration offerTimeout) {
+            this.policy = policy;
+            this.offerTimeout = offerTimeout;
+        }
+    }
+}
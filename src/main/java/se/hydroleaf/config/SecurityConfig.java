@@ -42,7 +42,7 @@ public class SecurityConfig {
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
-                        .requestMatchers("/ws", "/ws/**").permitAll()
+                        .requestMatchers("/ws", "/ws/**", "/ws-native").permitAll()
                         .requestMatchers("/api/devices/**").permitAll()
                         .requestMatchers("/api/records/history/aggregated/**").permitAll()
                         .requestMatchers("/api/auth/oauth/**").permitAll()
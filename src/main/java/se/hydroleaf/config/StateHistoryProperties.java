@@ -0,0 +1,26 @@
+package se.hydroleaf.config;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Change-only persistence of device and actuator status histories.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "telemetry.state-history")
+public class StateHistoryProperties {
+
+    /**
+     * When disabled every reported status is treated as a change, as before.
+     */
+    private boolean enabled = true;
+
+    /**
+     * An unchanged status is written back this often, extending the end of the
+     * open interval so it stays close to the last report. Zero disables it.
+     */
+    private Duration keepAlive = Duration.ofMinutes(15);
+}
@@ -0,0 +1,44 @@
+package se.hydroleaf.config;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Local write-ahead journal backing the in-memory sensor history buffer.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "telemetry.buffer.journal")
+public class TelemetryJournalProperties {
+
+    private boolean enabled = false;
+
+    /**
+     * Directory holding the journal segment files; created on startup.
+     */
+    private String directory = "data/telemetry-journal";
+
+    /**
+     * Size of each memory-mapped segment; a new segment is started when the current one is full.
+     */
+    private DataSize segmentSize = DataSize.ofMegabytes(8);
+
+    private FsyncPolicy fsync = FsyncPolicy.INTERVAL;
+
+    /**
+     * How often the current segment is forced to disk when {@code fsync} is {@code interval}.
+     */
+    private Duration fsyncInterval = Duration.ofSeconds(1);
+
+    public enum FsyncPolicy {
+        /** Leave write-back to the OS; survives a JVM crash but not a power loss. */
+        NONE,
+        /** Force the current segment every {@code fsyncInterval}. */
+        INTERVAL,
+        /** Force every record before {@code add()} returns. */
+        ALWAYS
+    }
+}
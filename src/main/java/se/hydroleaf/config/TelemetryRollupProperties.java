@@ -0,0 +1,26 @@
+package se.hydroleaf.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Downsampled 5m / 1h / 1d tiers used to answer aggregated-history requests.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "telemetry.rollup")
+public class TelemetryRollupProperties {
+
+    /**
+     * Maintain {@code sensor_value_rollup} on each history flush and read from it
+     * when TimescaleDB is not available.
+     */
+    private boolean enabled = true;
+
+    /**
+     * On TimescaleDB, create continuous aggregates for the tiers at startup and read from them.
+     * {@code sensor_value_history} is converted to a hypertable first (see {@link HistoryPartitionProperties}).
+     */
+    private boolean continuousAggregates = false;
+}
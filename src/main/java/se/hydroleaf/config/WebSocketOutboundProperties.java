@@ -0,0 +1,38 @@
+package se.hydroleaf.config;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Limits on what the server buffers for one WebSocket session.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "websocket.outbound")
+public class WebSocketOutboundProperties {
+
+    /**
+     * A session whose socket write has not completed within this time is closed.
+     */
+    private Duration sendTimeLimit = Duration.ofSeconds(10);
+
+    /**
+     * A session with more than this many encoded bytes waiting for the socket is closed.
+     */
+    private DataSize sendBufferSizeLimit = DataSize.ofKilobytes(512);
+
+    /**
+     * A session with more than this many frames waiting to be written is closed as a slow consumer.
+     */
+    private int maxQueuedFrames = 1000;
+
+    /**
+     * Kinds of which only the latest frame per subscription and device is kept while a session is behind.
+     */
+    private Set<String> conflateKinds = new HashSet<>(Set.of("telemetry"));
+}
@@ -0,0 +1,87 @@
+package se.hydroleaf.controller;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import se.hydroleaf.service.AuthorizationService;
+import se.hydroleaf.service.HistoryExportFormat;
+import se.hydroleaf.service.HistoryExportService;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Streams raw sensor history for offline analysis. Unlike the aggregated
+ * endpoint the response is written row by row while the query runs, so long
+ * ranges do not have to fit in memory.
+ */
+@RestController
+@RequestMapping("/api/records/history")
+public class HistoryExportController {
+
+    private static final Pattern SENSOR_TYPE_PATTERN = Pattern.compile("[A-Za-z0-9_\\-]{1,32}");
+
+    private final HistoryExportService historyExportService;
+    private final AuthorizationService authorizationService;
+
+    public HistoryExportController(HistoryExportService historyExportService,
+                                   AuthorizationService authorizationService) {
+        this.historyExportService = historyExportService;
+        this.authorizationService = authorizationService;
+    }
+
+    @GetMapping("/export")
+    public void exportHistory(
+            @RequestHeader(name = "Authorization", required = false) String token,
+            @RequestParam("compositeId") String compositeId,
+            @RequestParam("from") String from,
+            @RequestParam("to") String to,
+            @RequestParam(name = "sensorType", required = false) List<String> sensorTypes,
+            @RequestParam(name = "format", required = false) String format,
+            HttpServletResponse response
+    ) throws IOException {
+        authorizationService.requireMonitoringView(token);
+        if (sensorTypes != null) {
+            for (String sensorType : sensorTypes) {
+                if (sensorType == null || !SENSOR_TYPE_PATTERN.matcher(sensorType.trim()).matches()) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid sensorType");
+                }
+            }
+            sensorTypes = sensorTypes.stream().map(String::trim).toList();
+        }
+        HistoryExportService.Export export;
+        try {
+            export = historyExportService.prepare(compositeId.trim(), parseInstant(from), parseInstant(to),
+                    sensorTypes, HistoryExportFormat.fromParam(format));
+        } catch (IllegalArgumentException iae) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, iae.getMessage(), iae);
+        }
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(export.format().contentType());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename(export.fileName()).build().toString());
+        historyExportService.write(export, response.getOutputStream());
+    }
+
+    private static Instant parseInstant(String s) {
+        if (s == null || s.isBlank()) return null;
+        try {
+            return Instant.ofEpochMilli(Long.parseLong(s.trim()));
+        } catch (NumberFormatException ignore) {}
+        try {
+            return Instant.parse(s.trim());
+        } catch (Exception ignore) {}
+        throw new IllegalArgumentException("Invalid 'from' or 'to' timestamp");
+    }
+}
@@ -13,7 +13,12 @@ import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 import se.hydroleaf.repository.dto.history.AggregatedHistoryResponse;
+import se.hydroleaf.repository.dto.history.GroupHistoryResponse;
 import se.hydroleaf.service.AuthorizationService;
+import se.hydroleaf.service.GroupHistoryService;
+import se.hydroleaf.service.HistoryAggregation;
+import se.hydroleaf.service.HistoryDownsampling;
+import se.hydroleaf.service.HistoryGrouping;
 import se.hydroleaf.service.RecordService;
 
 import java.time.Duration;
@@ -32,11 +37,15 @@ public class RecordController {
     private static final Pattern SENSOR_TYPE_PATTERN = Pattern.compile("[A-Za-z0-9_\\-]{1,32}");
 
     private final RecordService recordService;
+    private final GroupHistoryService groupHistoryService;
     private final AuthorizationService authorizationService;
 
     @Autowired
-    public RecordController(RecordService recordService, AuthorizationService authorizationService) {
+    public RecordController(RecordService recordService,
+                            GroupHistoryService groupHistoryService,
+                            AuthorizationService authorizationService) {
         this.recordService = recordService;
+        this.groupHistoryService = groupHistoryService;
         this.authorizationService = authorizationService;
     }
 
@@ -53,14 +62,17 @@ public class RecordController {
             @RequestParam(name = "bucketLimit", required = false) Integer bucketLimit,
             @RequestParam(name = "bucketOffset", required = false) Integer bucketOffset,
             @RequestParam(name = "sensorLimit", required = false) Integer sensorLimit,
-            @RequestParam(name = "sensorOffset", required = false) Integer sensorOffset
+            @RequestParam(name = "sensorOffset", required = false) Integer sensorOffset,
+            @RequestParam(name = "agg", required = false) String agg,
+            @RequestParam(name = "maxPoints", required = false) Integer maxPoints,
+            @RequestParam(name = "downsample", required = false) String downsample
     ) {
         authorizationService.requireMonitoringView(token);
         String resolvedCompositeId = resolveCompositeId(compositeId, nodeId);
         List<String> resolvedSensorTypes = resolveSensorTypes(sensorTypes, metric);
         if (log.isDebugEnabled()) {
-            log.debug("Aggregated history request: compositeId={} from={} to={} bucket={} sensorTypes={} bucketLimit={} bucketOffset={} sensorLimit={} sensorOffset={} tokenPresent={}",
-                    resolvedCompositeId, from, to, bucket, resolvedSensorTypes, bucketLimit, bucketOffset, sensorLimit, sensorOffset, token != null);
+            log.debug("Aggregated history request: compositeId={} from={} to={} bucket={} sensorTypes={} bucketLimit={} bucketOffset={} sensorLimit={} sensorOffset={} maxPoints={} tokenPresent={}",
+                    resolvedCompositeId, from, to, bucket, resolvedSensorTypes, bucketLimit, bucketOffset, sensorLimit, sensorOffset, maxPoints, token != null);
         }
         if (resolvedCompositeId == null || resolvedCompositeId.isBlank()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing compositeId");
@@ -93,7 +105,8 @@ public class RecordController {
         try {
             return recordService.aggregatedHistory(
                     resolvedCompositeId, fromInst, toInst, bucket, normalizedSensorTypes,
-                    bucketLimit, bucketOffset, sensorLimit, sensorOffset);
+                    bucketLimit, bucketOffset, sensorLimit, sensorOffset,
+                    HistoryAggregation.fromParam(agg), maxPoints, HistoryDownsampling.fromParam(downsample));
         } catch (IllegalArgumentException iae) {
             if (log.isDebugEnabled()) {
                 log.debug("Aggregated history validation error: {}", iae.getMessage());
@@ -115,7 +128,10 @@ public class RecordController {
             @RequestParam(name = "bucketLimit", required = false) Integer bucketLimit,
             @RequestParam(name = "bucketOffset", required = false) Integer bucketOffset,
             @RequestParam(name = "sensorLimit", required = false) Integer sensorLimit,
-            @RequestParam(name = "sensorOffset", required = false) Integer sensorOffset
+            @RequestParam(name = "sensorOffset", required = false) Integer sensorOffset,
+            @RequestParam(name = "agg", required = false) String agg,
+            @RequestParam(name = "maxPoints", required = false) Integer maxPoints,
+            @RequestParam(name = "downsample", required = false) String downsample
     ) {
         authorizationService.requireMonitoringView(token);
         return getHistoryAggregated(
@@ -130,7 +146,65 @@ public class RecordController {
                 bucketLimit,
                 bucketOffset,
                 sensorLimit,
-                sensorOffset);
+                sensorOffset,
+                agg,
+                maxPoints,
+                downsample);
+    }
+
+    /**
+     * History of several devices in one round trip, selected by {@code system}
+     * (optionally narrowed to a {@code rack} and {@code layer}) or by repeated
+     * {@code compositeId}; {@code groupBy=layer|rack} averages across devices.
+     */
+    @GetMapping("/history/aggregated/group")
+    public GroupHistoryResponse getGroupHistoryAggregated(
+            @RequestHeader(name = "Authorization", required = false) String token,
+            @RequestParam(name = "system", required = false) String system,
+            @RequestParam(name = "rack", required = false) String rack,
+            @RequestParam(name = "layer", required = false) String layer,
+            @RequestParam(name = "compositeId", required = false) List<String> compositeIds,
+            @RequestParam("from") String from,
+            @RequestParam("to") String to,
+            @RequestParam(name = "bucket", defaultValue = "5m") String bucket,
+            @RequestParam(name = "sensorType") List<String> sensorTypes,
+            @RequestParam(name = "groupBy", required = false) String groupBy,
+            @RequestParam(name = "agg", required = false) String agg,
+            @RequestParam(name = "maxPoints", required = false) Integer maxPoints,
+            @RequestParam(name = "downsample", required = false) String downsample
+    ) {
+        authorizationService.requireMonitoringView(token);
+        Instant fromInst = parseInstant(from);
+        Instant toInst = parseInstant(to);
+        if (fromInst == null || toInst == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid 'from' or 'to' timestamp");
+        }
+        if (!toInst.isAfter(fromInst)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "'to' must be after 'from'");
+        }
+        if (Duration.between(fromInst, toInst).toDays() > MAX_RANGE_DAYS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Range exceeds " + MAX_RANGE_DAYS + " days");
+        }
+        List<String> normalizedSensorTypes = new ArrayList<>(sensorTypes.size());
+        for (String st : sensorTypes) {
+            if (st == null || !SENSOR_TYPE_PATTERN.matcher(st.trim()).matches()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid sensorType");
+            }
+            normalizedSensorTypes.add(st.trim());
+        }
+        List<String> normalizedCompositeIds = compositeIds == null ? null
+                : compositeIds.stream().filter(id -> id != null && !id.isBlank()).map(String::trim).toList();
+        try {
+            return groupHistoryService.groupHistory(
+                    system, rack, layer, normalizedCompositeIds, fromInst, toInst, bucket, normalizedSensorTypes,
+                    HistoryGrouping.fromParam(groupBy), HistoryAggregation.fromParam(agg),
+                    maxPoints, HistoryDownsampling.fromParam(downsample));
+        } catch (IllegalArgumentException iae) {
+            if (log.isDebugEnabled()) {
+                log.debug("Group history validation error: {}", iae.getMessage());
+            }
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, iae.getMessage(), iae);
+        }
     }
 
     private static String resolveCompositeId(String compositeId, String nodeId) {
@@ -20,7 +20,7 @@ import lombok.ToString;
 import java.time.Instant;
 
 /**
- * Generic actuator status persisted for each controller item.
+ * Interval during which an actuator kept one state; a row is written per state change.
  */
 @Entity
 @Table(name = "actuator_status",
@@ -42,6 +42,10 @@ public class ActuatorStatus {
     @Column(name = "status_time", nullable = false)
     private Instant timestamp;
 
+    /** When the state was replaced, or for the newest row when it was last reported. */
+    @Column(name = "end_time")
+    private Instant endTime;
+
     @Column(name = "actuator_type", nullable = false)
     private String actuatorType;
 
@@ -42,6 +42,10 @@ public class DeviceStatusHistory {
     @Column(name = "status_time", nullable = false)
     private Instant timestamp;
 
+    /** When the state was replaced, or for the newest row when it was last reported. */
+    @Column(name = "end_time")
+    private Instant endTime;
+
     @ManyToOne(optional = false)
     @JoinColumn(name = "composite_id", referencedColumnName = "composite_id", nullable = false)
     private Device device;
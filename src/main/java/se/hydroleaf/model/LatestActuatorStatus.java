@@ -0,0 +1,53 @@
+package se.hydroleaf.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.Instant;
+
+/**
+ * Most recent reported state per device and actuator. Upserted on ingest by
+ * {@code LatestActuatorStatusUpsertRepository}, which also decides whether a
+ * report is a state change worth a row in {@code actuator_status}; mapped so
+ * the schema is validated and created for tests.
+ */
+@Entity
+@Table(name = "latest_actuator_status",
+        indexes = {
+                @Index(name = "ix_las_type", columnList = "actuator_type")
+        })
+@IdClass(LatestActuatorStatusId.class)
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class LatestActuatorStatus {
+
+    @Id
+    @Column(name = "composite_id", nullable = false, length = 128)
+    private String compositeId;
+
+    @Id
+    @Column(name = "actuator_type", nullable = false)
+    private String actuatorType;
+
+    @Column(name = "state", nullable = false)
+    private Boolean state;
+
+    /** Time of the newest report. */
+    @Column(name = "status_time", nullable = false)
+    private Instant statusTime;
+
+    /** Time the actuator last switched to {@link #state}. */
+    @Column(name = "changed_time", nullable = false)
+    private Instant changedTime;
+}
@@ -0,0 +1,15 @@
+package se.hydroleaf.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LatestActuatorStatusId implements Serializable {
+    private String compositeId;
+    private String actuatorType;
+}
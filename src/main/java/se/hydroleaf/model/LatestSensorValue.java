@@ -5,10 +5,10 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
-import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.EqualsAndHashCode;
@@ -21,15 +21,15 @@ import java.time.Instant;
 
 /**
  * JPA entity mapping the latest_sensor_value table. This table stores the most
- * recent sensor reading per device and sensor type and is normally maintained by
- * a database trigger. The entity exists primarily to allow tests to populate the
- * table when running with an in-memory database.
+ * recent sensor reading per device and sensor type. Ingest writes go through
+ * {@code LatestSensorValueWriter} as batched upserts keyed on
+ * (composite_id, sensor_type); the entity is used for reads and by tests.
  */
 @Entity
 @Table(
         name = "latest_sensor_value",
-        indexes = {
-                @Index(name = "idx_lsv_device_sensor", columnList = "composite_id, sensor_type")
+        uniqueConstraints = {
+                @UniqueConstraint(name = "ux_lsv_device_sensor", columnNames = {"composite_id", "sensor_type"})
         }
 )
 @Getter
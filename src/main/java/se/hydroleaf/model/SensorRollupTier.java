@@ -0,0 +1,53 @@
+package se.hydroleaf.model;
+
+import java.time.Instant;
+
+/**
+ * Downsampled tiers kept in {@code sensor_value_rollup} (or, on TimescaleDB,
+ * the matching continuous aggregates). Buckets are aligned to the epoch, like
+ * the ones produced by the aggregated-history queries.
+ */
+public enum SensorRollupTier {
+    FIVE_MINUTES(300, "sensor_value_rollup_5m"),
+    HOURLY(3_600, "sensor_value_rollup_1h"),
+    DAILY(86_400, "sensor_value_rollup_1d");
+
+    private static final SensorRollupTier[] COARSEST_FIRST = {DAILY, HOURLY, FIVE_MINUTES};
+
+    private final int seconds;
+    private final String continuousAggregate;
+
+    SensorRollupTier(int seconds, String continuousAggregate) {
+        this.seconds = seconds;
+        this.continuousAggregate = continuousAggregate;
+    }
+
+    public int seconds() {
+        return seconds;
+    }
+
+    public String continuousAggregate() {
+        return continuousAggregate;
+    }
+
+    public Instant bucketStart(Instant time) {
+        return Instant.ofEpochSecond(Math.floorDiv(time.getEpochSecond(), seconds) * seconds);
+    }
+
+    public boolean isAligned(Instant time) {
+        return time.getNano() == 0 && Math.floorMod(time.getEpochSecond(), seconds) == 0;
+    }
+
+    /**
+     * Coarsest tier whose buckets tile a bucket of the given size, or {@code null}
+     * when the bucket is finer than five minutes or not a multiple of it.
+     */
+    public static SensorRollupTier coarsestFor(long bucketSeconds) {
+        for (SensorRollupTier tier : COARSEST_FIRST) {
+            if (bucketSeconds >= tier.seconds && bucketSeconds % tier.seconds == 0) {
+                return tier;
+            }
+        }
+        return null;
+    }
+}
@@ -53,9 +53,28 @@ public class SensorValueHistory {
     @Column(name = "sensor_type", nullable = false, length = 64)
     private String sensorType;
 
+    /** Average of the samples collected in the minute. */
     @Column(name = "sensor_value")
     private Double sensorValue;
 
+    @Column(name = "min_value")
+    private Double minValue;
+
+    @Column(name = "max_value")
+    private Double maxValue;
+
+    @Column(name = "last_value")
+    private Double lastValue;
+
+    @Column(name = "sample_count")
+    private Integer sampleCount;
+
+    @Column(name = "sum_value")
+    private Double sumValue;
+
+    @Column(name = "sum_sq_value")
+    private Double sumSqValue;
+
     @PrePersist
     @PreUpdate
     private void fillParts() {
@@ -0,0 +1,74 @@
+package se.hydroleaf.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.Instant;
+
+/**
+ * One bucket of a {@link SensorRollupTier}, folded from the
+ * {@code sensor_value_history} rows whose {@code value_time} falls into it.
+ * Written by {@code SensorValueRollupJdbcWriter}; mapped so the schema is
+ * validated and created for tests.
+ */
+@Entity
+@Table(name = "sensor_value_rollup")
+@IdClass(SensorValueRollupId.class)
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SensorValueRollup {
+
+    @Id
+    @Column(name = "composite_id", nullable = false, length = 128)
+    private String compositeId;
+
+    @Id
+    @Column(name = "sensor_type", nullable = false, length = 64)
+    private String sensorType;
+
+    /** {@link SensorRollupTier#seconds()} of the tier this bucket belongs to. */
+    @Id
+    @Column(name = "bucket_seconds", nullable = false)
+    private Integer bucketSeconds;
+
+    @Id
+    @Column(name = "bucket_time", nullable = false)
+    @JdbcTypeCode(SqlTypes.TIMESTAMP_WITH_TIMEZONE)
+    private Instant bucketTime;
+
+    @Column(name = "sample_count", nullable = false)
+    private Long sampleCount;
+
+    @Column(name = "sum_value", nullable = false)
+    private Double sumValue;
+
+    @Column(name = "sum_sq_value", nullable = false)
+    private Double sumSqValue;
+
+    @Column(name = "min_value")
+    private Double minValue;
+
+    @Column(name = "max_value")
+    private Double maxValue;
+
+    @Column(name = "last_value")
+    private Double lastValue;
+
+    /** {@code value_time} of the history row that supplied {@link #lastValue}. */
+    @Column(name = "last_time")
+    @JdbcTypeCode(SqlTypes.TIMESTAMP_WITH_TIMEZONE)
+    private Instant lastTime;
+}
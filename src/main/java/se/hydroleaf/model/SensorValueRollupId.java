@@ -0,0 +1,18 @@
+package se.hydroleaf.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SensorValueRollupId implements Serializable {
+    private String compositeId;
+    private String sensorType;
+    private Integer bucketSeconds;
+    private Instant bucketTime;
+}
@@ -0,0 +1,38 @@
+package se.hydroleaf.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.Instant;
+
+/**
+ * The newest segment of a telemetry journal whose samples are persisted.
+ * Written by {@code TelemetryJournalCheckpoints}; mapped so the schema is
+ * validated and created for tests.
+ */
+@Entity
+@Table(name = "telemetry_journal_checkpoint")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TelemetryJournalCheckpoint {
+
+    @Id
+    @Column(name = "journal_id", nullable = false, length = 64)
+    private String journalId;
+
+    @Column(name = "applied_through", nullable = false)
+    private Long appliedThrough;
+
+    @Column(name = "updated_at", nullable = false)
+    @JdbcTypeCode(SqlTypes.TIMESTAMP_WITH_TIMEZONE)
+    private Instant updatedAt;
+}
@@ -0,0 +1,211 @@
+package se.hydroleaf.mqtt;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Re-encodes live feed envelopes for subscriptions that negotiated a compact
+ * {@link LiveFeedEncoding} through the {@code encoding} SUBSCRIBE header.
+ *
+ * <p>Registered on both client channels: inbound it records the encoding per
+ * subscription and forgets it on UNSUBSCRIBE/DISCONNECT, outbound it rewrites
+ * MESSAGE frames of those subscriptions. Every distinct envelope identity
+ * (kind, site, rack, node, device) becomes a series with a small id; its first
+ * frame defines it, later frames only carry the series id, the timestamp and
+ * the payload fields that changed since the last frame of that series:</p>
+ *
+ * <pre>
+ * {"s":1,"def":{"kind":"telemetry","siteId":"S01",...},"ts":"...","d":{"lux":12.5,"humidity":40}}
+ * {"s":1,"ts":"...","d":{"lux":12.7}}
+ * </pre>
+ *
+ * <p>{@code delta-cbor} sends the same structure as CBOR in binary frames. SockJS
+ * only carries text, so it is honoured on the native endpoint only and falls
+ * back to {@code delta} elsewhere. Frames that are not envelopes, and subscribe
+ * snapshots, are passed through unchanged.</p>
+ */
+@Slf4j
+@Component
+public class DeltaEncodingInterceptor implements ChannelInterceptor {
+
+    static final String ENCODING_HEADER = "encoding";
+    /** Session attribute set by the handshake of the native (non-SockJS) endpoint. */
+    public static final String BINARY_TRANSPORT_ATTRIBUTE = "hydroleaf.binaryTransport";
+
+    private record SubscriptionKey(String sessionId, String subscriptionId) {
+    }
+
+    private record Parsed(Object payload, JsonNode envelope) {
+    }
+
+    private static final class Series {
+        final int id;
+        final Map<String, JsonNode> last = new HashMap<>();
+
+        Series(int id) {
+            this.id = id;
+        }
+    }
+
+    private static final class SubscriptionState {
+        final LiveFeedEncoding encoding;
+        final Map<String, Series> series = new HashMap<>();
+
+        SubscriptionState(LiveFeedEncoding encoding) {
+            this.encoding = encoding;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final CBORMapper cborMapper = new CBORMapper();
+    private final ConcurrentMap<SubscriptionKey, SubscriptionState> subscriptions = new ConcurrentHashMap<>();
+    /** The broker sends one payload to all subscribers in turn, so it is parsed once. */
+    private final AtomicReference<Parsed> lastParsed = new AtomicReference<>();
+
+    public DeltaEncodingInterceptor(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        SimpMessageType type = accessor.getMessageType();
+        if (type == SimpMessageType.SUBSCRIBE) {
+            register(accessor);
+        } else if (type == SimpMessageType.UNSUBSCRIBE) {
+            subscriptions.remove(new SubscriptionKey(accessor.getSessionId(), accessor.getSubscriptionId()));
+        } else if (type == SimpMessageType.DISCONNECT) {
+            String sessionId = accessor.getSessionId();
+            subscriptions.keySet().removeIf(key -> key.sessionId().equals(sessionId));
+        } else if (type == SimpMessageType.MESSAGE && !subscriptions.isEmpty()) {
+            return encode(message, accessor);
+        }
+        return message;
+    }
+
+    private void register(SimpMessageHeaderAccessor accessor) {
+        LiveFeedEncoding encoding;
+        try {
+            encoding = LiveFeedEncoding.fromParam(accessor.getFirstNativeHeader(ENCODING_HEADER));
+        } catch (IllegalArgumentException ex) {
+            log.warn("Ignoring subscription encoding for session={}: {}", accessor.getSessionId(), ex.getMessage());
+            return;
+        }
+        if (encoding == LiveFeedEncoding.DELTA_CBOR && !binaryTransport(accessor)) {
+            encoding = LiveFeedEncoding.DELTA;
+        }
+        if (encoding != LiveFeedEncoding.JSON && accessor.getSessionId() != null) {
+            subscriptions.put(new SubscriptionKey(accessor.getSessionId(), accessor.getSubscriptionId()),
+                    new SubscriptionState(encoding));
+        }
+    }
+
+    private static boolean binaryTransport(SimpMessageHeaderAccessor accessor) {
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        return attributes != null && Boolean.TRUE.equals(attributes.get(BINARY_TRANSPORT_ATTRIBUTE));
+    }
+
+    private Message<?> encode(Message<?> message, SimpMessageHeaderAccessor accessor) {
+        if (accessor.getSessionId() == null
+                || "true".equals(accessor.getFirstNativeHeader(SnapshotOnSubscribeInterceptor.SNAPSHOT_HEADER))) {
+            return message;
+        }
+        SubscriptionState state = subscriptions.get(
+                new SubscriptionKey(accessor.getSessionId(), accessor.getSubscriptionId()));
+        if (state == null) {
+            return message;
+        }
+        JsonNode envelope = parse(message.getPayload());
+        if (envelope == null || !envelope.path("payload").isObject()) {
+            return message;
+        }
+        try {
+            ObjectNode frame;
+            synchronized (state) {
+                frame = delta(state, envelope);
+            }
+            boolean cbor = state.encoding == LiveFeedEncoding.DELTA_CBOR;
+            byte[] body = cbor ? cborMapper.writeValueAsBytes(frame) : objectMapper.writeValueAsBytes(frame);
+
+            SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(message);
+            // binary frames are only sent for application/octet-stream
+            headers.setContentType(cbor ? MimeTypeUtils.APPLICATION_OCTET_STREAM : MimeTypeUtils.APPLICATION_JSON);
+            headers.setNativeHeader(ENCODING_HEADER, state.encoding.header());
+            return MessageBuilder.createMessage(body, headers.getMessageHeaders());
+        } catch (IOException ex) {
+            log.warn("Unable to delta-encode message for session={}: {}", accessor.getSessionId(), ex.getMessage());
+            return message;
+        }
+    }
+
+    private ObjectNode delta(SubscriptionState state, JsonNode envelope) {
+        ObjectNode identity = ((ObjectNode) envelope).deepCopy();
+        identity.remove("timestamp");
+        identity.remove("payload");
+        String seriesKey = identity.toString();
+
+        ObjectNode frame = objectMapper.createObjectNode();
+        Series series = state.series.get(seriesKey);
+        if (series == null) {
+            series = new Series(state.series.size() + 1);
+            state.series.put(seriesKey, series);
+            frame.put("s", series.id);
+            frame.set("def", identity);
+        } else {
+            frame.put("s", series.id);
+        }
+        frame.set("ts", envelope.path("timestamp"));
+
+        ObjectNode changed = frame.putObject("d");
+        Iterator<Map.Entry<String, JsonNode>> fields = envelope.get("payload").fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode previous = series.last.put(field.getKey(), field.getValue());
+            if (!field.getValue().equals(previous)) {
+                changed.set(field.getKey(), field.getValue());
+            }
+        }
+        return frame;
+    }
+
+    private JsonNode parse(Object payload) {
+        Parsed parsed = lastParsed.get();
+        if (parsed != null && parsed.payload() == payload) {
+            return parsed.envelope();
+        }
+        JsonNode envelope;
+        try {
+            if (payload instanceof byte[] bytes) {
+                envelope = objectMapper.readTree(bytes);
+            } else if (payload instanceof String text) {
+                envelope = objectMapper.readTree(text.getBytes(StandardCharsets.UTF_8));
+            } else {
+                return null;
+            }
+        } catch (IOException ex) {
+            envelope = null;
+        }
+        lastParsed.set(new Parsed(payload, envelope));
+        return envelope;
+    }
+}
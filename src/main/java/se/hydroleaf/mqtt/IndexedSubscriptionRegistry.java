@@ -0,0 +1,226 @@
+package se.hydroleaf.mqtt;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.broker.AbstractSubscriptionRegistry;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.PathMatcher;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Subscription registry of the simple broker that looks recipients up instead
+ * of testing every subscription against every message.
+ *
+ * <p>Subscriptions are indexed by destination, and within a destination by the
+ * compositeId of their {@link SubscriptionSelector} (or by its sensor type when
+ * only that is selected). A message is offered to the unfiltered subscriptions
+ * of its destination plus the ones filed under its own compositeId and sensor
+ * types, so publishing costs the number of matching subscriptions however many
+ * sessions are connected.</p>
+ *
+ * <p>Messages carry their keys in the {@link #COMPOSITE_ID_HEADER} and
+ * {@link #SENSOR_TYPES_HEADER} headers set by {@link TopicPublisher}; these are
+ * not native headers and are not sent to clients. Subscriptions to Ant-style
+ * destination patterns still work but are matched one by one. Clients sending
+ * an unparseable selector are answered with an ERROR frame by
+ * {@link SubscriptionSelectorInterceptor}; should one get here anyway, it is
+ * not registered.</p>
+ */
+@Slf4j
+public class IndexedSubscriptionRegistry extends AbstractSubscriptionRegistry {
+
+    public static final String COMPOSITE_ID_HEADER = "hydroleaf.compositeId";
+    public static final String SENSOR_TYPES_HEADER = "hydroleaf.sensorTypes";
+
+    private record Subscription(String sessionId, String id, String destination, SubscriptionSelector selector) {
+
+        boolean matches(String compositeId, Collection<String> sensorTypes) {
+            return selector == null || selector.matches(compositeId, sensorTypes);
+        }
+    }
+
+    private record Key(String sessionId, String id) {
+    }
+
+    /**
+     * Subscriptions of one destination. Changes are made inside
+     * {@code compute} on the destination map, so they are serialized per
+     * destination; lookups read the concurrent maps without locking.
+     */
+    private static final class DestinationIndex {
+        final ConcurrentMap<Key, Subscription> unfiltered = new ConcurrentHashMap<>();
+        final ConcurrentMap<String, ConcurrentMap<Key, Subscription>> byCompositeId = new ConcurrentHashMap<>();
+        final ConcurrentMap<String, ConcurrentMap<Key, Subscription>> bySensorType = new ConcurrentHashMap<>();
+        int size;
+
+        void add(Key key, Subscription subscription) {
+            SubscriptionSelector selector = subscription.selector();
+            if (selector == null) {
+                unfiltered.put(key, subscription);
+            } else if (selector.compositeId() != null) {
+                byCompositeId.computeIfAbsent(selector.compositeId(), k -> new ConcurrentHashMap<>()).put(key, subscription);
+            } else {
+                bySensorType.computeIfAbsent(selector.sensorType(), k -> new ConcurrentHashMap<>()).put(key, subscription);
+            }
+            size++;
+        }
+
+        void remove(Key key, Subscription subscription) {
+            SubscriptionSelector selector = subscription.selector();
+            boolean removed;
+            if (selector == null) {
+                removed = unfiltered.remove(key) != null;
+            } else if (selector.compositeId() != null) {
+                removed = removeFrom(byCompositeId, selector.compositeId(), key);
+            } else {
+                removed = removeFrom(bySensorType, selector.sensorType(), key);
+            }
+            if (removed) {
+                size--;
+            }
+        }
+
+        void collect(String compositeId, Collection<String> sensorTypes, MultiValueMap<String, String> result) {
+            for (Subscription subscription : unfiltered.values()) {
+                result.add(subscription.sessionId(), subscription.id());
+            }
+            if (compositeId != null) {
+                Map<Key, Subscription> selected = byCompositeId.get(compositeId);
+                if (selected != null) {
+                    for (Subscription subscription : selected.values()) {
+                        if (subscription.matches(compositeId, sensorTypes)) {
+                            result.add(subscription.sessionId(), subscription.id());
+                        }
+                    }
+                }
+            }
+            if (sensorTypes != null && !bySensorType.isEmpty()) {
+                for (String sensorType : sensorTypes) {
+                    Map<Key, Subscription> selected = bySensorType.get(sensorType);
+                    if (selected != null) {
+                        for (Subscription subscription : selected.values()) {
+                            result.add(subscription.sessionId(), subscription.id());
+                        }
+                    }
+                }
+            }
+        }
+
+        private static boolean removeFrom(ConcurrentMap<String, ConcurrentMap<Key, Subscription>> index,
+                                          String value, Key key) {
+            ConcurrentMap<Key, Subscription> subscriptions = index.get(value);
+            if (subscriptions == null || subscriptions.remove(key) == null) {
+                return false;
+            }
+            if (subscriptions.isEmpty()) {
+                index.remove(value);
+            }
+            return true;
+        }
+    }
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+    private final ConcurrentMap<String, DestinationIndex> destinations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, Subscription>> sessions = new ConcurrentHashMap<>();
+    private final Set<Subscription> patterns = ConcurrentHashMap.newKeySet();
+
+    @Override
+    protected void addSubscriptionInternal(String sessionId, String subscriptionId, String destination,
+                                           Message<?> message) {
+        SubscriptionSelector selector;
+        try {
+            selector = SubscriptionSelector.parse(NativeMessageHeaderAccessor.getFirstNativeHeader(
+                    SubscriptionSelector.HEADER, message.getHeaders()));
+        } catch (IllegalArgumentException ex) {
+            log.warn("Ignoring subscription {} of session {} to {}: {}",
+                    subscriptionId, sessionId, destination, ex.getMessage());
+            return;
+        }
+        Subscription subscription = new Subscription(sessionId, subscriptionId, destination, selector);
+        Subscription previous = sessions.computeIfAbsent(sessionId, s -> new ConcurrentHashMap<>())
+                .put(subscriptionId, subscription);
+        if (previous != null) {
+            unindex(previous);
+        }
+        if (pathMatcher.isPattern(destination)) {
+            patterns.add(subscription);
+        } else {
+            Key key = new Key(sessionId, subscriptionId);
+            destinations.compute(destination, (d, index) -> {
+                DestinationIndex target = index != null ? index : new DestinationIndex();
+                target.add(key, subscription);
+                return target;
+            });
+        }
+    }
+
+    @Override
+    protected void removeSubscriptionInternal(String sessionId, String subscriptionId, Message<?> message) {
+        Map<String, Subscription> subscriptions = sessions.get(sessionId);
+        Subscription removed = subscriptions != null ? subscriptions.remove(subscriptionId) : null;
+        if (removed != null) {
+            unindex(removed);
+        }
+    }
+
+    @Override
+    public void unregisterAllSubscriptions(String sessionId) {
+        Map<String, Subscription> subscriptions = sessions.remove(sessionId);
+        if (subscriptions != null) {
+            subscriptions.values().forEach(this::unindex);
+        }
+    }
+
+    @Override
+    protected MultiValueMap<String, String> findSubscriptionsInternal(String destination, Message<?> message) {
+        MultiValueMap<String, String> result = new LinkedMultiValueMap<>();
+        String compositeId = (String) message.getHeaders().get(COMPOSITE_ID_HEADER);
+        @SuppressWarnings("unchecked")
+        Collection<String> sensorTypes = (Collection<String>) message.getHeaders().get(SENSOR_TYPES_HEADER);
+        DestinationIndex index = destinations.get(destination);
+        if (index != null) {
+            index.collect(compositeId, sensorTypes, result);
+        }
+        for (Subscription subscription : patterns) {
+            if (pathMatcher.match(subscription.destination(), destination)
+                    && subscription.matches(compositeId, sensorTypes)) {
+                result.add(subscription.sessionId(), subscription.id());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether any subscription, with or without a selector, could receive a
+     * message sent to {@code destination}.
+     */
+    public boolean hasSubscriptions(String destination) {
+        if (destinations.containsKey(destination)) {
+            return true;
+        }
+        for (Subscription subscription : patterns) {
+            if (pathMatcher.match(subscription.destination(), destination)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void unindex(Subscription subscription) {
+        if (!patterns.remove(subscription)) {
+            Key key = new Key(subscription.sessionId(), subscription.id());
+            destinations.computeIfPresent(subscription.destination(), (d, index) -> {
+                index.remove(key, subscription);
+                return index.size > 0 ? index : null;
+            });
+        }
+    }
+}
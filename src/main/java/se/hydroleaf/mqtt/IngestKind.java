@@ -0,0 +1,32 @@
+package se.hydroleaf.mqtt;
+
+import java.util.Locale;
+
+/**
+ * Coarse message classification used by the ingest pipeline to pick an
+ * overflow policy before the payload has been parsed.
+ */
+public enum IngestKind {
+    TELEMETRY,
+    STATUS,
+    EVENT,
+    OTHER;
+
+    /**
+     * Classifies a message from its MQTT topic only; {@code hydroleaf/v1/...}
+     * topics end with the kind, legacy topics fall back to {@link #OTHER}.
+     */
+    public static IngestKind fromTopic(String topic) {
+        if (topic == null) {
+            return OTHER;
+        }
+        int slash = topic.lastIndexOf('/');
+        String tail = (slash >= 0 ? topic.substring(slash + 1) : topic).trim().toLowerCase(Locale.ROOT);
+        return switch (tail) {
+            case "telemetry" -> TELEMETRY;
+            case "status" -> STATUS;
+            case "event" -> EVENT;
+            default -> OTHER;
+        };
+    }
+}
@@ -0,0 +1,172 @@
+package se.hydroleaf.mqtt;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import se.hydroleaf.config.MqttIngestProperties.OverflowPolicy;
+import se.hydroleaf.config.MqttIngestProperties.OverflowProperties;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One stage of the MQTT ingest pipeline: a fixed set of worker threads, each
+ * owning a bounded queue. Work is partitioned by key so that messages for the
+ * same topic are always processed in arrival order by the same worker.
+ */
+@Slf4j
+final class IngestStage {
+
+    private record Task(Runnable work, long enqueuedNanos) { }
+
+    private final String name;
+    private final BlockingQueue<Task>[] queues;
+    private final Thread[] workers;
+    private final Map<IngestKind, OverflowProperties> overflow;
+    private final Map<IngestKind, Counter> dropped = new EnumMap<>(IngestKind.class);
+    private final Timer latency;
+    private volatile boolean running = true;
+
+    @SuppressWarnings("unchecked")
+    IngestStage(String name,
+                int workerCount,
+                int queueCapacity,
+                Map<IngestKind, OverflowProperties> overflow,
+                MeterRegistry meterRegistry) {
+        int count = Math.max(1, workerCount);
+        int perWorker = Math.max(1, queueCapacity / count);
+        this.name = name;
+        this.overflow = overflow;
+        this.queues = new BlockingQueue[count];
+        this.workers = new Thread[count];
+        for (int i = 0; i < count; i++) {
+            queues[i] = new ArrayBlockingQueue<>(perWorker);
+        }
+        for (IngestKind kind : IngestKind.values()) {
+            dropped.put(kind, Counter.builder("mqtt.ingest.dropped")
+                    .tag("stage", name)
+                    .tag("kind", kind.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+        this.latency = Timer.builder("mqtt.ingest.latency")
+                .description("Time from enqueue until the stage finished processing a message")
+                .tag("stage", name)
+                .register(meterRegistry);
+        Gauge.builder("mqtt.ingest.queue.depth", this, IngestStage::depth)
+                .tag("stage", name)
+                .register(meterRegistry);
+        for (int i = 0; i < count; i++) {
+            BlockingQueue<Task> queue = queues[i];
+            Thread worker = new Thread(() -> runWorker(queue), "mqtt-" + name + "-" + i);
+            worker.setDaemon(true);
+            workers[i] = worker;
+        }
+    }
+
+    void start() {
+        for (Thread worker : workers) {
+            worker.start();
+        }
+    }
+
+    /**
+     * Enqueues work according to the overflow policy of {@code kind}.
+     *
+     * @return {@code false} when the message was dropped
+     */
+    boolean submit(String partitionKey, IngestKind kind, Runnable work) {
+        if (!running) {
+            dropped.get(kind).increment();
+            return false;
+        }
+        BlockingQueue<Task> queue = queues[partition(partitionKey)];
+        Task task = new Task(work, System.nanoTime());
+        OverflowProperties policy = overflow.get(kind);
+        boolean accepted;
+        if (policy != null && policy.getPolicy() == OverflowPolicy.BLOCK) {
+            Duration timeout = policy.getOfferTimeout() != null ? policy.getOfferTimeout() : Duration.ZERO;
+            try {
+                accepted = queue.offer(task, timeout.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                accepted = false;
+            }
+        } else {
+            accepted = queue.offer(task);
+        }
+        if (!accepted) {
+            dropped.get(kind).increment();
+            log.warn("MQTT ingest stage {} full; dropped {} message (key={})", name, kind, partitionKey);
+        }
+        return accepted;
+    }
+
+    int depth() {
+        int depth = 0;
+        for (BlockingQueue<Task> queue : queues) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Stops accepting work and waits for queued tasks to finish until {@code timeout} elapses.
+     */
+    void stop(Duration timeout) {
+        running = false;
+        long deadline = System.nanoTime() + timeout.toNanos();
+        for (Thread worker : workers) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            try {
+                if (remainingMillis > 0) {
+                    worker.join(remainingMillis);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            if (worker.isAlive()) {
+                worker.interrupt();
+            }
+        }
+        int abandoned = depth();
+        if (abandoned > 0) {
+            log.warn("MQTT ingest stage {} stopped with {} queued messages", name, abandoned);
+        }
+    }
+
+    private int partition(String key) {
+        if (queues.length == 1 || key == null) {
+            return 0;
+        }
+        return Math.floorMod(key.hashCode(), queues.length);
+    }
+
+    private void runWorker(BlockingQueue<Task> queue) {
+        while (running || !queue.isEmpty()) {
+            Task task;
+            try {
+                task = queue.poll(200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (task == null) {
+                continue;
+            }
+            try {
+                task.work().run();
+            } catch (Exception ex) {
+                log.error("MQTT ingest stage {} task failed: {}", name, ex.getMessage(), ex);
+            } finally {
+                latency.record(System.nanoTime() - task.enqueuedNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
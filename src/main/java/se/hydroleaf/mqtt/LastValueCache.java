@@ -0,0 +1,99 @@
+package se.hydroleaf.mqtt;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.hydroleaf.config.LiveFeedProperties;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiPredicate;
+
+/**
+ * Latest message per (destination, compositeId), fed by {@link TopicPublisher}
+ * whether or not the destination has subscribers, so that a new subscriber can
+ * be sent the current state at once instead of waiting for the next report
+ * (see {@link SnapshotOnSubscribeInterceptor}).
+ *
+ * <p>Only the kinds listed in {@code livefeed.snapshot.kinds} are kept, and
+ * entries older than {@code livefeed.snapshot.max-age} are dropped when the
+ * destination is read.</p>
+ *
+ * <p>In clustered mode each instance only ingests its share of the devices,
+ * so the cache is disabled rather than answering with a partial state.</p>
+ */
+@Component
+public class LastValueCache {
+
+    private record Entry(Object payload, Set<String> sensorTypes, Instant storedAt) {
+    }
+
+    private final LiveFeedProperties.Snapshot properties;
+    private final Clock clock;
+    private final boolean clustered;
+    private final ConcurrentMap<String, ConcurrentMap<String, Entry>> destinations = new ConcurrentHashMap<>();
+
+    public LastValueCache(LiveFeedProperties properties,
+                          Clock clock,
+                          @Value("${cluster.enabled:false}") boolean clustered) {
+        this.properties = properties.getSnapshot();
+        this.clock = clock;
+        this.clustered = clustered;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled() && !clustered;
+    }
+
+    public void put(String destination, String compositeId, String kind, Object payload) {
+        put(destination, compositeId, kind, payload, null);
+    }
+
+    public void put(String destination, String compositeId, String kind, Object payload, Set<String> sensorTypes) {
+        if (!isEnabled() || destination == null || compositeId == null || kind == null || payload == null
+                || !properties.getKinds().contains(kind.toLowerCase(Locale.ROOT))) {
+            return;
+        }
+        destinations.computeIfAbsent(destination, d -> new ConcurrentHashMap<>())
+                .put(compositeId, new Entry(payload, sensorTypes, clock.instant()));
+    }
+
+    /**
+     * Current messages of one destination, ordered by compositeId.
+     */
+    public List<Object> snapshot(String destination) {
+        return snapshot(destination, (compositeId, sensorTypes) -> true);
+    }
+
+    /**
+     * Current messages of one destination accepted by {@code filter}, which is
+     * given the compositeId and sensor types of each, ordered by compositeId.
+     */
+    public List<Object> snapshot(String destination, BiPredicate<String, Set<String>> filter) {
+        Map<String, Entry> entries = destination != null ? destinations.get(destination) : null;
+        if (entries == null) {
+            return List.of();
+        }
+        Instant oldest = clock.instant().minus(properties.getMaxAge());
+        List<Map.Entry<String, Entry>> current = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().storedAt().isBefore(oldest)) {
+                entries.remove(entry.getKey(), entry.getValue());
+            } else if (filter.test(entry.getKey(), entry.getValue().sensorTypes())) {
+                current.add(entry);
+            }
+        }
+        current.sort(Map.Entry.comparingByKey());
+        List<Object> payloads = new ArrayList<>(current.size());
+        for (Map.Entry<String, Entry> entry : current) {
+            payloads.add(entry.getValue().payload());
+        }
+        return payloads;
+    }
+}
@@ -0,0 +1,126 @@
+package se.hydroleaf.mqtt;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import se.hydroleaf.config.LiveFeedProperties;
+import se.hydroleaf.config.LiveFeedProperties.Policy;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Sits in front of {@link TopicPublisher} and throttles the live feed.
+ *
+ * <p>Messages whose kind maps to {@link Policy#CONFLATE} are parked per
+ * (destinations, compositeId); a newer message for the same key replaces the
+ * parked one, and everything parked is published every {@code livefeed.rate}.
+ * Other kinds, events by default, are published immediately. This bounds the
+ * outbound rate per device and destination no matter how often a node reports.</p>
+ */
+@Slf4j
+@Component
+public class LiveFeedCoalescer {
+
+    private record Key(List<String> destinations, String compositeId) {
+    }
+
+    private record Pending(Object payload, String kind, Set<String> sensorTypes) {
+    }
+
+    private final LiveFeedProperties properties;
+    private final TopicPublisher topicPublisher;
+    private final TaskScheduler scheduler;
+    private final ConcurrentMap<Key, Pending> pending = new ConcurrentHashMap<>();
+    private ScheduledFuture<?> flushTask;
+
+    public LiveFeedCoalescer(LiveFeedProperties properties,
+                             TopicPublisher topicPublisher,
+                             @Qualifier("scheduler") TaskScheduler scheduler) {
+        this.properties = properties;
+        this.topicPublisher = topicPublisher;
+        this.scheduler = scheduler;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (properties.isEnabled()) {
+            flushTask = scheduler.scheduleAtFixedRate(this::flush, properties.getRate());
+            log.info("Live feed conflation enabled (rate={}, policies={}, default={})",
+                    properties.getRate(), properties.getPolicies(), properties.getDefaultPolicy());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        flush();
+    }
+
+    public void publish(String destination, Object payload, String compositeId, String kind) {
+        if (conflate(kind)) {
+            pending.put(new Key(List.of(destination), compositeId), new Pending(payload, kind, null));
+        } else {
+            topicPublisher.publish(destination, payload, compositeId, kind);
+        }
+    }
+
+    /**
+     * Like {@link TopicPublisher#publishAll}: the payload is encoded once for all destinations when it is sent.
+     */
+    public void publishAll(List<String> destinations, Object payload, String compositeId, String kind) {
+        publishAll(destinations, payload, compositeId, kind, null);
+    }
+
+    public void publishAll(List<String> destinations, Object payload, String compositeId, String kind,
+                           Set<String> sensorTypes) {
+        if (conflate(kind)) {
+            pending.put(new Key(List.copyOf(destinations), compositeId), new Pending(payload, kind, sensorTypes));
+        } else {
+            topicPublisher.publishAll(destinations, payload, compositeId, kind, sensorTypes);
+        }
+    }
+
+    /**
+     * Publishes the latest parked message for every key.
+     */
+    void flush() {
+        for (Map.Entry<Key, Pending> entry : pending.entrySet()) {
+            Key key = entry.getKey();
+            Pending message = entry.getValue();
+            if (!pending.remove(key, message)) {
+                continue; // replaced since we read it; the newer one goes out next round
+            }
+            try {
+                if (key.destinations().size() == 1) {
+                    topicPublisher.publish(key.destinations().get(0), message.payload(), key.compositeId(), message.kind());
+                } else {
+                    topicPublisher.publishAll(key.destinations(), message.payload(), key.compositeId(), message.kind(),
+                            message.sensorTypes());
+                }
+            } catch (RuntimeException ex) {
+                log.warn("Live feed flush failed for {}: {}", key.destinations(), ex.getMessage());
+            }
+        }
+    }
+
+    private boolean conflate(String kind) {
+        if (flushTask == null) {
+            return false;
+        }
+        Policy policy = kind != null
+                ? properties.getPolicies().getOrDefault(kind.toLowerCase(Locale.ROOT), properties.getDefaultPolicy())
+                : properties.getDefaultPolicy();
+        return policy == Policy.CONFLATE;
+    }
+}
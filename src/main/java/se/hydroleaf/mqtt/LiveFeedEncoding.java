@@ -0,0 +1,37 @@
+package se.hydroleaf.mqtt;
+
+import java.util.Locale;
+
+/**
+ * Frame encodings a STOMP subscriber can ask for with the {@code encoding} header.
+ */
+public enum LiveFeedEncoding {
+    /** The full JSON envelope per message. */
+    JSON("json"),
+    /** Series dictionary plus changed fields, as JSON. */
+    DELTA("delta"),
+    /** Like {@link #DELTA}, as CBOR in binary frames; needs the native WebSocket endpoint. */
+    DELTA_CBOR("delta-cbor");
+
+    private final String header;
+
+    LiveFeedEncoding(String header) {
+        this.header = header;
+    }
+
+    public String header() {
+        return header;
+    }
+
+    public static LiveFeedEncoding fromParam(String value) {
+        if (value == null || value.isBlank()) {
+            return JSON;
+        }
+        return switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "json" -> JSON;
+            case "delta" -> DELTA;
+            case "delta-cbor", "delta+cbor", "cbor" -> DELTA_CBOR;
+            default -> throw new IllegalArgumentException("Unsupported encoding: " + value);
+        };
+    }
+}
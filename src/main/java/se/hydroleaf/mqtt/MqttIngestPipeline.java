@@ -0,0 +1,96 @@
+package se.hydroleaf.mqtt;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import se.hydroleaf.config.MqttIngestProperties;
+import se.hydroleaf.config.MqttIngestProperties.OverflowProperties;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Staged ingest pipeline decoupling the Paho callback thread from parsing,
+ * STOMP fan-out and persistence.
+ *
+ * <p>The callback thread only classifies the topic and enqueues the raw bytes.
+ * The parse stage decodes the payload and publishes it to STOMP, then hands the
+ * persistence work to the persist stage. Both stages partition by topic so
+ * messages of one device keep their arrival order.</p>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "mqtt", name = "enabled", havingValue = "true", matchIfMissing = false)
+public class MqttIngestPipeline {
+
+    private final MqttMessageHandler messageHandler;
+    private final MqttIngestProperties properties;
+    private final IngestStage parseStage;
+    private final IngestStage persistStage;
+
+    public MqttIngestPipeline(MqttMessageHandler messageHandler,
+                              MqttIngestProperties properties,
+                              MeterRegistry meterRegistry) {
+        this.messageHandler = messageHandler;
+        this.properties = properties;
+        Map<IngestKind, OverflowProperties> overflow = new EnumMap<>(IngestKind.class);
+        overflow.put(IngestKind.TELEMETRY, properties.getTelemetry());
+        overflow.put(IngestKind.STATUS, properties.getStatus());
+        overflow.put(IngestKind.EVENT, properties.getEvent());
+        overflow.put(IngestKind.OTHER, properties.getOther());
+        this.parseStage = new IngestStage("parse",
+                properties.getParse().getWorkers(),
+                properties.getParse().getQueueCapacity(),
+                overflow,
+                meterRegistry);
+        this.persistStage = new IngestStage("persist",
+                properties.getPersist().getWorkers(),
+                properties.getPersist().getQueueCapacity(),
+                overflow,
+                meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) {
+            log.info("MQTT ingest pipeline disabled; messages are handled on the callback thread");
+            return;
+        }
+        persistStage.start();
+        parseStage.start();
+        log.info("MQTT ingest pipeline started (parseWorkers={}, persistWorkers={})",
+                properties.getParse().getWorkers(), properties.getPersist().getWorkers());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        // Drain parse first so that its output still reaches the persist stage.
+        parseStage.stop(properties.getShutdownTimeout());
+        persistStage.stop(properties.getShutdownTimeout());
+    }
+
+    /**
+     * Entry point for the MQTT callback thread. Never parses or touches the database.
+     */
+    public void submit(String topic, byte[] payload) {
+        if (!properties.isEnabled()) {
+            messageHandler.handle(topic, payload);
+            return;
+        }
+        IngestKind kind = IngestKind.fromTopic(topic);
+        parseStage.submit(topic, kind, () -> parse(topic, kind, payload));
+    }
+
+    private void parse(String topic, IngestKind kind, byte[] payload) {
+        Runnable persist = messageHandler.route(topic, payload);
+        if (persist != null) {
+            persistStage.submit(topic, kind, persist);
+        }
+    }
+}
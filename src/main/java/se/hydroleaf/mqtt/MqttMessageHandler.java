@@ -1,7 +1,11 @@
 package se.hydroleaf.mqtt;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import se.hydroleaf.service.RecordService;
@@ -9,42 +13,74 @@ import se.hydroleaf.service.WaterFlowStatusService;
 import se.hydroleaf.service.DeviceStatusEventService;
 import se.hydroleaf.model.TopicName;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 @Slf4j
 @Component
 public class MqttMessageHandler {
 
+    private static final Set<String> ENVELOPE_FIELDS = Set.of(
+            "site", "rack", "layer", "deviceId", "timestamp", "siteId", "rackId", "layerId",
+            "systemId", "system", "compositeId", "composite_id", "kind");
+
     private final ObjectMapper objectMapper;
     private final RecordService recordService;
-    private final TopicPublisher topicPublisher;
+    private final LiveFeedCoalescer liveFeed;
     private final WaterFlowStatusService waterFlowStatusService;
     private final DeviceStatusEventService deviceStatusEventService;
 
     public MqttMessageHandler(ObjectMapper objectMapper,
                               RecordService recordService,
-                              TopicPublisher topicPublisher,
+                              LiveFeedCoalescer liveFeed,
                               WaterFlowStatusService waterFlowStatusService,
                               DeviceStatusEventService deviceStatusEventService) {
         this.objectMapper = objectMapper;
         this.recordService = recordService;
-        this.topicPublisher = topicPublisher;
+        this.liveFeed = liveFeed;
         this.waterFlowStatusService = waterFlowStatusService;
         this.deviceStatusEventService = deviceStatusEventService;
     }
 
     public void handle(String topic, String payload) {
+        handle(topic, payload != null ? payload.getBytes(StandardCharsets.UTF_8) : new byte[0]);
+    }
+
+    public void handle(String topic, byte[] payload) {
+        Runnable persist = route(topic, payload);
+        if (persist != null) {
+            persist.run();
+        }
+    }
+
+    /**
+     * Parses the payload and publishes it to STOMP, returning the persistence
+     * work for the message (or {@code null} when nothing needs to be stored) so
+     * the caller can run it on a different thread.
+     *
+     * <p>Telemetry fields are read straight from the bytes with a streaming
+     * parser; a {@link JsonNode} tree is only built for the water-flow, status
+     * and event handlers that need one.</p>
+     */
+    public Runnable route(String topic, byte[] payload) {
         try {
-            int payloadLength = payload != null ? payload.length() : 0;
-            log.debug("MQTT received message (topic={}, payloadLength={})", topic, payloadLength);
-            JsonNode node = objectMapper.readTree(payload);
+            log.debug("MQTT received message (topic={}, payloadLength={})", topic, payload.length);
+            TelemetryReading reading;
+            try (JsonParser parser = objectMapper.getFactory().createParser(payload)) {
+                reading = TelemetryReading.read(parser);
+            }
             MqttTopicParser.ParsedTopic parsedTopic = MqttTopicParser.parse(topic).orElse(null);
-            String compositeId = parsedTopic != null ? parsedTopic.compositeId() : readCompositeId(node);
-            String messageKind = parsedTopic != null ? parsedTopic.kind() : readText(node, "kind");
+            String compositeId = parsedTopic != null ? parsedTopic.compositeId() : reading.compositeId();
+            String messageKind = parsedTopic != null ? parsedTopic.kind() : reading.kind();
             if (messageKind == null && topic != null) {
                 String trimmedTopic = topic.trim();
                 if (trimmedTopic.equalsIgnoreCase("event") || trimmedTopic.equalsIgnoreCase("/event")
@@ -53,7 +89,7 @@ public class MqttMessageHandler {
                 }
             }
             if (parsedTopic != null) {
-                String payloadCompositeId = readCompositeId(node);
+                String payloadCompositeId = reading.compositeId();
                 if (payloadCompositeId != null && !payloadCompositeId.isBlank()
                         && !payloadCompositeId.equals(compositeId)) {
                     log.warn("MQTT payload composite_id {} does not match topic-derived {}", payloadCompositeId, compositeId);
@@ -63,23 +99,26 @@ public class MqttMessageHandler {
                         parsedTopic.kind(), parsedTopic.compositeId());
             }
 
+            String payloadText = new String(payload, StandardCharsets.UTF_8);
             if (topic != null && !topic.isBlank()) {
-                topicPublisher.publish("/topic/" + topic, payload, compositeId, messageKind);
+                liveFeed.publish("/topic/" + topic, payloadText, compositeId, messageKind);
             }
 
             if (parsedTopic != null) {
-                JsonNode envelopePayload = buildEnvelopePayload(parsedTopic, node);
+                Set<String> sensorTypes = new HashSet<>();
+                JsonNode envelopePayload = buildEnvelopePayload(parsedTopic, reading, payload, sensorTypes);
                 String aggregateTopic = "/topic/hydroleaf/" + parsedTopic.kind();
-                log.debug("MQTT publishing aggregate destination={}", aggregateTopic);
-                topicPublisher.publish(aggregateTopic, envelopePayload, parsedTopic.compositeId(), parsedTopic.kind());
                 String rackTopic = String.format("/topic/hydroleaf/rack/%s/%s", parsedTopic.rack(), parsedTopic.kind());
-                log.debug("MQTT publishing rack destination={}", rackTopic);
-                topicPublisher.publish(rackTopic, envelopePayload, parsedTopic.compositeId(), parsedTopic.kind());
+                String deviceTopic = String.format("/topic/hydroleaf/device/%s/%s",
+                        parsedTopic.compositeId(), parsedTopic.kind());
+                log.debug("MQTT publishing envelope destinations={}, {}, {}", aggregateTopic, rackTopic, deviceTopic);
+                liveFeed.publishAll(List.of(aggregateTopic, rackTopic, deviceTopic), envelopePayload,
+                        parsedTopic.compositeId(), parsedTopic.kind(), sensorTypes);
             }
 
             if (isWaterFlowTopic(topic)) {
-                handleWaterFlow(node);
-                return;
+                JsonNode node = objectMapper.readTree(payload);
+                return persisting(topic, () -> handleWaterFlow(node));
             }
 
             TopicName topicName = parsedTopic != null ? null : TopicName.fromMqttTopic(topic);
@@ -87,7 +126,7 @@ public class MqttMessageHandler {
             if (messageKind != null && "event".equalsIgnoreCase(messageKind)) {
                 log.info("MQTT event received (topic={}, compositeId={})", topic, compositeId);
                 if (parsedTopic == null) {
-                    topicPublisher.publish("/topic/hydroleaf/event", payload, compositeId, messageKind);
+                    liveFeed.publish("/topic/hydroleaf/event", payloadText, compositeId, messageKind);
                 }
             }
 
@@ -97,30 +136,41 @@ public class MqttMessageHandler {
                 } else {
                     log.warn("MQTT parse/handle failed on topic {}: missing composite_id", topic);
                 }
-                return;
+                return null;
             }
 
             if (messageKind != null && "status".equalsIgnoreCase(messageKind)) {
+                JsonNode node = objectMapper.readTree(payload);
                 String statusValue = readText(node, "status", "value");
                 Instant statusTime = parseTimestamp(node.path("timestamp"), node.path("status_time"), node.path("ts"));
-                deviceStatusEventService.recordStatus(compositeId, statusValue, statusTime);
-                return;
+                return persisting(topic, () -> deviceStatusEventService.recordStatus(compositeId, statusValue, statusTime));
             }
             if (messageKind != null && "event".equalsIgnoreCase(messageKind)) {
+                JsonNode node = objectMapper.readTree(payload);
                 Instant eventTime = parseTimestamp(node.path("timestamp"), node.path("event_time"), node.path("ts"));
                 String level = readText(node, "level");
                 String code = readText(node, "code");
                 String msg = readText(node, "msg", "message");
-                deviceStatusEventService.recordEvent(compositeId, eventTime, level, code, msg, payload);
-                return;
+                return persisting(topic, () -> deviceStatusEventService.recordEvent(compositeId, eventTime, level, code, msg, payloadText));
             }
 
-            recordService.saveRecord(compositeId, node, topicName, topic, parsedTopic);
+            return persisting(topic, () -> recordService.saveRecord(compositeId, reading, topicName, topic, parsedTopic));
         } catch (Exception ex) {
             log.error("MQTT handle error for topic {}: {}", topic, ex.getMessage(), ex);
+            return null;
         }
     }
 
+    private static Runnable persisting(String topic, Runnable work) {
+        return () -> {
+            try {
+                work.run();
+            } catch (Exception ex) {
+                log.error("MQTT handle error for topic {}: {}", topic, ex.getMessage(), ex);
+            }
+        };
+    }
+
     private static boolean isWaterFlowTopic(String topic) {
         if (topic == null) {
             return false;
@@ -195,19 +245,13 @@ public class MqttMessageHandler {
         return null;
     }
 
-    private static String readCompositeId(JsonNode n) {
-        if (n == null) return null;
-        if (n.hasNonNull("composite_id")) return n.get("composite_id").asText();
-        if (n.hasNonNull("compositeId")) return n.get("compositeId").asText();
-        return null;
-    }
-
-    private JsonNode buildEnvelopePayload(MqttTopicParser.ParsedTopic parsedTopic, JsonNode payload) {
+    private JsonNode buildEnvelopePayload(MqttTopicParser.ParsedTopic parsedTopic, TelemetryReading reading,
+                                          byte[] payload, Set<String> sensorTypes) throws IOException {
         var envelope = objectMapper.createObjectNode();
         envelope.put("schemaVersion", 2);
         envelope.put("kind", parsedTopic.kind());
         envelope.put("deviceId", parsedTopic.deviceId());
-        String timestampText = resolveTimestampText(payload);
+        String timestampText = resolveTimestampText(reading);
         if (timestampText != null) {
             envelope.put("timestamp", timestampText);
         } else {
@@ -221,23 +265,23 @@ public class MqttMessageHandler {
         envelope.put("nodeId", resolveNodeId(nodeType, parsedTopic));
         envelope.put("nodeInstance", resolveNodeInstance(nodeType, parsedTopic.deviceId()));
 
-        envelope.set("payload", normalizePayload(payload));
+        envelope.set("payload", normalizePayload(payload, sensorTypes));
         return envelope;
     }
 
-    private String resolveTimestampText(JsonNode payload) {
-        if (payload == null) {
-            return null;
+    private static String resolveTimestampText(TelemetryReading reading) {
+        if (reading.timestamp() != null) {
+            return reading.timestamp().toString();
         }
-        JsonNode tsNode = payload.path("timestamp");
-        Instant instant = parseTimestamp(tsNode);
-        if (instant != null) {
-            return instant.toString();
+        String text = reading.timestampText();
+        if (text == null) {
+            return null;
         }
-        if (tsNode.isTextual()) {
-            return tsNode.asText();
+        try {
+            return LocalDateTime.parse(text, DateTimeFormatter.ISO_LOCAL_DATE_TIME).toInstant(ZoneOffset.UTC).toString();
+        } catch (DateTimeParseException ex) {
+            return text;
         }
-        return null;
     }
 
     private static String extractNodeType(String deviceId) {
@@ -292,26 +336,33 @@ public class MqttMessageHandler {
         }
     }
 
-    private JsonNode normalizePayload(JsonNode payload) {
-        if (payload == null || !payload.isObject()) {
-            return payload;
+    /**
+     * Copies the payload without the addressing fields the envelope already
+     * carries, streaming token by token instead of deep-copying a tree. The
+     * names of the fields copied are added to {@code fields}.
+     */
+    private JsonNode normalizePayload(byte[] payload, Set<String> fields) throws IOException {
+        StringWriter out = new StringWriter(payload.length);
+        try (JsonParser parser = objectMapper.getFactory().createParser(payload);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return objectMapper.readTree(payload);
+            }
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (ENVELOPE_FIELDS.contains(field)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                fields.add(field);
+                generator.writeFieldName(field);
+                generator.copyCurrentStructure(parser);
+            }
+            generator.writeEndObject();
         }
-        var cleaned = payload.deepCopy();
-        var cleanedObject = (com.fasterxml.jackson.databind.node.ObjectNode) cleaned;
-        cleanedObject.remove("site");
-        cleanedObject.remove("rack");
-        cleanedObject.remove("layer");
-        cleanedObject.remove("deviceId");
-        cleanedObject.remove("timestamp");
-        cleanedObject.remove("siteId");
-        cleanedObject.remove("rackId");
-        cleanedObject.remove("layerId");
-        cleanedObject.remove("systemId");
-        cleanedObject.remove("system");
-        cleanedObject.remove("compositeId");
-        cleanedObject.remove("composite_id");
-        cleanedObject.remove("kind");
-        return cleaned;
+        return objectMapper.getNodeFactory().rawValueNode(new RawValue(out.toString()));
     }
 
 }
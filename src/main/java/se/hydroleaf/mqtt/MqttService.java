@@ -8,17 +8,25 @@ import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import se.hydroleaf.config.ClusterProperties;
 import se.hydroleaf.model.TopicName;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * MQTT bridge:
  * - Connects to broker and subscribes to configured topics.
- * - Delegates message parsing and persistence to {@link MqttMessageHandler}.
+ * - Hands raw payloads to the {@link MqttIngestPipeline} so parsing and persistence
+ *   never run on the Paho callback thread.
+ * - In clustered mode every instance connects with its own client id and subscribes
+ *   through a {@code $share/<group>/} shared subscription, so each message is
+ *   ingested by one instance.
  */
 @Slf4j
 @Service
@@ -49,10 +57,12 @@ public class MqttService implements MqttCallbackExtended {
     private MqttClient client;
     private MqttConnectOptions connectOptions;
 
-    private final MqttMessageHandler messageHandler;
+    private final MqttIngestPipeline ingestPipeline;
+    private final ClusterProperties cluster;
 
-    public MqttService(MqttMessageHandler messageHandler) {
-        this.messageHandler = messageHandler;
+    public MqttService(MqttIngestPipeline ingestPipeline, ClusterProperties cluster) {
+        this.ingestPipeline = ingestPipeline;
+        this.cluster = cluster;
     }
 
     @PostConstruct
@@ -69,6 +79,10 @@ public class MqttService implements MqttCallbackExtended {
             connectOptions.setPassword(password.toCharArray());
         }
         String brokerUri = String.format("tcp://%s:%d", host, port);
+        if (cluster.isEnabled()) {
+            // brokers disconnect the older of two connections with the same client id
+            clientId = clientId + "-" + instanceId();
+        }
 
         try {
             client = new MqttClient(brokerUri, clientId, persistence);
@@ -115,7 +129,7 @@ public class MqttService implements MqttCallbackExtended {
         log.info("MQTT subscribing with qos={} filters={}", qos, Arrays.toString(topics));
         List<String> subscribedTopics = new ArrayList<>();
         for (String t : topics) {
-            String topic = t.trim();
+            String topic = subscriptionFilter(t.trim());
             if (!topic.isEmpty()) {
                 try {
                     client.subscribe(topic, qos);
@@ -129,10 +143,28 @@ public class MqttService implements MqttCallbackExtended {
         log.info("MQTT subscribed topics: {}", subscribedTopics);
     }
 
+    String subscriptionFilter(String topic) {
+        if (topic.isEmpty() || !cluster.isEnabled() || topic.startsWith("$share/")) {
+            return topic;
+        }
+        return "$share/" + cluster.getMqttShareGroup() + "/" + topic;
+    }
+
+    private String instanceId() {
+        String configured = cluster.getInstanceId();
+        if (configured != null && !configured.isBlank()) {
+            return configured.trim();
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException ex) {
+            return UUID.randomUUID().toString().substring(0, 8);
+        }
+    }
+
     @Override
     public void messageArrived(String topic, MqttMessage message) {
-        String payload = new String(message.getPayload(), StandardCharsets.UTF_8);
-        messageHandler.handle(topic, payload);
+        ingestPipeline.submit(topic, message.getPayload());
     }
 
     @Override
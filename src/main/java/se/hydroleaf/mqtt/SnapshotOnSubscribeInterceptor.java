@@ -0,0 +1,117 @@
+package se.hydroleaf.mqtt;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Replays the {@link LastValueCache} to a new subscriber.
+ *
+ * <p>A SUBSCRIBE frame carrying the header {@code snapshot:true} is answered
+ * with one MESSAGE frame, marked {@code snapshot:true}, whose body is a JSON
+ * array of the latest message per device on that destination (possibly
+ * empty). The cache is read once the broker has handled the SUBSCRIBE, so
+ * the subscription is already registered: {@link TopicPublisher} caches a
+ * message before publishing it, hence every message the subscription misses
+ * is in the snapshot. A live message published while the snapshot is being
+ * assembled may reach the client just before it; the snapshot then already
+ * contains that message or a newer one, and the outbound channel keeps all
+ * later frames of the session behind it (see
+ * {@link se.hydroleaf.websocket.OutboundBackPressureInterceptor}).</p>
+ *
+ * <p>Nothing is sent while the cache is disabled, e.g. in clustered mode.
+ * A subscription with a {@link SubscriptionSelector} only gets the messages
+ * its selector matches; invalid selectors are rejected earlier by
+ * {@link SubscriptionSelectorInterceptor}.</p>
+ */
+@Slf4j
+@Component
+public class SnapshotOnSubscribeInterceptor implements ExecutorChannelInterceptor {
+
+    static final String SNAPSHOT_HEADER = "snapshot";
+
+    private final LastValueCache cache;
+    private final ObjectMapper objectMapper;
+    private final MessageChannel clientOutboundChannel;
+
+    public SnapshotOnSubscribeInterceptor(LastValueCache cache,
+                                          ObjectMapper objectMapper,
+                                          @Lazy @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel) {
+        this.cache = cache;
+        this.objectMapper = objectMapper;
+        this.clientOutboundChannel = clientOutboundChannel;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler,
+                                    Exception ex) {
+        if (ex != null || !(handler instanceof AbstractBrokerMessageHandler) || !cache.isEnabled()) {
+            return;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        if (accessor.getMessageType() != SimpMessageType.SUBSCRIBE
+                || !"true".equalsIgnoreCase(accessor.getFirstNativeHeader(SNAPSHOT_HEADER))
+                || accessor.getDestination() == null) {
+            return;
+        }
+        try {
+            SubscriptionSelector selector = SubscriptionSelector.parse(
+                    accessor.getFirstNativeHeader(SubscriptionSelector.HEADER));
+            List<Object> payloads = selector == null
+                    ? cache.snapshot(accessor.getDestination())
+                    : cache.snapshot(accessor.getDestination(), selector::matches);
+            byte[] body = encode(payloads);
+            clientOutboundChannel.send(snapshotMessage(accessor, body));
+        } catch (IOException | RuntimeException failure) {
+            log.warn("Unable to send snapshot for destination={} session={}: {}",
+                    accessor.getDestination(), accessor.getSessionId(), failure.getMessage());
+        }
+    }
+
+    /**
+     * Cached payloads are either JSON text, as received over MQTT, or objects
+     * that are serialized here.
+     */
+    byte[] encode(List<Object> payloads) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+            generator.writeStartArray();
+            for (Object payload : payloads) {
+                if (payload instanceof String json) {
+                    generator.writeRawValue(json);
+                } else {
+                    generator.writeObject(payload);
+                }
+            }
+            generator.writeEndArray();
+        }
+        return out.toByteArray();
+    }
+
+    private static Message<byte[]> snapshotMessage(SimpMessageHeaderAccessor subscribe, byte[] body) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(subscribe.getSessionId());
+        accessor.setSubscriptionId(subscribe.getSubscriptionId());
+        accessor.setDestination(subscribe.getDestination());
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setNativeHeader(SNAPSHOT_HEADER, "true");
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(body, accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,60 @@
+package se.hydroleaf.mqtt;
+
+import java.util.Collection;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code selector} header of a live feed subscription, narrowing a topic
+ * to one device and/or one sensor type:
+ *
+ * <pre>
+ * selector: compositeId = 'S01-R01-L04-G01'
+ * selector: sensorType = 'lux'
+ * selector: compositeId = 'S01-R01-L04-G01' AND sensorType = 'lux'
+ * </pre>
+ *
+ * <p>A message matches when its compositeId equals the selected one and, for
+ * a sensor type, when that is one of its sensor types: the top-level fields of
+ * the {@code payload} of a live feed envelope. Either part left out matches
+ * anything.</p>
+ */
+public record SubscriptionSelector(String compositeId, String sensorType) {
+
+    public static final String HEADER = "selector";
+
+    private static final Pattern AND = Pattern.compile("\\s+(?i:and)\\s+");
+    private static final Pattern TERM = Pattern.compile("\\s*(compositeId|sensorType)\\s*=\\s*'([^']+)'\\s*");
+
+    /**
+     * Parses a selector header, or returns null for a missing or blank one.
+     *
+     * @throws IllegalArgumentException for anything but the forms above
+     */
+    public static SubscriptionSelector parse(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        String compositeId = null;
+        String sensorType = null;
+        for (String term : AND.split(text.trim())) {
+            Matcher matcher = TERM.matcher(term);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("Unsupported selector: " + text);
+            }
+            if ("compositeId".equals(matcher.group(1)) && compositeId == null) {
+                compositeId = matcher.group(2);
+            } else if ("sensorType".equals(matcher.group(1)) && sensorType == null) {
+                sensorType = matcher.group(2);
+            } else {
+                throw new IllegalArgumentException("Selector repeats " + matcher.group(1) + ": " + text);
+            }
+        }
+        return new SubscriptionSelector(compositeId, sensorType);
+    }
+
+    public boolean matches(String messageCompositeId, Collection<String> messageSensorTypes) {
+        return (compositeId == null || compositeId.equals(messageCompositeId))
+                && (sensorType == null || (messageSensorTypes != null && messageSensorTypes.contains(sensorType)));
+    }
+}
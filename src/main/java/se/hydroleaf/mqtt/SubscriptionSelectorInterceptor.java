@@ -0,0 +1,53 @@
+package se.hydroleaf.mqtt;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import se.hydroleaf.config.ClusterProperties;
+
+/**
+ * Validates the {@link SubscriptionSelector} of a SUBSCRIBE frame before it
+ * reaches the broker.
+ *
+ * <p>A selector that does not parse, or any selector while the live feed goes
+ * through the external broker relay, fails the send; the STOMP handler then
+ * answers the client with an ERROR frame instead of leaving it with a
+ * subscription that silently receives nothing. The relay forwards only native
+ * headers, and the routing keys {@link TopicPublisher} sets are internal, so
+ * the external broker has nothing to evaluate a selector against.</p>
+ */
+@Component
+public class SubscriptionSelectorInterceptor implements ChannelInterceptor {
+
+    private final boolean relay;
+
+    public SubscriptionSelectorInterceptor(ClusterProperties cluster) {
+        this.relay = cluster.getRelay().isEnabled();
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        if (accessor.getMessageType() != SimpMessageType.SUBSCRIBE) {
+            return message;
+        }
+        String selector = accessor.getFirstNativeHeader(SubscriptionSelector.HEADER);
+        if (selector == null || selector.isBlank()) {
+            return message;
+        }
+        if (relay) {
+            throw new MessageDeliveryException(message,
+                    "Selectors are not supported through the broker relay; subscribe to a device destination");
+        }
+        try {
+            SubscriptionSelector.parse(selector);
+        } catch (IllegalArgumentException ex) {
+            throw new MessageDeliveryException(message, ex.getMessage(), ex);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,343 @@
+package se.hydroleaf.mqtt;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Telemetry fields of one MQTT payload, extracted with a single streaming pass
+ * instead of materialising a {@link JsonNode} tree.
+ *
+ * <p>Known metrics are kept as primitives with a presence bit each;
+ * {@code as7343_counts} entries and {@code controllers[]} are kept in parallel
+ * arrays. Metric values follow the tree-based rules they replace: JSON numbers
+ * and numeric strings are accepted, anything else counts as absent.</p>
+ */
+public final class TelemetryReading {
+
+    /**
+     * Top-level numeric metrics, in the order they are stored.
+     */
+    public enum Metric {
+        LUX("lux", "lux"),
+        RH_PCT("rh_pct", "%"),
+        CO2_PPM("co2_ppm", "ppm"),
+        LAYER_TEMP_C("layer_temp_c", "C"),
+        AIR_TEMP_C("air_temp_c", "C"),
+        SOLUTION_TEMP_C("solution_temp_c", "C");
+
+        private static final Metric[] VALUES = values();
+        private static final Map<String, Metric> BY_FIELD = new HashMap<>();
+
+        static {
+            for (Metric metric : VALUES) {
+                BY_FIELD.put(metric.field, metric);
+            }
+        }
+
+        private final String field;
+        private final String unit;
+
+        Metric(String field, String unit) {
+            this.field = field;
+            this.unit = unit;
+        }
+
+        public String field() {
+            return field;
+        }
+
+        public String unit() {
+            return unit;
+        }
+
+        static Metric forField(String field) {
+            return BY_FIELD.get(field);
+        }
+    }
+
+    private static final Metric[] METRICS = Metric.VALUES;
+
+    private final double[] metrics = new double[METRICS.length];
+    private int present;
+
+    private String[] countNames = new String[0];
+    private double[] countValues = new double[0];
+    private int countSize;
+
+    private String[] controllerNames = new String[0];
+    private boolean[] controllerStates = new boolean[0];
+    private Instant[] controllerTimes = new Instant[0];
+    private int controllerSize;
+
+    private Instant timestamp;
+    private String timestampText;
+    private String kind;
+    private String deviceId;
+    private String compositeId;
+    private String compositeIdCamel;
+
+    private TelemetryReading() {
+    }
+
+    /**
+     * Reads one JSON document from {@code parser}; a non-object document yields an empty reading.
+     */
+    public static TelemetryReading read(JsonParser parser) throws IOException {
+        TelemetryReading reading = new TelemetryReading();
+        JsonToken token = parser.currentToken() != null ? parser.currentToken() : parser.nextToken();
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return reading;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (name) {
+                case "timestamp" -> reading.readTimestamp(parser, value);
+                case "kind" -> reading.kind = textual(parser, value);
+                case "deviceId" -> reading.deviceId = textual(parser, value);
+                case "composite_id" -> reading.compositeId = scalar(parser, value);
+                case "compositeId" -> reading.compositeIdCamel = scalar(parser, value);
+                case "as7343_counts" -> reading.readCounts(parser, value);
+                case "controllers" -> reading.readControllers(parser, value);
+                default -> {
+                    Metric metric = Metric.forField(name);
+                    if (metric == null) {
+                        parser.skipChildren();
+                    } else {
+                        reading.readMetric(metric, number(parser, value));
+                    }
+                }
+            }
+        }
+        return reading;
+    }
+
+    /**
+     * Adapter for callers that already hold a tree.
+     */
+    public static TelemetryReading of(JsonNode node) {
+        try (JsonParser parser = node.traverse()) {
+            return read(parser);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    public boolean has(Metric metric) {
+        return (present & (1 << metric.ordinal())) != 0;
+    }
+
+    public double get(Metric metric) {
+        return metrics[metric.ordinal()];
+    }
+
+    public int countSize() {
+        return countSize;
+    }
+
+    public String countName(int index) {
+        return countNames[index];
+    }
+
+    public double countValue(int index) {
+        return countValues[index];
+    }
+
+    public int controllerSize() {
+        return controllerSize;
+    }
+
+    public String controllerName(int index) {
+        return controllerNames[index];
+    }
+
+    public boolean controllerState(int index) {
+        return controllerStates[index];
+    }
+
+    /**
+     * @return the controller's own timestamp, or {@code null} when it has none
+     */
+    public Instant controllerTime(int index) {
+        return controllerTimes[index];
+    }
+
+    /**
+     * ISO-8601 instant or epoch millis from {@code timestamp}; {@code null} if absent or unparsable.
+     */
+    public Instant timestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Raw {@code timestamp} text, kept so callers can apply more lenient parsing.
+     */
+    public String timestampText() {
+        return timestampText;
+    }
+
+    public String kind() {
+        return kind;
+    }
+
+    public String deviceId() {
+        return deviceId;
+    }
+
+    /**
+     * {@code composite_id}, falling back to {@code compositeId}.
+     */
+    public String compositeId() {
+        return compositeId != null ? compositeId : compositeIdCamel;
+    }
+
+    private void readMetric(Metric metric, double number) {
+        int bit = 1 << metric.ordinal();
+        if (Double.isNaN(number)) {
+            present &= ~bit;
+        } else {
+            metrics[metric.ordinal()] = number;
+            present |= bit;
+        }
+    }
+
+    private void readTimestamp(JsonParser parser, JsonToken value) throws IOException {
+        timestamp = null;
+        timestampText = null;
+        if (value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT) {
+            timestamp = Instant.ofEpochMilli(parser.getValueAsLong());
+        } else if (value == JsonToken.VALUE_STRING) {
+            timestampText = parser.getText();
+            timestamp = parseInstant(timestampText);
+        } else {
+            parser.skipChildren();
+        }
+    }
+
+    private void readCounts(JsonParser parser, JsonToken value) throws IOException {
+        countSize = 0;
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.currentName();
+            double number = number(parser, parser.nextToken());
+            if (Double.isNaN(number) || key == null || key.isBlank()) {
+                continue;
+            }
+            if (countSize == countNames.length) {
+                int grown = Math.max(8, countSize * 2);
+                countNames = Arrays.copyOf(countNames, grown);
+                countValues = Arrays.copyOf(countValues, grown);
+            }
+            countNames[countSize] = key;
+            countValues[countSize] = number;
+            countSize++;
+        }
+    }
+
+    private void readControllers(JsonParser parser, JsonToken value) throws IOException {
+        controllerSize = 0;
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        JsonToken element;
+        while ((element = parser.nextToken()) != JsonToken.END_ARRAY && element != null) {
+            if (element != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            String name = null;
+            Boolean state = null;
+            Instant time = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                    case "name" -> name = scalar(parser, token);
+                    case "state" -> state = token == JsonToken.VALUE_TRUE ? Boolean.TRUE
+                            : token == JsonToken.VALUE_FALSE ? Boolean.FALSE : skip(parser);
+                    case "timestamp" -> time = token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT
+                            ? Instant.ofEpochMilli(parser.getValueAsLong())
+                            : token == JsonToken.VALUE_STRING ? parseInstant(parser.getText()) : skip(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            if (name == null || state == null) {
+                continue;
+            }
+            if (controllerSize == controllerNames.length) {
+                int grown = Math.max(4, controllerSize * 2);
+                controllerNames = Arrays.copyOf(controllerNames, grown);
+                controllerStates = Arrays.copyOf(controllerStates, grown);
+                controllerTimes = Arrays.copyOf(controllerTimes, grown);
+            }
+            controllerNames[controllerSize] = name;
+            controllerStates[controllerSize] = state;
+            controllerTimes[controllerSize] = time;
+            controllerSize++;
+        }
+    }
+
+    /**
+     * @return the number, or {@code NaN} when the value is not numeric
+     */
+    private static double number(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT) {
+            return parser.getDoubleValue();
+        }
+        if (value == JsonToken.VALUE_STRING) {
+            try {
+                return Double.parseDouble(parser.getText());
+            } catch (NumberFormatException ignore) {
+                return Double.NaN;
+            }
+        }
+        parser.skipChildren();
+        return Double.NaN;
+    }
+
+    private static String textual(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private static String scalar(JsonParser parser, JsonToken value) throws IOException {
+        if (value == null || value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (value.isStructStart()) {
+            parser.skipChildren();
+            return null;
+        }
+        return parser.getText();
+    }
+
+    private static <T> T skip(JsonParser parser) throws IOException {
+        parser.skipChildren();
+        return null;
+    }
+
+    private static Instant parseInstant(String text) {
+        try {
+            return Instant.parse(text);
+        } catch (DateTimeParseException ignore) {
+            return null;
+        }
+    }
+}
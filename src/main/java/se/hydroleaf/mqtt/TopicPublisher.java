@@ -1,28 +1,71 @@
 package se.hydroleaf.mqtt;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
 
+import java.util.Collection;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Publishes messages to STOMP topics when publishing is enabled.
+ *
+ * <p>With {@code mqtt.publishSkipUnsubscribed} (the default) destinations that
+ * have no subscriber in the simple broker are skipped before any conversion
+ * work is done. Keyed messages are recorded in the {@link LastValueCache}
+ * first, so new subscribers can be sent the current state.</p>
+ *
+ * <p>Every message carries its compositeId and, for envelopes, its sensor
+ * types in the headers that {@link IndexedSubscriptionRegistry} routes
+ * selector subscriptions by, and its kind in {@link #KIND_HEADER}. None of
+ * these are native headers, so clients never see them.</p>
  */
 @Service
 @Slf4j
 public class TopicPublisher {
 
+    /**
+     * Message kind ({@code telemetry}, {@code status}, ...), read by the
+     * outbound back-pressure to decide what may be conflated.
+     */
+    public static final String KIND_HEADER = "hydroleaf.kind";
+
+    private static final byte[] EMPTY = new byte[0];
+
     private final boolean publishEnabled;
+    private final boolean skipUnsubscribed;
     private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<SimpleBrokerMessageHandler> brokerHandler;
+    private final LastValueCache lastValueCache;
     private final Set<String> loggedDestinations = ConcurrentHashMap.newKeySet();
 
     public TopicPublisher(@Value("${mqtt.publishEnabled:true}") boolean publishEnabled,
-                          SimpMessagingTemplate messagingTemplate) {
+                          @Value("${mqtt.publishSkipUnsubscribed:true}") boolean skipUnsubscribed,
+                          SimpMessagingTemplate messagingTemplate,
+                          ObjectMapper objectMapper,
+                          ObjectProvider<SimpleBrokerMessageHandler> brokerHandler,
+                          LastValueCache lastValueCache) {
         this.publishEnabled = publishEnabled;
+        this.skipUnsubscribed = skipUnsubscribed;
         this.messagingTemplate = messagingTemplate;
+        this.objectMapper = objectMapper;
+        this.brokerHandler = brokerHandler;
+        this.lastValueCache = lastValueCache;
     }
 
     public void publish(String destination, String payload) {
@@ -30,10 +73,101 @@ public class TopicPublisher {
     }
 
     public void publish(String destination, Object payload, String compositeId, String kind) {
-        if (publishEnabled) {
+        if (!publishEnabled) {
+            return;
+        }
+        lastValueCache.put(destination, compositeId, kind, payload);
+        if (hasSubscribers(destination)) {
+            logDestinationOnce(destination);
+            messagingTemplate.convertAndSend(destination, payload, routingHeaders(null, compositeId, kind, null));
+        }
+    }
+
+    /**
+     * Serializes {@code payload} to JSON once and sends the same bytes to every
+     * destination, instead of letting the template convert it per destination.
+     * Nothing is serialized when no destination has a subscriber.
+     */
+    public void publishAll(Collection<String> destinations, Object payload, String compositeId, String kind) {
+        publishAll(destinations, payload, compositeId, kind, null);
+    }
+
+    /**
+     * Like {@link #publishAll(Collection, Object, String, String)}, for an
+     * envelope whose payload carries {@code sensorTypes}.
+     */
+    public void publishAll(Collection<String> destinations, Object payload, String compositeId, String kind,
+                           Set<String> sensorTypes) {
+        if (!publishEnabled) {
+            return;
+        }
+        byte[] body = null;
+        for (String destination : destinations) {
+            lastValueCache.put(destination, compositeId, kind, payload, sensorTypes);
+            if (!hasSubscribers(destination)) {
+                continue;
+            }
+            if (body == null) {
+                try {
+                    body = objectMapper.writeValueAsBytes(payload);
+                } catch (JsonProcessingException ex) {
+                    log.warn("Unable to serialize STOMP payload for compositeId={} kind={}: {}",
+                            compositeId, kind, ex.getMessage());
+                    return;
+                }
+            }
             logDestinationOnce(destination);
-            messagingTemplate.convertAndSend(destination, payload);
+            messagingTemplate.send(destination, jsonMessage(body, compositeId, kind, sensorTypes));
+        }
+    }
+
+    private static Message<byte[]> jsonMessage(byte[] body, String compositeId, String kind, Set<String> sensorTypes) {
+        return MessageBuilder.createMessage(body,
+                routingHeaders(MimeTypeUtils.APPLICATION_JSON, compositeId, kind, sensorTypes));
+    }
+
+    /**
+     * Headers built through an accessor are taken as they are by the template,
+     * so the routing keys stay internal instead of becoming native headers.
+     */
+    private static MessageHeaders routingHeaders(MimeType contentType, String compositeId, String kind,
+                                                 Set<String> sensorTypes) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        if (contentType != null) {
+            accessor.setContentType(contentType);
+        }
+        if (compositeId != null) {
+            accessor.setHeader(IndexedSubscriptionRegistry.COMPOSITE_ID_HEADER, compositeId);
+        }
+        if (kind != null) {
+            accessor.setHeader(KIND_HEADER, kind);
+        }
+        if (sensorTypes != null) {
+            accessor.setHeader(IndexedSubscriptionRegistry.SENSOR_TYPES_HEADER, sensorTypes);
+        }
+        accessor.setLeaveMutable(true);
+        return accessor.getMessageHeaders();
+    }
+
+    private SubscriptionRegistry subscriptionRegistry() {
+        SimpleBrokerMessageHandler broker = brokerHandler.getIfAvailable();
+        return broker != null ? broker.getSubscriptionRegistry() : null;
+    }
+
+    private boolean hasSubscribers(String destination) {
+        if (!skipUnsubscribed || destination == null) {
+            return true;
+        }
+        SubscriptionRegistry registry = subscriptionRegistry();
+        if (registry == null) {
+            return true;
+        }
+        if (registry instanceof IndexedSubscriptionRegistry indexed) {
+            return indexed.hasSubscriptions(destination);
         }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        return !registry.findSubscriptions(MessageBuilder.createMessage(EMPTY, accessor.getMessageHeaders())).isEmpty();
     }
 
     private void logDestinationOnce(String destination) {
@@ -1,7 +1,9 @@
 package se.hydroleaf.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import se.hydroleaf.model.Device;
 import se.hydroleaf.model.TopicName;
 import se.hydroleaf.repository.dto.SystemLayer;
@@ -14,6 +16,15 @@ public interface DeviceRepository extends JpaRepository<Device, String> {
     @Query("SELECT d FROM Device d WHERE d.system = :system AND d.rack = :telemetryRackId AND d.layer = :layer")
     List<Device> findBySystemAndTelemetryRackIdAndLayer(String system, String telemetryRackId, String layer);
 
+    @Query("""
+            SELECT d FROM Device d
+            WHERE d.system = :system
+              AND (:rack IS NULL OR d.rack = :rack)
+              AND (:layer IS NULL OR d.layer = :layer)
+            ORDER BY d.compositeId
+            """)
+    List<Device> findBySystemAndOptionalRackAndLayer(String system, String rack, String layer);
+
     @Query("SELECT d FROM Device d WHERE d.rack = :telemetryRackId")
     List<Device> findByTelemetryRackId(String telemetryRackId);
 
@@ -25,4 +36,8 @@ public interface DeviceRepository extends JpaRepository<Device, String> {
     List<SystemLayer> findDistinctSystemAndLayer();
 
     Optional<Device> findFirstByTopic(TopicName topic);
+
+    @Modifying
+    @Query("UPDATE Device d SET d.topic = :topic WHERE d.compositeId = :compositeId")
+    int updateTopic(@Param("compositeId") String compositeId, @Param("topic") TopicName topic);
 }
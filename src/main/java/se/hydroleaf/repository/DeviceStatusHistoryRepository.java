@@ -2,15 +2,45 @@ package se.hydroleaf.repository;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import se.hydroleaf.model.DeviceStatusHistory;
 
 @Repository
 public interface DeviceStatusHistoryRepository extends JpaRepository<DeviceStatusHistory, Long> {
 
-    List<DeviceStatusHistory> findByDevice_CompositeIdAndTimestampBetweenOrderByTimestampDesc(
-            String compositeId,
-            Instant from,
-            Instant to);
+    /**
+     * Status intervals of a device that overlap {@code [from, to]}, newest first.
+     */
+    @Query("""
+            SELECT h FROM DeviceStatusHistory h
+            WHERE h.device.compositeId = :compositeId
+              AND h.timestamp <= :to
+              AND COALESCE(h.endTime, h.timestamp) >= :from
+            ORDER BY h.timestamp DESC
+            """)
+    List<DeviceStatusHistory> findOverlapping(@Param("compositeId") String compositeId,
+                                              @Param("from") Instant from,
+                                              @Param("to") Instant to);
+
+    Optional<DeviceStatusHistory> findFirstByDevice_CompositeIdOrderByTimestampDescIdDesc(String compositeId);
+
+    /**
+     * Moves the end of the newest interval of a device forward to
+     * {@code endTime}; never backwards.
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE device_status_history
+            SET end_time = :endTime
+            WHERE composite_id = :compositeId
+              AND status_time = (SELECT MAX(h.status_time) FROM device_status_history h
+                                 WHERE h.composite_id = :compositeId)
+              AND (end_time IS NULL OR end_time < :endTime)
+            """, nativeQuery = true)
+    int endOpenInterval(@Param("compositeId") String compositeId, @Param("endTime") Instant endTime);
 }
@@ -0,0 +1,83 @@
+package se.hydroleaf.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Refuses to start when the history schema was migrated for a different
+ * TimescaleDB setting than the one in effect now.
+ *
+ * <p>{@code V23} only backfills {@code sensor_value_rollup} and {@code V24}
+ * only partitions {@code sensor_value_history} when TimescaleDB is off. Both
+ * decide with the {@code app.timescaledb.enabled} placeholder, but the
+ * extension may have been installed, or the property changed, after they ran.
+ * Reading rollups that were never backfilled would silently drop all history
+ * from before the migration, and a partitioned table cannot become a
+ * hypertable, so either mismatch fails the startup instead.</p>
+ */
+@Slf4j
+@Component
+public class HistoryStorageCheck {
+
+    private static final String PARTITIONED = """
+            SELECT COUNT(*) FROM pg_partitioned_table WHERE partrelid = to_regclass('sensor_value_history')
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PostgresSupport postgres;
+    private final TimescaleDbSupport timescale;
+    private final SensorValueRollupJdbcWriter rollupWriter;
+
+    public HistoryStorageCheck(JdbcTemplate jdbcTemplate,
+                               PostgresSupport postgres,
+                               TimescaleDbSupport timescale,
+                               SensorValueRollupJdbcWriter rollupWriter) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.postgres = postgres;
+        this.timescale = timescale;
+        this.rollupWriter = rollupWriter;
+    }
+
+    /** Runs before {@link SensorValueHistoryPartitions} touches the table. */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void verify() {
+        if (!postgres.isPostgres()) {
+            return;
+        }
+        Integer partitions = jdbcTemplate.queryForObject(PARTITIONED, Integer.class);
+        boolean partitioned = partitions != null && partitions > 0;
+        boolean rollupsUnfilled = rollupWriter.isMaintained()
+                && exists("sensor_value_history") && !exists("sensor_value_rollup");
+        String problem = inconsistency(timescale.isAvailable(), partitioned, rollupsUnfilled);
+        if (problem != null) {
+            throw new IllegalStateException(problem);
+        }
+        if (!timescale.isAvailable() && !partitioned) {
+            log.warn("sensor_value_history is not partitioned although TimescaleDB is off; "
+                    + "partition pre-creation and retention are skipped");
+        }
+    }
+
+    static String inconsistency(boolean timescale, boolean partitioned, boolean rollupsUnfilled) {
+        if (timescale && partitioned) {
+            return "sensor_value_history was partitioned by V24 for plain PostgreSQL, but TimescaleDB is now in use; "
+                    + "set app.timescaledb.enabled=false or migrate the table to a hypertable";
+        }
+        if (!timescale && rollupsUnfilled) {
+            return "sensor_value_rollup is empty while sensor_value_history has rows: V23 skipped the backfill "
+                    + "for TimescaleDB, which is now off; set app.timescaledb.enabled=true or backfill the rollups";
+        }
+        return null;
+    }
+
+    private boolean exists(String table) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM " + table + ")", Boolean.class));
+    }
+}
@@ -0,0 +1,37 @@
+package se.hydroleaf.repository;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
+import se.hydroleaf.model.LatestActuatorStatus;
+import se.hydroleaf.model.LatestActuatorStatusId;
+import se.hydroleaf.repository.dto.snapshot.LiveNowRow;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface LatestActuatorStatusRepository extends Repository<LatestActuatorStatus, LatestActuatorStatusId> {
+
+    Optional<LatestActuatorStatus> findByCompositeIdAndActuatorType(String compositeId, String actuatorType);
+
+    /**
+     * Latest actuator averages per system/layer; reads one row per actuator
+     * regardless of how much history has been recorded.
+     */
+    @Query(value = """
+            SELECT
+              d.system AS system,
+              d.layer AS layer,
+              l.actuator_type AS sensor_type,
+              'status' AS unit,
+              AVG(CASE WHEN l.state THEN 1.0 ELSE 0.0 END)::double precision AS avg_value,
+              COUNT(*)::bigint AS device_count,
+              MAX(l.status_time) AS record_time
+            FROM latest_actuator_status l
+            JOIN device d ON d.composite_id = l.composite_id
+            WHERE l.actuator_type IN (:types)
+            GROUP BY d.system, d.layer, l.actuator_type
+            """, nativeQuery = true)
+    List<LiveNowRow> fetchLatestActuatorAverages(@Param("types") Collection<String> types);
+}
@@ -0,0 +1,94 @@
+package se.hydroleaf.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * JDBC writer for {@code latest_actuator_status}.
+ *
+ * <p>{@link #upsert} reports whether the reading changed the actuator's state,
+ * which is what decides if it is appended to the {@code actuator_status}
+ * history. On PostgreSQL the comparison happens inside one
+ * {@code INSERT ... ON CONFLICT DO UPDATE}: {@code changed_time} only moves
+ * when the state differs, and the statement returns whether it now equals the
+ * reading's time. The row lock taken by the upsert orders concurrent reports
+ * for the same actuator. Other databases use a portable read-then-write
+ * sequence with the same semantics.</p>
+ *
+ * <p>A report that is not newer than the stored one (a duplicate or a late
+ * delivery) leaves the row untouched and is not a change.</p>
+ */
+@Repository
+public class LatestActuatorStatusUpsertRepository {
+
+    private static final String UPSERT = """
+            INSERT INTO latest_actuator_status AS l (composite_id, actuator_type, state, status_time, changed_time)
+            VALUES (?, ?, ?, ?, ?)
+            ON CONFLICT (composite_id, actuator_type) DO UPDATE
+              SET state = EXCLUDED.state,
+                  status_time = EXCLUDED.status_time,
+                  changed_time = CASE WHEN l.state = EXCLUDED.state THEN l.changed_time ELSE EXCLUDED.status_time END
+              WHERE l.status_time < EXCLUDED.status_time
+            RETURNING l.changed_time = l.status_time
+            """;
+
+    private static final String SELECT_CURRENT = """
+            SELECT state, status_time, changed_time FROM latest_actuator_status
+             WHERE composite_id = ? AND actuator_type = ?
+            """;
+
+    private static final String UPDATE = """
+            UPDATE latest_actuator_status
+               SET state = ?, status_time = ?, changed_time = ?
+             WHERE composite_id = ? AND actuator_type = ?
+            """;
+
+    private static final String INSERT = """
+            INSERT INTO latest_actuator_status (composite_id, actuator_type, state, status_time, changed_time)
+            VALUES (?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PostgresSupport postgresSupport;
+
+    public LatestActuatorStatusUpsertRepository(JdbcTemplate jdbcTemplate, PostgresSupport postgresSupport) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.postgresSupport = postgresSupport;
+    }
+
+    /**
+     * Stores the reading if it is the newest for the actuator.
+     *
+     * @return true when the actuator was unknown or the reading switched its state
+     */
+    public boolean upsert(String compositeId, String actuatorType, boolean state, Instant time) {
+        Timestamp ts = Timestamp.from(time);
+        if (postgresSupport.isPostgres()) {
+            Boolean changed = jdbcTemplate.query(UPSERT,
+                    rs -> rs.next() ? rs.getBoolean(1) : Boolean.FALSE,
+                    compositeId, actuatorType, state, ts, ts);
+            return Boolean.TRUE.equals(changed);
+        }
+        List<Current> current = jdbcTemplate.query(SELECT_CURRENT,
+                (rs, i) -> new Current(rs.getBoolean(1), rs.getTimestamp(2), rs.getTimestamp(3)),
+                compositeId, actuatorType);
+        if (current.isEmpty()) {
+            jdbcTemplate.update(INSERT, compositeId, actuatorType, state, ts, ts);
+            return true;
+        }
+        Current row = current.get(0);
+        if (!row.statusTime().before(ts)) {
+            return false;
+        }
+        boolean changed = row.state() != state;
+        jdbcTemplate.update(UPDATE, state, ts, changed ? ts : row.changedTime(), compositeId, actuatorType);
+        return changed;
+    }
+
+    private record Current(boolean state, Timestamp statusTime, Timestamp changedTime) {
+    }
+}
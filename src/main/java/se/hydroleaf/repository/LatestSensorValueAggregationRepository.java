@@ -4,6 +4,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.Repository;
 import org.springframework.data.repository.query.Param;
 import se.hydroleaf.model.LatestSensorValue;
+import se.hydroleaf.repository.dto.snapshot.LatestSensorValueRow;
 import se.hydroleaf.repository.dto.snapshot.LiveNowRow;
 
 import java.util.Collection;
@@ -11,10 +12,16 @@ import java.util.List;
 
 public interface LatestSensorValueAggregationRepository extends Repository<LatestSensorValue, Long> {
 
+    /**
+     * Averages per system, layer and sensor type. System and layer are grouped
+     * case-insensitively and returned lowercased, like the groups of
+     * {@code LiveSensorSnapshot}, so both report the same average for a layer
+     * whose devices spell it differently.
+     */
     @Query(value = """
             SELECT
-              d.system AS system,
-              d.layer AS layer,
+              LOWER(d.system) AS system,
+              LOWER(d.layer) AS layer,
               lsv.sensor_type AS sensor_type,
               MAX(lsv.unit) AS unit,
               AVG(lsv.sensor_value)::double precision AS avg_value,
@@ -23,7 +30,22 @@ public interface LatestSensorValueAggregationRepository extends Repository<Lates
             FROM latest_sensor_value lsv
             JOIN device d ON d.composite_id = lsv.composite_id
             WHERE lsv.sensor_type IN (:types)
-            GROUP BY d.system, d.layer, lsv.sensor_type
+            GROUP BY LOWER(d.system), LOWER(d.layer), lsv.sensor_type
             """, nativeQuery = true)
     List<LiveNowRow> fetchLatestSensorAverages(@Param("types") Collection<String> types);
+
+    @Query(value = """
+            SELECT
+              d.system AS system,
+              d.layer AS layer,
+              lsv.composite_id AS composite_id,
+              lsv.sensor_type AS sensor_type,
+              lsv.unit AS unit,
+              lsv.sensor_value AS sensor_value,
+              lsv.value_time AS value_time
+            FROM latest_sensor_value lsv
+            JOIN device d ON d.composite_id = lsv.composite_id
+            WHERE lsv.sensor_value IS NOT NULL
+            """, nativeQuery = true)
+    List<LatestSensorValueRow> fetchLatestSensorValues();
 }
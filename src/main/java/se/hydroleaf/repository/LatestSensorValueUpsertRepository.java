@@ -0,0 +1,110 @@
+package se.hydroleaf.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import se.hydroleaf.repository.dto.LatestSensorValueUpsert;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Batched JDBC writer for {@code latest_sensor_value}.
+ *
+ * <p>On PostgreSQL rows are written as multi-row
+ * {@code INSERT ... ON CONFLICT (composite_id, sensor_type) DO UPDATE}
+ * statements; an existing row is only replaced by a reading with the same or a
+ * newer {@code value_time}. Other databases use a portable update-then-insert
+ * sequence with the same semantics.</p>
+ */
+@Repository
+public class LatestSensorValueUpsertRepository {
+
+    private static final int ROWS_PER_STATEMENT = 500;
+
+    private static final String UPSERT_PREFIX = """
+            INSERT INTO latest_sensor_value (composite_id, sensor_type, sensor_value, unit, value_time)
+            VALUES\s""";
+
+    private static final String UPSERT_SUFFIX = """
+             ON CONFLICT (composite_id, sensor_type) DO UPDATE
+              SET sensor_value = EXCLUDED.sensor_value,
+                  unit = EXCLUDED.unit,
+                  value_time = EXCLUDED.value_time
+              WHERE latest_sensor_value.value_time <= EXCLUDED.value_time
+            """;
+
+    private static final String UPDATE_IF_NEWER = """
+            UPDATE latest_sensor_value
+               SET sensor_value = ?, unit = ?, value_time = ?
+             WHERE composite_id = ? AND sensor_type = ? AND value_time <= ?
+            """;
+
+    private static final String INSERT_IF_ABSENT = """
+            INSERT INTO latest_sensor_value (composite_id, sensor_type, sensor_value, unit, value_time)
+            SELECT ?, ?, ?, ?, ?
+            WHERE NOT EXISTS (
+              SELECT 1 FROM latest_sensor_value WHERE composite_id = ? AND sensor_type = ?
+            )
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PostgresSupport postgresSupport;
+
+    public LatestSensorValueUpsertRepository(JdbcTemplate jdbcTemplate, PostgresSupport postgresSupport) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.postgresSupport = postgresSupport;
+    }
+
+    public void upsertAll(List<LatestSensorValueUpsert> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        if (!postgresSupport.isPostgres()) {
+            for (LatestSensorValueUpsert row : rows) {
+                upsertPortable(row);
+            }
+            return;
+        }
+        for (int from = 0; from < rows.size(); from += ROWS_PER_STATEMENT) {
+            List<LatestSensorValueUpsert> chunk = rows.subList(from, Math.min(rows.size(), from + ROWS_PER_STATEMENT));
+            StringBuilder sql = new StringBuilder(UPSERT_PREFIX.length() + chunk.size() * 18 + UPSERT_SUFFIX.length());
+            sql.append(UPSERT_PREFIX);
+            List<Object> args = new ArrayList<>(chunk.size() * 5);
+            for (int i = 0; i < chunk.size(); i++) {
+                LatestSensorValueUpsert row = chunk.get(i);
+                sql.append(i == 0 ? "(?,?,?,?,?)" : ",(?,?,?,?,?)");
+                args.add(row.compositeId());
+                args.add(row.sensorType());
+                args.add(row.value());
+                args.add(row.unit());
+                args.add(Timestamp.from(row.valueTime()));
+            }
+            sql.append(UPSERT_SUFFIX);
+            jdbcTemplate.update(sql.toString(), args.toArray());
+        }
+    }
+
+    /**
+     * Writes a single row; used as fallback when a batch fails so one bad row
+     * (e.g. a deleted device) does not block the rest.
+     */
+    public void upsert(LatestSensorValueUpsert row) {
+        if (postgresSupport.isPostgres()) {
+            upsertAll(List.of(row));
+        } else {
+            upsertPortable(row);
+        }
+    }
+
+    private void upsertPortable(LatestSensorValueUpsert row) {
+        Timestamp ts = Timestamp.from(row.valueTime());
+        int updated = jdbcTemplate.update(UPDATE_IF_NEWER,
+                row.value(), row.unit(), ts, row.compositeId(), row.sensorType(), ts);
+        if (updated == 0) {
+            jdbcTemplate.update(INSERT_IF_ABSENT,
+                    row.compositeId(), row.sensorType(), row.value(), row.unit(), ts,
+                    row.compositeId(), row.sensorType());
+        }
+    }
+}
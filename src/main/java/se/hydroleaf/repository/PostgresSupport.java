@@ -0,0 +1,39 @@
+package se.hydroleaf.repository;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * Detects whether the application runs against PostgreSQL so JDBC writers can
+ * use PostgreSQL-only statements ({@code ON CONFLICT}) and fall back to portable
+ * SQL on the in-memory test database.
+ */
+@Component
+public class PostgresSupport implements InitializingBean {
+
+    private final JdbcTemplate jdbcTemplate;
+    private boolean postgres;
+
+    public PostgresSupport(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        try {
+            String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                    connection.getMetaData().getDatabaseProductName());
+            postgres = product != null && product.toLowerCase(Locale.ROOT).contains("postgres");
+        } catch (Exception ex) {
+            postgres = false;
+        }
+    }
+
+    public boolean isPostgres() {
+        return postgres;
+    }
+}
@@ -5,26 +5,52 @@ import org.springframework.data.repository.Repository;
 import org.springframework.data.repository.query.Param;
 import se.hydroleaf.model.SensorValueHistory;
 import se.hydroleaf.model.SensorValueHistoryId;
+import se.hydroleaf.repository.dto.snapshot.DeviceSensorAggregationRow;
 import se.hydroleaf.repository.dto.snapshot.SensorAggregationRow;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 public interface SensorAggregationRepository extends Repository<SensorValueHistory, SensorValueHistoryId> {
 
+    /**
+     * The stored spellings of {@code lowerSensorTypes} (lowercase) with history for the device in the
+     * window, so types requested in a different case still resolve when the device has no latest value.
+     */
+    @Query(value = """
+            SELECT DISTINCT svh.sensor_type
+            FROM sensor_value_history svh
+            WHERE svh.composite_id = :compositeId
+              AND svh.value_time >= :fromTs
+              AND svh.value_time <  :toTs
+              AND LOWER(svh.sensor_type) IN (:sensorTypes)
+            """, nativeQuery = true)
+    List<String> findSensorTypesIgnoringCase(
+            @Param("compositeId") String compositeId,
+            @Param("fromTs") Instant from,
+            @Param("toTs") Instant to,
+            @Param("sensorTypes") Collection<String> lowerSensorTypes
+    );
+
     @Query(value = """
             SELECT
               svh.sensor_type AS sensor_type,
               lsv.unit        AS unit,
               time_bucket(:bucketSec * INTERVAL '1 second', svh.value_time) AS bucket_time,
-              AVG(svh.sensor_value) AS avg_value
+              SUM(COALESCE(svh.sum_value, svh.sensor_value)) / SUM(COALESCE(svh.sample_count, 1)) AS avg_value,
+              MIN(COALESCE(svh.min_value, svh.sensor_value)) AS min_value,
+              MAX(COALESCE(svh.max_value, svh.sensor_value)) AS max_value,
+              (ARRAY_AGG(COALESCE(svh.last_value, svh.sensor_value) ORDER BY svh.value_time DESC))[1] AS last_value,
+              SUM(COALESCE(svh.sample_count, 1))::bigint AS sample_count,
+              SUM(COALESCE(svh.sum_sq_value, svh.sensor_value * svh.sensor_value)) AS sum_sq_value
             FROM sensor_value_history svh
             LEFT JOIN latest_sensor_value lsv ON lsv.composite_id = svh.composite_id AND lsv.sensor_type = svh.sensor_type
             WHERE svh.composite_id = :compositeId
               AND svh.value_time >= :fromTs
               AND svh.value_time <  :toTs
               AND svh.sensor_value IS NOT NULL
-              AND (:sensorType IS NULL OR LOWER(svh.sensor_type) = LOWER(:sensorType))
+              AND (:sensorType IS NULL OR svh.sensor_type = :sensorType)
             GROUP BY bucket_time, svh.sensor_type, lsv.unit
             ORDER BY bucket_time
             """, nativeQuery = true)
@@ -36,19 +62,58 @@ public interface SensorAggregationRepository extends Repository<SensorValueHisto
             @Param("sensorType") String sensorType
     );
 
+    /**
+     * Same as {@link #aggregateTimescale} for several sensor types in one scan.
+     * Types must already be canonical (exact case) so the
+     * {@code (composite_id, sensor_type, value_time)} index can be used.
+     */
+    @Query(value = """
+            SELECT
+              svh.sensor_type AS sensor_type,
+              lsv.unit        AS unit,
+              time_bucket(:bucketSec * INTERVAL '1 second', svh.value_time) AS bucket_time,
+              SUM(COALESCE(svh.sum_value, svh.sensor_value)) / SUM(COALESCE(svh.sample_count, 1)) AS avg_value,
+              MIN(COALESCE(svh.min_value, svh.sensor_value)) AS min_value,
+              MAX(COALESCE(svh.max_value, svh.sensor_value)) AS max_value,
+              (ARRAY_AGG(COALESCE(svh.last_value, svh.sensor_value) ORDER BY svh.value_time DESC))[1] AS last_value,
+              SUM(COALESCE(svh.sample_count, 1))::bigint AS sample_count,
+              SUM(COALESCE(svh.sum_sq_value, svh.sensor_value * svh.sensor_value)) AS sum_sq_value
+            FROM sensor_value_history svh
+            LEFT JOIN latest_sensor_value lsv ON lsv.composite_id = svh.composite_id AND lsv.sensor_type = svh.sensor_type
+            WHERE svh.composite_id = :compositeId
+              AND svh.value_time >= :fromTs
+              AND svh.value_time <  :toTs
+              AND svh.sensor_value IS NOT NULL
+              AND svh.sensor_type IN (:sensorTypes)
+            GROUP BY bucket_time, svh.sensor_type, lsv.unit
+            ORDER BY svh.sensor_type, bucket_time
+            """, nativeQuery = true)
+    List<SensorAggregationRow> aggregateTimescaleForTypes(
+            @Param("compositeId") String compositeId,
+            @Param("fromTs") Instant from,
+            @Param("toTs") Instant to,
+            @Param("bucketSec") long bucketSeconds,
+            @Param("sensorTypes") Collection<String> sensorTypes
+    );
+
     @Query(value = """
             SELECT
               svh.sensor_type AS sensor_type,
               lsv.unit        AS unit,
               date_trunc('second', to_timestamp(floor(EXTRACT(EPOCH FROM svh.value_time) / :bucketSec) * :bucketSec)) AS bucket_time,
-              AVG(svh.sensor_value) AS avg_value
+              SUM(COALESCE(svh.sum_value, svh.sensor_value)) / SUM(COALESCE(svh.sample_count, 1)) AS avg_value,
+              MIN(COALESCE(svh.min_value, svh.sensor_value)) AS min_value,
+              MAX(COALESCE(svh.max_value, svh.sensor_value)) AS max_value,
+              (ARRAY_AGG(COALESCE(svh.last_value, svh.sensor_value) ORDER BY svh.value_time DESC))[1] AS last_value,
+              SUM(COALESCE(svh.sample_count, 1))::bigint AS sample_count,
+              SUM(COALESCE(svh.sum_sq_value, svh.sensor_value * svh.sensor_value)) AS sum_sq_value
             FROM sensor_value_history svh
             LEFT JOIN latest_sensor_value lsv ON lsv.composite_id = svh.composite_id AND lsv.sensor_type = svh.sensor_type
             WHERE svh.composite_id = :compositeId
               AND svh.value_time >= :fromTs
               AND svh.value_time <  :toTs
               AND svh.sensor_value IS NOT NULL
-              AND (:sensorType IS NULL OR LOWER(svh.sensor_type) = LOWER(:sensorType))
+              AND (:sensorType IS NULL OR svh.sensor_type = :sensorType)
             GROUP BY bucket_time, svh.sensor_type, lsv.unit
             ORDER BY bucket_time
             """, nativeQuery = true)
@@ -59,4 +124,304 @@ public interface SensorAggregationRepository extends Repository<SensorValueHisto
             @Param("bucketSec") long bucketSeconds,
             @Param("sensorType") String sensorType
     );
+
+    /**
+     * Same as {@link #aggregateDateTrunc} for several sensor types in one scan.
+     */
+    @Query(value = """
+            SELECT
+              svh.sensor_type AS sensor_type,
+              lsv.unit        AS unit,
+              date_trunc('second', to_timestamp(floor(EXTRACT(EPOCH FROM svh.value_time) / :bucketSec) * :bucketSec)) AS bucket_time,
+              SUM(COALESCE(svh.sum_value, svh.sensor_value)) / SUM(COALESCE(svh.sample_count, 1)) AS avg_value,
+              MIN(COALESCE(svh.min_value, svh.sensor_value)) AS min_value,
+              MAX(COALESCE(svh.max_value, svh.sensor_value)) AS max_value,
+              (ARRAY_AGG(COALESCE(svh.last_value, svh.sensor_value) ORDER BY svh.value_time DESC))[1] AS last_value,
+              SUM(COALESCE(svh.sample_count, 1))::bigint AS sample_count,
+              SUM(COALESCE(svh.sum_sq_value, svh.sensor_value * svh.sensor_value)) AS sum_sq_value
+            FROM sensor_value_history svh
+            LEFT JOIN latest_sensor_value lsv ON lsv.composite_id = svh.composite_id AND lsv.sensor_type = svh.sensor_type
+            WHERE svh.composite_id = :compositeId
+              AND svh.value_time >= :fromTs
+              AND svh.value_time <  :toTs
+              AND svh.sensor_value IS NOT NULL
+              AND svh.sensor_type IN (:sensorTypes)
+            GROUP BY bucket_time, svh.sensor_type, lsv.unit
+            ORDER BY svh.sensor_type, bucket_time
+            """, nativeQuery = true)
+    List<SensorAggregationRow> aggregateDateTruncForTypes(
+            @Param("compositeId") String compositeId,
+            @Param("fromTs") Instant from,
+            @Param("toTs") Instant to,
+            @Param("bucketSec") long bucketSeconds,
+            @Param("sensorTypes") Collection<String> sensorTypes
+    );
+
+    /**
+     * Reads a {@link se.hydroleaf.model.SensorRollupTier} from {@code sensor_value_rollup} and regroups it
+     * into {@code bucketSec} buckets. {@code fromTs}/{@code toTs} must be aligned to the tier.
+     */
+    @Query(value = """
+            SELECT
+              r.sensor_type AS sensor_type,
+              lsv.unit      AS unit,
+              date_trunc('second', to_timestamp(floor(EXTRACT(EPOCH FROM r.bucket_time) / :bucketSec) * :bucketSec)) AS bucket_time,
+              SUM(r.sum_value) / SUM(r.sample_count) AS avg_value,
+              MIN(r.min_value) AS min_value,
+              MAX(r.max_value) AS max_value,
+              (ARRAY_AGG(r.last_value ORDER BY r.last_time DESC NULLS LAST))[1] AS last_value,
+              SUM(r.sample_count)::bigint AS sample_count,
+              SUM(r.sum_sq_value) AS sum_sq_value
+            FROM sensor_value_rollup r
+            LEFT JOIN latest_sensor_value lsv ON lsv.composite_id = r.composite_id AND lsv.sensor_type = r.sensor_type
+            WHERE r.composite_id = :compositeId
+              AND r.bucket_seconds = :tierSec
+              AND r.bucket_time >= :fromTs
+              AND r.bucket_time <  :toTs
+              AND (:sensorType IS NULL OR r.sensor_type = :sensorType)
+            GROUP BY 3, r.sensor_type, lsv.unit
+            ORDER BY bucket_time
+            """, nativeQuery = true)
+    List<SensorAggregationRow> aggregateRollup(
+            @Param("compositeId") String compositeId,
+            @Param("fromTs") Instant from,
+            @Param("toTs") Instant to,
+            @Param("bucketSec") long bucketSeconds,
+            @Param("tierSec") int tierSeconds,
+            @Param("sensorType") String sensorType
+    );
+
+    /**
+     * Same as {@link #aggregateRollup} for several sensor types in one scan.
+     */
+    @Query(value = """
+            SELECT
+              r.sensor_type AS sensor_type,
+              lsv.unit      AS unit,
+              date_trunc('second', to_timestamp(floor(EXTRACT(EPOCH FROM r.bucket_time) / :bucketSec) * :bucketSec)) AS bucket_time,
+              SUM(r.sum_value) / SUM(r.sample_count) AS avg_value,
+              MIN(r.min_value) AS min_value,
+              MAX(r.max_value) AS max_value,
+              (ARRAY_AGG(r.last_value ORDER BY r.last_time DESC NULLS LAST))[1] AS last_value,
+              SUM(r.sample_count)::bigint AS sample_count,
+              SUM(r.sum_sq_value) AS sum_sq_value
+            FROM sensor_value_rollup r
+            LEFT JOIN latest_sensor_value lsv ON lsv.composite_id = r.composite_id AND lsv.sensor_type = r.sensor_type
+            WHERE r.composite_id = :compositeId
+              AND r.bucket_seconds = :tierSec
+              AND r.bucket_time >= :fromTs
+              AND r.bucket_time <  :toTs
+              AND r.sensor_type IN (:sensorTypes)
+            GROUP BY 3, r.sensor_type, lsv.unit
+            ORDER BY r.sensor_type, bucket_time
+            """, nativeQuery = true)
+    List<SensorAggregationRow> aggregateRollupForTypes(
+            @Param("compositeId") String compositeId,
+            @Param("fromTs") Instant from,
+            @Param("toTs") Instant to,
+            @Param("bucketSec") long bucketSeconds,
+            @Param("tierSec") int tierSeconds,
+            @Param("sensorTypes") Collection<String> sensorTypes
+    );
+
+    /**
+     * Same as {@link #aggregateRollup}, reading the TimescaleDB continuous aggregates through the
+     * {@code sensor_value_rollup_continuous} view created by {@link TimescaleContinuousAggregates}.
+     */
+    @Query(value = """
+            SELECT
+              r.sensor_type AS sensor_type,
+              lsv.unit      AS unit,
+              date_trunc('second', to_timestamp(floor(EXTRACT(EPOCH FROM r.bucket_time) / :bucketSec) * :bucketSec)) AS bucket_time,
+              SUM(r.sum_value) / SUM(r.sample_count) AS avg_value,
+              MIN(r.min_value) AS min_value,
+              MAX(r.max_value) AS max_value,
+              (ARRAY_AGG(r.last_value ORDER BY r.last_time DESC NULLS LAST))[1] AS last_value,
+              SUM(r.sample_count)::bigint AS sample_count,
+              SUM(r.sum_sq_value) AS sum_sq_value
+            FROM sensor_value_rollup_continuous r
+            LEFT JOIN latest_sensor_value lsv ON lsv.composite_id = r.composite_id AND lsv.sensor_type = r.sensor_type
+            WHERE r.composite_id = :compositeId
+              AND r.bucket_seconds = :tierSec
+              AND r.bucket_time >= :fromTs
+              AND r.bucket_time <  :toTs
+              AND (:sensorType IS NULL OR r.sensor_type = :sensorType)
+            GROUP BY 3, r.sensor_type, lsv.unit
+            ORDER BY bucket_time
+            """, nativeQuery = true)
+    List<SensorAggregationRow> aggregateContinuous(
+            @Param("compositeId") String compositeId,
+            @Param("fromTs") Instant from,
+            @Param("toTs") Instant to,
+            @Param("bucketSec") long bucketSeconds,
+            @Param("tierSec") int tierSeconds,
+            @Param("sensorType") String sensorType
+    );
+
+    /**
+     * Same as {@link #aggregateContinuous} for several sensor types in one scan.
+     */
+    @Query(value = """
+            SELECT
+              r.sensor_type AS sensor_type,
+              lsv.unit      AS unit,
+              date_trunc('second', to_timestamp(floor(EXTRACT(EPOCH FROM r.bucket_time) / :bucketSec) * :bucketSec)) AS bucket_time,
+              SUM(r.sum_value) / SUM(r.sample_count) AS avg_value,
+              MIN(r.min_value) AS min_value,
+              MAX(r.max_value) AS max_value,
+              (ARRAY_AGG(r.last_value ORDER BY r.last_time DESC NULLS LAST))[1] AS last_value,
+              SUM(r.sample_count)::bigint AS sample_count,
+              SUM(r.sum_sq_value) AS sum_sq_value
+            FROM sensor_value_rollup_continuous r
+            LEFT JOIN latest_sensor_value lsv ON lsv.composite_id = r.composite_id AND lsv.sensor_type = r.sensor_type
+            WHERE r.composite_id = :compositeId
+              AND r.bucket_seconds = :tierSec
+              AND r.bucket_time >= :fromTs
+              AND r.bucket_time <  :toTs
+              AND r.sensor_type IN (:sensorTypes)
+            GROUP BY 3, r.sensor_type, lsv.unit
+            ORDER BY r.sensor_type, bucket_time
+            """, nativeQuery = true)
+    List<SensorAggregationRow> aggregateContinuousForTypes(
+            @Param("compositeId") String compositeId,
+            @Param("fromTs") Instant from,
+            @Param("toTs") Instant to,
+            @Param("bucketSec") long bucketSeconds,
+            @Param("tierSec") int tierSeconds,
+            @Param("sensorTypes") Collection<String> sensorTypes
+    );
+
+    /**
+     * Per-device variant of {@link #aggregateTimescaleForTypes} covering several devices in one scan.
+     */
+    @Query(value = """
+            SELECT
+              svh.composite_id AS composite_id,
+              svh.sensor_type AS sensor_type,
+              lsv.unit        AS unit,
+              time_bucket(:bucketSec * INTERVAL '1 second', svh.value_time) AS bucket_time,
+              SUM(COALESCE(svh.sum_value, svh.sensor_value)) / SUM(COALESCE(svh.sample_count, 1)) AS avg_value,
+              MIN(COALESCE(svh.min_value, svh.sensor_value)) AS min_value,
+              MAX(COALESCE(svh.max_value, svh.sensor_value)) AS max_value,
+              (ARRAY_AGG(COALESCE(svh.last_value, svh.sensor_value) ORDER BY svh.value_time DESC))[1] AS last_value,
+              SUM(COALESCE(svh.sample_count, 1))::bigint AS sample_count,
+              SUM(COALESCE(svh.sum_sq_value, svh.sensor_value * svh.sensor_value)) AS sum_sq_value
+            FROM sensor_value_history svh
+            LEFT JOIN latest_sensor_value lsv ON lsv.composite_id = svh.composite_id AND lsv.sensor_type = svh.sensor_type
+            WHERE svh.composite_id IN (:compositeIds)
+              AND svh.value_time >= :fromTs
+              AND svh.value_time <  :toTs
+              AND svh.sensor_value IS NOT NULL
+              AND svh.sensor_type IN (:sensorTypes)
+            GROUP BY svh.composite_id, svh.sensor_type, lsv.unit, bucket_time
+            ORDER BY svh.composite_id, svh.sensor_type, bucket_time
+            """, nativeQuery = true)
+    List<DeviceSensorAggregationRow> aggregateTimescaleForDevices(
+            @Param("compositeIds") Collection<String> compositeIds,
+            @Param("fromTs") Instant from,
+            @Param("toTs") Instant to,
+            @Param("bucketSec") long bucketSeconds,
+            @Param("sensorTypes") Collection<String> sensorTypes
+    );
+
+    /**
+     * Per-device variant of {@link #aggregateDateTruncForTypes} covering several devices in one scan.
+     */
+    @Query(value = """
+            SELECT
+              svh.composite_id AS composite_id,
+              svh.sensor_type AS sensor_type,
+              lsv.unit        AS unit,
+              date_trunc('second', to_timestamp(floor(EXTRACT(EPOCH FROM svh.value_time) / :bucketSec) * :bucketSec)) AS bucket_time,
+              SUM(COALESCE(svh.sum_value, svh.sensor_value)) / SUM(COALESCE(svh.sample_count, 1)) AS avg_value,
+              MIN(COALESCE(svh.min_value, svh.sensor_value)) AS min_value,
+              MAX(COALESCE(svh.max_value, svh.sensor_value)) AS max_value,
+              (ARRAY_AGG(COALESCE(svh.last_value, svh.sensor_value) ORDER BY svh.value_time DESC))[1] AS last_value,
+              SUM(COALESCE(svh.sample_count, 1))::bigint AS sample_count,
+              SUM(COALESCE(svh.sum_sq_value, svh.sensor_value * svh.sensor_value)) AS sum_sq_value
+            FROM sensor_value_history svh
+            LEFT JOIN latest_sensor_value lsv ON lsv.composite_id = svh.composite_id AND lsv.sensor_type = svh.sensor_type
+            WHERE svh.composite_id IN (:compositeIds)
+              AND svh.value_time >= :fromTs
+              AND svh.value_time <  :toTs
+              AND svh.sensor_value IS NOT NULL
+              AND svh.sensor_type IN (:sensorTypes)
+            GROUP BY svh.composite_id, svh.sensor_type, lsv.unit, bucket_time
+            ORDER BY svh.composite_id, svh.sensor_type, bucket_time
+            """, nativeQuery = true)
+    List<DeviceSensorAggregationRow> aggregateDateTruncForDevices(
+            @Param("compositeIds") Collection<String> compositeIds,
+            @Param("fromTs") Instant from,
+            @Param("toTs") Instant to,
+            @Param("bucketSec") long bucketSeconds,
+            @Param("sensorTypes") Collection<String> sensorTypes
+    );
+
+    /**
+     * Per-device variant of {@link #aggregateRollupForTypes} covering several devices in one scan.
+     */
+    @Query(value = """
+            SELECT
+              r.composite_id AS composite_id,
+              r.sensor_type AS sensor_type,
+              lsv.unit      AS unit,
+              date_trunc('second', to_timestamp(floor(EXTRACT(EPOCH FROM r.bucket_time) / :bucketSec) * :bucketSec)) AS bucket_time,
+              SUM(r.sum_value) / SUM(r.sample_count) AS avg_value,
+              MIN(r.min_value) AS min_value,
+              MAX(r.max_value) AS max_value,
+              (ARRAY_AGG(r.last_value ORDER BY r.last_time DESC NULLS LAST))[1] AS last_value,
+              SUM(r.sample_count)::bigint AS sample_count,
+              SUM(r.sum_sq_value) AS sum_sq_value
+            FROM sensor_value_rollup r
+            LEFT JOIN latest_sensor_value lsv ON lsv.composite_id = r.composite_id AND lsv.sensor_type = r.sensor_type
+            WHERE r.composite_id IN (:compositeIds)
+              AND r.bucket_seconds = :tierSec
+              AND r.bucket_time >= :fromTs
+              AND r.bucket_time <  :toTs
+              AND r.sensor_type IN (:sensorTypes)
+            GROUP BY r.composite_id, r.sensor_type, lsv.unit, 4
+            ORDER BY r.composite_id, r.sensor_type, bucket_time
+            """, nativeQuery = true)
+    List<DeviceSensorAggregationRow> aggregateRollupForDevices(
+            @Param("compositeIds") Collection<String> compositeIds,
+            @Param("fromTs") Instant from,
+            @Param("toTs") Instant to,
+            @Param("bucketSec") long bucketSeconds,
+            @Param("tierSec") int tierSeconds,
+            @Param("sensorTypes") Collection<String> sensorTypes
+    );
+
+    /**
+     * Per-device variant of {@link #aggregateContinuousForTypes} covering several devices in one scan.
+     */
+    @Query(value = """
+            SELECT
+              r.composite_id AS composite_id,
+              r.sensor_type AS sensor_type,
+              lsv.unit      AS unit,
+              date_trunc('second', to_timestamp(floor(EXTRACT(EPOCH FROM r.bucket_time) / :bucketSec) * :bucketSec)) AS bucket_time,
+              SUM(r.sum_value) / SUM(r.sample_count) AS avg_value,
+              MIN(r.min_value) AS min_value,
+              MAX(r.max_value) AS max_value,
+              (ARRAY_AGG(r.last_value ORDER BY r.last_time DESC NULLS LAST))[1] AS last_value,
+              SUM(r.sample_count)::bigint AS sample_count,
+              SUM(r.sum_sq_value) AS sum_sq_value
+            FROM sensor_value_rollup_continuous r
+            LEFT JOIN latest_sensor_value lsv ON lsv.composite_id = r.composite_id AND lsv.sensor_type = r.sensor_type
+            WHERE r.composite_id IN (:compositeIds)
+              AND r.bucket_seconds = :tierSec
+              AND r.bucket_time >= :fromTs
+              AND r.bucket_time <  :toTs
+              AND r.sensor_type IN (:sensorTypes)
+            GROUP BY r.composite_id, r.sensor_type, lsv.unit, 4
+            ORDER BY r.composite_id, r.sensor_type, bucket_time
+            """, nativeQuery = true)
+    List<DeviceSensorAggregationRow> aggregateContinuousForDevices(
+            @Param("compositeIds") Collection<String> compositeIds,
+            @Param("fromTs") Instant from,
+            @Param("toTs") Instant to,
+            @Param("bucketSec") long bucketSeconds,
+            @Param("tierSec") int tierSeconds,
+            @Param("sensorTypes") Collection<String> sensorTypes
+    );
 }
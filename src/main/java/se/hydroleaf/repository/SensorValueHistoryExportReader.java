@@ -0,0 +1,99 @@
+package se.hydroleaf.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.hydroleaf.repository.dto.history.HistoryExportRow;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streams raw {@code sensor_value_history} rows for exports.
+ *
+ * <p>Rows are read through a forward-only, read-only cursor with a fixed fetch
+ * size and passed to the sink one at a time without entity mapping, so memory
+ * stays flat however long the range is. PostgreSQL only honours the fetch size
+ * with auto-commit off, hence the read-only transaction around the query.</p>
+ */
+@Repository
+public class SensorValueHistoryExportReader {
+
+    private static final String SELECT = """
+            SELECT value_time, composite_id, sensor_type, sensor_value,
+                   min_value, max_value, last_value, sample_count
+              FROM sensor_value_history
+             WHERE composite_id = ?
+               AND value_time >= ?
+               AND value_time <  ?
+               AND sensor_value IS NOT NULL
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnly;
+
+    public SensorValueHistoryExportReader(DataSource dataSource,
+                                          PlatformTransactionManager transactionManager,
+                                          @Value("${telemetry.export.fetch-size:5000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+    }
+
+    /**
+     * Streams rows of one device in {@code [from, to)} ordered by time, optionally
+     * limited to the given exact-case sensor types.
+     */
+    public void stream(String compositeId,
+                       Instant from,
+                       Instant to,
+                       Collection<String> sensorTypes,
+                       Consumer<HistoryExportRow> sink) {
+        StringBuilder sql = new StringBuilder(SELECT);
+        List<Object> args = new ArrayList<>();
+        args.add(compositeId);
+        args.add(OffsetDateTime.ofInstant(from, ZoneOffset.UTC));
+        args.add(OffsetDateTime.ofInstant(to, ZoneOffset.UTC));
+        if (sensorTypes != null && !sensorTypes.isEmpty()) {
+            sql.append("   AND sensor_type IN (");
+            for (String sensorType : sensorTypes) {
+                sql.append(args.size() == 3 ? "?" : ",?");
+                args.add(sensorType);
+            }
+            sql.append(")\n");
+        }
+        sql.append(" ORDER BY value_time, sensor_type");
+
+        HistoryExportRow row = new HistoryExportRow();
+        RowCallbackHandler handler = rs -> {
+            row.setValueTime(rs.getObject(1, OffsetDateTime.class));
+            row.setCompositeId(rs.getString(2));
+            row.setSensorType(rs.getString(3));
+            row.setValue(rs.getDouble(4));
+            row.setMin(nullableDouble(rs, 5));
+            row.setMax(nullableDouble(rs, 6));
+            row.setLast(nullableDouble(rs, 7));
+            long count = rs.getLong(8);
+            row.setSampleCount(rs.wasNull() ? -1 : count);
+            sink.accept(row);
+        };
+        readOnly.executeWithoutResult(status -> jdbcTemplate.query(sql.toString(), handler, args.toArray()));
+    }
+
+    private static double nullableDouble(ResultSet rs, int column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? Double.NaN : value;
+    }
+}
@@ -0,0 +1,350 @@
+package se.hydroleaf.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.hydroleaf.config.HistoryPartitionProperties;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps {@code sensor_value_history} partitioned and bounded.
+ *
+ * <p>On plain PostgreSQL the table is range-partitioned by {@code value_time}
+ * (see {@code V24__partition_sensor_value_history.sql}). Every run pre-creates
+ * the next {@code precreate} partitions and, when a retention is configured,
+ * drops partitions whose whole range has expired, optionally after streaming
+ * them to a gzip-compressed CSV file. Dropping a partition is a metadata
+ * operation, unlike deleting rows, and leaves nothing for vacuum.</p>
+ *
+ * <p>On TimescaleDB the table is converted to a hypertable once at startup and
+ * given compression and retention policies; TimescaleDB runs those jobs itself.
+ * This runs before the continuous aggregates are created, which need the
+ * hypertable.</p>
+ */
+@Slf4j
+@Component
+public class SensorValueHistoryPartitions {
+
+    static final String TABLE = "sensor_value_history";
+    static final String DEFAULT_PARTITION = TABLE + "_default";
+
+    private static final DateTimeFormatter NAME_DATE = DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+
+    private static final String PARTITIONED = """
+            SELECT COUNT(*) FROM pg_partitioned_table WHERE partrelid = to_regclass('sensor_value_history')
+            """;
+
+    // MINVALUE / MAXVALUE bounds and the default partition leave the matching column NULL
+    private static final String PARTITIONS = """
+            SELECT c.relname,
+                   b.bounds[1]::timestamptz AS range_start,
+                   b.bounds[2]::timestamptz AS range_end
+              FROM pg_inherits i
+              JOIN pg_class c ON c.oid = i.inhrelid
+              LEFT JOIN LATERAL regexp_match(pg_get_expr(c.relpartbound, c.oid),
+                   'FROM \\((?:''([^'']*)''|MINVALUE)\\) TO \\((?:''([^'']*)''|MAXVALUE)\\)') AS b(bounds) ON true
+             WHERE i.inhparent = 'sensor_value_history'::regclass
+            """;
+
+    private static final String HYPERTABLE = """
+            SELECT COUNT(*) FROM timescaledb_information.hypertables WHERE hypertable_name = 'sensor_value_history'
+            """;
+
+    private static final String COMPRESSION_ENABLED = """
+            SELECT compression_enabled FROM timescaledb_information.hypertables
+             WHERE hypertable_name = 'sensor_value_history'
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streaming;
+    private final TransactionTemplate transaction;
+    private final TransactionTemplate readOnly;
+    private final TimescaleDbSupport timescale;
+    private final PostgresSupport postgres;
+    private final HistoryPartitionProperties properties;
+    private volatile boolean hypertableReady;
+
+    public SensorValueHistoryPartitions(JdbcTemplate jdbcTemplate,
+                                        DataSource dataSource,
+                                        PlatformTransactionManager transactionManager,
+                                        TimescaleDbSupport timescale,
+                                        PostgresSupport postgres,
+                                        HistoryPartitionProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.streaming = new JdbcTemplate(dataSource);
+        this.streaming.setFetchSize(5000);
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.timescale = timescale;
+        this.postgres = postgres;
+        this.properties = properties;
+    }
+
+    /** Runs right after {@link HistoryStorageCheck}. */
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        maintain();
+    }
+
+    @Scheduled(fixedDelayString = "${telemetry.history-partitions.check-interval-ms:3600000}",
+            initialDelayString = "${telemetry.history-partitions.check-interval-ms:3600000}",
+            scheduler = "scheduler")
+    public synchronized void maintain() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            if (timescale.isAvailable()) {
+                if (!hypertableReady) {
+                    setUpHypertable();
+                }
+            } else if (postgres.isPostgres() && isPartitioned()) {
+                Instant now = Instant.now();
+                List<Partition> partitions = partitions();
+                for (Partition partition : toCreate(partitions, properties.getInterval(), properties.getPrecreate(), now)) {
+                    create(partition);
+                }
+                if (properties.getRetention() != null) {
+                    for (Partition partition : expired(partitions, now.minus(properties.getRetention()))) {
+                        drop(partition);
+                    }
+                }
+            }
+        } catch (RuntimeException ex) {
+            log.warn("sensor_value_history partition maintenance failed: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Partitions still missing between the newest existing range and
+     * {@code precreate} intervals past the current one.
+     */
+    static List<Partition> toCreate(List<Partition> existing,
+                                    HistoryPartitionProperties.Interval interval,
+                                    int precreate,
+                                    Instant now) {
+        Instant horizon = periodStart(interval, now);
+        for (int i = 0; i <= precreate; i++) {
+            horizon = nextPeriod(interval, horizon);
+        }
+        Instant start = null;
+        for (Partition partition : existing) {
+            if (partition.end() != null && (start == null || partition.end().isAfter(start))) {
+                start = partition.end();
+            }
+        }
+        if (start == null) {
+            start = periodStart(interval, now);
+        }
+        List<Partition> missing = new ArrayList<>();
+        while (start.isBefore(horizon)) {
+            // an interval change starts the new width at the next boundary after the newest partition
+            Instant end = nextPeriod(interval, periodStart(interval, start));
+            missing.add(new Partition(TABLE + "_p" + NAME_DATE.format(start), start, end));
+            start = end;
+        }
+        return missing;
+    }
+
+    /** Partitions whose whole range lies before {@code cutoff}. */
+    static List<Partition> expired(List<Partition> existing, Instant cutoff) {
+        return existing.stream()
+                .filter(p -> p.end() != null && !p.end().isAfter(cutoff))
+                .toList();
+    }
+
+    static Instant periodStart(HistoryPartitionProperties.Interval interval, Instant instant) {
+        LocalDate date = LocalDate.ofInstant(instant, ZoneOffset.UTC);
+        LocalDate start = switch (interval) {
+            case WEEK -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> date.withDayOfMonth(1);
+        };
+        return start.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    static Instant nextPeriod(HistoryPartitionProperties.Interval interval, Instant periodStart) {
+        LocalDate start = LocalDate.ofInstant(periodStart, ZoneOffset.UTC);
+        LocalDate next = switch (interval) {
+            case WEEK -> start.plusWeeks(1);
+            case MONTH -> start.plusMonths(1);
+        };
+        return next.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    private boolean isPartitioned() {
+        Integer count = jdbcTemplate.queryForObject(PARTITIONED, Integer.class);
+        return count != null && count > 0;
+    }
+
+    private List<Partition> partitions() {
+        return jdbcTemplate.query(PARTITIONS, (rs, i) -> new Partition(
+                rs.getString(1),
+                toInstant(rs.getObject(2, OffsetDateTime.class)),
+                toInstant(rs.getObject(3, OffsetDateTime.class))));
+    }
+
+    /**
+     * Creates the partition detached, moves any rows the default partition
+     * caught for its range, then attaches it; attaching fails while the default
+     * partition still holds rows of the range.
+     */
+    private void create(Partition partition) {
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.execute("CREATE TABLE " + partition.name() + " (LIKE " + TABLE + " INCLUDING DEFAULTS)");
+            int moved = jdbcTemplate.update("""
+                    WITH moved AS (
+                        DELETE FROM %s WHERE value_time >= ? AND value_time < ? RETURNING *
+                    )
+                    INSERT INTO %s SELECT * FROM moved
+                    """.formatted(DEFAULT_PARTITION, partition.name()),
+                    OffsetDateTime.ofInstant(partition.start(), ZoneOffset.UTC),
+                    OffsetDateTime.ofInstant(partition.end(), ZoneOffset.UTC));
+            jdbcTemplate.execute("ALTER TABLE %s ATTACH PARTITION %s FOR VALUES FROM ('%s') TO ('%s')"
+                    .formatted(TABLE, partition.name(), partition.start(), partition.end()));
+            if (moved > 0) {
+                log.info("Moved {} rows from {} into {}", moved, DEFAULT_PARTITION, partition.name());
+            }
+        });
+        log.info("Created partition {} [{}, {})", partition.name(), partition.start(), partition.end());
+    }
+
+    private void drop(Partition partition) {
+        if (properties.getArchiveDirectory() != null && !properties.getArchiveDirectory().isBlank()) {
+            archive(partition, Path.of(properties.getArchiveDirectory()));
+        }
+        jdbcTemplate.execute("DROP TABLE " + partition.name());
+        log.info("Dropped expired partition {} (ended {})", partition.name(), partition.end());
+    }
+
+    /**
+     * Streams the partition to {@code <dir>/<partition>.csv.gz}. The file is
+     * written under a temporary name and moved into place once complete, so a
+     * failed run never leaves a truncated archive behind and the partition is
+     * only dropped after a successful copy.
+     */
+    private void archive(Partition partition, Path directory) {
+        try {
+            Files.createDirectories(directory);
+            Path target = directory.resolve(partition.name() + ".csv.gz");
+            Path temp = directory.resolve(partition.name() + ".csv.gz.tmp");
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(temp), 64 * 1024), StandardCharsets.UTF_8))) {
+                CsvRowWriter rows = new CsvRowWriter(out);
+                readOnly.executeWithoutResult(status -> streaming.query(
+                        "SELECT * FROM " + partition.name() + " ORDER BY value_time, composite_id, sensor_type",
+                        rows));
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Archived partition {} to {}", partition.name(), target);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not archive " + partition.name(), ex);
+        }
+    }
+
+    private static Instant toInstant(OffsetDateTime time) {
+        return time != null ? time.toInstant() : null;
+    }
+
+    private void setUpHypertable() {
+        Integer existing = jdbcTemplate.queryForObject(HYPERTABLE, Integer.class);
+        if (existing == null || existing == 0) {
+            // migrate_data rewrites existing rows into chunks under an exclusive lock; this is a one-off
+            jdbcTemplate.queryForList("""
+                    SELECT create_hypertable('sensor_value_history', 'value_time',
+                        chunk_time_interval => INTERVAL '%d seconds',
+                        migrate_data => true,
+                        if_not_exists => true)
+                    """.formatted(properties.getChunkInterval().toSeconds()));
+            log.info("Converted sensor_value_history to a hypertable");
+        }
+        Boolean compressed = jdbcTemplate.queryForObject(COMPRESSION_ENABLED, Boolean.class);
+        if (!Boolean.TRUE.equals(compressed)) {
+            jdbcTemplate.execute("""
+                    ALTER TABLE sensor_value_history SET (
+                        timescaledb.compress,
+                        timescaledb.compress_segmentby = 'composite_id, sensor_type',
+                        timescaledb.compress_orderby = 'value_time DESC')
+                    """);
+        }
+        jdbcTemplate.queryForList("SELECT add_compression_policy('sensor_value_history', "
+                + interval(properties.getCompressAfter()) + ", if_not_exists => true)");
+        if (properties.getRetention() != null) {
+            jdbcTemplate.queryForList("SELECT add_retention_policy('sensor_value_history', "
+                    + interval(properties.getRetention()) + ", if_not_exists => true)");
+        }
+        hypertableReady = true;
+    }
+
+    private static String interval(Duration duration) {
+        return "INTERVAL '" + duration.toSeconds() + " seconds'";
+    }
+
+    record Partition(String name, Instant start, Instant end) {
+    }
+
+    private static final class CsvRowWriter implements RowCallbackHandler {
+        private final Writer out;
+        private int columns;
+
+        CsvRowWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            try {
+                if (columns == 0) {
+                    ResultSetMetaData meta = rs.getMetaData();
+                    columns = meta.getColumnCount();
+                    for (int i = 1; i <= columns; i++) {
+                        if (i > 1) out.write(',');
+                        out.write(meta.getColumnName(i));
+                    }
+                    out.write('\n');
+                }
+                for (int i = 1; i <= columns; i++) {
+                    if (i > 1) out.write(',');
+                    String value = rs.getString(i);
+                    if (value != null) out.write(value);
+                }
+                out.write('\n');
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}
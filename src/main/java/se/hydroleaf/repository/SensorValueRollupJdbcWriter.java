@@ -0,0 +1,165 @@
+package se.hydroleaf.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import se.hydroleaf.config.TelemetryRollupProperties;
+import se.hydroleaf.model.SensorRollupTier;
+import se.hydroleaf.repository.dto.history.SensorValueHistoryRow;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the {@link SensorRollupTier} buckets of {@code sensor_value_rollup} in
+ * step with {@code sensor_value_history}.
+ *
+ * <p>After a flush, every bucket that received a history row is recomputed
+ * from its source and replaced: five-minute buckets from the history rows,
+ * hourly buckets from the five-minute ones and daily buckets from the hourly
+ * ones. Each history row is attributed to the bucket containing its
+ * {@code value_time}, exactly as the date_trunc aggregation attributes it, so
+ * reading a tier returns the same numbers as grouping the raw rows. Nothing is
+ * added to a stored bucket, so writing the same history rows again, e.g. a
+ * window replayed from the journal after its flush had committed, leaves the
+ * tiers equal to the history. Run it in the same transaction as the history
+ * insert.</p>
+ *
+ * <p>Skipped when rollups are disabled or TimescaleDB is available; there the
+ * continuous aggregates (if enabled) take this role.</p>
+ */
+@Repository
+public class SensorValueRollupJdbcWriter {
+
+    private static final String INSERT = """
+            INSERT INTO sensor_value_rollup
+              (composite_id, sensor_type, bucket_seconds, bucket_time, sample_count, sum_value,
+               sum_sq_value, min_value, max_value, last_value, last_time)
+            """;
+
+    private static final String FROM_HISTORY = """
+            SELECT ?, ?, ?, ?,
+                   SUM(COALESCE(h.sample_count, 1)),
+                   SUM(COALESCE(h.sum_value, h.sensor_value)),
+                   SUM(COALESCE(h.sum_sq_value, h.sensor_value * h.sensor_value)),
+                   MIN(COALESCE(h.min_value, h.sensor_value)),
+                   MAX(COALESCE(h.max_value, h.sensor_value)),
+                   (SELECT COALESCE(l.last_value, l.sensor_value)
+                      FROM sensor_value_history l
+                     WHERE l.composite_id = ? AND l.sensor_type = ? AND l.value_time >= ? AND l.value_time < ?
+                       AND l.sensor_value IS NOT NULL
+                     ORDER BY l.value_time DESC
+                     LIMIT 1),
+                   MAX(h.value_time)
+              FROM sensor_value_history h
+             WHERE h.composite_id = ? AND h.sensor_type = ? AND h.value_time >= ? AND h.value_time < ?
+               AND h.sensor_value IS NOT NULL
+            HAVING COUNT(*) > 0
+            """;
+
+    private static final String FROM_FINER_TIER = """
+            SELECT ?, ?, ?, ?,
+                   SUM(r.sample_count),
+                   SUM(r.sum_value),
+                   SUM(r.sum_sq_value),
+                   MIN(r.min_value),
+                   MAX(r.max_value),
+                   (SELECT l.last_value
+                      FROM sensor_value_rollup l
+                     WHERE l.composite_id = ? AND l.sensor_type = ? AND l.bucket_seconds = ?
+                       AND l.bucket_time >= ? AND l.bucket_time < ?
+                     ORDER BY l.bucket_time DESC
+                     LIMIT 1),
+                   MAX(r.last_time)
+              FROM sensor_value_rollup r
+             WHERE r.composite_id = ? AND r.sensor_type = ? AND r.bucket_seconds = ?
+               AND r.bucket_time >= ? AND r.bucket_time < ?
+            HAVING COUNT(*) > 0
+            """;
+
+    private static final String REPLACE_ON_CONFLICT = """
+             ON CONFLICT (composite_id, sensor_type, bucket_seconds, bucket_time) DO UPDATE
+              SET sample_count = EXCLUDED.sample_count,
+                  sum_value = EXCLUDED.sum_value,
+                  sum_sq_value = EXCLUDED.sum_sq_value,
+                  min_value = EXCLUDED.min_value,
+                  max_value = EXCLUDED.max_value,
+                  last_value = EXCLUDED.last_value,
+                  last_time = EXCLUDED.last_time
+            """;
+
+    private static final String DELETE_BUCKET = """
+            DELETE FROM sensor_value_rollup
+             WHERE composite_id = ? AND sensor_type = ? AND bucket_seconds = ? AND bucket_time = ?
+            """;
+
+    private record Key(String compositeId, String sensorType, Instant bucketTime) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PostgresSupport postgresSupport;
+    private final TimescaleDbSupport timescale;
+    private final TelemetryRollupProperties properties;
+
+    public SensorValueRollupJdbcWriter(JdbcTemplate jdbcTemplate,
+                                       PostgresSupport postgresSupport,
+                                       TimescaleDbSupport timescale,
+                                       TelemetryRollupProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.postgresSupport = postgresSupport;
+        this.timescale = timescale;
+        this.properties = properties;
+    }
+
+    public boolean isMaintained() {
+        return properties.isEnabled() && !timescale.isAvailable();
+    }
+
+    /**
+     * Recomputes every tier bucket that contains one of {@code history}'s rows.
+     * The rows must already be written to {@code sensor_value_history}.
+     */
+    public void refresh(List<SensorValueHistoryRow> history) {
+        if (history.isEmpty() || !isMaintained()) {
+            return;
+        }
+        boolean postgres = postgresSupport.isPostgres();
+        SensorRollupTier finer = null;
+        for (SensorRollupTier tier : SensorRollupTier.values()) {
+            Set<Key> touched = new LinkedHashSet<>();
+            for (SensorValueHistoryRow row : history) {
+                touched.add(new Key(row.compositeId(), row.sensorType(), tier.bucketStart(row.valueTime())));
+            }
+            List<Object[]> deletes = new ArrayList<>();
+            List<Object[]> inserts = new ArrayList<>(touched.size());
+            for (Key key : touched) {
+                OffsetDateTime from = OffsetDateTime.ofInstant(key.bucketTime(), ZoneOffset.UTC);
+                OffsetDateTime to = from.plusSeconds(tier.seconds());
+                if (!postgres) {
+                    deletes.add(new Object[]{key.compositeId(), key.sensorType(), tier.seconds(), from});
+                }
+                inserts.add(finer == null
+                        ? new Object[]{
+                                key.compositeId(), key.sensorType(), tier.seconds(), from,
+                                key.compositeId(), key.sensorType(), from, to,
+                                key.compositeId(), key.sensorType(), from, to}
+                        : new Object[]{
+                                key.compositeId(), key.sensorType(), tier.seconds(), from,
+                                key.compositeId(), key.sensorType(), finer.seconds(), from, to,
+                                key.compositeId(), key.sensorType(), finer.seconds(), from, to});
+            }
+            String select = finer == null ? FROM_HISTORY : FROM_FINER_TIER;
+            if (postgres) {
+                jdbcTemplate.batchUpdate(INSERT + select + REPLACE_ON_CONFLICT, inserts);
+            } else {
+                jdbcTemplate.batchUpdate(DELETE_BUCKET, deletes);
+                jdbcTemplate.batchUpdate(INSERT + select, inserts);
+            }
+            finer = tier;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package se.hydroleaf.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.OptionalLong;
+
+/**
+ * Reads and advances {@code telemetry_journal_checkpoint}: per journal, the
+ * newest sealed segment whose samples are in {@code sensor_value_history}.
+ *
+ * <p>{@link #markApplied} is meant to run inside the flush transaction, so the
+ * checkpoint commits exactly when the history rows do and a crash before the
+ * segments are released cannot make them be applied twice.</p>
+ */
+@Repository
+public class TelemetryJournalCheckpoints {
+
+    private static final String UPSERT = """
+            INSERT INTO telemetry_journal_checkpoint (journal_id, applied_through, updated_at)
+            VALUES (?, ?, ?)
+            ON CONFLICT (journal_id) DO UPDATE
+              SET applied_through = GREATEST(telemetry_journal_checkpoint.applied_through, EXCLUDED.applied_through),
+                  updated_at = EXCLUDED.updated_at
+            """;
+
+    private static final String UPDATE = """
+            UPDATE telemetry_journal_checkpoint
+               SET applied_through = GREATEST(applied_through, ?), updated_at = ?
+             WHERE journal_id = ?
+            """;
+
+    private static final String INSERT = """
+            INSERT INTO telemetry_journal_checkpoint (journal_id, applied_through, updated_at)
+            VALUES (?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PostgresSupport postgresSupport;
+
+    public TelemetryJournalCheckpoints(JdbcTemplate jdbcTemplate, PostgresSupport postgresSupport) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.postgresSupport = postgresSupport;
+    }
+
+    public OptionalLong appliedThrough(String journalId) {
+        List<Long> applied = jdbcTemplate.queryForList(
+                "SELECT applied_through FROM telemetry_journal_checkpoint WHERE journal_id = ?",
+                Long.class, journalId);
+        return applied.isEmpty() ? OptionalLong.empty() : OptionalLong.of(applied.get(0));
+    }
+
+    public void markApplied(String journalId, long sequence) {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        if (postgresSupport.isPostgres()) {
+            jdbcTemplate.update(UPSERT, journalId, sequence, now);
+            return;
+        }
+        if (jdbcTemplate.update(UPDATE, sequence, now, journalId) == 0) {
+            jdbcTemplate.update(INSERT, journalId, sequence, now);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package se.hydroleaf.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import se.hydroleaf.config.TelemetryRollupProperties;
+import se.hydroleaf.model.SensorRollupTier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates the {@link SensorRollupTier} continuous aggregates on TimescaleDB.
+ *
+ * <p>Continuous aggregates cannot be created inside a transaction, so this runs
+ * once the application is ready rather than as a Flyway migration. Each tier
+ * aggregates {@code sensor_value_history} directly, is materialized on creation
+ * and refreshed by a TimescaleDB policy; real-time aggregation covers the part
+ * not yet materialized. The tiers are exposed through one
+ * {@code sensor_value_rollup_continuous} view with the same columns as
+ * {@code sensor_value_rollup}.</p>
+ *
+ * <p>Until creation succeeds {@link #isReady()} stays false and aggregated
+ * history keeps bucketing the raw rows.</p>
+ */
+@Slf4j
+@Component
+public class TimescaleContinuousAggregates {
+
+    private static final String EXISTS = """
+            SELECT COUNT(*) FROM timescaledb_information.continuous_aggregates WHERE view_name = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TimescaleDbSupport timescale;
+    private final TelemetryRollupProperties properties;
+    private volatile boolean ready;
+
+    public TimescaleContinuousAggregates(JdbcTemplate jdbcTemplate,
+                                         TimescaleDbSupport timescale,
+                                         TelemetryRollupProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.timescale = timescale;
+        this.properties = properties;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void create() {
+        if (!properties.isContinuousAggregates() || !timescale.isAvailable()) {
+            return;
+        }
+        try {
+            List<String> selects = new ArrayList<>();
+            for (SensorRollupTier tier : SensorRollupTier.values()) {
+                createTier(tier);
+                selects.add("""
+                        SELECT composite_id, sensor_type, %d AS bucket_seconds, bucket_time, sample_count, sum_value,
+                               sum_sq_value, min_value, max_value, last_value, last_time
+                          FROM %s""".formatted(tier.seconds(), tier.continuousAggregate()));
+            }
+            jdbcTemplate.execute("CREATE OR REPLACE VIEW sensor_value_rollup_continuous AS\n"
+                    + String.join("\nUNION ALL\n", selects));
+            ready = true;
+            log.info("TimescaleDB continuous aggregates ready for sensor history rollups");
+        } catch (RuntimeException ex) {
+            log.warn("Could not set up TimescaleDB continuous aggregates; aggregating raw history instead: {}",
+                    ex.getMessage());
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    private void createTier(SensorRollupTier tier) {
+        String view = tier.continuousAggregate();
+        Integer existing = jdbcTemplate.queryForObject(EXISTS, Integer.class, view);
+        if (existing != null && existing > 0) {
+            return;
+        }
+        String bucket = "time_bucket(INTERVAL '" + tier.seconds() + " seconds', value_time)";
+        jdbcTemplate.execute("""
+                CREATE MATERIALIZED VIEW %s
+                WITH (timescaledb.continuous, timescaledb.materialized_only = false) AS
+                SELECT composite_id,
+                       sensor_type,
+                       %s AS bucket_time,
+                       SUM(COALESCE(sample_count, 1))::bigint AS sample_count,
+                       SUM(COALESCE(sum_value, sensor_value)) AS sum_value,
+                       SUM(COALESCE(sum_sq_value, sensor_value * sensor_value)) AS sum_sq_value,
+                       MIN(COALESCE(min_value, sensor_value)) AS min_value,
+                       MAX(COALESCE(max_value, sensor_value)) AS max_value,
+                       last(COALESCE(last_value, sensor_value), value_time) AS last_value,
+                       MAX(value_time) AS last_time
+                  FROM sensor_value_history
+                 WHERE sensor_value IS NOT NULL
+                 GROUP BY composite_id, sensor_type, %s
+                WITH DATA
+                """.formatted(view, bucket, bucket));
+        // TimescaleDB only recomputes invalidated ranges, so a wide refresh window stays cheap
+        // and absorbs journal replays after an outage; the newest bucket is left to real-time aggregation
+        long width = tier.seconds();
+        jdbcTemplate.queryForList("""
+                SELECT add_continuous_aggregate_policy('%s',
+                    start_offset => INTERVAL '%d seconds',
+                    end_offset => INTERVAL '%d seconds',
+                    schedule_interval => INTERVAL '%d seconds',
+                    if_not_exists => true)
+                """.formatted(view, Math.max(2 * 86_400L, width * 12), width, Math.max(300, width / 4)));
+        log.info("Created continuous aggregate {}", view);
+    }
+}
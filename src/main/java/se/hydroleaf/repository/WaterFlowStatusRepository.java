@@ -5,6 +5,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import se.hydroleaf.model.WaterFlowStatus;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,6 +14,8 @@ public interface WaterFlowStatusRepository extends JpaRepository<WaterFlowStatus
 
     Optional<WaterFlowStatus> findFirstByOrderByTimestampDescIdDesc();
 
+    Optional<WaterFlowStatus> findFirstByTimestampLessThanEqualOrderByTimestampDescIdDesc(Instant timestamp);
+
     @Query("SELECT DISTINCT w.sensorType FROM WaterFlowStatus w WHERE w.sensorType IS NOT NULL")
     List<String> findDistinctSensorTypes();
 }
@@ -0,0 +1,14 @@
+package se.hydroleaf.repository.dto;
+
+import java.time.Instant;
+
+/**
+ * Pending write for one {@code latest_sensor_value} row.
+ */
+public record LatestSensorValueUpsert(
+        String compositeId,
+        String sensorType,
+        double value,
+        String unit,
+        Instant valueTime
+) {}
@@ -0,0 +1,11 @@
+package se.hydroleaf.repository.dto.history;
+
+import java.time.Instant;
+import java.util.List;
+
+public record GroupHistoryResponse(
+        Instant fromDate,
+        Instant toDate,
+        String groupBy,
+        List<GroupedSensorData> series
+) {}
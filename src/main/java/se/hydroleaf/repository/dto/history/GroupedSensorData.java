@@ -0,0 +1,16 @@
+package se.hydroleaf.repository.dto.history;
+
+import java.util.List;
+
+/**
+ * One series of a group history response. {@code group} is the composite id,
+ * or the {@code system-rack-layer} / {@code system-rack} prefix when devices
+ * are combined; {@code devices} is how many devices contributed.
+ */
+public record GroupedSensorData(
+        String group,
+        String sensorType,
+        String unit,
+        int devices,
+        List<TimestampValue> data
+) {}
@@ -0,0 +1,28 @@
+package se.hydroleaf.repository.dto.history;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.OffsetDateTime;
+
+/**
+ * One {@code sensor_value_history} row as handed to an export sink.
+ *
+ * <p>The instance is reused for every row of a cursor, so sinks must write it
+ * out before returning and must not keep a reference. Statistics that are
+ * NULL in the table (rows written before the rollup columns existed) are
+ * {@link Double#NaN}, and {@code sampleCount} is {@code -1}.</p>
+ */
+@Getter
+@Setter
+public final class HistoryExportRow {
+
+    private OffsetDateTime valueTime;
+    private String compositeId;
+    private String sensorType;
+    private double value;
+    private double min;
+    private double max;
+    private double last;
+    private long sampleCount;
+}
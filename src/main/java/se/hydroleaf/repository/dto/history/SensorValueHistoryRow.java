@@ -0,0 +1,22 @@
+package se.hydroleaf.repository.dto.history;
+
+import java.time.Instant;
+
+/**
+ * One flush window (about a minute) of a sensor series as written by the
+ * history flush. {@code valueTime} is the time of the window's first sample,
+ * not a minute boundary; {@code value} is the average and the remaining fields
+ * form the rollup used for min/max bands and dispersion estimates.
+ */
+public record SensorValueHistoryRow(
+        String compositeId,
+        String sensorType,
+        Instant valueTime,
+        double value,
+        double min,
+        double max,
+        double last,
+        long count,
+        double sum,
+        double sumSq
+) {}
@@ -5,6 +5,7 @@ import java.time.Instant;
 public record DeviceStatusHistoryResponse(
         String compositeId,
         String status,
-        Instant statusTime
+        Instant statusTime,
+        Instant endTime
 ) {
 }
@@ -0,0 +1,19 @@
+package se.hydroleaf.repository.dto.snapshot;
+
+import java.time.Instant;
+
+/**
+ * {@link SensorAggregationRow} of a multi-device query, tagged with its device.
+ */
+public record DeviceSensorAggregationRow(
+        String compositeId,
+        String sensorType,
+        String unit,
+        Instant bucketTime,
+        Double avgValue,
+        Double minValue,
+        Double maxValue,
+        Double lastValue,
+        Long sampleCount,
+        Double sumSqValue
+) {}
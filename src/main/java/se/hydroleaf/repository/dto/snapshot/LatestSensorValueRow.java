@@ -0,0 +1,37 @@
+package se.hydroleaf.repository.dto.snapshot;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+
+/** One {@code latest_sensor_value} row with the system and layer of its device. */
+public record LatestSensorValueRow(
+        String system,
+        String layer,
+        String compositeId,
+        String sensorType,
+        String unit,
+        Number value,
+        Object valueTime
+) {
+    public Double getValue() { return value != null ? value.doubleValue() : null; }
+
+    public Instant getValueTime() {
+        if (valueTime == null) {
+            return null;
+        }
+        if (valueTime instanceof Instant instant) {
+            return instant;
+        }
+        if (valueTime instanceof Timestamp ts) {
+            return ts.toInstant();
+        }
+        if (valueTime instanceof OffsetDateTime odt) {
+            return odt.toInstant();
+        }
+        if (valueTime instanceof java.util.Date date) {
+            return date.toInstant();
+        }
+        throw new IllegalArgumentException("Unsupported valueTime type: " + valueTime.getClass());
+    }
+}
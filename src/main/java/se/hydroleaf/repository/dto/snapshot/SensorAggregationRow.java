@@ -6,5 +6,10 @@ public record SensorAggregationRow(
         String sensorType,
         String unit,
         Instant bucketTime,
-        Double avgValue
+        Double avgValue,
+        Double minValue,
+        Double maxValue,
+        Double lastValue,
+        Long sampleCount,
+        Double sumSqValue
 ) {}
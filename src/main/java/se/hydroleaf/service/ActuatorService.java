@@ -5,9 +5,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import se.hydroleaf.model.Device;
-import se.hydroleaf.model.ActuatorStatus;
 import se.hydroleaf.repository.DeviceRepository;
-import se.hydroleaf.repository.ActuatorStatusRepository;
 
 import java.time.Instant;
 import java.util.Objects;
@@ -20,19 +18,20 @@ import java.util.Objects;
  *    - controllers[]: array with entries {name:"airPump", state:true/false, timestamp?}
  * - Optional:
  *    - timestamp: ISO-8601 or epoch millis; defaults to now() and used when controller timestamp absent
+ * - States are persisted through ActuatorStatusRecorder: actuator_status only gets a row when the state changed.
  */
 @Service
 public class ActuatorService {
 
     private final ObjectMapper objectMapper;
-    private final ActuatorStatusRepository actuatorRepo;
     private final DeviceRepository deviceRepo;
+    private final ActuatorStatusRecorder recorder;
     public ActuatorService(ObjectMapper objectMapper,
-                           ActuatorStatusRepository actuatorRepo,
-                           DeviceRepository deviceRepo) {
+                           DeviceRepository deviceRepo,
+                           ActuatorStatusRecorder recorder) {
         this.objectMapper = objectMapper;
-        this.actuatorRepo = actuatorRepo;
         this.deviceRepo = deviceRepo;
+        this.recorder = recorder;
     }
 
     /** Entry point used by tests and other layers. */
@@ -69,14 +68,8 @@ public class ActuatorService {
                         continue;
                     }
                     Instant ts = c.hasNonNull("timestamp") ? readTimestamp(c) : baseTs;
-
-                    ActuatorStatus row = new ActuatorStatus();
-                    row.setDevice(device);   // FK via composite_id
-                    row.setTimestamp(ts);
-                    row.setActuatorType(name);
-                    row.setState(status);
-                    actuatorRepo.save(row);
                     savedAny = true;
+                    recorder.record(device, name, status, ts);   // FK via composite_id
                 }
             }
 
@@ -0,0 +1,63 @@
+package se.hydroleaf.service;
+
+import org.springframework.stereotype.Component;
+import se.hydroleaf.model.ActuatorStatus;
+import se.hydroleaf.model.Device;
+import se.hydroleaf.repository.ActuatorStatusRepository;
+import se.hydroleaf.repository.LatestActuatorStatusUpsertRepository;
+
+import java.time.Instant;
+
+/**
+ * Persists reported actuator states for telemetry ingest and {@link ActuatorService}.
+ *
+ * <p>Repeated states are dropped by {@link StateChangeFilter} before they reach
+ * the database. Whatever passes is upserted into {@code latest_actuator_status},
+ * which decides whether the state really changed: then the open
+ * {@code actuator_status} interval is closed and a new one starts, otherwise the
+ * open interval is extended to the report time.</p>
+ */
+@Component
+public class ActuatorStatusRecorder {
+
+    private static final String CHANNEL_PREFIX = "actuator:";
+
+    private final ActuatorStatusRepository actuatorStatusRepository;
+    private final LatestActuatorStatusUpsertRepository latestActuatorStatusRepository;
+    private final StateChangeFilter stateChangeFilter;
+
+    public ActuatorStatusRecorder(ActuatorStatusRepository actuatorStatusRepository,
+                                  LatestActuatorStatusUpsertRepository latestActuatorStatusRepository,
+                                  StateChangeFilter stateChangeFilter) {
+        this.actuatorStatusRepository = actuatorStatusRepository;
+        this.latestActuatorStatusRepository = latestActuatorStatusRepository;
+        this.stateChangeFilter = stateChangeFilter;
+    }
+
+    /**
+     * @param device reference to the reporting device, used as foreign key of a new history row
+     */
+    public void record(Device device, String actuatorType, boolean state, Instant time) {
+        String compositeId = device.getCompositeId();
+        StateChangeFilter.Decision decision =
+                stateChangeFilter.offer(compositeId, CHANNEL_PREFIX + actuatorType, state, time);
+        // a late report cannot be placed inside the closed intervals, so it is dropped
+        if (decision == StateChangeFilter.Decision.UNCHANGED || decision == StateChangeFilter.Decision.LATE) {
+            return;
+        }
+        boolean changed = latestActuatorStatusRepository.upsert(compositeId, actuatorType, state, time);
+        // a change closes the open interval at the time of the change, a repeat extends it
+        actuatorStatusRepository.endOpenInterval(compositeId, actuatorType, time);
+        if (!changed) {
+            return;
+        }
+
+        ActuatorStatus row = new ActuatorStatus();
+        row.setDevice(device);
+        row.setTimestamp(time);
+        row.setEndTime(time);
+        row.setActuatorType(actuatorType);
+        row.setState(state);
+        actuatorStatusRepository.save(row);
+    }
+}
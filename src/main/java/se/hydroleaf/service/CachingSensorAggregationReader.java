@@ -0,0 +1,363 @@
+package se.hydroleaf.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import se.hydroleaf.config.HistoryCacheProperties;
+import se.hydroleaf.util.InstantUtil;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches closed buckets of aggregated history in front of {@link SensorAggregationAdapter}.
+ *
+ * <p>A bucket is closed once it ends {@code closed-lag} before the last
+ * committed {@link SensorValueBuffer} flush; the rows behind it no longer
+ * change. Per (compositeId, sensorType, bucket size) the cache keeps one
+ * contiguous run of closed buckets in primitive arrays. A request is answered
+ * from that run up to the closed boundary, extending it when the window has
+ * moved on, and only the still-open tail is read from the database.</p>
+ *
+ * <p>Series are evicted least-recently-used once {@code max-buckets} is
+ * exceeded. A flush that writes samples older than the closed boundary, or an
+ * explicit {@link #invalidate}, drops the affected device's series.</p>
+ *
+ * <p>In clustered mode late history written by another instance would not
+ * invalidate this instance's series, so every read goes to the database.</p>
+ */
+@Slf4j
+@Primary
+@Component
+public class CachingSensorAggregationReader implements RecordService.SensorAggregationReader {
+
+    private record Key(String compositeId, String sensorType, long bucketSeconds) {
+    }
+
+    private final SensorAggregationAdapter delegate;
+    private final HistoryCacheProperties properties;
+    private final boolean clustered;
+    private final LinkedHashMap<Key, Series> series = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedBuckets; // guarded by series
+    private volatile long generation;
+    private volatile long closedBefore;
+    private final Counter hits;
+    private final Counter extensions;
+    private final Counter misses;
+
+    public CachingSensorAggregationReader(SensorAggregationAdapter delegate,
+                                          HistoryCacheProperties properties,
+                                          Clock clock,
+                                          MeterRegistry meterRegistry,
+                                          @Value("${cluster.enabled:false}") boolean clustered) {
+        this.delegate = delegate;
+        this.properties = properties;
+        this.clustered = clustered;
+        // history written before startup is settled; replayed journal samples invalidate on their first flush
+        this.closedBefore = clock.millis() - properties.getClosedLag().toMillis();
+        this.hits = Counter.builder("history.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.extensions = Counter.builder("history.cache.requests").tag("result", "extend").register(meterRegistry);
+        this.misses = Counter.builder("history.cache.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("history.cache.hit.ratio", this, CachingSensorAggregationReader::hitRatio).register(meterRegistry);
+        Gauge.builder("history.cache.buckets", this, CachingSensorAggregationReader::cachedBuckets).register(meterRegistry);
+    }
+
+    @Override
+    public List<RecordService.SensorAggregateResult> aggregate(String compositeId,
+                                                               Instant from,
+                                                               Instant to,
+                                                               String bucket,
+                                                               String sensorType) {
+        if (!isEnabled() || sensorType == null) {
+            return delegate.aggregate(compositeId, from, to, bucket, sensorType);
+        }
+        return aggregateAll(compositeId, from, to, bucket, List.of(sensorType));
+    }
+
+    @Override
+    public List<RecordService.SensorAggregateResult> aggregateAll(String compositeId,
+                                                                  Instant from,
+                                                                  Instant to,
+                                                                  String bucket,
+                                                                  Collection<String> sensorTypes) {
+        long bucketSeconds = InstantUtil.bucketSeconds(bucket);
+        long bucketMillis = bucketSeconds * 1000L;
+        long fromMs = from.toEpochMilli();
+        long toMs = to.toEpochMilli();
+        long closedMs = Math.min(toMs, Math.floorDiv(closedBefore, bucketMillis) * bucketMillis);
+        if (!isEnabled() || closedMs <= fromMs || fromMs % bucketMillis != 0) {
+            return delegate.aggregateAll(compositeId, from, to, bucket, sensorTypes);
+        }
+
+        long observedGeneration = generation;
+        Map<String, Series> cached = new HashMap<>();
+        Map<Long, List<String>> toFetch = new LinkedHashMap<>();
+        for (String sensorType : sensorTypes) {
+            Series s = get(new Key(compositeId, sensorType, bucketSeconds));
+            if (s != null && s.from <= fromMs && s.to >= closedMs) {
+                hits.increment();
+                cached.put(sensorType, s);
+            } else if (s != null && s.from <= fromMs && s.to >= fromMs) {
+                extensions.increment();
+                cached.put(sensorType, s);
+                toFetch.computeIfAbsent(s.to, k -> new ArrayList<>()).add(sensorType);
+            } else {
+                misses.increment();
+                toFetch.computeIfAbsent(fromMs, k -> new ArrayList<>()).add(sensorType);
+            }
+        }
+
+        for (Map.Entry<Long, List<String>> fetch : toFetch.entrySet()) {
+            long start = fetch.getKey();
+            List<RecordService.SensorAggregateResult> rows = delegate.aggregateAll(compositeId,
+                    Instant.ofEpochMilli(start), Instant.ofEpochMilli(closedMs), bucket, fetch.getValue());
+            Map<String, List<RecordService.SensorAggregateResult>> byType = new HashMap<>();
+            for (RecordService.SensorAggregateResult row : rows) {
+                byType.computeIfAbsent(row.getSensorType(), k -> new ArrayList<>()).add(row);
+            }
+            for (String sensorType : fetch.getValue()) {
+                Series fresh = Series.of(sensorType, start, closedMs, byType.getOrDefault(sensorType, List.of()));
+                Series base = cached.get(sensorType);
+                Series merged = base != null && base.to == start ? base.append(fresh) : fresh;
+                cached.put(sensorType, merged);
+                put(new Key(compositeId, sensorType, bucketSeconds), merged, observedGeneration);
+            }
+        }
+
+        List<RecordService.SensorAggregateResult> out = new ArrayList<>();
+        for (String sensorType : sensorTypes) {
+            cached.get(sensorType).copyRange(fromMs, closedMs, out);
+        }
+        if (closedMs < toMs) {
+            out.addAll(delegate.aggregateAll(compositeId, Instant.ofEpochMilli(closedMs), to, bucket, sensorTypes));
+        }
+        return out;
+    }
+
+    /**
+     * Multi-device reads go straight to the database as one query; splitting them
+     * per device to use the cache would cost a round trip per device.
+     */
+    @Override
+    public List<RecordService.SensorAggregateResult> aggregateDevices(Collection<String> compositeIds,
+                                                                      Instant from,
+                                                                      Instant to,
+                                                                      String bucket,
+                                                                      Collection<String> sensorTypes) {
+        return delegate.aggregateDevices(compositeIds, from, to, bucket, sensorTypes);
+    }
+
+    @Override
+    public List<String> storedSensorTypes(String compositeId, Instant from, Instant to,
+                                          Collection<String> lowerSensorTypes) {
+        return delegate.storedSensorTypes(compositeId, from, to, lowerSensorTypes);
+    }
+
+    @EventListener
+    public void onHistoryFlushed(SensorHistoryFlushedEvent event) {
+        long boundary = closedBefore;
+        event.earliestByCompositeId().forEach((compositeId, earliest) -> {
+            if (earliest.toEpochMilli() < boundary) {
+                log.debug("Late history for {} at {}; dropping its cached buckets", compositeId, earliest);
+                invalidate(compositeId);
+            }
+        });
+        long next = event.flushedAt().toEpochMilli() - properties.getClosedLag().toMillis();
+        if (next > boundary) {
+            closedBefore = next;
+        }
+    }
+
+    /**
+     * Drops every cached series of {@code compositeId}; call after rewriting its history.
+     */
+    public void invalidate(String compositeId) {
+        synchronized (series) {
+            generation++;
+            Iterator<Map.Entry<Key, Series>> it = series.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, Series> entry = it.next();
+                if (entry.getKey().compositeId().equals(compositeId)) {
+                    cachedBuckets -= entry.getValue().size();
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (series) {
+            generation++;
+            series.clear();
+            cachedBuckets = 0;
+        }
+    }
+
+    private boolean isEnabled() {
+        return properties.isEnabled() && !clustered;
+    }
+
+    private Series get(Key key) {
+        synchronized (series) {
+            return series.get(key);
+        }
+    }
+
+    private void put(Key key, Series value, long observedGeneration) {
+        synchronized (series) {
+            if (generation != observedGeneration) {
+                return; // invalidated while we were reading; do not cache what we read
+            }
+            Series previous = series.put(key, value);
+            cachedBuckets += value.size() - (previous != null ? previous.size() : 0);
+            Iterator<Map.Entry<Key, Series>> eldest = series.entrySet().iterator();
+            while (cachedBuckets > properties.getMaxBuckets() && eldest.hasNext()) {
+                Map.Entry<Key, Series> entry = eldest.next();
+                if (entry.getKey().equals(key)) {
+                    continue;
+                }
+                cachedBuckets -= entry.getValue().size();
+                eldest.remove();
+            }
+        }
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + extensions.count() + misses.count();
+        return total == 0 ? 0.0 : (hits.count() + extensions.count()) / total;
+    }
+
+    private double cachedBuckets() {
+        synchronized (series) {
+            return cachedBuckets;
+        }
+    }
+
+    /**
+     * Closed buckets of one series covering {@code [from, to)}, as parallel arrays sorted by bucket start.
+     * Missing statistics are stored as {@code NaN} (and a count of {@code -1}).
+     */
+    private static final class Series {
+        final String sensorType;
+        final String unit;
+        final long from;
+        final long to;
+        final long[] bucketStart;
+        final double[] avg;
+        final double[] min;
+        final double[] max;
+        final double[] last;
+        final double[] sumSq;
+        final long[] count;
+
+        private Series(String sensorType, String unit, long from, long to, int size) {
+            this.sensorType = sensorType;
+            this.unit = unit;
+            this.from = from;
+            this.to = to;
+            this.bucketStart = new long[size];
+            this.avg = new double[size];
+            this.min = new double[size];
+            this.max = new double[size];
+            this.last = new double[size];
+            this.sumSq = new double[size];
+            this.count = new long[size];
+        }
+
+        static Series of(String sensorType, long from, long to, List<RecordService.SensorAggregateResult> rows) {
+            String unit = rows.isEmpty() ? null : rows.get(0).getUnit();
+            Series s = new Series(sensorType, unit, from, to, rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                RecordService.SensorAggregateResult r = rows.get(i);
+                s.bucketStart[i] = r.getBucketTime().toEpochMilli();
+                s.avg[i] = orNaN(r.getAvgValue());
+                s.min[i] = orNaN(r.getMinValue());
+                s.max[i] = orNaN(r.getMaxValue());
+                s.last[i] = orNaN(r.getLastValue());
+                s.sumSq[i] = orNaN(r.getSumSqValue());
+                s.count[i] = r.getSampleCount() != null ? r.getSampleCount() : -1;
+            }
+            return s;
+        }
+
+        int size() {
+            return bucketStart.length;
+        }
+
+        Series append(Series next) {
+            int n = size();
+            int m = next.size();
+            Series s = new Series(sensorType, unit != null ? unit : next.unit, from, next.to, n + m);
+            copy(this, 0, s, 0, n);
+            copy(next, 0, s, n, m);
+            return s;
+        }
+
+        void copyRange(long fromMs, long toMs, List<RecordService.SensorAggregateResult> out) {
+            int i = lowerBound(fromMs);
+            for (; i < bucketStart.length && bucketStart[i] < toMs; i++) {
+                out.add(new CachedBucket(sensorType, unit, Instant.ofEpochMilli(bucketStart[i]),
+                        orNull(avg[i]), orNull(min[i]), orNull(max[i]), orNull(last[i]),
+                        count[i] >= 0 ? count[i] : null, orNull(sumSq[i])));
+            }
+        }
+
+        private int lowerBound(long key) {
+            int idx = Arrays.binarySearch(bucketStart, key);
+            return idx >= 0 ? idx : -idx - 1;
+        }
+
+        private static void copy(Series src, int srcPos, Series dst, int dstPos, int length) {
+            System.arraycopy(src.bucketStart, srcPos, dst.bucketStart, dstPos, length);
+            System.arraycopy(src.avg, srcPos, dst.avg, dstPos, length);
+            System.arraycopy(src.min, srcPos, dst.min, dstPos, length);
+            System.arraycopy(src.max, srcPos, dst.max, dstPos, length);
+            System.arraycopy(src.last, srcPos, dst.last, dstPos, length);
+            System.arraycopy(src.sumSq, srcPos, dst.sumSq, dstPos, length);
+            System.arraycopy(src.count, srcPos, dst.count, dstPos, length);
+        }
+
+        private static double orNaN(Double value) {
+            return value != null ? value : Double.NaN;
+        }
+
+        private static Double orNull(double value) {
+            return Double.isNaN(value) ? null : value;
+        }
+    }
+
+    private record CachedBucket(
+            String sensorType,
+            String unit,
+            Instant bucketTime,
+            Double avgValue,
+            Double minValue,
+            Double maxValue,
+            Double lastValue,
+            Long sampleCount,
+            Double sumSqValue
+    ) implements RecordService.SensorAggregateResult {
+        @Override public String getSensorType() { return sensorType; }
+        @Override public String getUnit() { return unit; }
+        @Override public Instant getBucketTime() { return bucketTime; }
+        @Override public Double getAvgValue() { return avgValue; }
+        @Override public Double getMinValue() { return minValue; }
+        @Override public Double getMaxValue() { return maxValue; }
+        @Override public Double getLastValue() { return lastValue; }
+        @Override public Long getSampleCount() { return sampleCount; }
+        @Override public Double getSumSqValue() { return sumSqValue; }
+    }
+}
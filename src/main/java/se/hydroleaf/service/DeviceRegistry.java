@@ -0,0 +1,235 @@
+package se.hydroleaf.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.hydroleaf.model.Device;
+import se.hydroleaf.model.TopicName;
+import se.hydroleaf.repository.DeviceRepository;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory view of the {@code device} table used on the MQTT ingest path.
+ *
+ * <p>All devices are loaded at startup and reloaded every
+ * {@code devices.registry.refresh-interval-ms} to pick up changes made outside
+ * this instance. Unknown devices are auto-registered once: concurrent lookups
+ * of the same new composite id wait for the first one instead of racing to
+ * insert. Registration commits in its own transaction so that a cached
+ * snapshot never refers to a row that may still be rolled back. Devices that
+ * disappear from the table on a reload are also evicted from the
+ * {@link LiveSensorSnapshot}.</p>
+ */
+@Component
+public class DeviceRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceRegistry.class);
+
+    /**
+     * Immutable copy of the {@link Device} columns the ingest path needs.
+     */
+    public record DeviceSnapshot(String compositeId,
+                                 String system,
+                                 String rack,
+                                 String layer,
+                                 String deviceId,
+                                 TopicName topic) {
+
+        static DeviceSnapshot of(Device device) {
+            return new DeviceSnapshot(device.getCompositeId(), device.getSystem(), device.getRack(),
+                    device.getLayer(), device.getDeviceId(), device.getTopic());
+        }
+
+        DeviceSnapshot withTopic(TopicName newTopic) {
+            return new DeviceSnapshot(compositeId, system, rack, layer, deviceId, newTopic);
+        }
+    }
+
+    private final ConcurrentMap<String, DeviceSnapshot> devices = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<DeviceSnapshot>> registering = new ConcurrentHashMap<>();
+    private final DeviceRepository deviceRepository;
+    private final LiveSensorSnapshot liveSensorSnapshot;
+    private final TransactionTemplate requiresNew;
+    private final Counter hits;
+    private final Counter misses;
+
+    public DeviceRegistry(DeviceRepository deviceRepository,
+                          LiveSensorSnapshot liveSensorSnapshot,
+                          PlatformTransactionManager transactionManager,
+                          MeterRegistry meterRegistry) {
+        this.deviceRepository = deviceRepository;
+        this.liveSensorSnapshot = liveSensorSnapshot;
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.hits = Counter.builder("device.registry.lookups").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("device.registry.lookups").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("device.registry.size", devices, Map::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void load() {
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${devices.registry.refresh-interval-ms:300000}",
+            initialDelayString = "${devices.registry.refresh-interval-ms:300000}",
+            scheduler = "scheduler")
+    public void refresh() {
+        Map<String, DeviceSnapshot> cached = Map.copyOf(devices);
+        Map<String, DeviceSnapshot> loaded = new HashMap<>();
+        for (Device device : deviceRepository.findAll()) {
+            loaded.put(device.getCompositeId(), DeviceSnapshot.of(device));
+        }
+        // only entries unchanged since the query started are replaced or dropped:
+        // a device registered or updated while loading is newer than what was read
+        for (Map.Entry<String, DeviceSnapshot> entry : cached.entrySet()) {
+            String compositeId = entry.getKey();
+            if (!loaded.containsKey(compositeId) && devices.remove(compositeId, entry.getValue())) {
+                liveSensorSnapshot.evict(compositeId);
+            }
+        }
+        for (Map.Entry<String, DeviceSnapshot> entry : loaded.entrySet()) {
+            DeviceSnapshot previous = cached.get(entry.getKey());
+            if (previous == null) {
+                devices.putIfAbsent(entry.getKey(), entry.getValue());
+            } else {
+                devices.replace(entry.getKey(), previous, entry.getValue());
+            }
+        }
+        log.debug("Device registry loaded {} devices", loaded.size());
+    }
+
+    /**
+     * Returns the cached device, loading it from the database or auto-registering
+     * it on a miss.
+     *
+     * @param fallbackTopic topic for a newly registered device unless its rack implies another one
+     */
+    public DeviceSnapshot resolve(String compositeId, TopicName fallbackTopic) {
+        DeviceSnapshot cached = devices.get(compositeId);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        CompletableFuture<DeviceSnapshot> mine = new CompletableFuture<>();
+        CompletableFuture<DeviceSnapshot> inFlight = registering.putIfAbsent(compositeId, mine);
+        if (inFlight != null) {
+            return await(inFlight);
+        }
+        try {
+            DeviceSnapshot device = devices.get(compositeId);
+            if (device == null) {
+                device = deviceRepository.findById(compositeId)
+                        .map(DeviceSnapshot::of)
+                        .orElseGet(() -> register(compositeId, fallbackTopic));
+                devices.put(compositeId, device);
+            }
+            mine.complete(device);
+            return device;
+        } catch (RuntimeException ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            registering.remove(compositeId, mine);
+        }
+    }
+
+    public Optional<DeviceSnapshot> find(String compositeId) {
+        return Optional.ofNullable(devices.get(compositeId));
+    }
+
+    /**
+     * Persists a topic change in the caller's transaction and updates the cache once it commits.
+     */
+    public DeviceSnapshot updateTopic(DeviceSnapshot device, TopicName topic) {
+        deviceRepository.updateTopic(device.compositeId(), topic);
+        DeviceSnapshot updated = device.withTopic(topic);
+        afterCommit(() -> devices.put(updated.compositeId(), updated));
+        return updated;
+    }
+
+    /**
+     * Drops a cached device, e.g. after an administrative change; the next lookup reloads it.
+     */
+    public void evict(String compositeId) {
+        devices.remove(compositeId);
+    }
+
+    /**
+     * Topic a device on {@code rack} belongs to: germination racks always publish
+     * on the germination topic, everything else keeps {@code fallback}.
+     */
+    public static TopicName topicForRack(String rack, TopicName fallback) {
+        if (rack != null && rack.equalsIgnoreCase("germination")) {
+            return TopicName.germinationTopic;
+        }
+        return fallback;
+    }
+
+    private DeviceSnapshot register(String compositeId, TopicName fallbackTopic) {
+        String[] parts = compositeId.split("-", 4);
+        if (parts.length < 4) {
+            throw new IllegalArgumentException("Invalid compositeId: " + compositeId);
+        }
+        Device device = new Device();
+        device.setCompositeId(compositeId);
+        device.setSystem(parts[0]);
+        device.setRack(parts[1]);
+        device.setLayer(parts[2]);
+        device.setDeviceId(parts[3]);
+        device.setTopic(topicForRack(parts[1], fallbackTopic != null ? fallbackTopic : TopicName.growSensors));
+        try {
+            requiresNew.executeWithoutResult(status -> deviceRepository.saveAndFlush(device));
+            log.info("Auto-registered unknown device {}", compositeId);
+            return DeviceSnapshot.of(device);
+        } catch (DataIntegrityViolationException ex) {
+            // registered concurrently by another instance
+            return requiresNew.execute(status -> deviceRepository.findById(compositeId))
+                    .map(DeviceSnapshot::of)
+                    .orElseThrow(() -> ex);
+        }
+    }
+
+    private static DeviceSnapshot await(CompletableFuture<DeviceSnapshot> inFlight) {
+        try {
+            return inFlight.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
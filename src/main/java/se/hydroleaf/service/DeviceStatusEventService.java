@@ -22,27 +22,40 @@ import se.hydroleaf.repository.DeviceRepository;
 import se.hydroleaf.repository.DeviceStatusHistoryRepository;
 import se.hydroleaf.repository.dto.report.DeviceEventResponse;
 import se.hydroleaf.repository.dto.report.DeviceStatusHistoryResponse;
+import se.hydroleaf.service.DeviceRegistry.DeviceSnapshot;
 
 @Service
 public class DeviceStatusEventService {
 
     private static final Logger log = LoggerFactory.getLogger(DeviceStatusEventService.class);
+    private static final String STATUS_CHANNEL = "status";
 
     private final DeviceRepository deviceRepository;
     private final DeviceStatusHistoryRepository statusHistoryRepository;
     private final DeviceEventRepository eventRepository;
     private final ObjectMapper objectMapper;
+    private final DeviceRegistry deviceRegistry;
+    private final StateChangeFilter stateChangeFilter;
 
     public DeviceStatusEventService(DeviceRepository deviceRepository,
                                     DeviceStatusHistoryRepository statusHistoryRepository,
                                     DeviceEventRepository eventRepository,
-                                    ObjectMapper objectMapper) {
+                                    ObjectMapper objectMapper,
+                                    DeviceRegistry deviceRegistry,
+                                    StateChangeFilter stateChangeFilter) {
         this.deviceRepository = deviceRepository;
         this.statusHistoryRepository = statusHistoryRepository;
         this.eventRepository = eventRepository;
         this.objectMapper = objectMapper;
+        this.deviceRegistry = deviceRegistry;
+        this.stateChangeFilter = stateChangeFilter;
     }
 
+    /**
+     * Records a status report. {@code device_status_history} holds one row per
+     * status change; repeated reports only move the end of the open interval,
+     * and only once per keep-alive period (see {@link StateChangeFilter}).
+     */
     @Transactional
     public void recordStatus(String compositeId, String status, Instant statusTime) {
         Objects.requireNonNull(compositeId, "compositeId is required");
@@ -51,10 +64,26 @@ public class DeviceStatusEventService {
         String normalizedStatus = normalizeStatus(status);
         Instant timestamp = statusTime != null ? statusTime : Instant.now();
 
+        StateChangeFilter.Decision decision = stateChangeFilter.offer(normalizedId, STATUS_CHANNEL,
+                normalizedStatus, timestamp, () -> statusHistoryRepository
+                        .findFirstByDevice_CompositeIdOrderByTimestampDescIdDesc(normalizedId)
+                        .map(DeviceStatusHistory::getStatus)
+                        .orElse(null));
+        // a late report cannot be placed inside the closed intervals, so it is dropped
+        if (decision == StateChangeFilter.Decision.UNCHANGED || decision == StateChangeFilter.Decision.LATE) {
+            return;
+        }
+        // a change closes the open interval at the time of the change, a repeat extends it
+        statusHistoryRepository.endOpenInterval(normalizedId, timestamp);
+        if (decision == StateChangeFilter.Decision.KEEP_ALIVE) {
+            return;
+        }
+
         DeviceStatusHistory history = new DeviceStatusHistory();
         history.setDevice(device);
         history.setStatus(normalizedStatus);
         history.setTimestamp(timestamp);
+        history.setEndTime(timestamp);
         statusHistoryRepository.save(history);
     }
 
@@ -86,12 +115,13 @@ public class DeviceStatusEventService {
         requireDevice(normalizedId);
 
         return statusHistoryRepository
-                .findByDevice_CompositeIdAndTimestampBetweenOrderByTimestampDesc(normalizedId, from, to)
+                .findOverlapping(normalizedId, from, to)
                 .stream()
                 .map(history -> new DeviceStatusHistoryResponse(
                         history.getDevice().getCompositeId(),
                         history.getStatus(),
-                        history.getTimestamp()))
+                        history.getTimestamp(),
+                        history.getEndTime()))
                 .collect(Collectors.toList());
     }
 
@@ -116,11 +146,14 @@ public class DeviceStatusEventService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Resolves the device through the registry and returns a reference usable as
+     * foreign key without loading the row.
+     */
     private Device resolveDevice(String compositeId) {
-        Device device = deviceRepository.findById(compositeId)
-                .orElseGet(() -> autoRegisterDevice(compositeId));
-        ensureTopicForRack(device, device.getRack());
-        return device;
+        DeviceSnapshot device = deviceRegistry.resolve(compositeId, TopicName.growSensors);
+        ensureTopicForRack(device, device.rack());
+        return deviceRepository.getReferenceById(compositeId);
     }
 
     private void requireDevice(String compositeId) {
@@ -129,39 +162,14 @@ public class DeviceStatusEventService {
         }
     }
 
-    private Device autoRegisterDevice(String compositeId) {
-        String[] parts = compositeId.split("-", 4);
-        if (parts.length < 4) {
-            throw new IllegalArgumentException("Invalid compositeId: " + compositeId);
-        }
-        Device device = new Device();
-        device.setCompositeId(compositeId);
-        device.setSystem(parts[0]);
-        device.setRack(parts[1]);
-        device.setLayer(parts[2]);
-        device.setDeviceId(parts[3]);
-        device.setTopic(resolveTopicForRack(parts[1], TopicName.growSensors));
-        deviceRepository.save(device);
-        log.info("Auto-registered unknown device {}", compositeId);
-        return device;
-    }
-
-    private void ensureTopicForRack(Device device, String rack) {
+    private void ensureTopicForRack(DeviceSnapshot device, String rack) {
         if (device == null || rack == null) {
             return;
         }
-        TopicName desired = resolveTopicForRack(rack, device.getTopic());
-        if (desired != null && desired != device.getTopic()) {
-            device.setTopic(desired);
-            deviceRepository.save(device);
-        }
-    }
-
-    private TopicName resolveTopicForRack(String rack, TopicName fallback) {
-        if (rack != null && rack.equalsIgnoreCase("germination")) {
-            return TopicName.germinationTopic;
+        TopicName desired = DeviceRegistry.topicForRack(rack, device.topic());
+        if (desired != null && desired != device.topic()) {
+            deviceRegistry.updateTopic(device, desired);
         }
-        return fallback;
     }
 
     private String normalizeCompositeId(String compositeId) {
@@ -0,0 +1,257 @@
+package se.hydroleaf.service;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import se.hydroleaf.model.Device;
+import se.hydroleaf.model.LatestSensorValue;
+import se.hydroleaf.repository.DeviceRepository;
+import se.hydroleaf.repository.LatestSensorValueRepository;
+import se.hydroleaf.repository.dto.history.GroupHistoryResponse;
+import se.hydroleaf.repository.dto.history.GroupedSensorData;
+import se.hydroleaf.repository.dto.history.TimestampValue;
+import se.hydroleaf.util.InstantUtil;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Aggregated history of a whole system, rack or layer (or an explicit list of
+ * devices) in one response.
+ *
+ * <p>Devices are resolved with one lookup, sensor type spellings with one
+ * {@code latest_sensor_value} query, and every series comes from a single
+ * {@link RecordService.SensorAggregationReader#aggregateDevices} call. With
+ * {@link HistoryGrouping#LAYER} or {@link HistoryGrouping#RACK} the per-device
+ * buckets are merged into one series per group: the average is weighted by
+ * sample count, min/max span all devices, and {@code last} is the mean of the
+ * devices' last values. Spellings of a sensor type that differ only in case
+ * are reported as one series under the requested name.</p>
+ */
+@Service
+public class GroupHistoryService {
+
+    static final int MAX_DEVICES = 200;
+
+    private final DeviceRepository deviceRepository;
+    private final LatestSensorValueRepository latestSensorValueRepository;
+    private final RecordService.SensorAggregationReader aggregationReader;
+
+    public GroupHistoryService(DeviceRepository deviceRepository,
+                               LatestSensorValueRepository latestSensorValueRepository,
+                               RecordService.SensorAggregationReader aggregationReader) {
+        this.deviceRepository = deviceRepository;
+        this.latestSensorValueRepository = latestSensorValueRepository;
+        this.aggregationReader = aggregationReader;
+    }
+
+    @Transactional(readOnly = true)
+    public GroupHistoryResponse groupHistory(
+            String system,
+            String rack,
+            String layer,
+            List<String> compositeIds,
+            Instant from,
+            Instant to,
+            String bucket,
+            List<String> sensorTypes,
+            HistoryGrouping grouping,
+            HistoryAggregation aggregation,
+            Integer maxPoints,
+            HistoryDownsampling downsampling
+    ) {
+        if (from == null || to == null) throw new IllegalArgumentException("from/to are required");
+        if (sensorTypes == null || sensorTypes.isEmpty()) {
+            throw new IllegalArgumentException("At least one sensorType is required");
+        }
+        if (maxPoints != null && maxPoints < HistoryDownsampling.MIN_POINTS) {
+            throw new IllegalArgumentException("maxPoints must be at least " + HistoryDownsampling.MIN_POINTS);
+        }
+        HistoryGrouping groupBy = grouping != null ? grouping : HistoryGrouping.DEVICE;
+        HistoryAggregation statistic = aggregation != null ? aggregation : HistoryAggregation.AVG;
+
+        long bucketSeconds = InstantUtil.bucketSeconds(bucket);
+        Instant bucketFrom = InstantUtil.truncateToBucket(from, bucket);
+        Instant bucketTo = InstantUtil.truncateToBucket(to.minusNanos(1), bucket).plusSeconds(bucketSeconds);
+
+        Map<String, Device> devices = resolveDevices(system, rack, layer, compositeIds);
+        if (devices.isEmpty()) {
+            return new GroupHistoryResponse(bucketFrom, bucketTo, groupBy.name().toLowerCase(Locale.ROOT), List.of());
+        }
+        Map<String, String> requestedByLower = new LinkedHashMap<>();
+        for (String requested : sensorTypes) {
+            if (requested != null) requestedByLower.putIfAbsent(requested.toLowerCase(Locale.ROOT), requested);
+        }
+        List<String> canonicalTypes = canonicalizeSensorTypes(devices.keySet(), requestedByLower.values());
+
+        List<RecordService.SensorAggregateResult> rows = aggregationReader.aggregateDevices(
+                devices.keySet(), bucketFrom, bucketTo, bucket, canonicalTypes);
+
+        Map<String, Series> series = new LinkedHashMap<>();
+        for (RecordService.SensorAggregateResult r : rows) {
+            Device device = devices.get(r.getCompositeId());
+            if (device == null) continue;
+            String group = groupBy.keyOf(device);
+            String lower = r.getSensorType().toLowerCase(Locale.ROOT);
+            String sensorType = requestedByLower.getOrDefault(lower, r.getSensorType());
+            Series s = series.computeIfAbsent(group + "|" + lower + "|" + r.getUnit(),
+                    k -> new Series(group, sensorType, r.getUnit()));
+            s.devices.add(device.getCompositeId());
+            s.buckets.computeIfAbsent(r.getBucketTime(), BucketAccumulator::new).add(r);
+        }
+
+        Map<String, Integer> requestedOrder = new HashMap<>();
+        for (String lower : requestedByLower.keySet()) {
+            requestedOrder.put(lower, requestedOrder.size());
+        }
+        boolean downsample = maxPoints != null
+                && (bucketTo.getEpochSecond() - bucketFrom.getEpochSecond()) / bucketSeconds > maxPoints;
+        HistoryDownsampling mode = downsampling != null ? downsampling : HistoryDownsampling.LTTB;
+
+        List<GroupedSensorData> out = new ArrayList<>(series.size());
+        series.values().stream()
+                .sorted(Comparator.comparing((Series s) -> s.group)
+                        .thenComparingInt(s -> requestedOrder.getOrDefault(
+                                s.sensorType.toLowerCase(Locale.ROOT), Integer.MAX_VALUE)))
+                .forEach(s -> {
+                    List<TimestampValue> data = new ArrayList<>(downsample ? maxPoints : s.buckets.size());
+                    HistoryDownsampling.Sampler sampler = downsample
+                            ? mode.sampler(bucketFrom, bucketTo, maxPoints, data)
+                            : null;
+                    for (BucketAccumulator b : s.buckets.values()) {
+                        Object value = statistic.select(b);
+                        if (sampler != null) {
+                            sampler.add(b.bucketTime, value);
+                        } else {
+                            data.add(new TimestampValue(b.bucketTime, value));
+                        }
+                    }
+                    if (sampler != null) {
+                        sampler.finish();
+                    }
+                    out.add(new GroupedSensorData(s.group, s.sensorType, s.unit, s.devices.size(), data));
+                });
+        return new GroupHistoryResponse(bucketFrom, bucketTo, groupBy.name().toLowerCase(Locale.ROOT), out);
+    }
+
+    private Map<String, Device> resolveDevices(String system, String rack, String layer, List<String> compositeIds) {
+        List<Device> found;
+        if (compositeIds != null && !compositeIds.isEmpty()) {
+            Set<String> requested = new LinkedHashSet<>(compositeIds);
+            if (requested.size() > MAX_DEVICES) {
+                throw new IllegalArgumentException("At most " + MAX_DEVICES + " devices per request");
+            }
+            found = deviceRepository.findAllById(requested);
+            Set<String> known = new HashSet<>();
+            found.forEach(d -> known.add(d.getCompositeId()));
+            List<String> missing = requested.stream().filter(id -> !known.contains(id)).toList();
+            if (!missing.isEmpty()) {
+                throw new IllegalArgumentException("Unknown device composite_id(s): " + String.join(",", missing));
+            }
+        } else if (system != null && !system.isBlank()) {
+            found = deviceRepository.findBySystemAndOptionalRackAndLayer(system, blankToNull(rack), blankToNull(layer));
+            if (found.size() > MAX_DEVICES) {
+                throw new IllegalArgumentException("Selector matches more than " + MAX_DEVICES + " devices");
+            }
+        } else {
+            throw new IllegalArgumentException("Either compositeId or system is required");
+        }
+        Map<String, Device> devices = new LinkedHashMap<>();
+        found.forEach(d -> devices.put(d.getCompositeId(), d));
+        return devices;
+    }
+
+    /**
+     * Every stored spelling of the requested types across the devices, so one
+     * exact-match query covers devices that report e.g. {@code PPM} and {@code ppm}.
+     */
+    private List<String> canonicalizeSensorTypes(Set<String> compositeIds, Collection<String> sensorTypes) {
+        Map<String, Set<String>> spellings = new HashMap<>();
+        for (LatestSensorValue value : latestSensorValueRepository.findByDevice_CompositeIdIn(compositeIds)) {
+            String sensorType = value.getSensorType();
+            if (sensorType == null) continue;
+            spellings.computeIfAbsent(sensorType.toLowerCase(Locale.ROOT), k -> new LinkedHashSet<>()).add(sensorType);
+        }
+        Set<String> resolved = new LinkedHashSet<>();
+        for (String requested : sensorTypes) {
+            Set<String> known = spellings.get(requested.toLowerCase(Locale.ROOT));
+            if (known != null) {
+                resolved.addAll(known);
+            } else {
+                resolved.add(requested);
+            }
+        }
+        return new ArrayList<>(resolved);
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    private static final class Series {
+        final String group;
+        final String sensorType;
+        final String unit;
+        final Set<String> devices = new HashSet<>();
+        final TreeMap<Instant, BucketAccumulator> buckets = new TreeMap<>();
+
+        Series(String group, String sensorType, String unit) {
+            this.group = group;
+            this.sensorType = sensorType;
+            this.unit = unit;
+        }
+    }
+
+    /** One bucket merged over the devices of a group. */
+    private static final class BucketAccumulator implements RecordService.SensorAggregateResult {
+        final Instant bucketTime;
+        long count;
+        double sum;
+        double sumSq;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double lastSum;
+        int lastCount;
+        String sensorType;
+        String unit;
+
+        BucketAccumulator(Instant bucketTime) {
+            this.bucketTime = bucketTime;
+        }
+
+        void add(RecordService.SensorAggregateResult r) {
+            Double avg = r.getAvgValue();
+            if (avg == null) return;
+            sensorType = r.getSensorType();
+            unit = r.getUnit();
+            long n = r.getSampleCount() != null ? r.getSampleCount() : 1;
+            count += n;
+            sum += avg * n;
+            sumSq += r.getSumSqValue() != null ? r.getSumSqValue() : avg * avg * n;
+            min = Math.min(min, r.getMinValue() != null ? r.getMinValue() : avg);
+            max = Math.max(max, r.getMaxValue() != null ? r.getMaxValue() : avg);
+            lastSum += r.getLastValue() != null ? r.getLastValue() : avg;
+            lastCount++;
+        }
+
+        @Override public String getSensorType() { return sensorType; }
+        @Override public String getUnit() { return unit; }
+        @Override public Instant getBucketTime() { return bucketTime; }
+        @Override public Double getAvgValue() { return count == 0 ? null : sum / count; }
+        @Override public Double getMinValue() { return count == 0 ? null : min; }
+        @Override public Double getMaxValue() { return count == 0 ? null : max; }
+        @Override public Double getLastValue() { return lastCount == 0 ? null : lastSum / lastCount; }
+        @Override public Long getSampleCount() { return count; }
+        @Override public Double getSumSqValue() { return count == 0 ? null : sumSq; }
+    }
+}
@@ -0,0 +1,62 @@
+package se.hydroleaf.service;
+
+import java.util.Locale;
+
+/**
+ * Statistic returned per bucket by the aggregated history endpoint.
+ *
+ * <p>{@link #P95_APPROX} assumes a roughly normal distribution within the
+ * bucket and estimates the 95th percentile as {@code mean + 1.645 * stddev},
+ * clamped to the observed maximum; raw samples are not retained.</p>
+ */
+public enum HistoryAggregation {
+    AVG,
+    MIN,
+    MAX,
+    LAST,
+    P95_APPROX;
+
+    private static final double Z_95 = 1.645;
+
+    public static HistoryAggregation fromParam(String value) {
+        if (value == null || value.isBlank()) {
+            return AVG;
+        }
+        return switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "avg", "mean" -> AVG;
+            case "min" -> MIN;
+            case "max" -> MAX;
+            case "last" -> LAST;
+            case "p95", "p95-approx" -> P95_APPROX;
+            default -> throw new IllegalArgumentException("Unsupported agg: " + value);
+        };
+    }
+
+    /**
+     * Picks the statistic from a bucket, falling back to the average for rows
+     * written before rollup columns existed.
+     */
+    public Double select(RecordService.SensorAggregateResult r) {
+        Double avg = r.getAvgValue();
+        return switch (this) {
+            case AVG -> avg;
+            case MIN -> r.getMinValue() != null ? r.getMinValue() : avg;
+            case MAX -> r.getMaxValue() != null ? r.getMaxValue() : avg;
+            case LAST -> r.getLastValue() != null ? r.getLastValue() : avg;
+            case P95_APPROX -> p95(r);
+        };
+    }
+
+    private static Double p95(RecordService.SensorAggregateResult r) {
+        Double avg = r.getAvgValue();
+        Long n = r.getSampleCount();
+        Double sumSq = r.getSumSqValue();
+        if (avg == null || n == null || n < 2 || sumSq == null) {
+            return r.getMaxValue() != null ? r.getMaxValue() : avg;
+        }
+        double variance = Math.max(0.0, sumSq / n - avg * avg);
+        double estimate = avg + Z_95 * Math.sqrt(variance);
+        Double max = r.getMaxValue();
+        return max != null ? Math.min(estimate, max) : estimate;
+    }
+}
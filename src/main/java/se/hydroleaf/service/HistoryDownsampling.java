@@ -0,0 +1,259 @@
+package se.hydroleaf.service;
+
+import se.hydroleaf.repository.dto.history.TimestampValue;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reduces an aggregated history series to at most {@code maxPoints} points.
+ *
+ * <p>Both modes run in one pass over time-ordered buckets. The requested
+ * window is cut into equal time bins, so bin boundaries are known before the
+ * first row arrives and only the bins being decided are held in memory.</p>
+ *
+ * <ul>
+ *   <li>{@link #LTTB} keeps the first and last point and, per bin, the point
+ *   forming the largest triangle with the previously kept point and the
+ *   average of the next non-empty bin (Largest-Triangle-Three-Buckets).</li>
+ *   <li>{@link #MIN_MAX} keeps the minimum and maximum of each bin in time
+ *   order, so peaks and troughs survive.</li>
+ * </ul>
+ *
+ * <p>Buckets without a value carry nothing to draw and are skipped.</p>
+ */
+public enum HistoryDownsampling {
+    LTTB,
+    MIN_MAX;
+
+    public static final int MIN_POINTS = 3;
+
+    public static HistoryDownsampling fromParam(String value) {
+        if (value == null || value.isBlank()) {
+            return LTTB;
+        }
+        return switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "lttb" -> LTTB;
+            case "minmax", "min-max", "min_max" -> MIN_MAX;
+            default -> throw new IllegalArgumentException("Unsupported downsample: " + value);
+        };
+    }
+
+    /**
+     * Starts a series over {@code [from, to)} that appends its kept points to {@code out}.
+     */
+    public Sampler sampler(Instant from, Instant to, int maxPoints, List<TimestampValue> out) {
+        if (maxPoints < MIN_POINTS) {
+            throw new IllegalArgumentException("maxPoints must be at least " + MIN_POINTS);
+        }
+        return switch (this) {
+            case LTTB -> new Lttb(from, to, maxPoints - 2, out);
+            case MIN_MAX -> new MinMax(from, to, maxPoints / 2, out);
+        };
+    }
+
+    public interface Sampler {
+        void add(Instant timestamp, Object value);
+
+        /** Emits whatever is still held back; call once after the last bucket. */
+        void finish();
+    }
+
+    /** Points of one time bin, in arrival order. */
+    private static final class Bin {
+        int index = -1;
+        Instant[] times = new Instant[8];
+        double[] values = new double[8];
+        int size;
+        double sumMillis;
+        double sumValues;
+
+        void reset(int index) {
+            this.index = index;
+            size = 0;
+            sumMillis = 0;
+            sumValues = 0;
+        }
+
+        void add(Instant t, double v) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            times[size] = t;
+            values[size] = v;
+            size++;
+            sumMillis += t.toEpochMilli();
+            sumValues += v;
+        }
+    }
+
+    private abstract static class BinnedSampler implements Sampler {
+        private final long fromMillis;
+        private final long spanMillis;
+        private final int bins;
+        final List<TimestampValue> out;
+
+        BinnedSampler(Instant from, Instant to, int bins, List<TimestampValue> out) {
+            this.fromMillis = from.toEpochMilli();
+            this.spanMillis = Math.max(1, to.toEpochMilli() - fromMillis);
+            this.bins = Math.max(1, bins);
+            this.out = out;
+        }
+
+        int binOf(Instant t) {
+            long offset = t.toEpochMilli() - fromMillis;
+            if (offset <= 0) {
+                return 0;
+            }
+            return (int) Math.min(bins - 1, offset * bins / spanMillis);
+        }
+
+        void emit(Instant t, double v) {
+            out.add(new TimestampValue(t, v));
+        }
+    }
+
+    private static final class Lttb extends BinnedSampler {
+        private Bin current = new Bin();
+        private Bin next = new Bin();
+        private boolean started;
+        private Instant anchorTime;
+        private double anchorValue;
+        private Instant heldTime;
+        private double heldValue;
+
+        Lttb(Instant from, Instant to, int bins, List<TimestampValue> out) {
+            super(from, to, bins, out);
+        }
+
+        @Override
+        public void add(Instant timestamp, Object value) {
+            if (!(value instanceof Number number)) {
+                return;
+            }
+            double v = number.doubleValue();
+            if (!started) {
+                started = true;
+                keep(timestamp, v);
+                return;
+            }
+            // the latest point is held back until we know it is not the last one
+            if (heldTime != null) {
+                push(heldTime, heldValue);
+            }
+            heldTime = timestamp;
+            heldValue = v;
+        }
+
+        @Override
+        public void finish() {
+            if (heldTime == null) {
+                return;
+            }
+            if (next.size > 0) {
+                if (current.size > 0) {
+                    select(current, next.sumMillis / next.size, next.sumValues / next.size);
+                }
+                select(next, heldTime.toEpochMilli(), heldValue);
+            } else if (current.size > 0) {
+                select(current, heldTime.toEpochMilli(), heldValue);
+            }
+            keep(heldTime, heldValue);
+            heldTime = null;
+        }
+
+        private void push(Instant t, double v) {
+            int bin = Math.max(binOf(t), next.index);
+            if (bin != next.index) {
+                if (current.size > 0) {
+                    select(current, next.sumMillis / next.size, next.sumValues / next.size);
+                }
+                Bin recycled = current;
+                current = next;
+                next = recycled;
+                next.reset(bin);
+            }
+            next.add(t, v);
+        }
+
+        private void select(Bin bin, double nextMillis, double nextValue) {
+            double ax = anchorTime.toEpochMilli();
+            double ay = anchorValue;
+            int best = 0;
+            double bestArea = -1;
+            for (int i = 0; i < bin.size; i++) {
+                double area = Math.abs((ax - nextMillis) * (bin.values[i] - ay)
+                        - (ax - bin.times[i].toEpochMilli()) * (nextValue - ay));
+                if (area > bestArea) {
+                    bestArea = area;
+                    best = i;
+                }
+            }
+            keep(bin.times[best], bin.values[best]);
+            bin.size = 0;
+        }
+
+        private void keep(Instant t, double v) {
+            anchorTime = t;
+            anchorValue = v;
+            emit(t, v);
+        }
+    }
+
+    private static final class MinMax extends BinnedSampler {
+        private int bin = -1;
+        private Instant minTime;
+        private double minValue;
+        private Instant maxTime;
+        private double maxValue;
+
+        MinMax(Instant from, Instant to, int bins, List<TimestampValue> out) {
+            super(from, to, bins, out);
+        }
+
+        @Override
+        public void add(Instant timestamp, Object value) {
+            if (!(value instanceof Number number)) {
+                return;
+            }
+            double v = number.doubleValue();
+            int b = Math.max(binOf(timestamp), bin);
+            if (b != bin) {
+                finish();
+                bin = b;
+                minTime = maxTime = timestamp;
+                minValue = maxValue = v;
+                return;
+            }
+            if (v < minValue) {
+                minTime = timestamp;
+                minValue = v;
+            }
+            if (v > maxValue) {
+                maxTime = timestamp;
+                maxValue = v;
+            }
+        }
+
+        @Override
+        public void finish() {
+            if (minTime == null) {
+                return;
+            }
+            if (minTime.equals(maxTime)) {
+                emit(minTime, minValue);
+            } else if (minTime.isBefore(maxTime)) {
+                emit(minTime, minValue);
+                emit(maxTime, maxValue);
+            } else {
+                emit(maxTime, maxValue);
+                emit(minTime, minValue);
+            }
+            minTime = null;
+            maxTime = null;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package se.hydroleaf.service;
+
+import java.util.Locale;
+
+/**
+ * Wire formats of the history export endpoint.
+ */
+public enum HistoryExportFormat {
+    NDJSON("application/x-ndjson", "ndjson"),
+    CSV("text/csv", "csv");
+
+    private final String contentType;
+    private final String extension;
+
+    HistoryExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    public static HistoryExportFormat fromParam(String value) {
+        if (value == null || value.isBlank()) {
+            return NDJSON;
+        }
+        return switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "ndjson", "jsonl" -> NDJSON;
+            case "csv" -> CSV;
+            default -> throw new IllegalArgumentException("Unsupported format: " + value);
+        };
+    }
+}
@@ -0,0 +1,165 @@
+package se.hydroleaf.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+import se.hydroleaf.repository.DeviceRepository;
+import se.hydroleaf.repository.SensorValueHistoryExportReader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Exports raw per-minute history of one device as NDJSON or CSV.
+ *
+ * <p>{@link #prepare} validates the request up front so problems surface as a
+ * 400 before any bytes are written; {@link #write} then streams rows from the
+ * database cursor straight into the response without collecting them.</p>
+ */
+@Service
+public class HistoryExportService {
+
+    static final Duration MAX_RANGE = Duration.ofDays(366);
+
+    private static final String CSV_HEADER = "time,composite_id,sensor_type,value,min,max,last,sample_count\n";
+
+    private final DeviceRepository deviceRepository;
+    private final SensorValueHistoryExportReader reader;
+    private final ObjectMapper objectMapper;
+
+    public HistoryExportService(DeviceRepository deviceRepository,
+                                SensorValueHistoryExportReader reader,
+                                ObjectMapper objectMapper) {
+        this.deviceRepository = deviceRepository;
+        this.reader = reader;
+        this.objectMapper = objectMapper;
+    }
+
+    public record Export(String compositeId,
+                         Instant from,
+                         Instant to,
+                         List<String> sensorTypes,
+                         HistoryExportFormat format) {
+
+        public String fileName() {
+            return compositeId + "_" + from.getEpochSecond() + "_" + to.getEpochSecond() + "." + format.extension();
+        }
+    }
+
+    public Export prepare(String compositeId,
+                          Instant from,
+                          Instant to,
+                          List<String> sensorTypes,
+                          HistoryExportFormat format) {
+        if (from == null || to == null) throw new IllegalArgumentException("from/to are required");
+        if (!to.isAfter(from)) throw new IllegalArgumentException("'to' must be after 'from'");
+        if (Duration.between(from, to).compareTo(MAX_RANGE) > 0) {
+            throw new IllegalArgumentException("Range exceeds " + MAX_RANGE.toDays() + " days");
+        }
+        if (!deviceRepository.existsById(compositeId)) {
+            throw new IllegalArgumentException("Unknown device composite_id: " + compositeId);
+        }
+        return new Export(compositeId, from, to,
+                sensorTypes == null ? List.of() : List.copyOf(sensorTypes),
+                format != null ? format : HistoryExportFormat.NDJSON);
+    }
+
+    public void write(Export export, OutputStream out) throws IOException {
+        try {
+            switch (export.format()) {
+                case NDJSON -> writeNdjson(export, out);
+                case CSV -> writeCsv(export, out);
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private void writeNdjson(Export export, OutputStream out) throws IOException {
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            json.setRootValueSeparator(null); // lines are separated explicitly below
+            reader.stream(export.compositeId(), export.from(), export.to(), export.sensorTypes(), row -> {
+                try {
+                    json.writeStartObject();
+                    json.writeStringField("time", row.getValueTime().toInstant().toString());
+                    json.writeStringField("compositeId", row.getCompositeId());
+                    json.writeStringField("sensorType", row.getSensorType());
+                    json.writeNumberField("value", row.getValue());
+                    writeNullable(json, "min", row.getMin());
+                    writeNullable(json, "max", row.getMax());
+                    writeNullable(json, "last", row.getLast());
+                    if (row.getSampleCount() < 0) {
+                        json.writeNullField("count");
+                    } else {
+                        json.writeNumberField("count", row.getSampleCount());
+                    }
+                    json.writeEndObject();
+                    json.writeRaw('\n');
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        }
+    }
+
+    private void writeCsv(Export export, OutputStream out) throws IOException {
+        Writer csv = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        csv.write(CSV_HEADER);
+        reader.stream(export.compositeId(), export.from(), export.to(), export.sensorTypes(), row -> {
+            try {
+                csv.write(row.getValueTime().toInstant().toString());
+                csv.write(',');
+                csv.write(csvField(row.getCompositeId()));
+                csv.write(',');
+                csv.write(csvField(row.getSensorType()));
+                csv.write(',');
+                csv.write(Double.toString(row.getValue()));
+                csv.write(',');
+                csv.write(csvNumber(row.getMin()));
+                csv.write(',');
+                csv.write(csvNumber(row.getMax()));
+                csv.write(',');
+                csv.write(csvNumber(row.getLast()));
+                csv.write(',');
+                if (row.getSampleCount() >= 0) {
+                    csv.write(Long.toString(row.getSampleCount()));
+                }
+                csv.write('\n');
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        csv.flush();
+    }
+
+    private static void writeNullable(JsonGenerator json, String field, double value) throws IOException {
+        if (Double.isNaN(value)) {
+            json.writeNullField(field);
+        } else {
+            json.writeNumberField(field, value);
+        }
+    }
+
+    private static String csvNumber(double value) {
+        return Double.isNaN(value) ? "" : Double.toString(value);
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,34 @@
+package se.hydroleaf.service;
+
+import se.hydroleaf.model.Device;
+
+import java.util.Locale;
+
+/**
+ * How the series of a group history request are combined across devices.
+ */
+public enum HistoryGrouping {
+    DEVICE,
+    LAYER,
+    RACK;
+
+    public static HistoryGrouping fromParam(String value) {
+        if (value == null || value.isBlank()) {
+            return DEVICE;
+        }
+        return switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "device" -> DEVICE;
+            case "layer" -> LAYER;
+            case "rack" -> RACK;
+            default -> throw new IllegalArgumentException("Unsupported groupBy: " + value);
+        };
+    }
+
+    public String keyOf(Device device) {
+        return switch (this) {
+            case DEVICE -> device.getCompositeId();
+            case LAYER -> device.getSystem() + "-" + device.getRack() + "-" + device.getLayer();
+            case RACK -> device.getSystem() + "-" + device.getRack();
+        };
+    }
+}
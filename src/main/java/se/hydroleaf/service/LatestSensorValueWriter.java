@@ -0,0 +1,138 @@
+package se.hydroleaf.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import se.hydroleaf.repository.LatestSensorValueUpsertRepository;
+import se.hydroleaf.repository.dto.LatestSensorValueUpsert;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer for {@code latest_sensor_value}.
+ *
+ * <p>Readings are coalesced in memory per (composite_id, sensor_type), keeping
+ * only the one with the newest {@code value_time}, and flushed as one batched
+ * upsert every {@code telemetry.latest-values.flush-interval-ms} or as soon as
+ * {@code telemetry.latest-values.max-pending} keys are waiting.</p>
+ */
+@Service
+public class LatestSensorValueWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(LatestSensorValueWriter.class);
+
+    private record Key(String compositeId, String sensorType) { }
+
+    private final ConcurrentMap<Key, LatestSensorValueUpsert> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean earlyFlushRequested = new AtomicBoolean();
+    private final LatestSensorValueUpsertRepository repository;
+    private final TaskExecutor executor;
+    private final int maxPending;
+
+    public LatestSensorValueWriter(LatestSensorValueUpsertRepository repository,
+                                   @Qualifier("scheduler") TaskExecutor executor,
+                                   @Value("${telemetry.latest-values.max-pending:1000}") int maxPending) {
+        this.repository = repository;
+        this.executor = executor;
+        this.maxPending = Math.max(1, maxPending);
+    }
+
+    public void write(String compositeId, String sensorType, double value, String unit, Instant valueTime) {
+        LatestSensorValueUpsert row = new LatestSensorValueUpsert(compositeId, sensorType, value, unit, valueTime);
+        pending.merge(new Key(compositeId, sensorType), row, LatestSensorValueWriter::newest);
+        if (pending.size() >= maxPending && earlyFlushRequested.compareAndSet(false, true)) {
+            executor.execute(this::flush);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${telemetry.latest-values.flush-interval-ms:500}", scheduler = "scheduler")
+    public void flush() {
+        earlyFlushRequested.set(false);
+        if (pending.isEmpty() || !flushLock.tryLock()) {
+            return;
+        }
+        try {
+            writePending();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a running flush instead of skipping, then writes until nothing
+     * is pending, so values added while that flush was writing are not lost.
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushLock.lock();
+        try {
+            while (!pending.isEmpty()) {
+                writePending();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void writePending() {
+        List<LatestSensorValueUpsert> batch = drain();
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            repository.upsertAll(batch);
+        } catch (Exception ex) {
+            log.warn("Batched latest_sensor_value upsert of {} rows failed; retrying row by row: {}",
+                    batch.size(), ex.getMessage());
+            writeIndividually(batch);
+        }
+    }
+
+    int pendingCount() {
+        return pending.size();
+    }
+
+    private List<LatestSensorValueUpsert> drain() {
+        List<LatestSensorValueUpsert> batch = new ArrayList<>(pending.size());
+        for (Key key : pending.keySet()) {
+            LatestSensorValueUpsert row = pending.remove(key);
+            if (row != null) {
+                batch.add(row);
+            }
+        }
+        return batch;
+    }
+
+    private void writeIndividually(List<LatestSensorValueUpsert> batch) {
+        int dropped = 0;
+        for (LatestSensorValueUpsert row : batch) {
+            try {
+                repository.upsert(row);
+            } catch (Exception ex) {
+                dropped++;
+                log.error("Dropped latest_sensor_value compositeId={} sensorType={} value={} valueTime={}: {}",
+                        row.compositeId(), row.sensorType(), row.value(), row.valueTime(), ex.getMessage());
+            }
+        }
+        if (dropped > 0) {
+            log.error("Dropped {} of {} latest_sensor_value rows after the batched upsert failed",
+                    dropped, batch.size());
+        }
+    }
+
+    private static LatestSensorValueUpsert newest(LatestSensorValueUpsert current, LatestSensorValueUpsert candidate) {
+        return candidate.valueTime().isBefore(current.valueTime()) ? current : candidate;
+    }
+}
@@ -0,0 +1,201 @@
+package se.hydroleaf.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import se.hydroleaf.repository.LatestSensorValueAggregationRepository;
+import se.hydroleaf.repository.dto.snapshot.LatestSensorValueRow;
+import se.hydroleaf.repository.dto.snapshot.LiveNowRow;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory averages of the latest sensor values per (system, layer, sensor
+ * type), the data behind the {@code /api/status} endpoints.
+ *
+ * <p>Ingest records every reading here next to the {@code latest_sensor_value}
+ * upsert. The newest value per device and sensor is kept, and each group holds
+ * a running sum and count that is adjusted by the difference when a device
+ * reports again, so a status read is a map lookup instead of a query over the
+ * whole {@code latest_sensor_value ⋈ device} join.</p>
+ *
+ * <p>Each group publishes an immutable {@link GroupStats} through a volatile
+ * field: readers never lock, writers serialize per group. Every change bumps
+ * {@link #version()}; {@link #averages} uses it to return a set of groups that
+ * was not modified while it was being read.</p>
+ *
+ * <p>The database is read once, when the application is ready. Until that has
+ * succeeded {@link #isLoaded()} is false and callers keep querying it.
+ * {@link RecordService} records readings once their message has committed,
+ * and {@link DeviceRegistry} evicts devices that were deleted.</p>
+ *
+ * <p>In clustered mode each instance only ingests part of the readings, so the
+ * snapshot is never loaded and status reads always go to the database.</p>
+ */
+@Slf4j
+@Component
+public class LiveSensorSnapshot {
+
+    private static final int CONSISTENT_READ_ATTEMPTS = 3;
+
+    public record GroupStats(String unit, double sum, long count, Instant recordTime) {
+        static final GroupStats EMPTY = new GroupStats(null, 0, 0, null);
+
+        public Double average() {
+            return count > 0 ? sum / count : null;
+        }
+    }
+
+    /** System and layer are case-insensitive, as in the database fallback query. */
+    private record GroupKey(String system, String layer, String sensorType) {
+        static GroupKey of(String system, String layer, String sensorType) {
+            return new GroupKey(system.toLowerCase(Locale.ROOT), layer.toLowerCase(Locale.ROOT), sensorType);
+        }
+    }
+
+    private record DeviceKey(String compositeId, String sensorType) { }
+
+    private record Latest(GroupKey group, double value, Instant time) { }
+
+    private static final class Group {
+        volatile GroupStats stats = GroupStats.EMPTY;
+    }
+
+    private final ConcurrentMap<GroupKey, Group> groups = new ConcurrentHashMap<>();
+    private final ConcurrentMap<DeviceKey, Latest> devices = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private final LatestSensorValueAggregationRepository repository;
+    private final boolean clustered;
+    private volatile boolean loaded;
+
+    public LiveSensorSnapshot(LatestSensorValueAggregationRepository repository,
+                              @Value("${cluster.enabled:false}") boolean clustered) {
+        this.repository = repository;
+        this.clustered = clustered;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (clustered) {
+            return;
+        }
+        try {
+            List<LatestSensorValueRow> rows = repository.fetchLatestSensorValues();
+            for (LatestSensorValueRow row : rows) {
+                Double value = row.getValue();
+                if (value != null) {
+                    record(row.system(), row.layer(), row.compositeId(), row.sensorType(), value, row.unit(),
+                            row.getValueTime());
+                }
+            }
+            loaded = true;
+            log.info("Loaded live sensor snapshot from {} latest values", rows.size());
+        } catch (RuntimeException ex) {
+            log.warn("Could not load live sensor snapshot; status averages are read from the database: {}",
+                    ex.getMessage());
+        }
+    }
+
+    /**
+     * Applies one reading. Readings older than the one already held for the
+     * device and sensor are ignored, so ingest and the startup load can
+     * interleave in any order.
+     */
+    public void record(String system, String layer, String compositeId, String sensorType,
+                       double value, String unit, Instant time) {
+        if (clustered || system == null || layer == null || compositeId == null || sensorType == null
+                || time == null) {
+            return;
+        }
+        GroupKey group = GroupKey.of(system, layer, sensorType);
+        devices.compute(new DeviceKey(compositeId, sensorType), (key, previous) -> {
+            if (previous != null && time.isBefore(previous.time())) {
+                return previous;
+            }
+            if (previous != null && previous.group().equals(group)) {
+                adjust(group, value - previous.value(), 0, unit, time);
+            } else {
+                if (previous != null) {
+                    // the device moved to another layer
+                    adjust(previous.group(), -previous.value(), -1, null, null);
+                }
+                adjust(group, value, 1, unit, time);
+            }
+            return new Latest(group, value, time);
+        });
+    }
+
+    /**
+     * Removes every reading of a device, e.g. once it was deleted, so it no
+     * longer counts towards its group's average.
+     */
+    public void evict(String compositeId) {
+        if (compositeId == null) {
+            return;
+        }
+        for (DeviceKey key : devices.keySet()) {
+            if (key.compositeId().equals(compositeId)) {
+                devices.computeIfPresent(key, (k, previous) -> {
+                    adjust(previous.group(), -previous.value(), -1, null, null);
+                    return null;
+                });
+            }
+        }
+    }
+
+    /**
+     * Averages of the requested sensor types in one system and layer, in the
+     * shape of {@link LatestSensorValueAggregationRepository#fetchLatestSensorAverages}.
+     * Groups without devices are left out.
+     */
+    public List<LiveNowRow> averages(String system, String layer, Collection<String> sensorTypes) {
+        List<LiveNowRow> rows = new ArrayList<>(sensorTypes.size());
+        for (int attempt = 0; attempt < CONSISTENT_READ_ATTEMPTS; attempt++) {
+            long before = version.get();
+            rows.clear();
+            for (String sensorType : sensorTypes) {
+                Group group = groups.get(GroupKey.of(system, layer, sensorType));
+                GroupStats stats = group != null ? group.stats : GroupStats.EMPTY;
+                if (stats.count() > 0) {
+                    rows.add(new LiveNowRow(system, layer, sensorType, stats.unit(), stats.average(),
+                            stats.count(), stats.recordTime()));
+                }
+            }
+            if (version.get() == before) {
+                break;
+            }
+        }
+        return rows;
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    private void adjust(GroupKey key, double deltaSum, long deltaCount, String unit, Instant time) {
+        Group group = groups.computeIfAbsent(key, k -> new Group());
+        synchronized (group) {
+            GroupStats current = group.stats;
+            Instant recordTime = time == null
+                    || (current.recordTime() != null && current.recordTime().isAfter(time))
+                    ? current.recordTime()
+                    : time;
+            group.stats = new GroupStats(unit != null ? unit : current.unit(),
+                    current.sum() + deltaSum, current.count() + deltaCount, recordTime);
+        }
+        version.incrementAndGet();
+    }
+}
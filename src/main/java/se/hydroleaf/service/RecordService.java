@@ -5,17 +5,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import se.hydroleaf.mqtt.MqttTopicParser;
+import se.hydroleaf.mqtt.TelemetryReading;
 import se.hydroleaf.repository.dto.history.AggregatedHistoryResponse;
 import se.hydroleaf.repository.dto.history.AggregatedSensorData;
 import se.hydroleaf.repository.dto.history.TimestampValue;
-import se.hydroleaf.model.ActuatorStatus;
 import se.hydroleaf.model.Device;
 import se.hydroleaf.model.LatestSensorValue;
 import se.hydroleaf.model.TopicName;
-import se.hydroleaf.repository.ActuatorStatusRepository;
 import se.hydroleaf.repository.DeviceRepository;
 import se.hydroleaf.repository.LatestSensorValueRepository;
+import se.hydroleaf.service.DeviceRegistry.DeviceSnapshot;
 import se.hydroleaf.util.InstantUtil;
 
 import java.time.Instant;
@@ -27,7 +29,10 @@ import java.util.*;
  *
  * <p>Sensor readings are buffered for periodic aggregation into
  * {@code sensor_value_history} while the latest value per device and type is
- * mirrored in the {@code latest_sensor_value} table immediately. Aggregated
+ * coalesced by {@link LatestSensorValueWriter} and upserted into the
+ * {@code latest_sensor_value} table in batches; both only see a message's
+ * readings once its transaction has committed. Devices are looked up in
+ * the {@link DeviceRegistry} cache rather than per message. Aggregated
  * history queries are delegated to {@link SensorAggregationReader}
  * implementations.</p>
  */
@@ -36,24 +41,36 @@ public class RecordService {
 
     private static final Logger log = LoggerFactory.getLogger(RecordService.class);
 
+    /** A reading held back until the record commits. */
+    private record Reading(String sensorType, double value, String unit) { }
+
     private final DeviceRepository deviceRepository;
-    private final ActuatorStatusRepository actuatorStatusRepository;
     private final SensorAggregationReader aggregationReader; // thin facade over custom repo/projection
     private final LatestSensorValueRepository latestSensorValueRepository;
     private final SensorValueBuffer sensorValueBuffer;
+    private final LatestSensorValueWriter latestSensorValueWriter;
+    private final DeviceRegistry deviceRegistry;
+    private final LiveSensorSnapshot liveSensorSnapshot;
+    private final ActuatorStatusRecorder actuatorStatusRecorder;
 
     public RecordService(
             DeviceRepository deviceRepository,
-            ActuatorStatusRepository actuatorStatusRepository,
             SensorAggregationReader aggregationReader,
             LatestSensorValueRepository latestSensorValueRepository,
-            SensorValueBuffer sensorValueBuffer
+            SensorValueBuffer sensorValueBuffer,
+            LatestSensorValueWriter latestSensorValueWriter,
+            DeviceRegistry deviceRegistry,
+            LiveSensorSnapshot liveSensorSnapshot,
+            ActuatorStatusRecorder actuatorStatusRecorder
     ) {
         this.deviceRepository = deviceRepository;
-        this.actuatorStatusRepository = actuatorStatusRepository;
         this.aggregationReader = aggregationReader;
         this.latestSensorValueRepository = latestSensorValueRepository;
         this.sensorValueBuffer = sensorValueBuffer;
+        this.latestSensorValueWriter = latestSensorValueWriter;
+        this.deviceRegistry = deviceRegistry;
+        this.liveSensorSnapshot = liveSensorSnapshot;
+        this.actuatorStatusRecorder = actuatorStatusRecorder;
     }
 
     @Transactional
@@ -64,164 +81,100 @@ public class RecordService {
     @Transactional
     public void saveRecord(String compositeId, JsonNode json, TopicName topic, String mqttTopic,
                            MqttTopicParser.ParsedTopic parsedTopic) {
+        saveRecord(compositeId, TelemetryReading.of(json), topic, mqttTopic, parsedTopic);
+    }
+
+    @Transactional
+    public void saveRecord(String compositeId, TelemetryReading reading, TopicName topic, String mqttTopic,
+                           MqttTopicParser.ParsedTopic parsedTopic) {
         Objects.requireNonNull(compositeId, "compositeId is required");
 
         String normalizedId = normalizeCompositeId(compositeId);
 
-        final Device device = deviceRepository.findById(normalizedId)
-                .orElseGet(() -> autoRegisterDevice(normalizedId, topic));
-        String rack = parsedTopic != null ? parsedTopic.rack() : device.getRack();
+        final DeviceSnapshot device = deviceRegistry.resolve(normalizedId, topic);
+        String rack = parsedTopic != null ? parsedTopic.rack() : device.rack();
         if (rack != null) {
             ensureTopicForRack(device, rack, topic);
         }
 
-        final Instant ts = parseTimestamp(json.path("timestamp")).orElseGet(Instant::now);
+        final Instant ts = reading.timestamp() != null ? reading.timestamp() : Instant.now();
 
-        String messageKind = parsedTopic != null ? parsedTopic.kind() : readText(json, "kind");
+        String messageKind = parsedTopic != null ? parsedTopic.kind() : reading.kind();
         boolean isTelemetry = messageKind == null || "telemetry".equalsIgnoreCase(messageKind);
-        String deviceId = parsedTopic != null ? parsedTopic.deviceId() : readText(json, "deviceId");
+        String deviceId = parsedTopic != null ? parsedTopic.deviceId() : reading.deviceId();
         if (deviceId == null) {
-            deviceId = device.getDeviceId();
+            deviceId = device.deviceId();
         }
 
-        boolean storedMetric = false;
+        List<Reading> readings = new ArrayList<>();
         if (isTelemetry) {
-            storedMetric |= storeNumericMetric(json.get("lux"), normalizedId, device, "lux", "lux", ts);
-            storedMetric |= storeNumericMetric(json.get("rh_pct"), normalizedId, device, "rh_pct", "%", ts);
-            storedMetric |= storeNumericMetric(json.get("co2_ppm"), normalizedId, device, "co2_ppm", "ppm", ts);
-
-            storedMetric |= storeNumericMetric(json.get("layer_temp_c"), normalizedId, device,
-                    "layer_temp_c", "C", ts);
-            storedMetric |= storeNumericMetric(json.get("air_temp_c"), normalizedId, device,
-                    "air_temp_c", "C", ts);
-            storedMetric |= storeNumericMetric(json.get("solution_temp_c"), normalizedId, device,
-                    "solution_temp_c", "C", ts);
-
-            JsonNode counts = json.get("as7343_counts");
-            if (counts != null && counts.isObject()) {
-                Iterator<Map.Entry<String, JsonNode>> fields = counts.fields();
-                while (fields.hasNext()) {
-                    Map.Entry<String, JsonNode> entry = fields.next();
-                    String key = entry.getKey();
-                    if (key == null || key.isBlank()) {
-                        continue;
-                    }
-                    String sensorType = "as7343_counts_" + key;
-                    storedMetric |= storeNumericMetric(entry.getValue(), normalizedId, device,
-                            sensorType, "counts", ts);
+            for (TelemetryReading.Metric metric : TelemetryReading.Metric.values()) {
+                if (reading.has(metric)) {
+                    readings.add(new Reading(metric.field(), reading.get(metric), metric.unit()));
                 }
             }
+            for (int i = 0; i < reading.countSize(); i++) {
+                readings.add(new Reading("as7343_counts_" + reading.countName(i), reading.countValue(i), "counts"));
+            }
+            storeAfterCommit(device, normalizedId, ts, readings);
         }
 
-        if (isTelemetry && !storedMetric) {
+        if (isTelemetry && readings.isEmpty()) {
             String topicLabel = mqttTopic != null ? mqttTopic : (topic != null ? topic.name() : "unknown");
             log.warn("Telemetry payload contains no supported metrics (topic={}, deviceId={})", topicLabel, deviceId);
         }
 
-        // Optional controllers array for actuator statuses
-        JsonNode controllers = json.path("controllers");
-        if (controllers.isArray()) {
-            List<ActuatorStatus> statuses = new ArrayList<>();
-            for (JsonNode c : controllers) {
-                String type = c.path("name").asText(null);
-                if (type == null) continue;
-                JsonNode stateNode = c.path("state");
-                if (!stateNode.isBoolean()) continue;
-                ActuatorStatus as = new ActuatorStatus();
-                as.setDevice(device);
-                as.setTimestamp(parseTimestamp(c.path("timestamp")).orElse(ts));
-                as.setActuatorType(type);
-                as.setState(stateNode.asBoolean());
-                statuses.add(as);
-            }
-            if (!statuses.isEmpty()) {
-                actuatorStatusRepository.saveAll(statuses);
+        // Optional controllers array for actuator statuses; history only keeps state changes
+        if (reading.controllerSize() > 0) {
+            Device deviceRef = deviceRepository.getReferenceById(normalizedId);
+            for (int i = 0; i < reading.controllerSize(); i++) {
+                Instant controllerTime = reading.controllerTime(i) != null ? reading.controllerTime(i) : ts;
+                actuatorStatusRecorder.record(deviceRef, reading.controllerName(i), reading.controllerState(i),
+                        controllerTime);
             }
         }
     }
 
-    private boolean storeNumericMetric(JsonNode valueNode,
-                                       String compositeId,
-                                       Device device,
-                                       String sensorType,
-                                       String unit,
-                                       Instant ts) {
-        Double num = readDouble(valueNode).orElse(null);
-        if (num == null) {
-            return false;
-        }
-
-        sensorValueBuffer.add(compositeId, sensorType, num, ts);
-
-        LatestSensorValue lsv = latestSensorValueRepository
-                .findByDevice_CompositeIdAndSensorType(compositeId, sensorType)
-                .orElseGet(() -> {
-                    LatestSensorValue n = new LatestSensorValue();
-                    n.setDevice(device);
-                    n.setSensorType(sensorType);
-                    return n;
-                });
-        lsv.setValue(num);
-        lsv.setUnit(unit);
-        lsv.setValueTime(ts);
-        latestSensorValueRepository.save(lsv);
-        return true;
-    }
-
-    private String readText(JsonNode node, String... fieldNames) {
-        if (node == null || fieldNames == null) {
-            return null;
+    /**
+     * Hands the message's readings to {@link SensorValueBuffer},
+     * {@link LatestSensorValueWriter} and {@link LiveSensorSnapshot} once the
+     * record commits. They write on their own schedule and connection, so a
+     * rolled back message must not reach them.
+     */
+    private void storeAfterCommit(DeviceSnapshot device, String compositeId, Instant ts, List<Reading> readings) {
+        if (readings.isEmpty()) {
+            return;
         }
-
-        for (String fieldName : fieldNames) {
-            if (fieldName == null) {
-                continue;
-            }
-            JsonNode field = node.get(fieldName);
-            if (field != null && field.isTextual()) {
-                return field.asText();
+        Runnable store = () -> {
+            for (Reading reading : readings) {
+                sensorValueBuffer.add(compositeId, reading.sensorType(), reading.value(), ts);
+                latestSensorValueWriter.write(compositeId, reading.sensorType(), reading.value(), reading.unit(), ts);
+                liveSensorSnapshot.record(device.system(), device.layer(), compositeId, reading.sensorType(),
+                        reading.value(), reading.unit(), ts);
             }
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            store.run();
+            return;
         }
-
-        return null;
-    }
-
-    private Device autoRegisterDevice(String compositeId, TopicName topic) {
-        String[] parts = compositeId.split("-", 4);
-        if (parts.length < 4) {
-            throw new IllegalArgumentException("Invalid compositeId: " + compositeId);
-        }
-        Device device = new Device();
-        device.setCompositeId(compositeId);
-        device.setSystem(parts[0]);
-        device.setRack(parts[1]);
-        device.setLayer(parts[2]);
-        device.setDeviceId(parts[3]);
-        TopicName fallback = topic != null ? topic : TopicName.growSensors;
-        device.setTopic(resolveTopicForRack(parts[1], fallback));
-        deviceRepository.save(device);
-        log.info("Auto-registered unknown device {}", compositeId);
-        return device;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                store.run();
+            }
+        });
     }
 
-    private void ensureTopicForRack(Device device, String rack, TopicName fallback) {
+    private void ensureTopicForRack(DeviceSnapshot device, String rack, TopicName fallback) {
         if (device == null || rack == null) {
             return;
         }
-        TopicName desired = resolveTopicForRack(rack, fallback != null ? fallback : device.getTopic());
-        if (desired != null && desired != device.getTopic()) {
-            device.setTopic(desired);
-            deviceRepository.save(device);
+        TopicName desired = DeviceRegistry.topicForRack(rack, fallback != null ? fallback : device.topic());
+        if (desired != null && desired != device.topic()) {
+            deviceRegistry.updateTopic(device, desired);
         }
     }
 
-    private TopicName resolveTopicForRack(String rack, TopicName fallback) {
-        if (rack != null && rack.equalsIgnoreCase("germination")) {
-            return TopicName.germinationTopic;
-        }
-        return fallback;
-    }
-
     private String normalizeCompositeId(String compositeId) {
         String[] parts = compositeId.split("-", 4);
         if (parts.length == 4) {
@@ -255,8 +208,59 @@ public class RecordService {
             Integer bucketOffset,
             Integer sensorLimit,
             Integer sensorOffset
+    ) {
+        return aggregatedHistory(compositeId, from, to, bucket, sensorTypes,
+                bucketLimit, bucketOffset, sensorLimit, sensorOffset, HistoryAggregation.AVG);
+    }
+
+    @Transactional(readOnly = true)
+    public AggregatedHistoryResponse aggregatedHistory(
+            String compositeId,
+            Instant from,
+            Instant to,
+            String bucket,
+            List<String> sensorTypes,
+            Integer bucketLimit,
+            Integer bucketOffset,
+            Integer sensorLimit,
+            Integer sensorOffset,
+            HistoryAggregation aggregation
+    ) {
+        return aggregatedHistory(compositeId, from, to, bucket, sensorTypes,
+                bucketLimit, bucketOffset, sensorLimit, sensorOffset, aggregation, null, HistoryDownsampling.LTTB);
+    }
+
+    /**
+     * Aggregated history, optionally reduced to at most {@code maxPoints} points per
+     * series with the given {@link HistoryDownsampling}. Downsampling happens while the
+     * rows are collated, and is skipped when the window holds no more buckets than that.
+     * It cannot be combined with bucket paging.
+     */
+    @Transactional(readOnly = true)
+    public AggregatedHistoryResponse aggregatedHistory(
+            String compositeId,
+            Instant from,
+            Instant to,
+            String bucket,
+            List<String> sensorTypes,
+            Integer bucketLimit,
+            Integer bucketOffset,
+            Integer sensorLimit,
+            Integer sensorOffset,
+            HistoryAggregation aggregation,
+            Integer maxPoints,
+            HistoryDownsampling downsampling
     ) {
         if (from == null || to == null) throw new IllegalArgumentException("from/to are required");
+        if (maxPoints != null) {
+            if (maxPoints < HistoryDownsampling.MIN_POINTS) {
+                throw new IllegalArgumentException("maxPoints must be at least " + HistoryDownsampling.MIN_POINTS);
+            }
+            if (bucketLimit != null || bucketOffset != null) {
+                throw new IllegalArgumentException("maxPoints cannot be combined with bucketLimit/bucketOffset");
+            }
+        }
+        HistoryAggregation statistic = aggregation != null ? aggregation : HistoryAggregation.AVG;
         if (!deviceRepository.existsById(compositeId)) {
             throw new IllegalArgumentException("Unknown device composite_id: " + compositeId);
         }
@@ -269,27 +273,44 @@ public class RecordService {
 
         List<String> canonicalSensorTypes = sensorTypes;
         if (sensorTypes != null && !sensorTypes.isEmpty()) {
-            canonicalSensorTypes = canonicalizeSensorTypes(compositeId, sensorTypes);
+            canonicalSensorTypes = canonicalizeSensorTypes(compositeId, bucketFrom, bucketTo, sensorTypes);
         }
 
-        List<SensorAggregateResult> results = new ArrayList<>();
+        List<SensorAggregateResult> results;
         if (canonicalSensorTypes == null || canonicalSensorTypes.isEmpty()) {
-            results.addAll(aggregationReader.aggregate(compositeId, bucketFrom, bucketTo, bucket, null));
+            results = aggregationReader.aggregate(compositeId, bucketFrom, bucketTo, bucket, null);
+        } else if (canonicalSensorTypes.size() == 1) {
+            results = aggregationReader.aggregate(compositeId, bucketFrom, bucketTo, bucket, canonicalSensorTypes.get(0));
         } else {
-            for (String st : canonicalSensorTypes) {
-                results.addAll(aggregationReader.aggregate(compositeId, bucketFrom, bucketTo, bucket, st));
+            results = new ArrayList<>(aggregationReader.aggregateAll(compositeId, bucketFrom, bucketTo, bucket,
+                    canonicalSensorTypes));
+            // keep the series in the order they were requested
+            Map<String, Integer> requestedOrder = new HashMap<>();
+            for (int i = 0; i < canonicalSensorTypes.size(); i++) {
+                requestedOrder.putIfAbsent(canonicalSensorTypes.get(i), i);
             }
+            results.sort(Comparator.comparingInt(r -> requestedOrder.getOrDefault(r.getSensorType(), Integer.MAX_VALUE)));
         }
 
         // Collate by (sensorType|unit)
         Map<String, AggregatedSensorData> map = new LinkedHashMap<>();
+        boolean downsample = maxPoints != null
+                && (bucketTo.getEpochSecond() - bucketFrom.getEpochSecond()) / bucketSeconds > maxPoints;
+        Map<String, HistoryDownsampling.Sampler> samplers = downsample ? new HashMap<>() : Map.of();
+        HistoryDownsampling mode = downsampling != null ? downsampling : HistoryDownsampling.LTTB;
         for (SensorAggregateResult r : results) {
             String key = r.getSensorType() + "|" + r.getUnit();
             AggregatedSensorData agg = map.computeIfAbsent(key, k ->
                     new AggregatedSensorData(r.getSensorType(), r.getUnit(), new ArrayList<>())
             );
-            agg.data().add(new TimestampValue(r.getBucketTime(), r.getAvgValue()));
+            if (downsample) {
+                samplers.computeIfAbsent(key, k -> mode.sampler(bucketFrom, bucketTo, maxPoints, agg.data()))
+                        .add(r.getBucketTime(), statistic.select(r));
+            } else {
+                agg.data().add(new TimestampValue(r.getBucketTime(), statistic.select(r)));
+            }
         }
+        samplers.values().forEach(HistoryDownsampling.Sampler::finish);
 
         List<AggregatedSensorData> sensors = new ArrayList<>();
         for (AggregatedSensorData agg : map.values()) {
@@ -313,19 +334,33 @@ public class RecordService {
 
     // ---------- helpers ----------
 
-    private List<String> canonicalizeSensorTypes(String compositeId, List<String> sensorTypes) {
-        List<LatestSensorValue> latestValues = latestSensorValueRepository.findByDevice_CompositeId(compositeId);
-        if (latestValues.isEmpty()) {
-            return new ArrayList<>(new LinkedHashSet<>(sensorTypes));
-        }
-
+    /**
+     * Maps requested sensor types to their stored spelling, since the history queries match the exact case.
+     * Types without a latest value, e.g. no longer reported, are looked up in the history of the window.
+     */
+    private List<String> canonicalizeSensorTypes(String compositeId, Instant from, Instant to,
+                                                 List<String> sensorTypes) {
         Map<String, String> canonicalByLower = new LinkedHashMap<>();
-        for (LatestSensorValue value : latestValues) {
+        for (LatestSensorValue value : latestSensorValueRepository.findByDevice_CompositeId(compositeId)) {
             String sensorType = value.getSensorType();
             if (sensorType == null) continue;
             canonicalByLower.putIfAbsent(sensorType.toLowerCase(Locale.ROOT), sensorType);
         }
 
+        Set<String> unresolved = new LinkedHashSet<>();
+        for (String requested : sensorTypes) {
+            if (requested == null) continue;
+            String lower = requested.toLowerCase(Locale.ROOT);
+            if (!canonicalByLower.containsKey(lower)) {
+                unresolved.add(lower);
+            }
+        }
+        if (!unresolved.isEmpty()) {
+            for (String stored : aggregationReader.storedSensorTypes(compositeId, from, to, unresolved)) {
+                canonicalByLower.putIfAbsent(stored.toLowerCase(Locale.ROOT), stored);
+            }
+        }
+
         List<String> resolved = new ArrayList<>(sensorTypes.size());
         Set<String> dedup = new LinkedHashSet<>();
         for (String requested : sensorTypes) {
@@ -338,32 +373,70 @@ public class RecordService {
         return resolved;
     }
 
-    private Optional<Instant> parseTimestamp(JsonNode node) {
-        if (node == null || node.isMissingNode() || node.isNull()) return Optional.empty();
-        if (node.isNumber()) return Optional.of(Instant.ofEpochMilli(node.asLong()));
-        if (node.isTextual()) {
-            try { return Optional.of(Instant.parse(node.asText())); } catch (Exception ignore) {}
+    public interface SensorAggregationReader {
+        List<SensorAggregateResult> aggregate(String compositeId, Instant from, Instant to, String bucket, String sensorType);
+
+        /**
+         * Stored spellings of the lowercase {@code lowerSensorTypes} that have history for the device
+         * between {@code from} and {@code to}.
+         */
+        List<String> storedSensorTypes(String compositeId, Instant from, Instant to,
+                                       Collection<String> lowerSensorTypes);
+
+        /**
+         * All requested series in one call; {@code sensorTypes} are canonical (exact-case) names.
+         * Implementations should override this with a single set-based query.
+         */
+        default List<SensorAggregateResult> aggregateAll(String compositeId, Instant from, Instant to, String bucket,
+                                                         Collection<String> sensorTypes) {
+            List<SensorAggregateResult> results = new ArrayList<>();
+            for (String sensorType : sensorTypes) {
+                results.addAll(aggregate(compositeId, from, to, bucket, sensorType));
+            }
+            return results;
         }
-        return Optional.empty();
-    }
 
-    private Optional<Double> readDouble(JsonNode node) {
-        if (node == null || node.isMissingNode() || node.isNull()) return Optional.empty();
-        if (node.isNumber()) return Optional.of(node.asDouble());
-        if (node.isTextual()) {
-            try { return Optional.of(Double.parseDouble(node.asText())); } catch (Exception ignore) {}
+        /**
+         * The requested series of several devices; each result carries its {@code compositeId}.
+         * Implementations should override this with a single set-based query.
+         */
+        default List<SensorAggregateResult> aggregateDevices(Collection<String> compositeIds, Instant from, Instant to,
+                                                             String bucket, Collection<String> sensorTypes) {
+            List<SensorAggregateResult> results = new ArrayList<>();
+            for (String compositeId : compositeIds) {
+                for (SensorAggregateResult r : aggregateAll(compositeId, from, to, bucket, sensorTypes)) {
+                    results.add(new DeviceAggregateResult(compositeId, r));
+                }
+            }
+            return results;
         }
-        return Optional.empty();
     }
 
-    public interface SensorAggregationReader {
-        List<SensorAggregateResult> aggregate(String compositeId, Instant from, Instant to, String bucket, String sensorType);
+    /** Tags a single-device result with its device. */
+    record DeviceAggregateResult(String compositeId, SensorAggregateResult result) implements SensorAggregateResult {
+        @Override public String getCompositeId() { return compositeId; }
+        @Override public String getSensorType() { return result.getSensorType(); }
+        @Override public String getUnit() { return result.getUnit(); }
+        @Override public Instant getBucketTime() { return result.getBucketTime(); }
+        @Override public Double getAvgValue() { return result.getAvgValue(); }
+        @Override public Double getMinValue() { return result.getMinValue(); }
+        @Override public Double getMaxValue() { return result.getMaxValue(); }
+        @Override public Double getLastValue() { return result.getLastValue(); }
+        @Override public Long getSampleCount() { return result.getSampleCount(); }
+        @Override public Double getSumSqValue() { return result.getSumSqValue(); }
     }
 
     public interface SensorAggregateResult {
+        /** Set by multi-device queries only. */
+        default String getCompositeId() { return null; }
         String getSensorType();
         String getUnit();
         Instant getBucketTime();
         Double getAvgValue();
+        default Double getMinValue() { return null; }
+        default Double getMaxValue() { return null; }
+        default Double getLastValue() { return null; }
+        default Long getSampleCount() { return null; }
+        default Double getSumSqValue() { return null; }
     }
 }
@@ -0,0 +1,292 @@
+package se.hydroleaf.service;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-sensor rollup accumulators for {@link SensorValueBuffer}, laid out as
+ * primitive arrays indexed by an interned slot.
+ *
+ * <p>Each (composite_id, sensor_type) pair is assigned an int slot once; the
+ * lookup afterwards is two {@code ConcurrentHashMap.get} calls and allocates
+ * nothing. A slot is guarded by one of {@link #STRIPES} locks, so writers
+ * only contend when they hit the same stripe.</p>
+ *
+ * <p>Rollups live in two banks. {@link #swap(LongSupplier)} holds every stripe
+ * just long enough to flip the active bank, after which the retired bank is
+ * read and cleared without any lock. Slots are never reclaimed; the key space
+ * (devices × sensor types) is small and stable.</p>
+ *
+ * <p>A slot rolls up everything added between two swaps, whatever minute the
+ * samples belong to, and is drained with the time of its earliest sample.
+ * Buckets are formed later, when history is read or folded into the rollup
+ * tiers.</p>
+ */
+final class SensorAccumulatorTable {
+
+    /**
+     * Receives one drained rollup.
+     */
+    @FunctionalInterface
+    interface RowConsumer {
+        void accept(String compositeId, String sensorType, long firstMillis, long count,
+                    double sum, double sumSq, double min, double max, double last);
+    }
+
+    static final int STRIPES = 64;
+    private static final int CHUNK_SHIFT = 8;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final class Chunk {
+        final long[] count = new long[CHUNK_SIZE];
+        final double[] sum = new double[CHUNK_SIZE];
+        final double[] sumSq = new double[CHUNK_SIZE];
+        final double[] min = new double[CHUNK_SIZE];
+        final double[] max = new double[CHUNK_SIZE];
+        final double[] last = new double[CHUNK_SIZE];
+        final long[] lastMillis = new long[CHUNK_SIZE];
+        final long[] firstMillis = new long[CHUNK_SIZE];
+
+        Chunk() {
+            for (int i = 0; i < CHUNK_SIZE; i++) {
+                clear(i);
+            }
+        }
+
+        void accumulate(int i, double value, long epochMillis) {
+            count[i]++;
+            sum[i] += value;
+            sumSq[i] += value * value;
+            if (value < min[i]) {
+                min[i] = value;
+            }
+            if (value > max[i]) {
+                max[i] = value;
+            }
+            if (epochMillis >= lastMillis[i]) {
+                lastMillis[i] = epochMillis;
+                last[i] = value;
+            }
+            if (epochMillis < firstMillis[i]) {
+                firstMillis[i] = epochMillis;
+            }
+        }
+
+        void merge(int i, Chunk other) {
+            count[i] += other.count[i];
+            sum[i] += other.sum[i];
+            sumSq[i] += other.sumSq[i];
+            min[i] = Math.min(min[i], other.min[i]);
+            max[i] = Math.max(max[i], other.max[i]);
+            if (other.lastMillis[i] >= lastMillis[i]) {
+                lastMillis[i] = other.lastMillis[i];
+                last[i] = other.last[i];
+            }
+            firstMillis[i] = Math.min(firstMillis[i], other.firstMillis[i]);
+        }
+
+        void clear(int i) {
+            count[i] = 0;
+            sum[i] = 0;
+            sumSq[i] = 0;
+            min[i] = Double.POSITIVE_INFINITY;
+            max[i] = Double.NEGATIVE_INFINITY;
+            last[i] = 0;
+            lastMillis[i] = Long.MIN_VALUE;
+            firstMillis[i] = Long.MAX_VALUE;
+        }
+    }
+
+    private static final class Bank {
+        volatile Chunk[] chunks = new Chunk[0];
+    }
+
+    /**
+     * A retired bank handed to the flush. Read it with {@link #forEach}, then
+     * either {@link #clear()} it or {@link #restore()} it into the live bank.
+     */
+    final class Snapshot {
+        private final Bank bank;
+        private final long cut;
+
+        private Snapshot(Bank bank, long cut) {
+            this.bank = bank;
+            this.cut = cut;
+        }
+
+        /**
+         * Value returned by the supplier passed to {@link #swap(LongSupplier)}.
+         */
+        long cut() {
+            return cut;
+        }
+
+        int forEach(RowConsumer consumer) {
+            int slotLimit = slotCount;
+            Chunk[] chunks = bank.chunks;
+            int rows = 0;
+            for (int slot = 0; slot < slotLimit; slot++) {
+                Chunk c = chunks[slot >>> CHUNK_SHIFT];
+                int i = slot & CHUNK_MASK;
+                if (c.count[i] == 0) {
+                    continue;
+                }
+                consumer.accept(compositeIds[slot >>> CHUNK_SHIFT][i], sensorTypes[slot >>> CHUNK_SHIFT][i],
+                        c.firstMillis[i], c.count[i], c.sum[i], c.sumSq[i], c.min[i], c.max[i], c.last[i]);
+                rows++;
+            }
+            return rows;
+        }
+
+        void clear() {
+            int slotLimit = slotCount;
+            Chunk[] chunks = bank.chunks;
+            for (int slot = 0; slot < slotLimit; slot++) {
+                Chunk c = chunks[slot >>> CHUNK_SHIFT];
+                int i = slot & CHUNK_MASK;
+                if (c.count[i] != 0) {
+                    c.clear(i);
+                }
+            }
+        }
+
+        /**
+         * Merges the retired rollups back into the live bank, e.g. after a failed write.
+         */
+        void restore() {
+            int slotLimit = slotCount;
+            Chunk[] chunks = bank.chunks;
+            for (int slot = 0; slot < slotLimit; slot++) {
+                Chunk retired = chunks[slot >>> CHUNK_SHIFT];
+                int i = slot & CHUNK_MASK;
+                if (retired.count[i] == 0) {
+                    continue;
+                }
+                ReentrantLock lock = stripes[slot & (STRIPES - 1)];
+                lock.lock();
+                try {
+                    active.chunks[slot >>> CHUNK_SHIFT].merge(i, retired);
+                } finally {
+                    lock.unlock();
+                }
+                retired.clear(i);
+            }
+        }
+    }
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Integer>> slots = new ConcurrentHashMap<>();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final Bank[] banks = {new Bank(), new Bank()};
+    private final Object registerLock = new Object();
+    private final SensorValueJournal.SampleConsumer onAdd;
+    private volatile Bank active = banks[0];
+    private volatile String[][] compositeIds = new String[0][];
+    private volatile String[][] sensorTypes = new String[0][];
+    private volatile int slotCount;
+
+    /**
+     * @param onAdd called for every {@link #add} while the slot's stripe is held,
+     *              so it is ordered with respect to {@link #swap}
+     */
+    SensorAccumulatorTable(SensorValueJournal.SampleConsumer onAdd) {
+        this.onAdd = onAdd;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    void add(String compositeId, String sensorType, double value, Instant timestamp) {
+        int slot = slot(compositeId, sensorType);
+        long epochMillis = timestamp.toEpochMilli();
+        ReentrantLock lock = stripes[slot & (STRIPES - 1)];
+        lock.lock();
+        try {
+            onAdd.accept(compositeId, sensorType, value, timestamp);
+            active.chunks[slot >>> CHUNK_SHIFT].accumulate(slot & CHUNK_MASK, value, epochMillis);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Accumulates without calling the {@code onAdd} hook; used for journal replay.
+     */
+    void accumulate(String compositeId, String sensorType, double value, Instant timestamp) {
+        int slot = slot(compositeId, sensorType);
+        ReentrantLock lock = stripes[slot & (STRIPES - 1)];
+        lock.lock();
+        try {
+            active.chunks[slot >>> CHUNK_SHIFT].accumulate(slot & CHUNK_MASK, value, timestamp.toEpochMilli());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retires the active bank. {@code atSwap} runs while every stripe is held,
+     * i.e. with no {@link #add} in flight. Only one caller may swap and work on
+     * the returned snapshot at a time.
+     */
+    Snapshot swap(LongSupplier atSwap) {
+        int held = 0;
+        try {
+            for (; held < STRIPES; held++) {
+                stripes[held].lock();
+            }
+            Bank retired = active;
+            active = retired == banks[0] ? banks[1] : banks[0];
+            return new Snapshot(retired, atSwap.getAsLong());
+        } finally {
+            while (held > 0) {
+                stripes[--held].unlock();
+            }
+        }
+    }
+
+    private int slot(String compositeId, String sensorType) {
+        ConcurrentMap<String, Integer> bySensor = slots.get(compositeId);
+        if (bySensor != null) {
+            Integer slot = bySensor.get(sensorType);
+            if (slot != null) {
+                return slot;
+            }
+        }
+        return register(compositeId, sensorType);
+    }
+
+    private int register(String compositeId, String sensorType) {
+        synchronized (registerLock) {
+            ConcurrentMap<String, Integer> bySensor =
+                    slots.computeIfAbsent(compositeId, k -> new ConcurrentHashMap<>());
+            Integer existing = bySensor.get(sensorType);
+            if (existing != null) {
+                return existing;
+            }
+            int slot = slotCount;
+            int chunk = slot >>> CHUNK_SHIFT;
+            if (chunk == compositeIds.length) {
+                for (Bank bank : banks) {
+                    Chunk[] grown = Arrays.copyOf(bank.chunks, chunk + 1);
+                    grown[chunk] = new Chunk();
+                    bank.chunks = grown;
+                }
+                String[][] ids = Arrays.copyOf(compositeIds, chunk + 1);
+                ids[chunk] = new String[CHUNK_SIZE];
+                String[][] types = Arrays.copyOf(sensorTypes, chunk + 1);
+                types[chunk] = new String[CHUNK_SIZE];
+                compositeIds = ids;
+                sensorTypes = types;
+            }
+            compositeIds[chunk][slot & CHUNK_MASK] = compositeId;
+            sensorTypes[chunk][slot & CHUNK_MASK] = sensorType;
+            slotCount = slot + 1;
+            bySensor.put(sensorType, slot);
+            return slot;
+        }
+    }
+}
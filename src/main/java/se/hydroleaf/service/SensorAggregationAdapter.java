@@ -2,24 +2,43 @@ package se.hydroleaf.service;
 
 
 import org.springframework.stereotype.Component;
+import se.hydroleaf.model.SensorRollupTier;
 import se.hydroleaf.repository.SensorAggregationRepository;
+import se.hydroleaf.repository.SensorValueRollupJdbcWriter;
+import se.hydroleaf.repository.TimescaleContinuousAggregates;
 import se.hydroleaf.repository.TimescaleDbSupport;
+import se.hydroleaf.repository.dto.snapshot.DeviceSensorAggregationRow;
 import se.hydroleaf.repository.dto.snapshot.SensorAggregationRow;
 import se.hydroleaf.util.InstantUtil;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
+/**
+ * Reads aggregated history from the coarsest {@link SensorRollupTier} that tiles
+ * the requested bucket: the TimescaleDB continuous aggregates when they are set
+ * up, otherwise the application-maintained {@code sensor_value_rollup}. Buckets
+ * finer than five minutes, windows not aligned to the tier, and deployments
+ * without either source group the raw minute rows.
+ */
 @Component
 public class SensorAggregationAdapter implements RecordService.SensorAggregationReader {
 
     private final SensorAggregationRepository repo;
     private final TimescaleDbSupport timescale;
+    private final SensorValueRollupJdbcWriter rollups;
+    private final TimescaleContinuousAggregates continuousAggregates;
 
-    public SensorAggregationAdapter(SensorAggregationRepository repo, TimescaleDbSupport timescale) {
+    public SensorAggregationAdapter(SensorAggregationRepository repo,
+                                    TimescaleDbSupport timescale,
+                                    SensorValueRollupJdbcWriter rollups,
+                                    TimescaleContinuousAggregates continuousAggregates) {
         this.repo = repo;
         this.timescale = timescale;
+        this.rollups = rollups;
+        this.continuousAggregates = continuousAggregates;
     }
 
     @Override
@@ -29,18 +48,106 @@ public class SensorAggregationAdapter implements RecordService.SensorAggregation
                                                                String bucket,
                                                                String sensorType) {
         long sec = InstantUtil.bucketSeconds(bucket);
+        SensorRollupTier tier = tierFor(sec, from, to);
 
-        var rows = timescale.isAvailable()
-                ? repo.aggregateTimescale(compositeId, from, to, sec, sensorType)
-                : repo.aggregateDateTrunc(compositeId, from, to, sec, sensorType);
+        List<SensorAggregationRow> rows;
+        if (tier != null && continuousAggregates.isReady()) {
+            rows = repo.aggregateContinuous(compositeId, from, to, sec, tier.seconds(), sensorType);
+        } else if (tier != null && rollups.isMaintained()) {
+            rows = repo.aggregateRollup(compositeId, from, to, sec, tier.seconds(), sensorType);
+        } else if (timescale.isAvailable()) {
+            rows = repo.aggregateTimescale(compositeId, from, to, sec, sensorType);
+        } else {
+            rows = repo.aggregateDateTrunc(compositeId, from, to, sec, sensorType);
+        }
+        return toResults(rows);
+    }
+
+    @Override
+    public List<RecordService.SensorAggregateResult> aggregateAll(String compositeId,
+                                                                  Instant from,
+                                                                  Instant to,
+                                                                  String bucket,
+                                                                  Collection<String> sensorTypes) {
+        long sec = InstantUtil.bucketSeconds(bucket);
+        SensorRollupTier tier = tierFor(sec, from, to);
+
+        List<SensorAggregationRow> rows;
+        if (tier != null && continuousAggregates.isReady()) {
+            rows = repo.aggregateContinuousForTypes(compositeId, from, to, sec, tier.seconds(), sensorTypes);
+        } else if (tier != null && rollups.isMaintained()) {
+            rows = repo.aggregateRollupForTypes(compositeId, from, to, sec, tier.seconds(), sensorTypes);
+        } else if (timescale.isAvailable()) {
+            rows = repo.aggregateTimescaleForTypes(compositeId, from, to, sec, sensorTypes);
+        } else {
+            rows = repo.aggregateDateTruncForTypes(compositeId, from, to, sec, sensorTypes);
+        }
+        return toResults(rows);
+    }
+
+    @Override
+    public List<RecordService.SensorAggregateResult> aggregateDevices(Collection<String> compositeIds,
+                                                                      Instant from,
+                                                                      Instant to,
+                                                                      String bucket,
+                                                                      Collection<String> sensorTypes) {
+        long sec = InstantUtil.bucketSeconds(bucket);
+        SensorRollupTier tier = tierFor(sec, from, to);
+
+        List<DeviceSensorAggregationRow> rows;
+        if (tier != null && continuousAggregates.isReady()) {
+            rows = repo.aggregateContinuousForDevices(compositeIds, from, to, sec, tier.seconds(), sensorTypes);
+        } else if (tier != null && rollups.isMaintained()) {
+            rows = repo.aggregateRollupForDevices(compositeIds, from, to, sec, tier.seconds(), sensorTypes);
+        } else if (timescale.isAvailable()) {
+            rows = repo.aggregateTimescaleForDevices(compositeIds, from, to, sec, sensorTypes);
+        } else {
+            rows = repo.aggregateDateTruncForDevices(compositeIds, from, to, sec, sensorTypes);
+        }
+        List<RecordService.SensorAggregateResult> out = new ArrayList<>(rows.size());
+        for (DeviceSensorAggregationRow r : rows) {
+            out.add(new RowImpl(
+                    r.compositeId(),
+                    r.sensorType(),
+                    r.unit(),
+                    r.bucketTime(),
+                    r.avgValue(),
+                    r.minValue(),
+                    r.maxValue(),
+                    r.lastValue(),
+                    r.sampleCount(),
+                    r.sumSqValue()
+            ));
+        }
+        return out;
+    }
+
+    @Override
+    public List<String> storedSensorTypes(String compositeId, Instant from, Instant to,
+                                          Collection<String> lowerSensorTypes) {
+        return repo.findSensorTypesIgnoringCase(compositeId, from, to, lowerSensorTypes);
+    }
+
+    private static SensorRollupTier tierFor(long bucketSeconds, Instant from, Instant to) {
+        SensorRollupTier tier = SensorRollupTier.coarsestFor(bucketSeconds);
+        return tier != null && tier.isAligned(from) && tier.isAligned(to) ? tier : null;
+    }
+
+    private static List<RecordService.SensorAggregateResult> toResults(List<SensorAggregationRow> rows) {
         List<RecordService.SensorAggregateResult> out = new ArrayList<>(rows.size());
 
         for (SensorAggregationRow r : rows) {
             out.add(new RowImpl(
+                    null,
                     r.sensorType(),
                     r.unit(),
                     r.bucketTime(),
-                    r.avgValue()
+                    r.avgValue(),
+                    r.minValue(),
+                    r.maxValue(),
+                    r.lastValue(),
+                    r.sampleCount(),
+                    r.sumSqValue()
             ));
         }
         return out;
@@ -48,14 +155,26 @@ public class SensorAggregationAdapter implements RecordService.SensorAggregation
 
     // Simple DTO implementing the service's projection interface
     private record RowImpl(
+            String compositeId,
             String sensorType,
             String unit,
             Instant bucketTime,
-            Double avgValue
+            Double avgValue,
+            Double minValue,
+            Double maxValue,
+            Double lastValue,
+            Long sampleCount,
+            Double sumSqValue
     ) implements RecordService.SensorAggregateResult {
+        @Override public String getCompositeId() { return compositeId; }
         @Override public String getSensorType() { return sensorType; }
         @Override public String getUnit() { return unit; }
         @Override public Instant getBucketTime() { return bucketTime; }
         @Override public Double getAvgValue() { return avgValue; }
+        @Override public Double getMinValue() { return minValue; }
+        @Override public Double getMaxValue() { return maxValue; }
+        @Override public Double getLastValue() { return lastValue; }
+        @Override public Long getSampleCount() { return sampleCount; }
+        @Override public Double getSumSqValue() { return sumSqValue; }
     }
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+package se.hydroleaf.service;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Published by {@link SensorValueBuffer} after a flush has been committed.
+ *
+ * @param flushedAt              when the flushed window was cut; later samples are still in memory
+ * @param earliestByCompositeId  oldest {@code value_time} written per device in this flush
+ */
+public record SensorHistoryFlushedEvent(Instant flushedAt, Map<String, Instant> earliestByCompositeId) {
+}
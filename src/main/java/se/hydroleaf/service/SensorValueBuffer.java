@@ -1,82 +1,148 @@
 package se.hydroleaf.service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import se.hydroleaf.model.SensorValueHistory;
-import se.hydroleaf.repository.SensorValueHistoryRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.hydroleaf.repository.SensorValueHistoryJdbcWriter;
+import se.hydroleaf.repository.SensorValueRollupJdbcWriter;
+import se.hydroleaf.repository.TelemetryJournalCheckpoints;
+import se.hydroleaf.repository.dto.history.SensorValueHistoryRow;
 
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.OptionalLong;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Accumulates per-sensor rollups in memory and writes them to
+ * {@code sensor_value_history} once a minute: one row per series and flush
+ * window, stamped with the window's first sample time.
+ *
+ * <p>Every sample is also appended to the {@link SensorValueJournal} so that
+ * the unflushed window survives a crash. The append happens under the same
+ * stripe lock as the accumulation in {@link SensorAccumulatorTable}, and
+ * {@link #flush} rolls the journal while the table swaps banks, so the retired
+ * bank corresponds exactly to the sealed segments. Those are deleted after the
+ * rollups are persisted; if persisting fails the rollups are merged back into
+ * the live bank and the segments are kept.</p>
+ *
+ * <p>The history insert, the {@link SensorValueRollupJdbcWriter} refresh of
+ * the 5m / 1h / 1d tiers and the journal checkpoint in
+ * {@link TelemetryJournalCheckpoints} commit together. {@link #recover} first
+ * releases the segments the checkpoint covers, so a crash between the commit
+ * and the journal release does not apply a window twice; in clustered mode the
+ * history writer adds colliding rows together and a replay would double-count
+ * them.</p>
+ *
+ * <p>Each committed flush is announced with a {@link SensorHistoryFlushedEvent}.</p>
+ */
+@Slf4j
 @Service
 public class SensorValueBuffer {
 
-    private record Key(String compositeId, String sensorType) { }
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final SensorAccumulatorTable table;
+    private final SensorValueHistoryJdbcWriter historyWriter;
+    private final SensorValueRollupJdbcWriter rollupWriter;
+    private final SensorValueJournal journal;
+    private final TelemetryJournalCheckpoints checkpoints;
+    private final ApplicationEventPublisher events;
+    private final TransactionTemplate transaction;
 
-    private static class Accumulator {
-        double sum;
-        long count;
-        Instant firstTimestamp;
+    public SensorValueBuffer(SensorValueHistoryJdbcWriter historyWriter,
+                             SensorValueRollupJdbcWriter rollupWriter,
+                             SensorValueJournal journal,
+                             TelemetryJournalCheckpoints checkpoints,
+                             ApplicationEventPublisher events,
+                             PlatformTransactionManager transactionManager) {
+        this.historyWriter = historyWriter;
+        this.rollupWriter = rollupWriter;
+        this.journal = journal;
+        this.checkpoints = checkpoints;
+        this.events = events;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.table = new SensorAccumulatorTable(journal::append);
+    }
 
-        void accumulate(double value, Instant ts) {
-            sum += value;
-            count++;
-            if (firstTimestamp == null || ts.isBefore(firstTimestamp)) {
-                firstTimestamp = ts;
+    @PostConstruct
+    public void recover() {
+        if (journal.id() != null) {
+            OptionalLong applied = checkpoints.appliedThrough(journal.id());
+            if (applied.isPresent()) {
+                journal.release(applied.getAsLong());
             }
         }
-    }
-
-    private final ConcurrentMap<Key, Accumulator> buffer = new ConcurrentHashMap<>();
-    private final SensorValueHistoryRepository sensorValueHistoryRepository;
-
-    public SensorValueBuffer(SensorValueHistoryRepository sensorValueHistoryRepository) {
-        this.sensorValueHistoryRepository = sensorValueHistoryRepository;
+        long replayed = journal.replay(table::accumulate);
+        if (replayed > 0) {
+            log.info("Recovered {} unflushed sensor samples from the telemetry journal", replayed);
+        }
     }
 
     public void add(String compositeId, String sensorType, double value, Instant timestamp) {
-        Key key = new Key(compositeId, sensorType);
-        buffer.compute(key, (k, acc) -> {
-            if (acc == null) {
-                acc = new Accumulator();
-            }
-            acc.accumulate(value, timestamp);
-            return acc;
-        });
+        table.add(compositeId, sensorType, value, timestamp);
     }
 
     @Scheduled(fixedRate = 60000, scheduler = "scheduler")
     public void flush() {
-        Map<Key, Accumulator> snapshot = drain();
-        if (snapshot.isEmpty()) {
-            return;
+        flushLock.lock();
+        try {
+            SensorAccumulatorTable.Snapshot snapshot = table.swap(journal::roll);
+            Instant cutAt = Instant.now();
+            List<SensorValueHistoryRow> history = new ArrayList<>();
+            snapshot.forEach((compositeId, sensorType, firstMillis, count, sum, sumSq, min, max, last) ->
+                    history.add(new SensorValueHistoryRow(
+                            compositeId,
+                            sensorType,
+                            Instant.ofEpochMilli(firstMillis),
+                            sum / count,
+                            min,
+                            max,
+                            last,
+                            count,
+                            sum,
+                            sumSq)));
+            if (!history.isEmpty()) {
+                try {
+                    transaction.executeWithoutResult(status -> {
+                        historyWriter.insertAll(history);
+                        rollupWriter.refresh(history);
+                        if (journal.id() != null && snapshot.cut() >= 0) {
+                            checkpoints.markApplied(journal.id(), snapshot.cut());
+                        }
+                    });
+                } catch (RuntimeException ex) {
+                    snapshot.restore();
+                    log.warn("Flushing {} sensor rollups failed; keeping them for the next flush: {}",
+                            history.size(), ex.getMessage());
+                    return;
+                }
+                snapshot.clear();
+            }
+            journal.release(snapshot.cut());
+            events.publishEvent(new SensorHistoryFlushedEvent(cutAt, earliestByDevice(history)));
+        } finally {
+            flushLock.unlock();
         }
-        List<SensorValueHistory> history = new ArrayList<>(snapshot.size());
-        for (Map.Entry<Key, Accumulator> e : snapshot.entrySet()) {
-            Accumulator a = e.getValue();
-            double avg = a.sum / a.count;
-            history.add(SensorValueHistory.builder()
-                    .compositeId(e.getKey().compositeId())
-                    .sensorType(e.getKey().sensorType())
-                    .sensorValue(avg)
-                    .valueTime(a.firstTimestamp)
-                    .build());
+    }
+
+    private static Map<String, Instant> earliestByDevice(List<SensorValueHistoryRow> history) {
+        Map<String, Instant> earliest = new HashMap<>();
+        for (SensorValueHistoryRow row : history) {
+            earliest.merge(row.compositeId(), row.valueTime(), (a, b) -> a.isBefore(b) ? a : b);
         }
-        sensorValueHistoryRepository.saveAll(history);
+        return earliest;
     }
 
-    private Map<Key, Accumulator> drain() {
-        Map<Key, Accumulator> snapshot = new HashMap<>();
-        buffer.forEach((k, v) -> {
-            if (buffer.remove(k, v)) {
-                snapshot.put(k, v);
-            }
-        });
-        return snapshot;
+    @PreDestroy
+    public void shutdown() {
+        flush();
     }
 }
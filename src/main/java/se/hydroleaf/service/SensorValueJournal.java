@@ -0,0 +1,473 @@
+package se.hydroleaf.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import se.hydroleaf.config.TelemetryJournalProperties;
+import se.hydroleaf.config.TelemetryJournalProperties.FsyncPolicy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, memory-mapped journal of the samples {@link SensorValueBuffer}
+ * accumulated since its last successful flush.
+ *
+ * <p>The journal is a sequence of fixed-size segment files. {@link #roll()}
+ * seals the current segment and returns the newest sealed sequence number;
+ * once everything up to that point is persisted, {@link #release(long)}
+ * deletes the sealed segments. On startup {@link #replay(SampleConsumer)}
+ * feeds the records of all surviving segments back into the buffer.</p>
+ *
+ * <p>Each journal directory carries a random {@link #id()}, created on first
+ * open, under which the buffer records in the database how far its segments
+ * have been applied.</p>
+ *
+ * <p>Record layout: {@code int length | long epochMillis | double value |
+ * short idLength | id | short typeLength | type | padding | int crc32c}, padded
+ * to a multiple of four bytes. A writer claims its slot by compare-and-setting
+ * the length into the still zeroed slot, so the length is on the page as soon
+ * as the slot is reserved and a writer that dies before filling it leaves a
+ * record that fails its CRC-32C check and is skipped on replay, not a gap that
+ * hides the records after it. Should a gap appear anyway, e.g. a page lost by
+ * the OS, replay scans ahead to the next intact record.</p>
+ *
+ * <p>{@link #append} is safe for concurrent callers; {@link #roll()} must not
+ * run while an append is in flight, which {@link SensorValueBuffer} ensures
+ * with its journal lock.</p>
+ */
+@Slf4j
+@Component
+public class SensorValueJournal {
+
+    @FunctionalInterface
+    public interface SampleConsumer {
+        void accept(String compositeId, String sensorType, double value, Instant timestamp);
+    }
+
+    private static final int MAGIC = 0x484C4A32; // "HLJ2"
+    private static final int HEADER_BYTES = 4;
+    private static final int ALIGNMENT = 4;
+    private static final int FIXED_RECORD_BYTES = 4 + 8 + 8 + 2 + 2 + 4;
+    private static final long MIN_SEGMENT_BYTES = 64 * 1024;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String ID_FILE = "journal.id";
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final ThreadLocal<Encoder> ENCODER = ThreadLocal.withInitial(Encoder::new);
+
+    /**
+     * Per-thread scratch space a record is assembled and checksummed in
+     * before it is copied into its slot.
+     */
+    private static final class Encoder {
+        final CRC32C crc = new CRC32C();
+        ByteBuffer record = ByteBuffer.allocate(256);
+
+        ByteBuffer record(int length) {
+            if (record.capacity() < length) {
+                record = ByteBuffer.allocate(Integer.highestOneBit(length) << 1);
+            }
+            return record;
+        }
+    }
+
+    private static final class Segment {
+        final long sequence;
+        final Path path;
+        final MappedByteBuffer buffer;
+        final AtomicInteger position = new AtomicInteger(HEADER_BYTES);
+
+        Segment(long sequence, Path path, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Claims a slot by writing {@code length} into its first word, which
+         * must still be zero; a writer that loses the race skips the slot by
+         * the length it finds there.
+         *
+         * @return the start offset of the reserved range, or {@code -1} when the segment is full
+         */
+        int reserve(int length) {
+            while (true) {
+                int start = position.get();
+                if (start + length > buffer.capacity()) {
+                    return -1;
+                }
+                if (INT.compareAndSet(buffer, start, 0, length)) {
+                    position.compareAndSet(start, start + length);
+                    return start;
+                }
+                int taken = (int) INT.getVolatile(buffer, start);
+                position.compareAndSet(start, start + taken);
+            }
+        }
+
+        boolean isEmpty() {
+            return position.get() == HEADER_BYTES;
+        }
+    }
+
+    private final TelemetryJournalProperties properties;
+    private final TaskScheduler scheduler;
+    private final ConcurrentMap<String, byte[]> encoded = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Long, Path> sealed = new ConcurrentSkipListMap<>();
+    private final Object rollLock = new Object();
+    private volatile Segment current;
+    private Path directory;
+    private String id;
+    private long segmentBytes;
+    private ScheduledFuture<?> syncTask;
+
+    public SensorValueJournal(TelemetryJournalProperties properties,
+                              @Qualifier("scheduler") TaskScheduler scheduler) {
+        this.properties = properties;
+        this.scheduler = scheduler;
+    }
+
+    @PostConstruct
+    public void open() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        directory = Path.of(properties.getDirectory());
+        segmentBytes = Math.min(Integer.MAX_VALUE,
+                Math.max(MIN_SEGMENT_BYTES, properties.getSegmentSize().toBytes()));
+        try {
+            Files.createDirectories(directory);
+            id = readOrCreateId(directory.resolve(ID_FILE));
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(path -> {
+                    long sequence = sequenceOf(path);
+                    if (sequence >= 0) {
+                        sealed.put(sequence, path);
+                    }
+                });
+            }
+            current = openSegment(sealed.isEmpty() ? 0 : sealed.lastKey() + 1);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot open telemetry journal in " + directory, ex);
+        }
+        if (properties.getFsync() == FsyncPolicy.INTERVAL) {
+            syncTask = scheduler.scheduleWithFixedDelay(this::sync, properties.getFsyncInterval());
+        }
+        log.info("Telemetry journal opened in {} ({} segments to replay, fsync={})",
+                directory, sealed.size(), properties.getFsync());
+    }
+
+    @PreDestroy
+    public void close() {
+        if (syncTask != null) {
+            syncTask.cancel(false);
+        }
+        synchronized (rollLock) {
+            Segment segment = current;
+            current = null;
+            if (segment == null) {
+                return;
+            }
+            if (segment.isEmpty()) {
+                deleteQuietly(segment.path);
+            } else {
+                segment.buffer.force();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return current != null;
+    }
+
+    /**
+     * Identifies this journal directory across restarts, or {@code null} when journaling is off.
+     */
+    public String id() {
+        return id;
+    }
+
+    public void append(String compositeId, String sensorType, double value, Instant timestamp) {
+        Segment segment = current;
+        if (segment == null) {
+            return;
+        }
+        byte[] id = encoded.computeIfAbsent(compositeId, SensorValueJournal::utf8);
+        byte[] type = encoded.computeIfAbsent(sensorType, SensorValueJournal::utf8);
+        if (id.length > Short.MAX_VALUE || type.length > Short.MAX_VALUE) {
+            return;
+        }
+        int length = recordLength(id.length, type.length);
+        int start;
+        while ((start = segment.reserve(length)) < 0) {
+            segment = rollIfCurrent(segment);
+            if (segment == null) {
+                return;
+            }
+        }
+        Encoder encoder = ENCODER.get();
+        ByteBuffer record = encoder.record(length);
+        int p = 0;
+        record.putInt(p, length);
+        p += 4;
+        record.putLong(p, timestamp.toEpochMilli());
+        p += 8;
+        record.putDouble(p, value);
+        p += 8;
+        record.putShort(p, (short) id.length);
+        p += 2;
+        record.put(p, id);
+        p += id.length;
+        record.putShort(p, (short) type.length);
+        p += 2;
+        record.put(p, type);
+        p += type.length;
+        while (p < length - 4) {
+            record.put(p++, (byte) 0);
+        }
+        encoder.crc.reset();
+        encoder.crc.update(record.array(), 0, length - 4);
+        record.putInt(p, (int) encoder.crc.getValue());
+        // the length word was written by reserve()
+        segment.buffer.put(start + 4, record.array(), 4, length - 4);
+        if (properties.getFsync() == FsyncPolicy.ALWAYS) {
+            segment.buffer.force(start, length);
+        }
+    }
+
+    /**
+     * Seals the current segment if it holds records.
+     *
+     * @return the sequence of the newest sealed segment, or {@code -1} when there is none
+     */
+    public long roll() {
+        synchronized (rollLock) {
+            Segment segment = current;
+            if (segment != null && !segment.isEmpty()) {
+                seal(segment);
+            }
+            return sealed.isEmpty() ? -1 : sealed.lastKey();
+        }
+    }
+
+    /**
+     * Deletes every sealed segment up to and including {@code sequence}.
+     */
+    public void release(long sequence) {
+        if (sequence < 0) {
+            return;
+        }
+        Iterator<Map.Entry<Long, Path>> it = sealed.headMap(sequence, true).entrySet().iterator();
+        while (it.hasNext()) {
+            deleteQuietly(it.next().getValue());
+            it.remove();
+        }
+    }
+
+    /**
+     * Replays all sealed segments in order.
+     *
+     * @return the number of records handed to {@code consumer}
+     */
+    public long replay(SampleConsumer consumer) {
+        long replayed = 0;
+        for (Path path : List.copyOf(sealed.values())) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                replayed += replaySegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), consumer);
+            } catch (IOException ex) {
+                log.warn("Skipping unreadable telemetry journal segment {}: {}", path, ex.getMessage());
+            }
+        }
+        return replayed;
+    }
+
+    void sync() {
+        Segment segment = current;
+        if (segment != null) {
+            segment.buffer.force();
+        }
+    }
+
+    private long replaySegment(Path path, ByteBuffer buffer, SampleConsumer consumer) {
+        int limit = buffer.capacity();
+        if (limit < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            log.warn("Ignoring telemetry journal segment {} without a valid header", path);
+            return 0;
+        }
+        CRC32C crc = new CRC32C();
+        long replayed = 0;
+        long torn = 0;
+        long skippedBytes = 0;
+        int p = HEADER_BYTES;
+        while (p + FIXED_RECORD_BYTES <= limit) {
+            int length = buffer.getInt(p);
+            if (!isRecordLength(length, p, limit)) {
+                int next = nextIntact(buffer, p + ALIGNMENT, limit, crc);
+                if (next < 0) {
+                    break;
+                }
+                skippedBytes += next - p;
+                p = next;
+                continue;
+            }
+            if (!isIntact(buffer, p, length, crc)) {
+                torn++;
+                p += length;
+                continue;
+            }
+            int idLength = buffer.getShort(p + 20);
+            int typeOffset = p + 22 + idLength;
+            consumer.accept(string(buffer, p + 22, idLength),
+                    string(buffer, typeOffset + 2, buffer.getShort(typeOffset)),
+                    buffer.getDouble(p + 12),
+                    Instant.ofEpochMilli(buffer.getLong(p + 4)));
+            replayed++;
+            p += length;
+        }
+        if (torn > 0) {
+            log.warn("Skipped {} incomplete records in telemetry journal segment {}", torn, path);
+        }
+        if (skippedBytes > 0) {
+            log.warn("Skipped {} unreadable bytes in telemetry journal segment {}", skippedBytes, path);
+        }
+        return replayed;
+    }
+
+    /**
+     * Offset of the next record at or after {@code from} that passes its
+     * checksum, or {@code -1} when there is none.
+     */
+    private static int nextIntact(ByteBuffer buffer, int from, int limit, CRC32C crc) {
+        for (int q = from; q + FIXED_RECORD_BYTES <= limit; q += ALIGNMENT) {
+            int length = buffer.getInt(q);
+            if (isRecordLength(length, q, limit) && isIntact(buffer, q, length, crc)) {
+                return q;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isRecordLength(int length, int offset, int limit) {
+        return length >= FIXED_RECORD_BYTES && length <= limit - offset && length % ALIGNMENT == 0;
+    }
+
+    private static boolean isIntact(ByteBuffer buffer, int p, int length, CRC32C crc) {
+        int idLength = buffer.getShort(p + 20);
+        int typeOffset = p + 22 + idLength;
+        if (idLength < 0 || typeOffset + 2 > p + length - 4) {
+            return false;
+        }
+        int typeLength = buffer.getShort(typeOffset);
+        if (typeLength < 0 || recordLength(idLength, typeLength) != length) {
+            return false;
+        }
+        crc.reset();
+        crc.update(buffer.slice(p, length - 4));
+        return buffer.getInt(p + length - 4) == (int) crc.getValue();
+    }
+
+    private Segment rollIfCurrent(Segment full) {
+        synchronized (rollLock) {
+            if (current == full) {
+                seal(full);
+            }
+            return current;
+        }
+    }
+
+    private void seal(Segment segment) {
+        if (properties.getFsync() != FsyncPolicy.NONE) {
+            segment.buffer.force();
+        }
+        sealed.put(segment.sequence, segment.path);
+        try {
+            current = openSegment(segment.sequence + 1);
+        } catch (IOException ex) {
+            current = null;
+            log.error("Cannot start a new telemetry journal segment; journaling is disabled: {}", ex.getMessage());
+        }
+    }
+
+    private Segment openSegment(long sequence) throws IOException {
+        Path path = directory.resolve(String.format("%019d%s", sequence, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            buffer.putInt(0, MAGIC);
+            return new Segment(sequence, path, buffer);
+        }
+    }
+
+    private static String readOrCreateId(Path file) throws IOException {
+        if (Files.exists(file)) {
+            String existing = Files.readString(file, StandardCharsets.UTF_8).trim();
+            if (!existing.isEmpty()) {
+                return existing;
+            }
+        }
+        String created = UUID.randomUUID().toString();
+        Files.writeString(file, created, StandardCharsets.UTF_8);
+        return created;
+    }
+
+    private static long sequenceOf(Path path) {
+        String name = path.getFileName().toString();
+        if (!name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            log.warn("Could not delete telemetry journal segment {}: {}", path, ex.getMessage());
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int recordLength(int idLength, int typeLength) {
+        int length = FIXED_RECORD_BYTES + idLength + typeLength;
+        return (length + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+}
@@ -0,0 +1,141 @@
+package se.hydroleaf.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import se.hydroleaf.config.StateHistoryProperties;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Last reported state per (device, channel), kept in memory so that status
+ * histories get a row when a state changes instead of on every report.
+ *
+ * <p>History rows are intervals: {@code status_time} is when the state was
+ * first reported and {@code end_time} when it was replaced, or for the open
+ * interval when it was last written. A repeated state is only written again
+ * once the keep-alive period has passed, to move that end forward.</p>
+ *
+ * <p>After a restart the first report per key is compared with the last
+ * persisted state, read once through the supplier passed to {@link #offer}.
+ * When the surrounding transaction rolls back the key is forgotten, so the
+ * next report is compared with the database again.</p>
+ *
+ * <p>In clustered mode another instance may have written in between, so the
+ * memory is not trusted: a key with a supplier is reconciled with the persisted
+ * state on every report, and a key without one is always reported as
+ * {@link Decision#CHANGED}, leaving the decision to the caller's upsert.</p>
+ */
+@Component
+public class StateChangeFilter {
+
+    public enum Decision {
+        /** First report or a different state: close the open interval and start a new one. */
+        CHANGED,
+        /** Same state and the keep-alive period has passed: extend the open interval. */
+        KEEP_ALIVE,
+        /** Same state within the keep-alive period: write nothing. */
+        UNCHANGED,
+        /**
+         * Older than the last report seen: the remembered state is left alone. Callers
+         * that can insert into the past may still record it if it differs from the
+         * state persisted at that time.
+         */
+        LATE
+    }
+
+    private record Key(String compositeId, String channel) { }
+
+    private record Entry(Object state, Instant lastSeen, Instant written) { }
+
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final StateHistoryProperties properties;
+    private final boolean clustered;
+
+    public StateChangeFilter(StateHistoryProperties properties,
+                             @Value("${cluster.enabled:false}") boolean clustered) {
+        this.properties = properties;
+        this.clustered = clustered;
+    }
+
+    public Decision offer(String compositeId, String channel, Object state, Instant time) {
+        return offer(compositeId, channel, state, time, null);
+    }
+
+    /**
+     * Records a reported state and tells the caller what to persist.
+     *
+     * @param lastPersisted the state last written for this key, consulted only
+     *                      when the key is not known yet; may be {@code null}
+     */
+    public Decision offer(String compositeId, String channel, Object state, Instant time,
+                          Supplier<?> lastPersisted) {
+        Objects.requireNonNull(state, "state is required");
+        Objects.requireNonNull(time, "time is required");
+        if (!properties.isEnabled()) {
+            return Decision.CHANGED;
+        }
+        Key key = new Key(compositeId, channel);
+        Object persisted = null;
+        if (clustered) {
+            if (lastPersisted == null) {
+                return Decision.CHANGED;
+            }
+            persisted = lastPersisted.get();
+            Entry known = entries.get(key);
+            if (known != null && !known.state().equals(persisted)) {
+                entries.remove(key, known);
+            }
+        } else if (lastPersisted != null && !entries.containsKey(key)) {
+            persisted = lastPersisted.get();
+        }
+
+        Decision[] decision = new Decision[1];
+        entries.compute(key, (k, current) -> {
+            if (current == null) {
+                decision[0] = state.equals(persisted) ? Decision.KEEP_ALIVE : Decision.CHANGED;
+                return new Entry(state, time, time);
+            }
+            if (time.isBefore(current.lastSeen())) {
+                decision[0] = Decision.LATE;
+                return current;
+            }
+            if (!current.state().equals(state)) {
+                decision[0] = Decision.CHANGED;
+                return new Entry(state, time, time);
+            }
+            Duration keepAlive = properties.getKeepAlive();
+            if (keepAlive != null && !keepAlive.isZero() && !time.isBefore(current.written().plus(keepAlive))) {
+                decision[0] = Decision.KEEP_ALIVE;
+                return new Entry(state, time, time);
+            }
+            decision[0] = Decision.UNCHANGED;
+            return new Entry(state, time, current.written());
+        });
+
+        if (decision[0] == Decision.CHANGED || decision[0] == Decision.KEEP_ALIVE) {
+            forgetOnRollback(key);
+        }
+        return decision[0];
+    }
+
+    private void forgetOnRollback(Key key) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    entries.remove(key);
+                }
+            }
+        });
+    }
+}
@@ -8,7 +8,7 @@ import se.hydroleaf.repository.dto.summary.GrowSensorSummary;
 import se.hydroleaf.repository.dto.summary.StatusAllAverageResponse;
 import se.hydroleaf.repository.dto.summary.StatusAverageResponse;
 import se.hydroleaf.repository.dto.summary.WaterTankSummary;
-import se.hydroleaf.repository.ActuatorStatusRepository;
+import se.hydroleaf.repository.LatestActuatorStatusRepository;
 import se.hydroleaf.repository.LatestSensorValueAggregationRepository;
 import se.hydroleaf.repository.dto.snapshot.LiveNowRow;
 import se.hydroleaf.model.DeviceType;
@@ -25,7 +25,10 @@ import java.util.stream.Collectors;
  * approach performs two bulk queries – one for sensors and one for actuators –
  * and then assembles the snapshot in-memory. Sensor readings are sourced from
  * the materialized {@code latest_sensor_value} table populated by database
- * triggers.</p>
+ * triggers, actuator states from {@code latest_actuator_status}.</p>
+ *
+ * <p>Sensor averages are served from {@link LiveSensorSnapshot} once it has
+ * been loaded; the bulk query is only the fallback before that.</p>
  */
 @Slf4j
 @Service
@@ -46,12 +49,15 @@ public class StatusService {
     private static final List<DeviceType> ACTUATOR_TYPES = List.of(DeviceType.AIR_PUMP);
 
     private final LatestSensorValueAggregationRepository sensorReadingRepository;
-    private final ActuatorStatusRepository actuatorStatusRepository;
+    private final LatestActuatorStatusRepository latestActuatorStatusRepository;
+    private final LiveSensorSnapshot liveSensorSnapshot;
 
     public StatusService(LatestSensorValueAggregationRepository sensorReadingRepository,
-                         ActuatorStatusRepository actuatorStatusRepository) {
+                         LatestActuatorStatusRepository latestActuatorStatusRepository,
+                         LiveSensorSnapshot liveSensorSnapshot) {
         this.sensorReadingRepository = sensorReadingRepository;
-        this.actuatorStatusRepository = actuatorStatusRepository;
+        this.latestActuatorStatusRepository = latestActuatorStatusRepository;
+        this.liveSensorSnapshot = liveSensorSnapshot;
     }
 
     public StatusAverageResponse getAverage(String system, String layer, String sensorType) {
@@ -62,7 +68,7 @@ public class StatusService {
         String unit = type.getUnit();
 
         if (type.isActuator()) {
-            List<LiveNowRow> rows = actuatorStatusRepository.fetchLatestActuatorAverages(List.of(type.getName()));
+            List<LiveNowRow> rows = latestActuatorStatusRepository.fetchLatestActuatorAverages(List.of(type.getName()));
             LiveNowRow row = rows.stream()
                     .filter(r -> r.system() != null && r.layer() != null
                             && system.equalsIgnoreCase(r.system())
@@ -73,7 +79,7 @@ public class StatusService {
             String resultUnit = row != null && row.unit() != null ? row.unit() : unit;
             return new StatusAverageResponse(avg, resultUnit, count);
         } else {
-            List<LiveNowRow> rows = sensorReadingRepository.fetchLatestSensorAverages(List.of(type.getName()));
+            List<LiveNowRow> rows = sensorAverages(system, layer, List.of(type.getName()));
             LiveNowRow row = rows.stream()
                     .filter(r -> r.system() != null && r.layer() != null
                             && system.equalsIgnoreCase(r.system())
@@ -89,9 +95,9 @@ public class StatusService {
     }
 
     public StatusAllAverageResponse getAllAverages(String system, String layer) {
-        List<LiveNowRow> sensorRows = sensorReadingRepository.fetchLatestSensorAverages(
+        List<LiveNowRow> sensorRows = sensorAverages(system, layer,
                 SENSOR_TYPES.stream().map(DeviceType::getName).toList());
-        List<LiveNowRow> actuatorRows = actuatorStatusRepository.fetchLatestActuatorAverages(
+        List<LiveNowRow> actuatorRows = latestActuatorStatusRepository.fetchLatestActuatorAverages(
                 ACTUATOR_TYPES.stream().map(DeviceType::getName).toList());
 
         Map<String, LiveNowRow> sensorMap = sensorRows.stream()
@@ -142,5 +148,11 @@ public class StatusService {
                 responses.get(oxygenPumpType)
         );
     }
-}
 
+    private List<LiveNowRow> sensorAverages(String system, String layer, List<String> types) {
+        if (liveSensorSnapshot.isLoaded()) {
+            return liveSensorSnapshot.averages(system, layer, types);
+        }
+        return sensorReadingRepository.fetchLatestSensorAverages(types);
+    }
+}
@@ -7,16 +7,20 @@ import se.hydroleaf.model.WaterFlowStatus;
 import se.hydroleaf.repository.WaterFlowStatusRepository;
 
 import java.time.Instant;
-import java.util.Optional;
+import java.util.Locale;
 
 @Slf4j
 @Service
 public class WaterFlowStatusService {
 
+    private static final String CHANNEL = "water_flow";
+
     private final WaterFlowStatusRepository repository;
+    private final StateChangeFilter stateChangeFilter;
 
-    public WaterFlowStatusService(WaterFlowStatusRepository repository) {
+    public WaterFlowStatusService(WaterFlowStatusRepository repository, StateChangeFilter stateChangeFilter) {
         this.repository = repository;
+        this.stateChangeFilter = stateChangeFilter;
     }
 
     @Transactional
@@ -27,28 +31,37 @@ public class WaterFlowStatusService {
             return;
         }
 
-        Optional<WaterFlowStatus> latest = repository.findFirstByOrderByTimestampDescIdDesc();
-        if (latest.isPresent() && sameStatus(latest.get(), normalizedStatus)) {
+        // water_flow_status has no interval end, so only changes are written
+        Instant statusTime = timestamp != null ? timestamp : Instant.now();
+        StateChangeFilter.Decision decision = stateChangeFilter.offer(null, CHANNEL,
+                normalizedStatus.toLowerCase(Locale.ROOT), statusTime,
+                () -> repository.findFirstByOrderByTimestampDescIdDesc()
+                        .map(WaterFlowStatus::getValue)
+                        .map(value -> value.toLowerCase(Locale.ROOT))
+                        .orElse(null));
+        if (decision == StateChangeFilter.Decision.LATE) {
+            // an out-of-order report is still history if it changed the status in effect at its time
+            String previous = repository.findFirstByTimestampLessThanEqualOrderByTimestampDescIdDesc(statusTime)
+                    .map(WaterFlowStatus::getValue)
+                    .orElse(null);
+            if (normalizedStatus.equalsIgnoreCase(previous)) {
+                log.debug("Skipping late water_flow status '{}' because it matches the entry before it",
+                        normalizedStatus);
+                return;
+            }
+        } else if (decision != StateChangeFilter.Decision.CHANGED) {
             log.debug("Skipping water_flow status '{}' because it matches the most recent entry", normalizedStatus);
             return;
         }
 
         WaterFlowStatus entity = WaterFlowStatus.builder()
                 .value(normalizedStatus)
-                .timestamp(timestamp != null ? timestamp : Instant.now())
+                .timestamp(statusTime)
                 .sensorName(sensorName)
                 .sensorType(sensorType)
                 .build();
 
         repository.save(entity);
     }
-
-    private boolean sameStatus(WaterFlowStatus lastStatus, String nextStatus) {
-        String previous = lastStatus.getValue();
-        if (previous == null) {
-            return false;
-        }
-        return previous.equalsIgnoreCase(nextStatus);
-    }
 }
 
@@ -0,0 +1,144 @@
+package se.hydroleaf.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import se.hydroleaf.config.WebSocketOutboundProperties;
+import se.hydroleaf.mqtt.IndexedSubscriptionRegistry;
+import se.hydroleaf.mqtt.TopicPublisher;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.Locale;
+
+/**
+ * First interceptor of the client outbound channel: gives every WebSocket
+ * session its own bounded, ordered queue instead of letting the channel's
+ * executor buffer frames for a stalled client without limit.
+ *
+ * <p>A frame for a tracked session is queued in its {@link SessionOutbound}
+ * and only re-sent through the channel once the session's previous frame has
+ * been handled, which also keeps the frames of a session in publish order.
+ * While a session is behind, a frame of a kind in
+ * {@code websocket.outbound.conflate-kinds} replaces the waiting frame for the
+ * same subscription and device. A session with more than
+ * {@code websocket.outbound.max-queued-frames} waiting is closed as a slow
+ * consumer; sessions whose socket writes exceed the send time or buffer
+ * limits are closed by the WebSocket transport.</p>
+ *
+ * <p>Frames without a session, or for sessions that are not tracked, pass
+ * through unchanged.</p>
+ */
+@Slf4j
+@Component
+public class OutboundBackPressureInterceptor implements ExecutorChannelInterceptor {
+
+    static final String RELEASED_HEADER = "hydroleaf.released";
+
+    private record ConflationKey(String subscriptionId, String compositeId) {
+    }
+
+    private final WebSocketSessionTracker tracker;
+    private final WebSocketOutboundProperties properties;
+    private final Clock clock;
+
+    public OutboundBackPressureInterceptor(WebSocketSessionTracker tracker,
+                                           WebSocketOutboundProperties properties,
+                                           Clock clock) {
+        this.tracker = tracker;
+        this.properties = properties;
+        this.clock = clock;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (message.getHeaders().containsKey(RELEASED_HEADER)) {
+            return message;
+        }
+        SessionOutbound session = tracker.get(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+        if (session == null) {
+            return message;
+        }
+        if (session.offer(message, conflationKey(message), properties.getMaxQueuedFrames())
+                == SessionOutbound.Offer.OVERFLOW) {
+            close(session);
+            return null;
+        }
+        release(session, channel);
+        return null;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler,
+                                    Exception ex) {
+        if (!message.getHeaders().containsKey(RELEASED_HEADER)) {
+            return;
+        }
+        SessionOutbound session = tracker.get(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+        if (session == null) {
+            return;
+        }
+        if (ex != null) {
+            session.failed();
+        } else {
+            session.sent(sizeOf(message.getPayload()), clock.millis());
+        }
+        release(session, channel);
+    }
+
+    private void release(SessionOutbound session, MessageChannel channel) {
+        Message<?> next;
+        while ((next = session.next()) != null) {
+            try {
+                if (channel.send(released(next))) {
+                    return;
+                }
+            } catch (RuntimeException ex) {
+                log.warn("Unable to send to WebSocket session {}: {}", session.session().getId(), ex.getMessage());
+            }
+            session.failed();
+        }
+    }
+
+    private ConflationKey conflationKey(Message<?> message) {
+        Object kind = message.getHeaders().get(TopicPublisher.KIND_HEADER);
+        Object compositeId = message.getHeaders().get(IndexedSubscriptionRegistry.COMPOSITE_ID_HEADER);
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+        if (kind == null || compositeId == null || subscriptionId == null
+                || !properties.getConflateKinds().contains(kind.toString().toLowerCase(Locale.ROOT))) {
+            return null;
+        }
+        return new ConflationKey(subscriptionId, compositeId.toString());
+    }
+
+    private void close(SessionOutbound session) {
+        log.warn("Closing slow WebSocket session {}: more than {} frames waiting",
+                session.session().getId(), properties.getMaxQueuedFrames());
+        try {
+            session.session().close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException ex) {
+            log.debug("Closing WebSocket session {} failed: {}", session.session().getId(), ex.getMessage());
+        }
+    }
+
+    private static Message<?> released(Message<?> message) {
+        MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+        accessor.setHeader(RELEASED_HEADER, Boolean.TRUE);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+    }
+
+    private static int sizeOf(Object payload) {
+        if (payload instanceof byte[] bytes) {
+            return bytes.length;
+        }
+        return payload instanceof String text ? text.length() : 0;
+    }
+}
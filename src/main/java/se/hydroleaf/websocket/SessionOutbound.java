@@ -0,0 +1,153 @@
+package se.hydroleaf.websocket;
+
+import org.springframework.messaging.Message;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Frames the server holds for one WebSocket session, and what it has sent.
+ *
+ * <p>Frames wait in a queue and are released one at a time, each after the
+ * previous one has been handed to the socket. While a conflatable frame is
+ * still waiting, a newer frame with the same key takes its place instead of
+ * queueing behind it. All methods are synchronized on the instance.</p>
+ */
+public class SessionOutbound {
+
+    /**
+     * Per-session metrics as shown by the {@code websocketsessions} actuator endpoint.
+     */
+    public record Metrics(String sessionId, Instant connectedAt, int queuedFrames, long sentFrames,
+                          long sentBytes, double bytesPerSecond, long droppedFrames) {
+    }
+
+    enum Offer {
+        QUEUED,
+        CONFLATED,
+        OVERFLOW,
+        DROPPED
+    }
+
+    private static final int RATE_WINDOW_SECONDS = 10;
+
+    private static final class Slot {
+        final Object key;
+        Message<?> message;
+
+        Slot(Object key, Message<?> message) {
+            this.key = key;
+            this.message = message;
+        }
+    }
+
+    private final WebSocketSession session;
+    private final Instant connectedAt;
+    private final Queue<Slot> queue = new ArrayDeque<>();
+    private final Map<Object, Slot> waiting = new HashMap<>();
+    private final long[] bytesPerSecond = new long[RATE_WINDOW_SECONDS];
+    private final long[] bucketSecond = new long[RATE_WINDOW_SECONDS];
+    private boolean inFlight;
+    private boolean closing;
+    private long sentFrames;
+    private long sentBytes;
+    private long droppedFrames;
+
+    SessionOutbound(WebSocketSession session, Instant connectedAt) {
+        this.session = session;
+        this.connectedAt = connectedAt;
+    }
+
+    WebSocketSession session() {
+        return session;
+    }
+
+    /**
+     * Queues a frame. A frame with a non-null {@code conflationKey} replaces a
+     * waiting frame with the same key. When {@code maxQueued} frames are
+     * already waiting the session is marked as closing and everything queued
+     * is dropped.
+     */
+    synchronized Offer offer(Message<?> message, Object conflationKey, int maxQueued) {
+        if (closing) {
+            droppedFrames++;
+            return Offer.DROPPED;
+        }
+        if (conflationKey != null) {
+            Slot slot = waiting.get(conflationKey);
+            if (slot != null) {
+                slot.message = message;
+                droppedFrames++;
+                return Offer.CONFLATED;
+            }
+        }
+        if (queue.size() >= maxQueued) {
+            closing = true;
+            droppedFrames += queue.size() + 1;
+            queue.clear();
+            waiting.clear();
+            return Offer.OVERFLOW;
+        }
+        Slot slot = new Slot(conflationKey, message);
+        queue.add(slot);
+        if (conflationKey != null) {
+            waiting.put(conflationKey, slot);
+        }
+        return Offer.QUEUED;
+    }
+
+    /**
+     * The next frame to send, or null while one is being sent or none is waiting.
+     */
+    synchronized Message<?> next() {
+        if (inFlight || closing) {
+            return null;
+        }
+        Slot slot = queue.poll();
+        if (slot == null) {
+            return null;
+        }
+        if (slot.key != null) {
+            waiting.remove(slot.key, slot);
+        }
+        inFlight = true;
+        return slot.message;
+    }
+
+    synchronized void sent(int bytes, long nowMillis) {
+        inFlight = false;
+        sentFrames++;
+        sentBytes += bytes;
+        long second = nowMillis / 1000;
+        int bucket = (int) (second % RATE_WINDOW_SECONDS);
+        if (bucketSecond[bucket] != second) {
+            bucketSecond[bucket] = second;
+            bytesPerSecond[bucket] = 0;
+        }
+        bytesPerSecond[bucket] += bytes;
+    }
+
+    synchronized void failed() {
+        inFlight = false;
+        droppedFrames++;
+    }
+
+    /**
+     * Bytes per second over the last {@value #RATE_WINDOW_SECONDS} seconds.
+     */
+    synchronized Metrics metrics(long nowMillis) {
+        long second = nowMillis / 1000;
+        long bytes = 0;
+        for (int i = 0; i < RATE_WINDOW_SECONDS; i++) {
+            if (second - bucketSecond[i] < RATE_WINDOW_SECONDS) {
+                bytes += bytesPerSecond[i];
+            }
+        }
+        return new Metrics(session.getId(), connectedAt, queue.size() + (inFlight ? 1 : 0), sentFrames,
+                sentBytes, (double) bytes / RATE_WINDOW_SECONDS, droppedFrames);
+    }
+}
@@ -0,0 +1,33 @@
+package se.hydroleaf.websocket;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+/**
+ * Registers every WebSocket session with the {@link WebSocketSessionTracker}
+ * before the STOMP handler sees it, and removes it before the disconnect is
+ * passed on.
+ */
+public class SessionTrackingHandlerDecorator extends WebSocketHandlerDecorator {
+
+    private final WebSocketSessionTracker tracker;
+
+    public SessionTrackingHandlerDecorator(WebSocketHandler delegate, WebSocketSessionTracker tracker) {
+        super(delegate);
+        this.tracker = tracker;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        tracker.opened(session);
+        super.afterConnectionEstablished(session);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        tracker.closed(session.getId());
+        super.afterConnectionClosed(session, closeStatus);
+    }
+}
@@ -7,7 +7,7 @@ import org.springframework.web.socket.messaging.SessionConnectEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
 /**
- * Listens for WebSocket connect and disconnect events to maintain session counts.
+ * Logs STOMP connect and disconnect events with the number of open sessions.
  */
 @Slf4j
 @Component
@@ -21,13 +21,11 @@ public class WebSocketSessionListener {
 
     @EventListener
     public void handleSessionConnected(SessionConnectEvent event) {
-        int count = tracker.increment();
-        log.info("WebSocket session connected. Active sessions: {}", count);
+        log.info("WebSocket session connected. Active sessions: {}", tracker.getSessionCount());
     }
 
     @EventListener
     public void handleSessionDisconnect(SessionDisconnectEvent event) {
-        int count = tracker.decrement();
-        log.info("WebSocket session disconnected. Active sessions: {}", count);
+        log.info("WebSocket session disconnected. Active sessions: {}", tracker.getSessionCount());
     }
 }
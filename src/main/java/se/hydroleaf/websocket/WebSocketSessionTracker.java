@@ -1,25 +1,51 @@
 package se.hydroleaf.websocket;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.time.Clock;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
 
 /**
- * Tracks active WebSocket sessions for monitoring purposes.
+ * Tracks active WebSocket sessions and the outbound frames held for each of
+ * them, for monitoring and for {@link OutboundBackPressureInterceptor}.
  */
 @Component
 public class WebSocketSessionTracker {
 
-    private final AtomicInteger sessions = new AtomicInteger();
+    private final ConcurrentMap<String, SessionOutbound> sessions = new ConcurrentHashMap<>();
+    private final Clock clock;
 
-    public int increment() {
-        return sessions.incrementAndGet();
+    public WebSocketSessionTracker(Clock clock) {
+        this.clock = clock;
     }
 
-    public int decrement() {
-        return sessions.decrementAndGet();
+    public void opened(WebSocketSession session) {
+        sessions.put(session.getId(), new SessionOutbound(session, clock.instant()));
+    }
+
+    public void closed(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    public SessionOutbound get(String sessionId) {
+        return sessionId != null ? sessions.get(sessionId) : null;
     }
 
     public int getSessionCount() {
-        return sessions.get();
+        return sessions.size();
+    }
+
+    /**
+     * Metrics of every session, most queued frames first.
+     */
+    public List<SessionOutbound.Metrics> metrics() {
+        long now = clock.millis();
+        return sessions.values().stream()
+                .map(session -> session.metrics(now))
+                .sorted(Comparator.comparingInt(SessionOutbound.Metrics::queuedFrames).reversed())
+                .toList();
     }
 }
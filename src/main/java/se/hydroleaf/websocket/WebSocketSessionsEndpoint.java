@@ -0,0 +1,38 @@
+package se.hydroleaf.websocket;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * {@code /actuator/websocketsessions}: open WebSocket sessions with their
+ * queued, sent and dropped frames, slowest first.
+ */
+@Component
+@Endpoint(id = "websocketsessions")
+public class WebSocketSessionsEndpoint {
+
+    public record Report(int sessions, long queuedFrames, long droppedFrames,
+                         List<SessionOutbound.Metrics> details) {
+    }
+
+    private final WebSocketSessionTracker tracker;
+
+    public WebSocketSessionsEndpoint(WebSocketSessionTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    @ReadOperation
+    public Report sessions() {
+        List<SessionOutbound.Metrics> details = tracker.metrics();
+        long queued = 0;
+        long dropped = 0;
+        for (SessionOutbound.Metrics metrics : details) {
+            queued += metrics.queuedFrames();
+            dropped += metrics.droppedFrames();
+        }
+        return new Report(details.size(), queued, dropped, details);
+    }
+}
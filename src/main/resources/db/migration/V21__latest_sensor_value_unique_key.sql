@@ -0,0 +1,12 @@
+-- Keep only the newest row per (composite_id, sensor_type) before enforcing uniqueness.
+DELETE FROM latest_sensor_value lsv
+USING latest_sensor_value newer
+WHERE lsv.composite_id = newer.composite_id
+  AND lsv.sensor_type = newer.sensor_type
+  AND (lsv.value_time < newer.value_time
+       OR (lsv.value_time = newer.value_time AND lsv.id < newer.id));
+
+DROP INDEX IF EXISTS idx_lsv_device_sensor;
+
+ALTER TABLE latest_sensor_value
+    ADD CONSTRAINT ux_lsv_device_sensor UNIQUE (composite_id, sensor_type);
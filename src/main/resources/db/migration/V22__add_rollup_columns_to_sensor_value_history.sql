@@ -0,0 +1,9 @@
+-- Per-minute rollup statistics next to the average kept in sensor_value.
+-- Existing rows stay NULL; queries fall back to sensor_value for them.
+ALTER TABLE sensor_value_history
+    ADD COLUMN IF NOT EXISTS min_value DOUBLE PRECISION,
+    ADD COLUMN IF NOT EXISTS max_value DOUBLE PRECISION,
+    ADD COLUMN IF NOT EXISTS last_value DOUBLE PRECISION,
+    ADD COLUMN IF NOT EXISTS sample_count INTEGER,
+    ADD COLUMN IF NOT EXISTS sum_value DOUBLE PRECISION,
+    ADD COLUMN IF NOT EXISTS sum_sq_value DOUBLE PRECISION;
@@ -0,0 +1,43 @@
+-- Application-maintained 5m / 1h / 1d rollups of sensor_value_history, one row
+-- per (device, sensor, tier, bucket). Kept up to date by each history flush.
+CREATE TABLE IF NOT EXISTS sensor_value_rollup (
+    composite_id VARCHAR(128) NOT NULL,
+    sensor_type VARCHAR(64) NOT NULL,
+    bucket_seconds INTEGER NOT NULL,
+    bucket_time TIMESTAMP WITH TIME ZONE NOT NULL,
+    sample_count BIGINT NOT NULL,
+    sum_value DOUBLE PRECISION NOT NULL,
+    sum_sq_value DOUBLE PRECISION NOT NULL,
+    min_value DOUBLE PRECISION,
+    max_value DOUBLE PRECISION,
+    last_value DOUBLE PRECISION,
+    last_time TIMESTAMP WITH TIME ZONE,
+    PRIMARY KEY (composite_id, sensor_type, bucket_seconds, bucket_time)
+);
+
+-- Seed the tiers from existing history. TimescaleDB deployments read from
+-- continuous aggregates instead, so they skip the backfill. ${timescaledb} is
+-- app.timescaledb.enabled ('auto' when unset), the same switch TimescaleDbSupport
+-- reads at runtime; HistoryStorageCheck refuses to start if the two disagree.
+INSERT INTO sensor_value_rollup
+    (composite_id, sensor_type, bucket_seconds, bucket_time, sample_count, sum_value, sum_sq_value,
+     min_value, max_value, last_value, last_time)
+SELECT svh.composite_id,
+       svh.sensor_type,
+       tier.seconds,
+       to_timestamp(floor(EXTRACT(EPOCH FROM svh.value_time) / tier.seconds) * tier.seconds),
+       SUM(COALESCE(svh.sample_count, 1)),
+       SUM(COALESCE(svh.sum_value, svh.sensor_value)),
+       SUM(COALESCE(svh.sum_sq_value, svh.sensor_value * svh.sensor_value)),
+       MIN(COALESCE(svh.min_value, svh.sensor_value)),
+       MAX(COALESCE(svh.max_value, svh.sensor_value)),
+       (ARRAY_AGG(COALESCE(svh.last_value, svh.sensor_value) ORDER BY svh.value_time DESC))[1],
+       MAX(svh.value_time)
+FROM sensor_value_history svh
+CROSS JOIN (VALUES (300), (3600), (86400)) AS tier(seconds)
+WHERE svh.sensor_value IS NOT NULL
+  AND NOT ('${timescaledb}' = 'true'
+           OR ('${timescaledb}' = 'auto' AND EXISTS (SELECT 1 FROM pg_extension WHERE extname = 'timescaledb')))
+GROUP BY svh.composite_id, svh.sensor_type, tier.seconds,
+         to_timestamp(floor(EXTRACT(EPOCH FROM svh.value_time) / tier.seconds) * tier.seconds)
+ON CONFLICT DO NOTHING;
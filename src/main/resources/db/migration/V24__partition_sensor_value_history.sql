@@ -0,0 +1,55 @@
+-- Range-partition sensor_value_history by value_time (monthly) on plain PostgreSQL.
+-- TimescaleDB deployments are converted to a hypertable at startup instead;
+-- ${timescaledb} is app.timescaledb.enabled ('auto' when unset), as in V23.
+--
+-- Existing rows are not copied: the old table is attached as one partition that
+-- ends at the month after its newest row, and is dropped by retention as a whole
+-- once that month is old enough. Later partitions are pre-created by the
+-- application (SensorValueHistoryPartitions); a default partition catches rows
+-- that arrive outside every pre-created range.
+DO $$
+DECLARE
+    boundary TIMESTAMPTZ;
+    month_start TIMESTAMPTZ;
+BEGIN
+    IF to_regclass('sensor_value_history') IS NULL
+       OR '${timescaledb}' = 'true'
+       OR ('${timescaledb}' = 'auto' AND EXISTS (SELECT 1 FROM pg_extension WHERE extname = 'timescaledb'))
+       OR EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = 'sensor_value_history'::regclass) THEN
+        RETURN;
+    END IF;
+
+    SELECT GREATEST(date_trunc('month', now(), 'UTC'),
+                    COALESCE(date_trunc('month', MAX(value_time), 'UTC'), '-infinity'))
+           + INTERVAL '1 month'
+      INTO boundary
+      FROM sensor_value_history;
+
+    ALTER TABLE sensor_value_history RENAME TO sensor_value_history_legacy;
+    ALTER INDEX sensor_value_history_pkey RENAME TO sensor_value_history_legacy_pkey;
+    ALTER INDEX IF EXISTS idx_svh_device_sensor_time RENAME TO idx_svh_legacy_device_sensor_time;
+    ALTER INDEX IF EXISTS idx_svh_device_time RENAME TO idx_svh_legacy_device_time;
+    ALTER INDEX IF EXISTS idx_svh_system_layer RENAME TO idx_svh_legacy_system_layer;
+
+    CREATE TABLE sensor_value_history (LIKE sensor_value_history_legacy INCLUDING DEFAULTS)
+        PARTITION BY RANGE (value_time);
+    ALTER TABLE sensor_value_history ADD PRIMARY KEY (value_time, composite_id, sensor_type);
+    CREATE INDEX idx_svh_device_sensor_time ON sensor_value_history (composite_id, sensor_type, value_time DESC);
+    CREATE INDEX idx_svh_device_time ON sensor_value_history (composite_id, value_time);
+    CREATE INDEX idx_svh_system_layer ON sensor_value_history (system_part, layer_part);
+
+    -- the legacy indexes match the parent's definitions, so ATTACH adopts them instead of rebuilding
+    EXECUTE format('ALTER TABLE sensor_value_history ATTACH PARTITION sensor_value_history_legacy '
+                   'FOR VALUES FROM (MINVALUE) TO (%L)', boundary);
+
+    month_start := boundary;
+    FOR i IN 1..3 LOOP
+        EXECUTE format('CREATE TABLE sensor_value_history_p%s PARTITION OF sensor_value_history '
+                       'FOR VALUES FROM (%L) TO (%L)',
+                       to_char(month_start AT TIME ZONE 'UTC', 'YYYYMMDD'),
+                       month_start, month_start + INTERVAL '1 month');
+        month_start := month_start + INTERVAL '1 month';
+    END LOOP;
+
+    CREATE TABLE sensor_value_history_default PARTITION OF sensor_value_history DEFAULT;
+END $$;
@@ -0,0 +1,45 @@
+-- Latest reported state per (device, actuator), maintained on ingest like latest_sensor_value.
+CREATE TABLE IF NOT EXISTS latest_actuator_status (
+    composite_id VARCHAR(128) NOT NULL,
+    actuator_type VARCHAR(255) NOT NULL,
+    state BOOLEAN NOT NULL,
+    status_time TIMESTAMP NOT NULL,
+    changed_time TIMESTAMP NOT NULL,
+    PRIMARY KEY (composite_id, actuator_type),
+    CONSTRAINT fk_latest_actuator_status_device
+        FOREIGN KEY (composite_id) REFERENCES device (composite_id) ON DELETE CASCADE
+);
+
+-- Covers the status averages query with an index-only scan.
+CREATE INDEX IF NOT EXISTS ix_las_type
+    ON latest_actuator_status (actuator_type) INCLUDE (composite_id, state, status_time);
+
+INSERT INTO latest_actuator_status (composite_id, actuator_type, state, status_time, changed_time)
+SELECT DISTINCT ON (composite_id, actuator_type)
+       composite_id, actuator_type, state, status_time, status_time
+FROM actuator_status
+ORDER BY composite_id, actuator_type, status_time DESC, id DESC
+ON CONFLICT DO NOTHING;
+
+-- From now on actuator_status only records state changes; drop the repeated reports.
+DELETE FROM actuator_status a
+USING (
+    SELECT id,
+           state,
+           LAG(state) OVER (PARTITION BY composite_id, actuator_type ORDER BY status_time, id) AS previous_state
+    FROM actuator_status
+) r
+WHERE a.id = r.id
+  AND r.previous_state = r.state;
+
+UPDATE latest_actuator_status l
+SET changed_time = c.changed_time
+FROM (
+    SELECT composite_id, actuator_type, MAX(status_time) AS changed_time
+    FROM actuator_status
+    GROUP BY composite_id, actuator_type
+) c
+WHERE c.composite_id = l.composite_id
+  AND c.actuator_type = l.actuator_type;
+
+ANALYZE actuator_status;
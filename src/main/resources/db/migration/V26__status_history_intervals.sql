@@ -0,0 +1,49 @@
+-- Status histories become intervals: one row per state change, end_time is when
+-- the state was replaced or, for the newest row, when it was last reported.
+ALTER TABLE device_status_history ADD COLUMN IF NOT EXISTS end_time TIMESTAMP WITH TIME ZONE;
+ALTER TABLE actuator_status ADD COLUMN IF NOT EXISTS end_time TIMESTAMP;
+
+-- Remember the last report per device before the repeated rows are dropped.
+CREATE TEMPORARY TABLE device_status_last_seen ON COMMIT DROP AS
+SELECT composite_id, MAX(status_time) AS last_seen
+FROM device_status_history
+GROUP BY composite_id;
+
+DELETE FROM device_status_history h
+USING (
+    SELECT id,
+           status,
+           LAG(status) OVER (PARTITION BY composite_id ORDER BY status_time, id) AS previous_status
+    FROM device_status_history
+) r
+WHERE h.id = r.id
+  AND r.previous_status = r.status;
+
+UPDATE device_status_history h
+SET end_time = COALESCE(n.next_time, s.last_seen)
+FROM (
+    SELECT id,
+           composite_id,
+           LEAD(status_time) OVER (PARTITION BY composite_id ORDER BY status_time, id) AS next_time
+    FROM device_status_history
+) n
+JOIN device_status_last_seen s ON s.composite_id = n.composite_id
+WHERE h.id = n.id;
+
+-- actuator_status already holds changes only (V25); the last report is in latest_actuator_status.
+UPDATE actuator_status a
+SET end_time = COALESCE(n.end_time, a.status_time)
+FROM (
+    SELECT s.id,
+           COALESCE(LEAD(s.status_time) OVER (PARTITION BY s.composite_id, s.actuator_type
+                                              ORDER BY s.status_time, s.id),
+                    l.status_time) AS end_time
+    FROM actuator_status s
+    LEFT JOIN latest_actuator_status l
+           ON l.composite_id = s.composite_id
+          AND l.actuator_type = s.actuator_type
+) n
+WHERE a.id = n.id;
+
+ANALYZE device_status_history;
+ANALYZE actuator_status;
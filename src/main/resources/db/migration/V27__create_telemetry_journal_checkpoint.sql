@@ -0,0 +1,7 @@
+-- Newest telemetry journal segment whose samples are in sensor_value_history, per journal.
+-- Written in the flush transaction so a restart does not replay (and, when clustered, re-add) them.
+CREATE TABLE IF NOT EXISTS telemetry_journal_checkpoint (
+    journal_id VARCHAR(64) PRIMARY KEY,
+    applied_through BIGINT NOT NULL,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
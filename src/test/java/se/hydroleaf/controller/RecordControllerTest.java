@@ -15,6 +15,8 @@ import se.hydroleaf.repository.dto.history.AggregatedSensorData;
 import se.hydroleaf.repository.dto.history.TimestampValue;
 import se.hydroleaf.service.AuthenticatedUser;
 import se.hydroleaf.service.AuthorizationService;
+import se.hydroleaf.service.HistoryAggregation;
+import se.hydroleaf.service.HistoryDownsampling;
 import se.hydroleaf.service.JwtService;
 import se.hydroleaf.service.RecordService;
 
@@ -67,7 +69,8 @@ class RecordControllerTest {
                 Instant.parse("2023-01-02T00:00:00Z"),
                 List.of(tempData)
         );
-        when(recordService.aggregatedHistory(eq("dev1"), any(), any(), eq("5m"), isNull(), isNull(), isNull(), isNull(), isNull()))
+        when(recordService.aggregatedHistory(eq("dev1"), any(), any(), eq("5m"), isNull(), isNull(), isNull(), isNull(), isNull(),
+                eq(HistoryAggregation.AVG), isNull(), eq(HistoryDownsampling.LTTB)))
                 .thenReturn(response);
 
         mockMvc.perform(get("/api/records/history/aggregated")
@@ -100,7 +103,8 @@ class RecordControllerTest {
                 List.of(tempData, humidityData)
         );
         when(recordService.aggregatedHistory(eq("dev1"), any(), any(), eq("5m"),
-                eq(List.of("temperature", "humidity")), isNull(), isNull(), isNull(), isNull()))
+                eq(List.of("temperature", "humidity")), isNull(), isNull(), isNull(), isNull(),
+                eq(HistoryAggregation.AVG), isNull(), eq(HistoryDownsampling.LTTB)))
                 .thenReturn(response);
 
         mockMvc.perform(get("/api/records/history/aggregated")
@@ -129,7 +133,8 @@ class RecordControllerTest {
                 List.of(tempData)
         );
         when(recordService.aggregatedHistory(eq("node-1"), any(), any(), eq("5m"),
-                eq(List.of("temp")), isNull(), isNull(), isNull(), isNull()))
+                eq(List.of("temp")), isNull(), isNull(), isNull(), isNull(),
+                eq(HistoryAggregation.AVG), isNull(), eq(HistoryDownsampling.LTTB)))
                 .thenReturn(response);
 
         mockMvc.perform(get("/api/records/history/aggregated")
@@ -142,4 +147,83 @@ class RecordControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.sensors[0].sensorType").value("temp"));
     }
+
+    @Test
+    void aggregatedHistoryPassesRequestedAggregation() throws Exception {
+        when(authorizationService.requireMonitoringView(anyString())).thenReturn(adminUser());
+        AggregatedHistoryResponse response = new AggregatedHistoryResponse(
+                Instant.parse("2023-01-01T00:00:00Z"),
+                Instant.parse("2023-01-02T00:00:00Z"),
+                List.of(new AggregatedSensorData("ph", null,
+                        List.of(new TimestampValue(Instant.parse("2023-01-01T00:00:00Z"), 5.1))))
+        );
+        when(recordService.aggregatedHistory(eq("dev1"), any(), any(), eq("1h"),
+                eq(List.of("ph")), isNull(), isNull(), isNull(), isNull(),
+                eq(HistoryAggregation.MIN), isNull(), eq(HistoryDownsampling.LTTB)))
+                .thenReturn(response);
+
+        mockMvc.perform(get("/api/records/history/aggregated")
+                        .param("compositeId", "dev1")
+                        .param("sensorType", "ph")
+                        .param("from", "2023-01-01T00:00:00Z")
+                        .param("to", "2023-01-02T00:00:00Z")
+                        .param("bucket", "1h")
+                        .param("agg", "min")
+                        .header("Authorization", "Bearer admin"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sensors[0].data[0].value").value(5.1));
+    }
+
+    @Test
+    void aggregatedHistoryRejectsUnknownAggregation() throws Exception {
+        when(authorizationService.requireMonitoringView(anyString())).thenReturn(adminUser());
+
+        mockMvc.perform(get("/api/records/history/aggregated")
+                        .param("compositeId", "dev1")
+                        .param("from", "2023-01-01T00:00:00Z")
+                        .param("to", "2023-01-02T00:00:00Z")
+                        .param("agg", "median")
+                        .header("Authorization", "Bearer admin"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void aggregatedHistoryPassesMaxPointsAndDownsampling() throws Exception {
+        when(authorizationService.requireMonitoringView(anyString())).thenReturn(adminUser());
+        AggregatedHistoryResponse response = new AggregatedHistoryResponse(
+                Instant.parse("2023-01-01T00:00:00Z"),
+                Instant.parse("2023-01-02T00:00:00Z"),
+                List.of(new AggregatedSensorData("lux", null,
+                        List.of(new TimestampValue(Instant.parse("2023-01-01T00:00:00Z"), 900.0))))
+        );
+        when(recordService.aggregatedHistory(eq("dev1"), any(), any(), eq("5m"),
+                eq(List.of("lux")), isNull(), isNull(), isNull(), isNull(),
+                eq(HistoryAggregation.AVG), eq(500), eq(HistoryDownsampling.MIN_MAX)))
+                .thenReturn(response);
+
+        mockMvc.perform(get("/api/records/history/aggregated")
+                        .param("compositeId", "dev1")
+                        .param("sensorType", "lux")
+                        .param("from", "2023-01-01T00:00:00Z")
+                        .param("to", "2023-01-02T00:00:00Z")
+                        .param("maxPoints", "500")
+                        .param("downsample", "minmax")
+                        .header("Authorization", "Bearer admin"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sensors[0].data[0].value").value(900.0));
+    }
+
+    @Test
+    void aggregatedHistoryRejectsUnknownDownsampling() throws Exception {
+        when(authorizationService.requireMonitoringView(anyString())).thenReturn(adminUser());
+
+        mockMvc.perform(get("/api/records/history/aggregated")
+                        .param("compositeId", "dev1")
+                        .param("from", "2023-01-01T00:00:00Z")
+                        .param("to", "2023-01-02T00:00:00Z")
+                        .param("maxPoints", "500")
+                        .param("downsample", "spline")
+                        .header("Authorization", "Bearer admin"))
+                .andExpect(status().isBadRequest());
+    }
 }
@@ -0,0 +1,151 @@
+package se.hydroleaf.mqtt;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class DeltaEncodingInterceptorTest {
+
+    private static final String TOPIC = "/topic/hydroleaf/telemetry";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final DeltaEncodingInterceptor interceptor = new DeltaEncodingInterceptor(objectMapper);
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    @Test
+    void deltaSubscriptionGetsTheSeriesOnceAndThenOnlyChangedFields() throws Exception {
+        interceptor.preSend(subscribe("s1", "sub-1", "delta", false), channel);
+
+        JsonNode first = objectMapper.readTree(body(interceptor.preSend(
+                message("s1", "sub-1", envelope("layer_01", "T1", 12.5, 40)), channel)));
+        JsonNode second = objectMapper.readTree(body(interceptor.preSend(
+                message("s1", "sub-1", envelope("layer_01", "T2", 12.7, 40)), channel)));
+        JsonNode otherDevice = objectMapper.readTree(body(interceptor.preSend(
+                message("s1", "sub-1", envelope("layer_02", "T2", 3.0, 50)), channel)));
+
+        assertEquals(1, first.get("s").asInt());
+        assertEquals("layer_01", first.get("def").get("deviceId").asText());
+        assertFalse(first.get("def").has("payload"));
+        assertEquals(12.5, first.get("d").get("lux").asDouble());
+        assertEquals(40, first.get("d").get("humidity").asInt());
+
+        assertEquals(1, second.get("s").asInt());
+        assertFalse(second.has("def"));
+        assertEquals("T2", second.get("ts").asText());
+        assertEquals(1, second.get("d").size());
+        assertEquals(12.7, second.get("d").get("lux").asDouble());
+
+        assertEquals(2, otherDevice.get("s").asInt());
+        assertTrue(otherDevice.has("def"));
+    }
+
+    @Test
+    void plainSubscriptionsAndNonEnvelopesAreUntouched() {
+        interceptor.preSend(subscribe("s1", "sub-1", null, false), channel);
+        interceptor.preSend(subscribe("s2", "sub-2", "delta", false), channel);
+
+        Message<?> plain = message("s1", "sub-1", envelope("layer_01", "T1", 1.0, 1));
+        Message<?> raw = message("s2", "sub-2", "{\"lux\":1}".getBytes());
+        assertSame(plain, interceptor.preSend(plain, channel));
+        assertSame(raw, interceptor.preSend(raw, channel));
+    }
+
+    @Test
+    void cborIsOnlyUsedOnTheBinaryTransport() throws Exception {
+        interceptor.preSend(subscribe("sockjs", "sub-1", "delta-cbor", false), channel);
+        interceptor.preSend(subscribe("native", "sub-1", "delta-cbor", true), channel);
+
+        Message<?> text = interceptor.preSend(message("sockjs", "sub-1", envelope("layer_01", "T1", 1.0, 1)), channel);
+        Message<?> binary = interceptor.preSend(message("native", "sub-1", envelope("layer_01", "T1", 1.0, 1)), channel);
+
+        SimpMessageHeaderAccessor textHeaders = SimpMessageHeaderAccessor.wrap(text);
+        assertEquals("delta", textHeaders.getFirstNativeHeader("encoding"));
+        assertEquals(1, objectMapper.readTree(body(text)).get("s").asInt());
+
+        SimpMessageHeaderAccessor binaryHeaders = SimpMessageHeaderAccessor.wrap(binary);
+        assertEquals("delta-cbor", binaryHeaders.getFirstNativeHeader("encoding"));
+        assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM, binaryHeaders.getContentType());
+        assertEquals(1.0, new CBORMapper().readTree(body(binary)).get("d").get("lux").asDouble());
+    }
+
+    @Test
+    void unsubscribeAndDisconnectForgetTheSubscription() {
+        interceptor.preSend(subscribe("s1", "sub-1", "delta", false), channel);
+        interceptor.preSend(subscribe("s2", "sub-1", "delta", false), channel);
+
+        SimpMessageHeaderAccessor unsubscribe = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+        unsubscribe.setSessionId("s1");
+        unsubscribe.setSubscriptionId("sub-1");
+        interceptor.preSend(MessageBuilder.createMessage(new byte[0], unsubscribe.getMessageHeaders()), channel);
+        SimpMessageHeaderAccessor disconnect = SimpMessageHeaderAccessor.create(SimpMessageType.DISCONNECT);
+        disconnect.setSessionId("s2");
+        interceptor.preSend(MessageBuilder.createMessage(new byte[0], disconnect.getMessageHeaders()), channel);
+
+        Message<?> first = message("s1", "sub-1", envelope("layer_01", "T1", 1.0, 1));
+        Message<?> second = message("s2", "sub-1", envelope("layer_01", "T1", 1.0, 1));
+        assertSame(first, interceptor.preSend(first, channel));
+        assertSame(second, interceptor.preSend(second, channel));
+    }
+
+    private byte[] envelope(String deviceId, String timestamp, double lux, int humidity) {
+        Map<String, Object> envelope = new HashMap<>();
+        envelope.put("schemaVersion", 2);
+        envelope.put("kind", "telemetry");
+        envelope.put("deviceId", deviceId);
+        envelope.put("timestamp", timestamp);
+        envelope.put("siteId", "S01");
+        envelope.put("rackId", "R01");
+        envelope.put("payload", Map.of("lux", lux, "humidity", humidity));
+        try {
+            return objectMapper.writeValueAsBytes(envelope);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static byte[] body(Message<?> message) {
+        return (byte[]) message.getPayload();
+    }
+
+    private static Message<byte[]> subscribe(String sessionId, String subscriptionId, String encoding,
+                                             boolean binaryTransport) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(TOPIC);
+        if (encoding != null) {
+            accessor.setNativeHeader("encoding", encoding);
+        }
+        Map<String, Object> attributes = new HashMap<>();
+        if (binaryTransport) {
+            attributes.put(DeltaEncodingInterceptor.BINARY_TRANSPORT_ATTRIBUTE, Boolean.TRUE);
+        }
+        accessor.setSessionAttributes(attributes);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> message(String sessionId, String subscriptionId, byte[] payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(TOPIC);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,129 @@
+package se.hydroleaf.mqtt;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MultiValueMap;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexedSubscriptionRegistryTest {
+
+    private static final String TELEMETRY = "/topic/hydroleaf/telemetry";
+    private static final String LAYER_04 = "S01-R01-L04-LAYER_S01_R01_L04_01";
+    private static final String LAYER_05 = "S01-R01-L05-LAYER_S01_R01_L05_01";
+
+    private final IndexedSubscriptionRegistry registry = new IndexedSubscriptionRegistry();
+
+    @Test
+    void selectorParsesCompositeIdAndSensorTerms() {
+        assertEquals(new SubscriptionSelector(LAYER_04, null),
+                SubscriptionSelector.parse("compositeId = '" + LAYER_04 + "'"));
+        assertEquals(new SubscriptionSelector(LAYER_04, "lux"),
+                SubscriptionSelector.parse("compositeId='" + LAYER_04 + "' and sensorType = 'lux'"));
+        assertNull(SubscriptionSelector.parse(" "));
+        assertThrows(IllegalArgumentException.class, () -> SubscriptionSelector.parse("headers['x'] == 'y'"));
+        assertThrows(IllegalArgumentException.class,
+                () -> SubscriptionSelector.parse("sensorType = 'lux' AND sensorType = 'rh_pct'"));
+    }
+
+    @Test
+    void messagesReachUnfilteredAndMatchingSelectorsOnly() {
+        subscribe("all", "sub-0", TELEMETRY, null);
+        subscribe("layer4", "sub-0", TELEMETRY, "compositeId = '" + LAYER_04 + "'");
+        subscribe("layer5", "sub-0", TELEMETRY, "compositeId = '" + LAYER_05 + "'");
+        subscribe("lux", "sub-0", TELEMETRY, "sensorType = 'lux'");
+        subscribe("layer4co2", "sub-0", TELEMETRY, "compositeId = '" + LAYER_04 + "' AND sensorType = 'co2_ppm'");
+
+        MultiValueMap<String, String> recipients = registry.findSubscriptions(
+                message(TELEMETRY, LAYER_04, Set.of("lux", "rh_pct")));
+
+        assertEquals(Set.of("all", "layer4", "lux"), recipients.keySet());
+        assertEquals(List.of("sub-0"), recipients.get("layer4"));
+        assertEquals(Set.of("all"), registry.findSubscriptions(message(TELEMETRY, null, null)).keySet());
+    }
+
+    @Test
+    void unsubscribeAndDisconnectRemoveFromTheIndex() {
+        subscribe("s1", "sub-0", TELEMETRY, "compositeId = '" + LAYER_04 + "'");
+        subscribe("s1", "sub-1", "/topic/hydroleaf/rack/R01/telemetry", null);
+        subscribe("s2", "sub-0", TELEMETRY, "compositeId = '" + LAYER_04 + "'");
+
+        registry.unregisterSubscription(unsubscribe("s2", "sub-0"));
+        assertEquals(Set.of("s1"), registry.findSubscriptions(message(TELEMETRY, LAYER_04, null)).keySet());
+
+        registry.unregisterAllSubscriptions("s1");
+        assertTrue(registry.findSubscriptions(message(TELEMETRY, LAYER_04, null)).isEmpty());
+        assertFalse(registry.hasSubscriptions(TELEMETRY));
+        assertFalse(registry.hasSubscriptions("/topic/hydroleaf/rack/R01/telemetry"));
+    }
+
+    @Test
+    void resubscribingWithTheSameIdReplacesTheSelector() {
+        subscribe("s1", "sub-0", TELEMETRY, "compositeId = '" + LAYER_04 + "'");
+        subscribe("s1", "sub-0", TELEMETRY, "compositeId = '" + LAYER_05 + "'");
+
+        assertTrue(registry.findSubscriptions(message(TELEMETRY, LAYER_04, null)).isEmpty());
+        assertEquals(Set.of("s1"), registry.findSubscriptions(message(TELEMETRY, LAYER_05, null)).keySet());
+    }
+
+    @Test
+    void patternsAndSelectorOnlyDestinationsCountAsSubscribed() {
+        subscribe("s1", "sub-0", "/topic/hydroleaf/rack/*/telemetry", "sensorType = 'lux'");
+        subscribe("s2", "sub-0", TELEMETRY, "compositeId = '" + LAYER_04 + "'");
+
+        assertTrue(registry.hasSubscriptions("/topic/hydroleaf/rack/R01/telemetry"));
+        assertTrue(registry.hasSubscriptions(TELEMETRY));
+        assertFalse(registry.hasSubscriptions("/topic/hydroleaf/status"));
+        assertEquals(Set.of("s1"), registry.findSubscriptions(
+                message("/topic/hydroleaf/rack/R01/telemetry", LAYER_04, Set.of("lux"))).keySet());
+        assertTrue(registry.findSubscriptions(
+                message("/topic/hydroleaf/rack/R01/telemetry", LAYER_04, Set.of("rh_pct"))).isEmpty());
+    }
+
+    @Test
+    void invalidSelectorIsNotRegistered() {
+        subscribe("s1", "sub-0", TELEMETRY, "compositeId LIKE 'S01%'");
+
+        assertFalse(registry.hasSubscriptions(TELEMETRY));
+    }
+
+    private void subscribe(String sessionId, String subscriptionId, String destination, String selector) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        if (selector != null) {
+            accessor.setNativeHeader(SubscriptionSelector.HEADER, selector);
+        }
+        registry.registerSubscription(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    private static Message<byte[]> unsubscribe(String sessionId, String subscriptionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> message(String destination, String compositeId, Set<String> sensorTypes) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        if (compositeId != null) {
+            accessor.setHeader(IndexedSubscriptionRegistry.COMPOSITE_ID_HEADER, compositeId);
+        }
+        if (sensorTypes != null) {
+            accessor.setHeader(IndexedSubscriptionRegistry.SENSOR_TYPES_HEADER, sensorTypes);
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
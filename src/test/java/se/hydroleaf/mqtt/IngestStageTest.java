@@ -0,0 +1,186 @@
+package se.hydroleaf.mqtt;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import se.hydroleaf.config.MqttIngestProperties.OverflowPolicy;
+import se.hydroleaf.config.MqttIngestProperties.OverflowProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IngestStageTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch busy = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private IngestStage stage;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (stage != null) {
+            stage.stop(Duration.ofSeconds(5));
+        }
+    }
+
+    @Test
+    void dropKindIsRejectedAtOnceWhenTheQueueIsFull() throws Exception {
+        stage = fullStage(Duration.ofSeconds(5));
+
+        long started = System.nanoTime();
+        assertFalse(stage.submit("hydroleaf/v1/S01/R01/L04/LAYER_S01_R01_L04_01/telemetry",
+                IngestKind.TELEMETRY, () -> { }));
+
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1.0, dropped(IngestKind.TELEMETRY));
+        assertEquals(0.0, dropped(IngestKind.STATUS));
+    }
+
+    @Test
+    void blockKindWaitsForSpaceUpToItsTimeout() throws Exception {
+        stage = fullStage(Duration.ofMillis(100));
+
+        long started = System.nanoTime();
+        assertFalse(stage.submit("key", IngestKind.STATUS, () -> { }));
+
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(1.0, dropped(IngestKind.STATUS));
+    }
+
+    @Test
+    void blockKindIsAcceptedOnceTheWorkerCatchesUp() throws Exception {
+        stage = fullStage(Duration.ofSeconds(5));
+        Thread unblock = new Thread(() -> {
+            sleep(100);
+            release.countDown();
+        });
+        unblock.start();
+
+        assertTrue(stage.submit("key", IngestKind.EVENT, () -> { }));
+
+        unblock.join();
+        assertEquals(0.0, dropped(IngestKind.EVENT));
+    }
+
+    @Test
+    void queueDepthGaugeCountsWaitingMessages() throws Exception {
+        stage = fullStage(Duration.ZERO);
+
+        assertEquals(1.0, meterRegistry.get("mqtt.ingest.queue.depth").tag("stage", "test").gauge().value());
+
+        release.countDown();
+        stage.stop(Duration.ofSeconds(5));
+        assertEquals(0.0, meterRegistry.get("mqtt.ingest.queue.depth").tag("stage", "test").gauge().value());
+    }
+
+    @Test
+    void messagesOfOneKeyKeepTheirOrderAcrossWorkers() throws Exception {
+        stage = new IngestStage("test", 4, 4_096, overflow(Duration.ofSeconds(5)), meterRegistry);
+        stage.start();
+        Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+        int keys = 16;
+        int perKey = 200;
+        for (int i = 0; i < perKey; i++) {
+            for (int k = 0; k < keys; k++) {
+                String key = "hydroleaf/v1/S01/R01/L0" + k + "/status";
+                int sequence = i;
+                assertTrue(stage.submit(key, IngestKind.STATUS, () -> seen
+                        .computeIfAbsent(key, x -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(sequence)));
+            }
+        }
+
+        stage.stop(Duration.ofSeconds(10));
+
+        assertEquals(keys, seen.size());
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < perKey; i++) {
+            expected.add(i);
+        }
+        seen.values().forEach(sequence -> assertEquals(expected, sequence));
+    }
+
+    @Test
+    void stopDrainsQueuedMessagesAndRejectsNewOnes() throws Exception {
+        stage = new IngestStage("test", 2, 1_024, overflow(Duration.ofSeconds(5)), meterRegistry);
+        stage.start();
+        AtomicInteger processed = new AtomicInteger();
+        for (int i = 0; i < 500; i++) {
+            assertTrue(stage.submit("key-" + (i % 7), IngestKind.EVENT, () -> {
+                sleep(1);
+                processed.incrementAndGet();
+            }));
+        }
+
+        stage.stop(Duration.ofSeconds(10));
+
+        assertEquals(500, processed.get());
+        assertEquals(0, stage.depth());
+        assertFalse(stage.submit("key-0", IngestKind.EVENT, processed::incrementAndGet));
+        assertEquals(1.0, dropped(IngestKind.EVENT));
+    }
+
+    /**
+     * One worker with room for one queued message: the worker is held inside
+     * its first task and a second task fills the queue.
+     */
+    private IngestStage fullStage(Duration blockTimeout) throws InterruptedException {
+        IngestStage full = new IngestStage("test", 1, 1, overflow(blockTimeout), meterRegistry);
+        full.start();
+        assertTrue(full.submit("key", IngestKind.STATUS, () -> {
+            busy.countDown();
+            await(release);
+        }));
+        assertTrue(busy.await(5, TimeUnit.SECONDS));
+        assertTrue(full.submit("key", IngestKind.STATUS, () -> { }));
+        return full;
+    }
+
+    private double dropped(IngestKind kind) {
+        return meterRegistry.get("mqtt.ingest.dropped")
+                .tag("stage", "test")
+                .tag("kind", kind.name().toLowerCase(Locale.ROOT))
+                .counter()
+                .count();
+    }
+
+    private static Map<IngestKind, OverflowProperties> overflow(Duration blockTimeout) {
+        Map<IngestKind, OverflowProperties> overflow = new EnumMap<>(IngestKind.class);
+        overflow.put(IngestKind.TELEMETRY, new OverflowProperties(OverflowPolicy.DROP, Duration.ZERO));
+        overflow.put(IngestKind.STATUS, new OverflowProperties(OverflowPolicy.BLOCK, blockTimeout));
+        overflow.put(IngestKind.EVENT, new OverflowProperties(OverflowPolicy.BLOCK, blockTimeout));
+        overflow.put(IngestKind.OTHER, new OverflowProperties(OverflowPolicy.BLOCK, blockTimeout));
+        return overflow;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
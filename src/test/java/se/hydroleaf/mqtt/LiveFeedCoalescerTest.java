@@ -0,0 +1,77 @@
+package se.hydroleaf.mqtt;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+import se.hydroleaf.config.LiveFeedProperties;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+class LiveFeedCoalescerTest {
+
+    private static final List<String> ENVELOPE_DESTINATIONS =
+            List.of("/topic/hydroleaf/telemetry", "/topic/hydroleaf/rack/R01/telemetry");
+
+    private final TopicPublisher topicPublisher = mock(TopicPublisher.class);
+    private final TaskScheduler scheduler = mock(TaskScheduler.class);
+    private LiveFeedCoalescer liveFeed;
+
+    @BeforeEach
+    void setUp() {
+        doReturn(mock(ScheduledFuture.class)).when(scheduler).scheduleAtFixedRate(any(Runnable.class), any(Duration.class));
+        liveFeed = new LiveFeedCoalescer(new LiveFeedProperties(), topicPublisher, scheduler);
+        liveFeed.start();
+    }
+
+    @Test
+    void telemetryIsConflatedToLatestPerDevice() {
+        liveFeed.publishAll(ENVELOPE_DESTINATIONS, "t1", "S01-R01-L01-G01", "telemetry");
+        liveFeed.publishAll(ENVELOPE_DESTINATIONS, "t2", "S01-R01-L01-G01", "telemetry");
+        liveFeed.publishAll(ENVELOPE_DESTINATIONS, "other", "S01-R01-L02-G01", "telemetry");
+        verify(topicPublisher, never()).publishAll(any(), any(), anyString(), anyString(), any());
+
+        liveFeed.flush();
+
+        verify(topicPublisher).publishAll(ENVELOPE_DESTINATIONS, "t2", "S01-R01-L01-G01", "telemetry", null);
+        verify(topicPublisher).publishAll(ENVELOPE_DESTINATIONS, "other", "S01-R01-L02-G01", "telemetry", null);
+        verify(topicPublisher, never()).publishAll(any(), eq("t1"), anyString(), anyString(), any());
+
+        liveFeed.flush();
+        verify(topicPublisher, times(2)).publishAll(any(), any(), anyString(), anyString(), any());
+    }
+
+    @Test
+    void eventsPassThroughImmediately() {
+        liveFeed.publish("/topic/hydroleaf/event", "e1", "S01-R01-L01-G01", "event");
+        liveFeed.publish("/topic/hydroleaf/event", "e2", "S01-R01-L01-G01", "event");
+
+        verify(topicPublisher).publish("/topic/hydroleaf/event", "e1", "S01-R01-L01-G01", "event");
+        verify(topicPublisher).publish("/topic/hydroleaf/event", "e2", "S01-R01-L01-G01", "event");
+        liveFeed.flush();
+        verifyNoMoreInteractions(topicPublisher);
+    }
+
+    @Test
+    void disabledFeedPublishesEverything() {
+        LiveFeedProperties properties = new LiveFeedProperties();
+        properties.setEnabled(false);
+        LiveFeedCoalescer direct = new LiveFeedCoalescer(properties, topicPublisher, scheduler);
+        direct.start();
+
+        direct.publish("/topic/x", "t1", "S01-R01-L01-G01", "telemetry");
+
+        verify(topicPublisher).publish("/topic/x", "t1", "S01-R01-L01-G01", "telemetry");
+    }
+}
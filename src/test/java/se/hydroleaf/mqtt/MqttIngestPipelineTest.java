@@ -0,0 +1,60 @@
+package se.hydroleaf.mqtt;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import se.hydroleaf.config.MqttIngestProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MqttIngestPipelineTest {
+
+    private static final String TOPIC = "hydroleaf/v1/S01/R01/L04/LAYER_S01_R01_L04_01/telemetry";
+    private static final byte[] PAYLOAD = "{}".getBytes(StandardCharsets.UTF_8);
+
+    private final MqttMessageHandler messageHandler = mock(MqttMessageHandler.class);
+    private final MqttIngestProperties properties = new MqttIngestProperties();
+
+    @Test
+    void disabledPipelineHandlesOnTheCallingThread() {
+        properties.setEnabled(false);
+        MqttIngestPipeline pipeline = new MqttIngestPipeline(messageHandler, properties, new SimpleMeterRegistry());
+        pipeline.start();
+
+        pipeline.submit(TOPIC, PAYLOAD);
+
+        verify(messageHandler).handle(TOPIC, PAYLOAD);
+        verify(messageHandler, never()).route(any(), any());
+    }
+
+    @Test
+    void shutdownDrainsParseOutputThroughThePersistStage() {
+        List<Integer> persisted = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 100; i++) {
+            int sequence = i;
+            byte[] payload = Integer.toString(i).getBytes(StandardCharsets.UTF_8);
+            when(messageHandler.route(eq(TOPIC), eq(payload))).thenReturn(() -> persisted.add(sequence));
+        }
+        MqttIngestPipeline pipeline = new MqttIngestPipeline(messageHandler, properties, new SimpleMeterRegistry());
+        pipeline.start();
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            pipeline.submit(TOPIC, Integer.toString(i).getBytes(StandardCharsets.UTF_8));
+            expected.add(i);
+        }
+        pipeline.stop();
+
+        assertEquals(expected, persisted);
+    }
+}
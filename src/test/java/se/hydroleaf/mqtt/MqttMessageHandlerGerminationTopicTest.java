@@ -22,7 +22,7 @@ class MqttMessageHandlerGerminationTopicTest {
     @Mock
     RecordService recordService;
     @Mock
-    TopicPublisher topicPublisher;
+    LiveFeedCoalescer liveFeed;
     @Mock
     WaterFlowStatusService waterFlowStatusService;
     @Mock
@@ -33,7 +33,7 @@ class MqttMessageHandlerGerminationTopicTest {
     @BeforeEach
     void setup() {
         objectMapper = new ObjectMapper();
-        handler = new MqttMessageHandler(objectMapper, recordService, topicPublisher, waterFlowStatusService, deviceStatusEventService);
+        handler = new MqttMessageHandler(objectMapper, recordService, liveFeed, waterFlowStatusService, deviceStatusEventService);
     }
 
     @Test
@@ -54,8 +54,8 @@ class MqttMessageHandlerGerminationTopicTest {
 
         handler.handle(topic, payload);
 
-        verify(recordService).saveRecord(eq("S01-R01-L02-G03"), any(), eq(TopicName.germinationTopic), eq(topic), any());
-        verify(topicPublisher).publish(eq("/topic/" + topic), eq(payload), eq("S01-R01-L02-G03"), isNull());
+        verify(recordService).saveRecord(eq("S01-R01-L02-G03"), any(TelemetryReading.class), eq(TopicName.germinationTopic), eq(topic), any());
+        verify(liveFeed).publish(eq("/topic/" + topic), eq(payload), eq("S01-R01-L02-G03"), isNull());
     }
 
     @Test
@@ -71,7 +71,7 @@ class MqttMessageHandlerGerminationTopicTest {
 
         handler.handle(topic, payload);
 
-        verify(recordService).saveRecord(eq("S01-R01-L02-G03"), any(), eq(TopicName.germinationTopic), eq(topic), any());
-        verify(topicPublisher).publish(eq("/topic/" + topic), eq(payload), eq("S01-R01-L02-G03"), isNull());
+        verify(recordService).saveRecord(eq("S01-R01-L02-G03"), any(TelemetryReading.class), eq(TopicName.germinationTopic), eq(topic), any());
+        verify(liveFeed).publish(eq("/topic/" + topic), eq(payload), eq("S01-R01-L02-G03"), isNull());
     }
 }
@@ -11,6 +11,9 @@ import se.hydroleaf.service.DeviceStatusEventService;
 import se.hydroleaf.service.RecordService;
 import se.hydroleaf.service.WaterFlowStatusService;
 
+import java.util.List;
+import java.util.Set;
+
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
@@ -26,7 +29,7 @@ class MqttMessageHandlerHydroleafTopicTest {
     @Mock
     RecordService recordService;
     @Mock
-    TopicPublisher topicPublisher;
+    LiveFeedCoalescer liveFeed;
     @Mock
     WaterFlowStatusService waterFlowStatusService;
     @Mock
@@ -37,7 +40,7 @@ class MqttMessageHandlerHydroleafTopicTest {
     @BeforeEach
     void setup() {
         objectMapper = new ObjectMapper();
-        handler = new MqttMessageHandler(objectMapper, recordService, topicPublisher, waterFlowStatusService, deviceStatusEventService);
+        handler = new MqttMessageHandler(objectMapper, recordService, liveFeed, waterFlowStatusService, deviceStatusEventService);
     }
 
     @Test
@@ -57,12 +60,12 @@ class MqttMessageHandlerHydroleafTopicTest {
 
         handler.handle(topic, payload);
 
-        verify(recordService).saveRecord(eq("S01-R01-L04-LAYER_S01_R01_L04_01"), any(), isNull(), eq(topic), any());
-        verify(topicPublisher).publish(eq("/topic/" + topic), eq(payload), eq("S01-R01-L04-LAYER_S01_R01_L04_01"), eq("telemetry"));
+        verify(recordService).saveRecord(eq("S01-R01-L04-LAYER_S01_R01_L04_01"), any(TelemetryReading.class), isNull(), eq(topic), any());
+        verify(liveFeed).publish(eq("/topic/" + topic), eq(payload), eq("S01-R01-L04-LAYER_S01_R01_L04_01"), eq("telemetry"));
     }
 
     @Test
-    void germinationV1TopicPublishesAggregateEnvelope() {
+    void germinationV1TopicPublishesAggregateEnvelope() throws Exception {
         String topic = "hydroleaf/v1/S01/germination/L00/GER_S01_01/telemetry";
         String payload = """
                 {
@@ -79,20 +82,23 @@ class MqttMessageHandlerHydroleafTopicTest {
 
         verify(recordService).saveRecord(
                 eq("S01-germination-L00-GER_S01_01"),
-                any(),
+                any(TelemetryReading.class),
                 isNull(),
                 eq(topic),
                 argThat(parsed -> parsed != null && "germination".equals(parsed.rack()))
         );
 
         ArgumentCaptor<Object> envelopeCaptor = ArgumentCaptor.forClass(Object.class);
-        verify(topicPublisher).publish(eq("/topic/hydroleaf/telemetry"), envelopeCaptor.capture(),
-                eq("S01-germination-L00-GER_S01_01"), eq("telemetry"));
+        verify(liveFeed).publishAll(
+                eq(List.of("/topic/hydroleaf/telemetry", "/topic/hydroleaf/rack/germination/telemetry",
+                        "/topic/hydroleaf/device/S01-germination-L00-GER_S01_01/telemetry")),
+                envelopeCaptor.capture(), eq("S01-germination-L00-GER_S01_01"), eq("telemetry"), eq(Set.of("sensors")));
 
         Object envelope = envelopeCaptor.getValue();
         assertNotNull(envelope);
         assertTrue(envelope instanceof com.fasterxml.jackson.databind.JsonNode);
-        com.fasterxml.jackson.databind.JsonNode node = (com.fasterxml.jackson.databind.JsonNode) envelope;
+        // the payload is embedded pre-serialized; check what subscribers actually receive
+        com.fasterxml.jackson.databind.JsonNode node = objectMapper.readTree(objectMapper.writeValueAsString(envelope));
         assertEquals(2, node.path("schemaVersion").asInt());
         assertEquals("S01", node.path("siteId").asText());
         assertEquals("germination", node.path("rackId").asText());
@@ -107,5 +113,6 @@ class MqttMessageHandlerHydroleafTopicTest {
         assertTrue(node.path("payload").path("layer").isMissingNode());
         assertTrue(node.path("payload").path("deviceId").isMissingNode());
         assertTrue(node.path("payload").path("timestamp").isMissingNode());
+        assertTrue(node.path("payload").path("sensors").isArray());
     }
 }
@@ -3,7 +3,6 @@ package se.hydroleaf.mqtt;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import se.hydroleaf.service.DeviceStatusEventService;
 import se.hydroleaf.service.RecordService;
 import se.hydroleaf.service.WaterFlowStatusService;
@@ -21,14 +20,13 @@ class MqttMessageHandlerTest {
 
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final RecordService recordService = mock(RecordService.class);
-    private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
-    private final TopicPublisher topicPublisher = new TopicPublisher(true, messagingTemplate);
+    private final LiveFeedCoalescer liveFeed = mock(LiveFeedCoalescer.class);
     private final WaterFlowStatusService waterFlowStatusService = mock(WaterFlowStatusService.class);
     private final DeviceStatusEventService deviceStatusEventService = mock(DeviceStatusEventService.class);
     private final MqttMessageHandler handler = new MqttMessageHandler(
             objectMapper,
             recordService,
-            topicPublisher,
+            liveFeed,
             waterFlowStatusService,
             deviceStatusEventService);
 
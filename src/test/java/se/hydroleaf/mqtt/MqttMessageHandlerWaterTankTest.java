@@ -23,7 +23,7 @@ class MqttMessageHandlerWaterTankTest {
     @Mock
     RecordService recordService;
     @Mock
-    TopicPublisher topicPublisher;
+    LiveFeedCoalescer liveFeed;
     @Mock
     WaterFlowStatusService waterFlowStatusService;
     @Mock
@@ -34,7 +34,7 @@ class MqttMessageHandlerWaterTankTest {
     @BeforeEach
     void setup() {
         objectMapper = new ObjectMapper();
-        handler = new MqttMessageHandler(objectMapper, recordService, topicPublisher, waterFlowStatusService, deviceStatusEventService);
+        handler = new MqttMessageHandler(objectMapper, recordService, liveFeed, waterFlowStatusService, deviceStatusEventService);
     }
 
     @Test
@@ -65,8 +65,8 @@ class MqttMessageHandlerWaterTankTest {
 
         handler.handle(topic, payload);
 
-        verify(recordService).saveRecord(eq("S01-R01-L01-G02"), any(), eq(TopicName.waterTank), eq(topic), any());
-        verify(topicPublisher).publish(eq("/topic/" + topic), eq(payload), eq("S01-R01-L01-G02"), isNull());
+        verify(recordService).saveRecord(eq("S01-R01-L01-G02"), any(TelemetryReading.class), eq(TopicName.waterTank), eq(topic), any());
+        verify(liveFeed).publish(eq("/topic/" + topic), eq(payload), eq("S01-R01-L01-G02"), isNull());
     }
 
     @Test
@@ -76,7 +76,7 @@ class MqttMessageHandlerWaterTankTest {
 
         handler.handle(topic, payload);
 
-        verify(topicPublisher).publish(eq("/topic/" + topic), eq(payload), isNull(), isNull());
+        verify(liveFeed).publish(eq("/topic/" + topic), eq(payload), isNull(), isNull());
         verifyNoInteractions(recordService);
     }
 
@@ -87,6 +87,6 @@ class MqttMessageHandlerWaterTankTest {
 
         handler.handle(topic, payload);
 
-        verifyNoInteractions(recordService, topicPublisher);
+        verifyNoInteractions(recordService, liveFeed);
     }
 }
@@ -0,0 +1,75 @@
+package se.hydroleaf.mqtt;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of extracting telemetry from a hydroleaf/v1 payload: the previous
+ * {@code new String(bytes)} + {@code readTree} path against a streaming
+ * {@link TelemetryReading} read straight from the MQTT bytes. Allocations per
+ * message show up as {@code gc.alloc.rate.norm} from the profile's gc profiler.
+ *
+ * <p>Run with {@code mvn -Pjmh test-compile exec:exec -Djmh.include=MqttPayloadParse}.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MqttPayloadParseBenchmark {
+
+    private static final String LAYER_TELEMETRY = """
+            {"timestamp":"2025-01-01T00:00:00Z","site":"S01","rack":"R01","layer":"L04",
+             "deviceId":"LAYER_S01_R01_L04_01","lux":1520.5,"rh_pct":61.2,"co2_ppm":812,
+             "layer_temp_c":22.4,"air_temp_c":23.1,
+             "as7343_counts":{"F1":120,"F2":340,"FZ":512,"F3":610,"F4":702,"FY":810,"F5":905,
+                              "FXL":1002,"F6":1100,"F7":1210,"F8":1320,"NIR":1440,"CLEAR":2100},
+             "controllers":[{"name":"light","state":true},{"name":"fan","state":false}]}
+            """;
+
+    private static final String TANK_TELEMETRY = """
+            {"timestamp":"2025-01-01T00:00:00Z","site":"S01","rack":"R01","layer":"L01",
+             "deviceId":"TANK_01","solution_temp_c":19.8,"air_temp_c":21.0}
+            """;
+
+    @Param({"layer", "tank"})
+    public String payload;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bytes = ("layer".equals(payload) ? LAYER_TELEMETRY : TANK_TELEMETRY).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public JsonNode tree() throws IOException {
+        return objectMapper.readTree(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public TelemetryReading streaming() throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(bytes)) {
+            return TelemetryReading.read(parser);
+        }
+    }
+}
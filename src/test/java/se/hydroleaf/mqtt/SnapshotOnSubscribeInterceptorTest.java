@@ -0,0 +1,174 @@
+package se.hydroleaf.mqtt;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.annotation.support.SimpAnnotationMethodMessageHandler;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.MessageBuilder;
+import se.hydroleaf.config.LiveFeedProperties;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class SnapshotOnSubscribeInterceptorTest {
+
+    private static final String RACK_TOPIC = "/topic/hydroleaf/rack/R01/telemetry";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MessageChannel outbound = mock(MessageChannel.class);
+    private final MutableClock clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+    private final LastValueCache cache = new LastValueCache(new LiveFeedProperties(), clock, false);
+    private final SnapshotOnSubscribeInterceptor interceptor =
+            new SnapshotOnSubscribeInterceptor(cache, objectMapper, outbound);
+
+    @Test
+    void subscriberAskingForASnapshotGetsTheLatestMessagePerDeviceInOneFrame() throws Exception {
+        cache.put(RACK_TOPIC, "S01-R01-L02-G01", "telemetry", Map.of("compositeId", "S01-R01-L02-G01", "lux", 1));
+        cache.put(RACK_TOPIC, "S01-R01-L01-G01", "telemetry", "{\"compositeId\":\"S01-R01-L01-G01\",\"lux\":2}");
+        cache.put(RACK_TOPIC, "S01-R01-L02-G01", "telemetry", Map.of("compositeId", "S01-R01-L02-G01", "lux", 3));
+        cache.put(RACK_TOPIC, "S01-R01-L03-G01", "event", Map.of("code", "boot"));
+
+        subscribed(subscribe(RACK_TOPIC, "true"));
+
+        ArgumentCaptor<Message<?>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(outbound).send(sent.capture());
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(sent.getValue());
+        assertEquals(SimpMessageType.MESSAGE, headers.getMessageType());
+        assertEquals("session-1", headers.getSessionId());
+        assertEquals("sub-1", headers.getSubscriptionId());
+        assertEquals(RACK_TOPIC, headers.getDestination());
+        assertEquals("true", headers.getFirstNativeHeader("snapshot"));
+
+        JsonNode body = objectMapper.readTree((byte[]) sent.getValue().getPayload());
+        assertEquals(2, body.size());
+        assertEquals(2, body.get(0).get("lux").asInt());
+        assertEquals(3, body.get(1).get("lux").asInt());
+    }
+
+    @Test
+    void staleEntriesAreNotReplayed() throws Exception {
+        cache.put(RACK_TOPIC, "S01-R01-L01-G01", "telemetry", Map.of("lux", 1));
+        clock.advance(Duration.ofMinutes(16));
+
+        subscribed(subscribe(RACK_TOPIC, "true"));
+
+        ArgumentCaptor<Message<?>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(outbound).send(sent.capture());
+        assertEquals(0, objectMapper.readTree((byte[]) sent.getValue().getPayload()).size());
+    }
+
+    @Test
+    void plainSubscriptionsAreLeftAlone() {
+        cache.put(RACK_TOPIC, "S01-R01-L01-G01", "telemetry", Map.of("lux", 1));
+
+        subscribed(subscribe(RACK_TOPIC, null));
+
+        verifyNoInteractions(outbound);
+    }
+
+    @Test
+    void messagesPublishedBeforeTheBrokerRegistersTheSubscriptionAreInTheSnapshot() throws Exception {
+        cache.put(RACK_TOPIC, "S01-R01-L01-G01", "telemetry", Map.of("lux", 1));
+        Message<byte[]> subscribe = subscribe(RACK_TOPIC, "true");
+
+        // the SUBSCRIBE is queued on the inbound channel, not yet seen by the broker
+        assertSame(subscribe, interceptor.preSend(subscribe, mock(MessageChannel.class)));
+        verifyNoInteractions(outbound);
+        // published meanwhile: the new subscription does not receive it live
+        cache.put(RACK_TOPIC, "S01-R01-L01-G01", "telemetry", Map.of("lux", 2));
+        interceptor.afterMessageHandled(subscribe, mock(MessageChannel.class),
+                mock(SimpAnnotationMethodMessageHandler.class), null);
+        verifyNoInteractions(outbound);
+        subscribed(subscribe);
+
+        ArgumentCaptor<Message<?>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(outbound).send(sent.capture());
+        JsonNode body = objectMapper.readTree((byte[]) sent.getValue().getPayload());
+        assertEquals(1, body.size());
+        assertEquals(2, body.get(0).get("lux").asInt());
+    }
+
+    @Test
+    void noSnapshotWhenTheBrokerRejectedTheSubscription() {
+        cache.put(RACK_TOPIC, "S01-R01-L01-G01", "telemetry", Map.of("lux", 1));
+
+        interceptor.afterMessageHandled(subscribe(RACK_TOPIC, "true"), mock(MessageChannel.class),
+                mock(SimpleBrokerMessageHandler.class), new IllegalStateException("rejected"));
+
+        verifyNoInteractions(outbound);
+    }
+
+    @Test
+    void clusteredInstancesSendNoPartialSnapshot() {
+        LastValueCache clustered = new LastValueCache(new LiveFeedProperties(), clock, true);
+        SnapshotOnSubscribeInterceptor clusteredInterceptor =
+                new SnapshotOnSubscribeInterceptor(clustered, objectMapper, outbound);
+        clustered.put(RACK_TOPIC, "S01-R01-L01-G01", "telemetry", Map.of("lux", 1));
+
+        clusteredInterceptor.afterMessageHandled(subscribe(RACK_TOPIC, "true"), mock(MessageChannel.class),
+                mock(SimpleBrokerMessageHandler.class), null);
+
+        assertTrue(clustered.snapshot(RACK_TOPIC).isEmpty());
+        verifyNoInteractions(outbound);
+    }
+
+    /** The broker has handled, and so registered, the subscription. */
+    private void subscribed(Message<?> subscribe) {
+        interceptor.afterMessageHandled(subscribe, mock(MessageChannel.class),
+                mock(SimpleBrokerMessageHandler.class), null);
+    }
+
+    private static Message<byte[]> subscribe(String destination, String snapshot) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId("session-1");
+        accessor.setSubscriptionId("sub-1");
+        accessor.setDestination(destination);
+        if (snapshot != null) {
+            accessor.setNativeHeader("snapshot", snapshot);
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package se.hydroleaf.mqtt;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Live feed fan-out through an external STOMP broker, as used in clustered mode.
+ */
+@EnabledIfSystemProperty(named = "it.docker", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@Testcontainers
+@Tag("integration")
+class StompBrokerRelayIT {
+
+    private static final String TOPIC = "/topic/hydroleaf/telemetry";
+
+    @Container
+    static final GenericContainer<?> broker = new GenericContainer<>("apache/activemq-classic:6.1.4")
+            .withExposedPorts(61613)
+            .waitingFor(Wait.forListeningPort());
+
+    @DynamicPropertySource
+    static void relayProps(DynamicPropertyRegistry r) {
+        r.add("cluster.relay.enabled", () -> "true");
+        r.add("cluster.relay.host", broker::getHost);
+        r.add("cluster.relay.port", () -> broker.getMappedPort(61613));
+    }
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    TopicPublisher topicPublisher;
+
+    @Test
+    void messagesPublishedByTheBackendReachSubscribersThroughTheBroker() throws Exception {
+        WebSocketStompClient client = new WebSocketStompClient(new StandardWebSocketClient());
+        client.setMessageConverter(new MappingJackson2MessageConverter());
+        StompSession session = client.connectAsync("ws://localhost:" + port + "/ws-native",
+                new StompSessionHandlerAdapter() { }).get(10, TimeUnit.SECONDS);
+
+        BlockingQueue<Map<?, ?>> received = new LinkedBlockingQueue<>();
+        session.subscribe(TOPIC, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return Map.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                received.add((Map<?, ?>) payload);
+            }
+        });
+
+        // the subscription reaches the broker asynchronously; publish until it is in place
+        Map<?, ?> message = null;
+        for (int attempt = 0; attempt < 50 && message == null; attempt++) {
+            topicPublisher.publishAll(List.of(TOPIC), Map.of("kind", "telemetry", "deviceId", "layer_01"),
+                    "S01-R01-L01-layer_01", "telemetry");
+            message = received.poll(200, TimeUnit.MILLISECONDS);
+        }
+
+        assertThat(message).isNotNull();
+        assertThat(message.get("deviceId")).isEqualTo("layer_01");
+        session.disconnect();
+        client.stop();
+    }
+}
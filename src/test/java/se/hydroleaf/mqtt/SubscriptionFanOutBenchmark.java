@@ -0,0 +1,143 @@
+package se.hydroleaf.mqtt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Publish latency of the simple broker with hundreds of connected sessions,
+ * each interested in one device of the layer telemetry feed:
+ *
+ * <ul>
+ *     <li>{@code broadcast}: every session subscribes to
+ *     {@code /topic/hydroleaf/telemetry} and filters on the client, as before
+ *     selectors existed, so each publish is copied to every session;</li>
+ *     <li>{@code selector}: every session subscribes with
+ *     {@code selector: compositeId = '…'} through the
+ *     {@link IndexedSubscriptionRegistry};</li>
+ *     <li>{@code device}: every session subscribes to
+ *     {@code /topic/hydroleaf/device/{compositeId}/telemetry}.</li>
+ * </ul>
+ *
+ * <p>One operation publishes one message for each device. The outbound
+ * channel only counts the frames it is handed, so the numbers are the broker's
+ * recipient resolution and fan-out, without the socket write.</p>
+ *
+ * <p>Run with {@code mvn -Pjmh test-compile exec:exec -Djmh.include=SubscriptionFanOut}.</p>
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubscriptionFanOutBenchmark {
+
+    private static final String TELEMETRY = "/topic/hydroleaf/telemetry";
+    private static final int DEVICES = 40;
+    private static final Set<String> SENSOR_TYPES = Set.of("lux", "rh_pct", "co2_ppm", "air_temp_c");
+    private static final byte[] BODY = """
+            {"schemaVersion":2,"kind":"telemetry","deviceId":"LAYER_S01_R01_L04_01","payload":{"lux":1520.5}}
+            """.getBytes(StandardCharsets.UTF_8);
+
+    @Param({"200", "500", "1000"})
+    public int subscribers;
+
+    @Param({"broadcast", "selector", "device"})
+    public String mode;
+
+    private SimpleBrokerMessageHandler broker;
+    private long frames;
+    private List<Message<byte[]>> messages;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MessageChannel outbound = (message, timeout) -> {
+            frames++;
+            return true;
+        };
+        broker = new SimpleBrokerMessageHandler(new ExecutorSubscribableChannel(), outbound,
+                new ExecutorSubscribableChannel(), List.of("/topic"));
+        if (!"broadcast".equals(mode)) {
+            broker.setSubscriptionRegistry(new IndexedSubscriptionRegistry());
+        }
+        broker.start();
+        for (int i = 0; i < subscribers; i++) {
+            String sessionId = "session-" + i;
+            String compositeId = compositeId(i % DEVICES);
+            broker.handleMessage(frame(SimpMessageType.CONNECT, sessionId, null, null));
+            switch (mode) {
+                case "broadcast" -> broker.handleMessage(frame(SimpMessageType.SUBSCRIBE, sessionId, TELEMETRY, null));
+                case "selector" -> broker.handleMessage(frame(SimpMessageType.SUBSCRIBE, sessionId, TELEMETRY,
+                        "compositeId = '" + compositeId + "'"));
+                default -> broker.handleMessage(frame(SimpMessageType.SUBSCRIBE, sessionId,
+                        "/topic/hydroleaf/device/" + compositeId + "/telemetry", null));
+            }
+        }
+        messages = IntStream.range(0, DEVICES)
+                .mapToObj(device -> publication(compositeId(device)))
+                .toList();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        broker.stop();
+    }
+
+    @Benchmark
+    public long publishToEveryDevice() {
+        for (Message<byte[]> message : messages) {
+            broker.handleMessage(message);
+        }
+        return frames;
+    }
+
+    private Message<byte[]> publication(String compositeId) {
+        String destination = "device".equals(mode) ? "/topic/hydroleaf/device/" + compositeId + "/telemetry" : TELEMETRY;
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        accessor.setHeader(IndexedSubscriptionRegistry.COMPOSITE_ID_HEADER, compositeId);
+        accessor.setHeader(IndexedSubscriptionRegistry.SENSOR_TYPES_HEADER, SENSOR_TYPES);
+        return MessageBuilder.createMessage(BODY, accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> frame(SimpMessageType type, String sessionId, String destination, String selector) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId);
+        if (destination != null) {
+            accessor.setSubscriptionId("sub-0");
+            accessor.setDestination(destination);
+        }
+        if (selector != null) {
+            accessor.setNativeHeader(SubscriptionSelector.HEADER, selector);
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static String compositeId(int device) {
+        return String.format("S01-R01-L%02d-LAYER_S01_R01_L%02d_01", device, device);
+    }
+}
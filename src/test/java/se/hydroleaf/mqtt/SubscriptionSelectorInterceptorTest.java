@@ -0,0 +1,65 @@
+package se.hydroleaf.mqtt;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import se.hydroleaf.config.ClusterProperties;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class SubscriptionSelectorInterceptorTest {
+
+    private static final String TELEMETRY = "/topic/hydroleaf/telemetry";
+
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    @Test
+    void validAndMissingSelectorsPass() {
+        SubscriptionSelectorInterceptor interceptor = new SubscriptionSelectorInterceptor(new ClusterProperties());
+        Message<byte[]> selected = subscribe("compositeId = 'S01-R01-L04-G01' AND sensorType = 'lux'");
+        Message<byte[]> plain = subscribe(null);
+
+        assertSame(selected, interceptor.preSend(selected, channel));
+        assertSame(plain, interceptor.preSend(plain, channel));
+    }
+
+    @Test
+    void malformedSelectorFailsTheSubscribe() {
+        SubscriptionSelectorInterceptor interceptor = new SubscriptionSelectorInterceptor(new ClusterProperties());
+
+        MessageDeliveryException ex = assertThrows(MessageDeliveryException.class,
+                () -> interceptor.preSend(subscribe("compositeId LIKE 'S01%'"), channel));
+
+        assertTrue(ex.getMessage().contains("Unsupported selector"));
+    }
+
+    @Test
+    void selectorsAreRejectedBehindTheRelay() {
+        ClusterProperties cluster = new ClusterProperties();
+        cluster.getRelay().setEnabled(true);
+        SubscriptionSelectorInterceptor interceptor = new SubscriptionSelectorInterceptor(cluster);
+        Message<byte[]> plain = subscribe(null);
+
+        assertThrows(MessageDeliveryException.class,
+                () -> interceptor.preSend(subscribe("compositeId = 'S01-R01-L04-G01'"), channel));
+        assertSame(plain, interceptor.preSend(plain, channel));
+    }
+
+    private static Message<byte[]> subscribe(String selector) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId("s1");
+        accessor.setSubscriptionId("sub-1");
+        accessor.setDestination(TELEMETRY);
+        if (selector != null) {
+            accessor.setNativeHeader(SubscriptionSelector.HEADER, selector);
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,88 @@
+package se.hydroleaf.mqtt;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TelemetryReadingTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void readsKnownFieldsAndSkipsEverythingElse() throws Exception {
+        TelemetryReading reading = read("""
+                {
+                  "timestamp": 1735689600000,
+                  "composite_id": "S01-R01-L01-G01",
+                  "kind": "telemetry",
+                  "sensors": [{"sensorType": "lux", "value": 1.0, "nested": {"lux": 99}}],
+                  "lux": 1520.5,
+                  "rh_pct": "61.2",
+                  "co2_ppm": "n/a",
+                  "air_temp_c": {"value": 21},
+                  "as7343_counts": {"F1": 120, "": 5, "NIR": "bad", "CLEAR": "2100"},
+                  "controllers": [
+                    {"name": "light", "state": true, "timestamp": "2025-01-01T00:00:05Z"},
+                    {"name": "fan", "state": "on"},
+                    {"state": false},
+                    {"name": "pump", "state": false}
+                  ]
+                }
+                """);
+
+        assertEquals(Instant.ofEpochMilli(1735689600000L), reading.timestamp());
+        assertEquals("S01-R01-L01-G01", reading.compositeId());
+        assertEquals("telemetry", reading.kind());
+        assertEquals(1520.5, reading.get(TelemetryReading.Metric.LUX));
+        assertEquals(61.2, reading.get(TelemetryReading.Metric.RH_PCT));
+        assertFalse(reading.has(TelemetryReading.Metric.CO2_PPM));
+        assertFalse(reading.has(TelemetryReading.Metric.AIR_TEMP_C));
+
+        assertEquals(2, reading.countSize());
+        assertEquals("F1", reading.countName(0));
+        assertEquals(120.0, reading.countValue(0));
+        assertEquals("CLEAR", reading.countName(1));
+        assertEquals(2100.0, reading.countValue(1));
+
+        assertEquals(2, reading.controllerSize());
+        assertEquals("light", reading.controllerName(0));
+        assertTrue(reading.controllerState(0));
+        assertEquals(Instant.parse("2025-01-01T00:00:05Z"), reading.controllerTime(0));
+        assertEquals("pump", reading.controllerName(1));
+        assertFalse(reading.controllerState(1));
+        assertNull(reading.controllerTime(1));
+    }
+
+    @Test
+    void keepsUnparsableTimestampText() throws Exception {
+        TelemetryReading reading = read("{\"timestamp\":\"2025-01-01T00:00:00\",\"compositeId\":\"S01-R01-L01-G01\"}");
+
+        assertNull(reading.timestamp());
+        assertEquals("2025-01-01T00:00:00", reading.timestampText());
+        assertEquals("S01-R01-L01-G01", reading.compositeId());
+    }
+
+    @Test
+    void treeAdapterMatchesStreamingRead() throws Exception {
+        String json = "{\"lux\":12.5,\"as7343_counts\":{\"F8\":7}}";
+        TelemetryReading reading = TelemetryReading.of(objectMapper.readTree(json));
+
+        assertEquals(12.5, reading.get(TelemetryReading.Metric.LUX));
+        assertEquals(1, reading.countSize());
+        assertEquals("F8", reading.countName(0));
+    }
+
+    private TelemetryReading read(String json) throws Exception {
+        try (JsonParser parser = objectMapper.getFactory().createParser(json.getBytes(StandardCharsets.UTF_8))) {
+            return TelemetryReading.read(parser);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package se.hydroleaf.mqtt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import se.hydroleaf.config.LiveFeedProperties;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class TopicPublisherTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+    private final DefaultSubscriptionRegistry registry = new DefaultSubscriptionRegistry();
+    private final LastValueCache lastValueCache = new LastValueCache(new LiveFeedProperties(), Clock.systemUTC(), false);
+    private TopicPublisher publisher;
+
+    @BeforeEach
+    void setUp() {
+        SimpleBrokerMessageHandler broker = mock(SimpleBrokerMessageHandler.class);
+        when(broker.getSubscriptionRegistry()).thenReturn(registry);
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        beans.addBean("simpleBrokerMessageHandler", broker);
+        publisher = new TopicPublisher(true, true, messagingTemplate, objectMapper,
+                beans.getBeanProvider(SimpleBrokerMessageHandler.class), lastValueCache);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void publishAllSendsOneEncodingToEverySubscribedDestination() throws Exception {
+        subscribe("s1", "/topic/hydroleaf/telemetry");
+        subscribe("s2", "/topic/hydroleaf/rack/R01/telemetry");
+
+        Map<String, Object> envelope = Map.of("kind", "telemetry", "lux", 12.5);
+        publisher.publishAll(List.of("/topic/hydroleaf/telemetry", "/topic/hydroleaf/rack/R01/telemetry"),
+                envelope, "S01-R01-L01-G01", "telemetry");
+
+        ArgumentCaptor<Message<?>> first = ArgumentCaptor.forClass(Message.class);
+        ArgumentCaptor<Message<?>> second = ArgumentCaptor.forClass(Message.class);
+        verify(messagingTemplate).send(eq("/topic/hydroleaf/telemetry"), first.capture());
+        verify(messagingTemplate).send(eq("/topic/hydroleaf/rack/R01/telemetry"), second.capture());
+        assertSame(first.getValue().getPayload(), second.getValue().getPayload());
+        assertArrayEquals(objectMapper.writeValueAsBytes(envelope), (byte[]) first.getValue().getPayload());
+        verify(messagingTemplate, never()).convertAndSend(anyString(), any(Object.class));
+    }
+
+    @Test
+    void destinationsWithoutSubscribersAreSkipped() {
+        subscribe("s1", "/topic/hydroleaf/telemetry");
+
+        publisher.publishAll(List.of("/topic/hydroleaf/telemetry", "/topic/hydroleaf/rack/R02/telemetry"),
+                Map.of("kind", "telemetry"), "S01-R02-L01-G01", "telemetry");
+        publisher.publish("/topic/hydroleaf/v1/S01/R02/L01/G01/telemetry", "{}");
+
+        verify(messagingTemplate).send(eq("/topic/hydroleaf/telemetry"), any());
+        verify(messagingTemplate, never()).send(eq("/topic/hydroleaf/rack/R02/telemetry"), any());
+        verify(messagingTemplate, never()).convertAndSend(anyString(), any(Object.class));
+    }
+
+    @Test
+    void nothingIsSentWhenNobodyListens() {
+        publisher.publishAll(List.of("/topic/hydroleaf/telemetry"), Map.of("kind", "telemetry"), null, null);
+
+        verifyNoInteractions(messagingTemplate);
+    }
+
+    @Test
+    void keyedMessagesAreCachedEvenWithoutSubscribers() {
+        Map<String, Object> envelope = Map.of("kind", "telemetry", "lux", 12.5);
+        publisher.publishAll(List.of("/topic/hydroleaf/telemetry"), envelope, "S01-R01-L01-G01", "telemetry");
+        publisher.publish("/topic/hydroleaf/event", "{}", "S01-R01-L01-G01", "event");
+
+        assertEquals(List.of(envelope), lastValueCache.snapshot("/topic/hydroleaf/telemetry"));
+        assertEquals(List.of(), lastValueCache.snapshot("/topic/hydroleaf/event"));
+        verifyNoInteractions(messagingTemplate);
+    }
+
+    @Test
+    void selectorSubscriptionsAreRoutedByCompositeIdAndSensorTypes() {
+        IndexedSubscriptionRegistry indexed = new IndexedSubscriptionRegistry();
+        SimpleBrokerMessageHandler broker = mock(SimpleBrokerMessageHandler.class);
+        when(broker.getSubscriptionRegistry()).thenReturn(indexed);
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        beans.addBean("simpleBrokerMessageHandler", broker);
+        TopicPublisher indexedPublisher = new TopicPublisher(true, true, messagingTemplate, objectMapper,
+                beans.getBeanProvider(SimpleBrokerMessageHandler.class), lastValueCache);
+        SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        subscribe.setSessionId("s1");
+        subscribe.setSubscriptionId("sub-0");
+        subscribe.setDestination("/topic/hydroleaf/telemetry");
+        subscribe.setNativeHeader(SubscriptionSelector.HEADER, "compositeId = 'S01-R01-L01-G01' AND sensorType = 'lux'");
+        indexed.registerSubscription(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+
+        indexedPublisher.publishAll(List.of("/topic/hydroleaf/telemetry", "/topic/hydroleaf/rack/R01/telemetry"),
+                Map.of("kind", "telemetry"), "S01-R01-L01-G01", "telemetry", Set.of("lux"));
+
+        ArgumentCaptor<Message<?>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(messagingTemplate).send(eq("/topic/hydroleaf/telemetry"), sent.capture());
+        verify(messagingTemplate, never()).send(eq("/topic/hydroleaf/rack/R01/telemetry"), any());
+        assertEquals(Set.of("s1"), indexed.findSubscriptions(MessageBuilder.createMessage(new byte[0],
+                withDestination(sent.getValue(), "/topic/hydroleaf/telemetry"))).keySet());
+        assertNull(NativeMessageHeaderAccessor.getFirstNativeHeader(
+                IndexedSubscriptionRegistry.COMPOSITE_ID_HEADER, sent.getValue().getHeaders()));
+    }
+
+    private static MessageHeaders withDestination(Message<?> message, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        accessor.setDestination(destination);
+        return accessor.getMessageHeaders();
+    }
+
+    private void subscribe(String sessionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId("sub-" + sessionId);
+        accessor.setDestination(destination);
+        registry.registerSubscription(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+}
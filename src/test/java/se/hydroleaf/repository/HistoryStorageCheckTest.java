@@ -0,0 +1,49 @@
+package se.hydroleaf.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HistoryStorageCheckTest {
+
+    @Test
+    void matchingSchemasPass() {
+        assertNull(HistoryStorageCheck.inconsistency(false, true, false));
+        assertNull(HistoryStorageCheck.inconsistency(true, false, false));
+        // TimescaleDB reads continuous aggregates, not the application rollups
+        assertNull(HistoryStorageCheck.inconsistency(true, false, true));
+    }
+
+    @Test
+    void schemaMigratedForTheOtherSettingIsReported() {
+        assertNotNull(HistoryStorageCheck.inconsistency(true, true, false));
+        assertNotNull(HistoryStorageCheck.inconsistency(false, true, true));
+    }
+
+    @Test
+    void rollupsThatWereNeverBackfilledFailTheStartup() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        PostgresSupport postgres = mock(PostgresSupport.class);
+        TimescaleDbSupport timescale = mock(TimescaleDbSupport.class);
+        SensorValueRollupJdbcWriter rollupWriter = mock(SensorValueRollupJdbcWriter.class);
+        when(postgres.isPostgres()).thenReturn(true);
+        when(timescale.isAvailable()).thenReturn(false);
+        when(rollupWriter.isMaintained()).thenReturn(true);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class))).thenReturn(1);
+        when(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM sensor_value_history)", Boolean.class))
+                .thenReturn(true);
+        when(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM sensor_value_rollup)", Boolean.class))
+                .thenReturn(false);
+
+        HistoryStorageCheck check = new HistoryStorageCheck(jdbcTemplate, postgres, timescale, rollupWriter);
+
+        assertThrows(IllegalStateException.class, check::verify);
+    }
+}
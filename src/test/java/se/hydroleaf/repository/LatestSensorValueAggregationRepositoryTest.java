@@ -0,0 +1,64 @@
+package se.hydroleaf.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+import se.hydroleaf.model.Device;
+import se.hydroleaf.model.LatestSensorValue;
+import se.hydroleaf.model.TopicName;
+import se.hydroleaf.repository.dto.snapshot.LiveNowRow;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional
+class LatestSensorValueAggregationRepositoryTest {
+
+    private static final Instant T0 = Instant.parse("2025-01-01T00:00:00Z");
+
+    @Autowired DeviceRepository deviceRepository;
+    @Autowired LatestSensorValueRepository latestSensorValueRepository;
+    @Autowired LatestSensorValueAggregationRepository aggregationRepository;
+
+    @Test
+    void systemAndLayerAreGroupedIgnoringCase() {
+        latest(device("S01-R01-L01-G01", "S01", "L01"), 10.0);
+        latest(device("s01-R02-l01-G02", "s01", "l01"), 20.0);
+
+        List<LiveNowRow> rows = aggregationRepository.fetchLatestSensorAverages(List.of("lux"));
+
+        assertEquals(1, rows.size());
+        LiveNowRow row = rows.get(0);
+        assertEquals("s01", row.system());
+        assertEquals("l01", row.layer());
+        assertEquals(15.0, row.getAvgValue());
+        assertEquals(2L, row.getDeviceCount());
+    }
+
+    private Device device(String compositeId, String system, String layer) {
+        return deviceRepository.save(Device.builder()
+                .compositeId(compositeId)
+                .system(system)
+                .rack(compositeId.split("-")[1])
+                .layer(layer)
+                .deviceId(compositeId.split("-")[3])
+                .topic(TopicName.growSensors)
+                .build());
+    }
+
+    private void latest(Device device, double value) {
+        latestSensorValueRepository.saveAndFlush(LatestSensorValue.builder()
+                .device(device)
+                .sensorType("lux")
+                .value(value)
+                .unit("lux")
+                .valueTime(T0)
+                .build());
+    }
+}
@@ -0,0 +1,145 @@
+package se.hydroleaf.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+import se.hydroleaf.repository.dto.history.SensorValueHistoryRow;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional
+class SensorValueHistoryJdbcWriterTest {
+
+    private static final String DEVICE = "S01-R01-L04-LAYER_S01_R01_L04_01";
+    private static final Instant T0 = Instant.parse("2025-01-01T00:00:00Z");
+
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired PostgresSupport postgresSupport;
+    @Autowired SensorValueHistoryRepository sensorValueHistoryRepository;
+
+    @BeforeEach
+    void clearHistory() {
+        sensorValueHistoryRepository.deleteAll();
+    }
+
+    @Test
+    void portablePathInsertsThenReplacesAConflictingRow() {
+        SensorValueHistoryJdbcWriter writer = new SensorValueHistoryJdbcWriter(jdbcTemplate, postgresSupport, false);
+        assertFalse(postgresSupport.isPostgres());
+
+        writer.insertAll(List.of(row("lux", T0, 10.0, 30.0, 2), row("rh_pct", T0, 50.0, 50.0, 1)));
+        writer.insertAll(List.of(row("lux", T0, 40.0, 40.0, 1)));
+
+        Map<String, Object> lux = stored("lux", T0);
+        assertEquals(40.0, ((Number) lux.get("sensor_value")).doubleValue());
+        assertEquals(1, ((Number) lux.get("sample_count")).intValue());
+        assertEquals(40.0, ((Number) lux.get("sum_value")).doubleValue());
+        assertEquals("S01", lux.get("system_part"));
+        assertEquals("L04", lux.get("layer_part"));
+        assertEquals(2, count());
+    }
+
+    @Test
+    void portableMergeAddsToAConflictingRow() {
+        SensorValueHistoryJdbcWriter writer = new SensorValueHistoryJdbcWriter(jdbcTemplate, postgresSupport, true);
+
+        writer.insertAll(List.of(row("lux", T0, 10.0, 30.0, 2)));
+        writer.insertAll(List.of(row("lux", T0, 40.0, 40.0, 1)));
+
+        Map<String, Object> lux = stored("lux", T0);
+        assertEquals(3, ((Number) lux.get("sample_count")).intValue());
+        assertEquals(80.0, ((Number) lux.get("sum_value")).doubleValue());
+        assertEquals(80.0 / 3, ((Number) lux.get("sensor_value")).doubleValue(), 1e-9);
+        assertEquals(10.0, ((Number) lux.get("min_value")).doubleValue());
+        assertEquals(40.0, ((Number) lux.get("max_value")).doubleValue());
+        assertEquals(40.0, ((Number) lux.get("last_value")).doubleValue());
+        assertEquals(1, count());
+    }
+
+    @Test
+    void portablePathWritesEveryRowOfALargeFlush() {
+        SensorValueHistoryJdbcWriter writer = new SensorValueHistoryJdbcWriter(jdbcTemplate, postgresSupport, false);
+        List<SensorValueHistoryRow> rows = new ArrayList<>();
+        for (int i = 0; i < 1001; i++) {
+            rows.add(row("lux", T0.plusSeconds(60L * i), i, i, 1));
+        }
+
+        writer.insertAll(rows);
+        writer.insertAll(rows.subList(999, 1001));
+
+        assertEquals(1001, count());
+    }
+
+    @Test
+    void postgresPathSplitsStatementsAtTheChunkBoundary() {
+        List<String> statements = new ArrayList<>();
+        List<Object[]> arguments = new ArrayList<>();
+        JdbcTemplate recording = new JdbcTemplate() {
+            @Override
+            public int update(String sql, Object... args) {
+                statements.add(sql);
+                arguments.add(args);
+                return args.length / 12;
+            }
+        };
+        PostgresSupport postgres = mock(PostgresSupport.class);
+        when(postgres.isPostgres()).thenReturn(true);
+        List<SensorValueHistoryRow> rows = new ArrayList<>();
+        for (int i = 0; i < 1001; i++) {
+            rows.add(row("lux", T0.plusSeconds(60L * i), i, i, 1));
+        }
+
+        new SensorValueHistoryJdbcWriter(recording, postgres, false).insertAll(rows);
+
+        assertEquals(2, statements.size());
+        assertEquals(1000 * 12, arguments.get(0).length);
+        assertEquals(12, arguments.get(1).length);
+        assertEquals(1000, groups(statements.get(0)));
+        assertEquals(1, groups(statements.get(1)));
+        assertEquals(DEVICE, arguments.get(1)[3]);
+        assertTrue(statements.get(1).contains("sample_count = EXCLUDED.sample_count"));
+
+        statements.clear();
+        new SensorValueHistoryJdbcWriter(recording, postgres, true).insertAll(rows.subList(0, 1));
+        assertTrue(statements.get(0).contains("sensor_value_history.sample_count"));
+    }
+
+    private Map<String, Object> stored(String sensorType, Instant valueTime) {
+        return jdbcTemplate.queryForMap("""
+                SELECT * FROM sensor_value_history
+                 WHERE composite_id = ? AND sensor_type = ? AND value_time = ?
+                """, DEVICE, sensorType, OffsetDateTime.ofInstant(valueTime, ZoneOffset.UTC));
+    }
+
+    private int count() {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sensor_value_history", Integer.class);
+        return count == null ? 0 : count;
+    }
+
+    private static int groups(String sql) {
+        return sql.split("\\(\\?,", -1).length - 1;
+    }
+
+    private static SensorValueHistoryRow row(String sensorType, Instant valueTime, double min, double max, long count) {
+        double sum = count == 1 ? max : min + max;
+        double sumSq = count == 1 ? max * max : min * min + max * max;
+        return new SensorValueHistoryRow(DEVICE, sensorType, valueTime, sum / count, min, max, max, count, sum, sumSq);
+    }
+}
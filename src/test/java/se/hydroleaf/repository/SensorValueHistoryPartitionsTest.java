@@ -0,0 +1,61 @@
+package se.hydroleaf.repository;
+
+import org.junit.jupiter.api.Test;
+import se.hydroleaf.config.HistoryPartitionProperties.Interval;
+import se.hydroleaf.repository.SensorValueHistoryPartitions.Partition;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SensorValueHistoryPartitionsTest {
+
+    private static final Instant NOW = Instant.parse("2025-03-14T09:30:00Z");
+
+    @Test
+    void precreatesMonthlyPartitionsAfterTheNewestRange() {
+        List<Partition> existing = List.of(
+                new Partition("sensor_value_history_legacy", null, Instant.parse("2025-03-01T00:00:00Z")),
+                new Partition("sensor_value_history_p20250301", Instant.parse("2025-03-01T00:00:00Z"),
+                        Instant.parse("2025-04-01T00:00:00Z")),
+                new Partition("sensor_value_history_default", null, null));
+
+        List<Partition> missing = SensorValueHistoryPartitions.toCreate(existing, Interval.MONTH, 2, NOW);
+
+        assertEquals(List.of(
+                new Partition("sensor_value_history_p20250401", Instant.parse("2025-04-01T00:00:00Z"),
+                        Instant.parse("2025-05-01T00:00:00Z")),
+                new Partition("sensor_value_history_p20250501", Instant.parse("2025-05-01T00:00:00Z"),
+                        Instant.parse("2025-06-01T00:00:00Z"))), missing);
+        assertTrue(SensorValueHistoryPartitions.toCreate(
+                List.of(missing.get(1)), Interval.MONTH, 2, NOW).isEmpty());
+    }
+
+    @Test
+    void switchingToWeeksStartsAtTheNextMonday() {
+        List<Partition> existing = List.of(new Partition("sensor_value_history_p20250301",
+                Instant.parse("2025-03-01T00:00:00Z"), Instant.parse("2025-04-01T00:00:00Z")));
+
+        List<Partition> missing = SensorValueHistoryPartitions.toCreate(existing, Interval.WEEK, 3, NOW);
+
+        // 2025-04-01 is a Tuesday: the first weekly partition only runs to the following Monday
+        assertEquals(Instant.parse("2025-04-01T00:00:00Z"), missing.get(0).start());
+        assertEquals(Instant.parse("2025-04-07T00:00:00Z"), missing.get(0).end());
+        assertEquals(1, missing.size());
+    }
+
+    @Test
+    void onlyFullyExpiredPartitionsAreDropped() {
+        Partition legacy = new Partition("sensor_value_history_legacy", null, Instant.parse("2025-01-01T00:00:00Z"));
+        Partition january = new Partition("sensor_value_history_p20250101", Instant.parse("2025-01-01T00:00:00Z"),
+                Instant.parse("2025-02-01T00:00:00Z"));
+        Partition fallback = new Partition("sensor_value_history_default", null, null);
+
+        List<Partition> expired = SensorValueHistoryPartitions.expired(List.of(legacy, january, fallback),
+                Instant.parse("2025-01-20T00:00:00Z"));
+
+        assertEquals(List.of(legacy), expired);
+    }
+}
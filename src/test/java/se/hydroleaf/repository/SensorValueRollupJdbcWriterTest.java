@@ -0,0 +1,125 @@
+package se.hydroleaf.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+import se.hydroleaf.model.SensorRollupTier;
+import se.hydroleaf.repository.dto.history.SensorValueHistoryRow;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional
+class SensorValueRollupJdbcWriterTest {
+
+    private static final String DEVICE = "S01-R01-L04-LAYER_S01_R01_L04_01";
+    private static final Instant T0 = Instant.parse("2025-01-01T00:00:00Z");
+
+    /** count, sum, min, max and last of one bucket. */
+    private record Stats(long count, double sum, double min, double max, double last) {
+    }
+
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired SensorValueHistoryJdbcWriter historyWriter;
+    @Autowired SensorValueRollupJdbcWriter rollupWriter;
+
+    @BeforeEach
+    void clearTables() {
+        jdbcTemplate.update("DELETE FROM sensor_value_rollup");
+        jdbcTemplate.update("DELETE FROM sensor_value_history");
+    }
+
+    @Test
+    void flushingTheSameRowsTwiceKeepsTheTiersEqualToHistory() {
+        assertTrue(rollupWriter.isMaintained());
+        List<SensorValueHistoryRow> window = List.of(
+                row(T0.plusSeconds(10), 10.0, 30.0, 30.0, 2, 40.0, 1_000.0),
+                row(T0.plusSeconds(70), 50.0, 50.0, 50.0, 1, 50.0, 2_500.0),
+                row(T0.plusSeconds(400), 20.0, 20.0, 20.0, 1, 20.0, 400.0));
+
+        flush(window);
+        // e.g. the window replayed from the journal after its flush had committed
+        flush(window);
+
+        assertTiersEqualHistory();
+        assertEquals(new Stats(3, 90.0, 10.0, 50.0, 50.0), tier(SensorRollupTier.FIVE_MINUTES, T0));
+        assertEquals(new Stats(4, 110.0, 10.0, 50.0, 20.0), tier(SensorRollupTier.HOURLY, T0));
+        assertEquals(new Stats(4, 110.0, 10.0, 50.0, 20.0), tier(SensorRollupTier.DAILY, T0));
+    }
+
+    @Test
+    void laterFlushesRebuildTheCoarserBucketsTheyTouch() {
+        flush(List.of(row(T0.plusSeconds(10), 10.0, 30.0, 30.0, 2, 40.0, 1_000.0)));
+        flush(List.of(row(T0.plusSeconds(3_700), 5.0, 5.0, 5.0, 1, 5.0, 25.0)));
+        // a repeated report replaces the history row it collides with
+        flush(List.of(row(T0.plusSeconds(10), 12.0, 12.0, 12.0, 1, 12.0, 144.0)));
+
+        assertTiersEqualHistory();
+        assertEquals(new Stats(1, 12.0, 12.0, 12.0, 12.0), tier(SensorRollupTier.HOURLY, T0));
+        assertEquals(new Stats(1, 5.0, 5.0, 5.0, 5.0), tier(SensorRollupTier.HOURLY, T0.plusSeconds(3_600)));
+        assertEquals(new Stats(2, 17.0, 5.0, 12.0, 5.0), tier(SensorRollupTier.DAILY, T0));
+    }
+
+    private void flush(List<SensorValueHistoryRow> rows) {
+        historyWriter.insertAll(rows);
+        rollupWriter.refresh(rows);
+    }
+
+    private void assertTiersEqualHistory() {
+        List<Map.Entry<Instant, Stats>> history = jdbcTemplate.query("""
+                SELECT value_time, sample_count, sum_value, min_value, max_value, last_value
+                  FROM sensor_value_history
+                 WHERE composite_id = ? AND sensor_type = 'lux'
+                 ORDER BY value_time
+                """, (rs, i) -> Map.entry(rs.getObject("value_time", OffsetDateTime.class).toInstant(),
+                new Stats(rs.getLong("sample_count"), rs.getDouble("sum_value"), rs.getDouble("min_value"),
+                        rs.getDouble("max_value"), rs.getDouble("last_value"))), DEVICE);
+        for (SensorRollupTier tier : SensorRollupTier.values()) {
+            Map<Instant, Stats> expected = new TreeMap<>();
+            for (Map.Entry<Instant, Stats> row : history) {
+                Stats s = row.getValue();
+                expected.merge(tier.bucketStart(row.getKey()), s, (a, b) -> new Stats(a.count() + b.count(),
+                        a.sum() + b.sum(), Math.min(a.min(), b.min()), Math.max(a.max(), b.max()), b.last()));
+            }
+            Map<Instant, Stats> stored = new TreeMap<>();
+            jdbcTemplate.query("""
+                    SELECT bucket_time, sample_count, sum_value, min_value, max_value, last_value
+                      FROM sensor_value_rollup
+                     WHERE composite_id = ? AND sensor_type = 'lux' AND bucket_seconds = ?
+                    """, rs -> {
+                stored.put(rs.getObject("bucket_time", OffsetDateTime.class).toInstant(),
+                        new Stats(rs.getLong("sample_count"), rs.getDouble("sum_value"), rs.getDouble("min_value"),
+                                rs.getDouble("max_value"), rs.getDouble("last_value")));
+            }, DEVICE, tier.seconds());
+            assertEquals(expected, stored, tier.name());
+        }
+    }
+
+    private Stats tier(SensorRollupTier tier, Instant bucket) {
+        return jdbcTemplate.queryForObject("""
+                SELECT sample_count, sum_value, min_value, max_value, last_value
+                  FROM sensor_value_rollup
+                 WHERE composite_id = ? AND sensor_type = 'lux' AND bucket_seconds = ? AND bucket_time = ?
+                """, (rs, i) -> new Stats(rs.getLong("sample_count"), rs.getDouble("sum_value"),
+                rs.getDouble("min_value"), rs.getDouble("max_value"), rs.getDouble("last_value")),
+                DEVICE, tier.seconds(), OffsetDateTime.ofInstant(bucket, ZoneOffset.UTC));
+    }
+
+    private static SensorValueHistoryRow row(Instant valueTime, double min, double max, double last, long count,
+                                             double sum, double sumSq) {
+        return new SensorValueHistoryRow(DEVICE, "lux", valueTime, sum / count, min, max, last, count, sum, sumSq);
+    }
+}
@@ -0,0 +1,31 @@
+package se.hydroleaf.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional
+class TelemetryJournalCheckpointsTest {
+
+    @Autowired TelemetryJournalCheckpoints checkpoints;
+
+    @Test
+    void checkpointOnlyMovesForward() {
+        assertEquals(OptionalLong.empty(), checkpoints.appliedThrough("journal-a"));
+
+        checkpoints.markApplied("journal-a", 4);
+        checkpoints.markApplied("journal-a", 2);
+        checkpoints.markApplied("journal-b", 9);
+
+        assertEquals(OptionalLong.of(4), checkpoints.appliedThrough("journal-a"));
+        assertEquals(OptionalLong.of(9), checkpoints.appliedThrough("journal-b"));
+    }
+}
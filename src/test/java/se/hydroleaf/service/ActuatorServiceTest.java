@@ -7,10 +7,12 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import se.hydroleaf.config.StateHistoryProperties;
 import se.hydroleaf.model.ActuatorStatus;
 import se.hydroleaf.model.Device;
 import se.hydroleaf.repository.ActuatorStatusRepository;
 import se.hydroleaf.repository.DeviceRepository;
+import se.hydroleaf.repository.LatestActuatorStatusUpsertRepository;
 
 import java.time.Instant;
 import java.util.Optional;
@@ -23,12 +25,15 @@ class ActuatorServiceTest {
 
     @Mock ActuatorStatusRepository actuatorRepo;
     @Mock DeviceRepository deviceRepo;
+    @Mock LatestActuatorStatusUpsertRepository latestRepo;
 
     private ActuatorService actuatorService;
 
     @BeforeEach
     void setup() {
-        this.actuatorService = new ActuatorService(new ObjectMapper(), actuatorRepo, deviceRepo);
+        ActuatorStatusRecorder recorder = new ActuatorStatusRecorder(actuatorRepo, latestRepo,
+                new StateChangeFilter(new StateHistoryProperties(), false));
+        this.actuatorService = new ActuatorService(new ObjectMapper(), deviceRepo, recorder);
     }
 
     private Device device(String compositeId) {
@@ -41,6 +46,7 @@ class ActuatorServiceTest {
     void saves_status_when_payload_has_airPump_controller_with_string_state() {
         String compositeId = "S01-R01-L02-G01";
         when(deviceRepo.findById(compositeId)).thenReturn(Optional.of(device(compositeId)));
+        when(latestRepo.upsert(eq(compositeId), eq("airPump"), anyBoolean(), any())).thenReturn(true);
 
         String json = """
                 {
@@ -68,6 +74,7 @@ class ActuatorServiceTest {
     void saves_status_when_payload_has_boolean_and_numeric_values() {
         String compositeId = "S02-R01-L01-X1";
         when(deviceRepo.findById(compositeId)).thenReturn(Optional.of(device(compositeId)));
+        when(latestRepo.upsert(eq(compositeId), eq("airPump"), anyBoolean(), any())).thenReturn(true);
 
         String jsonTrue = """
                 {
@@ -82,7 +89,7 @@ class ActuatorServiceTest {
                   "composite_id":"S02-R01-L01-X1",
                   "sensors":[{"sensorName":"s1","sensorType":"temperature","value":25.0}],
                   "health":{"s1":true},
-                  "controllers":[{"name":"airPump","state":1,"timestamp":"2024-02-02T12:01:00Z"}]
+                  "controllers":[{"name":"airPump","state":0,"timestamp":"2024-02-02T12:01:00Z"}]
                 }
                 """;
 
@@ -98,13 +105,51 @@ class ActuatorServiceTest {
         assertEquals(Instant.parse("2024-02-02T12:00:00Z"), first.getTimestamp());
         assertEquals(Instant.parse("2024-02-02T12:01:00Z"), second.getTimestamp());
         assertTrue(first.getState());
-        assertTrue(second.getState());
+        assertFalse(second.getState());
         assertEquals(compositeId, first.getDevice().getCompositeId());
         assertEquals(compositeId, second.getDevice().getCompositeId());
         assertEquals("airPump", first.getActuatorType());
         assertEquals("airPump", second.getActuatorType());
     }
 
+    @Test
+    void unchanged_state_updates_latest_status_but_not_history() {
+        String compositeId = "S01-R01-L02-G01";
+        when(deviceRepo.findById(compositeId)).thenReturn(Optional.of(device(compositeId)));
+        when(latestRepo.upsert(compositeId, "airPump", true, Instant.parse("2024-02-02T12:05:00Z"))).thenReturn(false);
+
+        actuatorService.saveActuatorStatus("""
+                {
+                  "composite_id":"S01-R01-L02-G01",
+                  "controllers":[{"name":"airPump","state":"on","timestamp":"2024-02-02T12:05:00Z"}]
+                }
+                """);
+
+        verify(latestRepo).upsert(compositeId, "airPump", true, Instant.parse("2024-02-02T12:05:00Z"));
+        verify(actuatorRepo).endOpenInterval(compositeId, "airPump", Instant.parse("2024-02-02T12:05:00Z"));
+        verify(actuatorRepo, never()).save(any());
+    }
+
+    @Test
+    void repeated_state_within_keep_alive_is_not_written() {
+        String compositeId = "S01-R01-L02-G01";
+        when(deviceRepo.findById(compositeId)).thenReturn(Optional.of(device(compositeId)));
+        when(latestRepo.upsert(eq(compositeId), eq("airPump"), eq(true), any())).thenReturn(true, false);
+        String json = """
+                {"composite_id":"S01-R01-L02-G01","controllers":[{"name":"airPump","state":"on","timestamp":"%s"}]}
+                """;
+
+        actuatorService.saveActuatorStatus(json.formatted("2024-02-02T12:00:00Z"));
+        actuatorService.saveActuatorStatus(json.formatted("2024-02-02T12:00:10Z"));
+        actuatorService.saveActuatorStatus(json.formatted("2024-02-02T12:20:00Z"));
+
+        verify(latestRepo, times(2)).upsert(eq(compositeId), eq("airPump"), eq(true), any());
+        verify(latestRepo, never()).upsert(compositeId, "airPump", true, Instant.parse("2024-02-02T12:00:10Z"));
+        verify(actuatorRepo, times(1)).save(any());
+        // the keep-alive report only extends the open interval
+        verify(actuatorRepo).endOpenInterval(compositeId, "airPump", Instant.parse("2024-02-02T12:20:00Z"));
+    }
+
     @Test
     void throws_when_composite_id_missing() {
         String json = """
@@ -0,0 +1,138 @@
+package se.hydroleaf.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.hydroleaf.config.HistoryCacheProperties;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CachingSensorAggregationReaderTest {
+
+    private static final String DEVICE = "S01-R01-L01-G01";
+    private static final List<String> TYPES = List.of("lux", "rh_pct");
+    private static final Instant NOW = Instant.parse("2025-01-01T10:00:00Z");
+
+    private final SensorAggregationAdapter delegate = mock(SensorAggregationAdapter.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private CachingSensorAggregationReader cache;
+
+    @BeforeEach
+    void setUp() {
+        when(delegate.aggregateAll(eq(DEVICE), any(), any(), eq("5m"), anyCollection()))
+                .thenAnswer(inv -> buckets(inv.getArgument(1), inv.getArgument(2), inv.getArgument(4)));
+        cache = new CachingSensorAggregationReader(delegate, new HistoryCacheProperties(),
+                Clock.fixed(NOW, ZoneOffset.UTC), meterRegistry, false);
+    }
+
+    @Test
+    void closedBucketsAreServedFromMemoryAndOnlyTheTailIsQueried() {
+        Instant from = Instant.parse("2025-01-01T09:00:00Z");
+        Instant closed = Instant.parse("2025-01-01T09:55:00Z");
+
+        List<RecordService.SensorAggregateResult> first = cache.aggregateAll(DEVICE, from, NOW, "5m", TYPES);
+        List<RecordService.SensorAggregateResult> second = cache.aggregateAll(DEVICE, from, NOW, "5m", TYPES);
+
+        assertEquals(24, first.size());
+        assertEquals(values(first), values(second));
+        verify(delegate, times(1)).aggregateAll(DEVICE, from, closed, "5m", TYPES);
+        verify(delegate, times(2)).aggregateAll(DEVICE, closed, NOW, "5m", TYPES);
+        assertEquals(2.0, meterRegistry.get("history.cache.requests").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void flushAdvancesTheClosedBoundaryAndCachedRunIsExtended() {
+        Instant from = Instant.parse("2025-01-01T09:00:00Z");
+        cache.aggregateAll(DEVICE, from, NOW, "5m", TYPES);
+        clearInvocations(delegate);
+
+        cache.onHistoryFlushed(new SensorHistoryFlushedEvent(NOW.plus(Duration.ofMinutes(10)),
+                Map.of(DEVICE, NOW.plusSeconds(30))));
+        Instant to = NOW.plus(Duration.ofMinutes(10));
+        List<RecordService.SensorAggregateResult> rows = cache.aggregateAll(DEVICE, from, to, "5m", TYPES);
+
+        assertEquals(28, rows.size());
+        verify(delegate).aggregateAll(DEVICE, Instant.parse("2025-01-01T09:55:00Z"),
+                Instant.parse("2025-01-01T10:05:00Z"), "5m", TYPES);
+        verify(delegate).aggregateAll(DEVICE, Instant.parse("2025-01-01T10:05:00Z"), to, "5m", TYPES);
+    }
+
+    @Test
+    void lateSamplesInvalidateTheDevice() {
+        Instant from = Instant.parse("2025-01-01T09:00:00Z");
+        cache.aggregateAll(DEVICE, from, NOW, "5m", TYPES);
+        clearInvocations(delegate);
+
+        cache.onHistoryFlushed(new SensorHistoryFlushedEvent(NOW, Map.of(DEVICE, Instant.parse("2025-01-01T09:30:00Z"))));
+        cache.aggregateAll(DEVICE, from, NOW, "5m", TYPES);
+
+        verify(delegate).aggregateAll(DEVICE, from, Instant.parse("2025-01-01T09:55:00Z"), "5m", TYPES);
+    }
+
+    @Test
+    void sizeBoundEvictsLeastRecentlyUsedSeries() {
+        HistoryCacheProperties properties = new HistoryCacheProperties();
+        properties.setMaxBuckets(11);
+        CachingSensorAggregationReader small = new CachingSensorAggregationReader(delegate, properties,
+                Clock.fixed(NOW, ZoneOffset.UTC), meterRegistry, false);
+        Instant from = Instant.parse("2025-01-01T09:00:00Z");
+
+        small.aggregateAll(DEVICE, from, NOW, "5m", List.of("lux"));
+        small.aggregateAll(DEVICE, from, NOW, "5m", List.of("rh_pct"));
+        clearInvocations(delegate);
+        small.aggregateAll(DEVICE, from, NOW, "5m", List.of("lux"));
+
+        verify(delegate).aggregateAll(DEVICE, from, Instant.parse("2025-01-01T09:55:00Z"), "5m", List.of("lux"));
+    }
+
+    @Test
+    void clusteredInstancesAlwaysReadTheDatabase() {
+        CachingSensorAggregationReader clustered = new CachingSensorAggregationReader(delegate,
+                new HistoryCacheProperties(), Clock.fixed(NOW, ZoneOffset.UTC), meterRegistry, true);
+        Instant from = Instant.parse("2025-01-01T09:00:00Z");
+
+        clustered.aggregateAll(DEVICE, from, NOW, "5m", TYPES);
+        clustered.aggregateAll(DEVICE, from, NOW, "5m", TYPES);
+
+        verify(delegate, times(2)).aggregateAll(DEVICE, from, NOW, "5m", TYPES);
+    }
+
+    private static List<Double> values(List<RecordService.SensorAggregateResult> rows) {
+        return rows.stream().map(RecordService.SensorAggregateResult::getAvgValue).toList();
+    }
+
+    private static List<RecordService.SensorAggregateResult> buckets(Instant from, Instant to, Collection<String> types) {
+        List<RecordService.SensorAggregateResult> rows = new ArrayList<>();
+        for (String type : types) {
+            for (Instant t = from; t.isBefore(to); t = t.plus(Duration.ofMinutes(5))) {
+                rows.add(new Row(type, t, (double) t.getEpochSecond() / 60));
+            }
+        }
+        return rows;
+    }
+
+    private record Row(String sensorType, Instant bucketTime, Double avgValue)
+            implements RecordService.SensorAggregateResult {
+        @Override public String getSensorType() { return sensorType; }
+        @Override public String getUnit() { return "u"; }
+        @Override public Instant getBucketTime() { return bucketTime; }
+        @Override public Double getAvgValue() { return avgValue; }
+    }
+}
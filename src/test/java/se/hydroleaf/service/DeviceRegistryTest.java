@@ -0,0 +1,120 @@
+package se.hydroleaf.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import se.hydroleaf.model.Device;
+import se.hydroleaf.model.TopicName;
+import se.hydroleaf.repository.DeviceRepository;
+import se.hydroleaf.service.DeviceRegistry.DeviceSnapshot;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DeviceRegistryTest {
+
+    private final DeviceRepository deviceRepository = mock(DeviceRepository.class);
+    private final LiveSensorSnapshot liveSensorSnapshot = mock(LiveSensorSnapshot.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DeviceRegistry registry = new DeviceRegistry(deviceRepository, liveSensorSnapshot,
+            mock(PlatformTransactionManager.class), meterRegistry);
+
+    @Test
+    void loadedDevicesAreServedFromMemory() {
+        Device device = Device.builder()
+                .compositeId("S01-R01-L01-G01").system("S01").rack("R01").layer("L01").deviceId("G01")
+                .topic(TopicName.growSensors)
+                .build();
+        when(deviceRepository.findAll()).thenReturn(List.of(device));
+        registry.load();
+
+        DeviceSnapshot first = registry.resolve("S01-R01-L01-G01", TopicName.growSensors);
+        DeviceSnapshot second = registry.resolve("S01-R01-L01-G01", TopicName.growSensors);
+
+        assertSame(first, second);
+        verify(deviceRepository, times(0)).findById(any());
+        assertEquals(2.0, meterRegistry.get("device.registry.lookups").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void devicesDeletedFromTheTableAreEvictedOnRefresh() {
+        Device kept = device("S01-R01-L01-G01");
+        when(deviceRepository.findAll()).thenReturn(List.of(kept, device("S01-R01-L01-G02")));
+        registry.load();
+
+        when(deviceRepository.findAll()).thenReturn(List.of(kept));
+        registry.refresh();
+
+        assertTrue(registry.find("S01-R01-L01-G02").isEmpty());
+        verify(liveSensorSnapshot).evict("S01-R01-L01-G02");
+        verify(liveSensorSnapshot, never()).evict("S01-R01-L01-G01");
+    }
+
+    @Test
+    void deviceRegisteredWhileRefreshingIsKept() {
+        Device kept = device("S01-R01-L01-G01");
+        Device registered = device("S01-R01-L01-G03");
+        when(deviceRepository.findAll()).thenReturn(List.of(kept));
+        registry.load();
+
+        when(deviceRepository.findById("S01-R01-L01-G03")).thenReturn(Optional.of(registered));
+        when(deviceRepository.findAll()).thenAnswer(invocation -> {
+            registry.resolve("S01-R01-L01-G03", TopicName.growSensors);
+            return List.of(kept);
+        });
+        registry.refresh();
+
+        assertTrue(registry.find("S01-R01-L01-G03").isPresent());
+        verify(liveSensorSnapshot, never()).evict(any());
+    }
+
+    @Test
+    void concurrentLookupsOfNewDeviceRegisterItOnce() throws Exception {
+        CountDownLatch inRegistration = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(deviceRepository.findById("S01-germination-L01-G07")).thenReturn(Optional.empty());
+        when(deviceRepository.saveAndFlush(any(Device.class))).thenAnswer(inv -> {
+            inRegistration.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return inv.getArgument(0);
+        });
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<DeviceSnapshot> first = pool.submit(() -> registry.resolve("S01-germination-L01-G07", TopicName.growSensors));
+            inRegistration.await(5, TimeUnit.SECONDS);
+            Future<DeviceSnapshot> second = pool.submit(() -> registry.resolve("S01-germination-L01-G07", TopicName.growSensors));
+            Thread.sleep(50);
+            release.countDown();
+
+            assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+            assertEquals(TopicName.germinationTopic, first.get().topic());
+        } finally {
+            pool.shutdownNow();
+        }
+        verify(deviceRepository, times(1)).saveAndFlush(any(Device.class));
+    }
+
+    private static Device device(String compositeId) {
+        String[] parts = compositeId.split("-");
+        return Device.builder()
+                .compositeId(compositeId).system(parts[0]).rack(parts[1]).layer(parts[2]).deviceId(parts[3])
+                .topic(TopicName.growSensors)
+                .build();
+    }
+}
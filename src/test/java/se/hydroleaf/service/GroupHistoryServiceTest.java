@@ -0,0 +1,127 @@
+package se.hydroleaf.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.hydroleaf.model.Device;
+import se.hydroleaf.model.LatestSensorValue;
+import se.hydroleaf.repository.DeviceRepository;
+import se.hydroleaf.repository.LatestSensorValueRepository;
+import se.hydroleaf.repository.dto.history.GroupHistoryResponse;
+import se.hydroleaf.repository.dto.history.GroupedSensorData;
+import se.hydroleaf.repository.dto.history.TimestampValue;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GroupHistoryServiceTest {
+
+    private static final Instant FROM = Instant.parse("2025-01-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2025-01-01T00:10:00Z");
+    private static final Instant T1 = FROM.plusSeconds(300);
+
+    private final DeviceRepository deviceRepository = mock(DeviceRepository.class);
+    private final LatestSensorValueRepository latestSensorValueRepository = mock(LatestSensorValueRepository.class);
+    private final RecordService.SensorAggregationReader reader = mock(RecordService.SensorAggregationReader.class);
+    private final GroupHistoryService service =
+            new GroupHistoryService(deviceRepository, latestSensorValueRepository, reader);
+
+    @BeforeEach
+    void setUp() {
+        when(deviceRepository.findBySystemAndOptionalRackAndLayer("S01", "R01", null)).thenReturn(List.of(
+                device("S01", "R01", "L01", "G01"),
+                device("S01", "R01", "L01", "G02"),
+                device("S01", "R01", "L02", "G01")));
+        LatestSensorValue upper = new LatestSensorValue();
+        upper.setSensorType("PPM");
+        LatestSensorValue lower = new LatestSensorValue();
+        lower.setSensorType("ppm");
+        when(latestSensorValueRepository.findByDevice_CompositeIdIn(anyCollection())).thenReturn(List.of(upper, lower));
+        when(reader.aggregateDevices(anyCollection(), eq(FROM), eq(TO), eq("5m"), anyCollection())).thenReturn(List.of(
+                row("S01-R01-L01-G01", "PPM", FROM, 10.0, 10.0, 10.0, 1L),
+                row("S01-R01-L01-G01", "PPM", T1, 20.0, 18.0, 22.0, 1L),
+                row("S01-R01-L01-G02", "ppm", FROM, 40.0, 30.0, 50.0, 3L),
+                row("S01-R01-L02-G01", "ppm", FROM, 7.0, 7.0, 7.0, 1L)));
+    }
+
+    @Test
+    void rackIsReadInOneQueryAndKeptPerDevice() {
+        GroupHistoryResponse response = service.groupHistory("S01", "R01", null, null, FROM, TO, "5m",
+                List.of("ppm"), HistoryGrouping.DEVICE, HistoryAggregation.AVG, null, null);
+
+        verify(reader).aggregateDevices(eq(Set.of("S01-R01-L01-G01", "S01-R01-L01-G02", "S01-R01-L02-G01")),
+                eq(FROM), eq(TO), eq("5m"), eq(List.of("PPM", "ppm")));
+        assertEquals(3, response.series().size());
+        GroupedSensorData first = response.series().get(0);
+        assertEquals("S01-R01-L01-G01", first.group());
+        assertEquals(List.of(new TimestampValue(FROM, 10.0), new TimestampValue(T1, 20.0)), first.data());
+    }
+
+    @Test
+    void layerGroupingMergesDevicesAndSpellingsWeightedBySampleCount() {
+        GroupHistoryResponse response = service.groupHistory("S01", "R01", null, null, FROM, TO, "5m",
+                List.of("ppm"), HistoryGrouping.LAYER, HistoryAggregation.AVG, null, null);
+
+        List<GroupedSensorData> series = response.series();
+        assertEquals(List.of("S01-R01-L01", "S01-R01-L02"), series.stream().map(GroupedSensorData::group).toList());
+        GroupedSensorData l01 = series.get(0);
+        assertEquals("ppm", l01.sensorType());
+        assertEquals(2, l01.devices());
+        assertEquals(32.5, (Double) l01.data().get(0).value(), 1e-9);
+        assertEquals(20.0, (Double) l01.data().get(1).value(), 1e-9);
+    }
+
+    @Test
+    void layerGroupingAppliesTheStatisticAcrossDevices() {
+        GroupHistoryResponse response = service.groupHistory("S01", "R01", null, null, FROM, TO, "5m",
+                List.of("PPM"), HistoryGrouping.LAYER, HistoryAggregation.MAX, null, null);
+
+        assertEquals("PPM", response.series().get(0).sensorType());
+        assertEquals(50.0, (Double) response.series().get(0).data().get(0).value(), 1e-9);
+    }
+
+    @Test
+    void requiresASelectorAndKnownDevices() {
+        assertThrows(IllegalArgumentException.class, () -> service.groupHistory(null, null, null, null, FROM, TO,
+                "5m", List.of("ppm"), null, null, null, null));
+        when(deviceRepository.findAllById(anyCollection())).thenReturn(List.of(device("S01", "R01", "L01", "G01")));
+        assertThrows(IllegalArgumentException.class, () -> service.groupHistory(null, null, null,
+                List.of("S01-R01-L01-G01", "S09-R01-L01-G01"), FROM, TO, "5m", List.of("ppm"), null, null, null, null));
+    }
+
+    private static Device device(String system, String rack, String layer, String deviceId) {
+        Device d = new Device();
+        d.setSystem(system);
+        d.setRack(rack);
+        d.setLayer(layer);
+        d.setDeviceId(deviceId);
+        d.setCompositeId(system + "-" + rack + "-" + layer + "-" + deviceId);
+        return d;
+    }
+
+    private static RecordService.SensorAggregateResult row(String compositeId, String sensorType, Instant bucket,
+                                                          double avg, double min, double max, long count) {
+        return new Row(compositeId, sensorType, bucket, avg, min, max, count);
+    }
+
+    private record Row(String compositeId, String sensorType, Instant bucketTime, Double avgValue,
+                       Double minValue, Double maxValue, Long sampleCount)
+            implements RecordService.SensorAggregateResult {
+        @Override public String getCompositeId() { return compositeId; }
+        @Override public String getSensorType() { return sensorType; }
+        @Override public String getUnit() { return "ppm"; }
+        @Override public Instant getBucketTime() { return bucketTime; }
+        @Override public Double getAvgValue() { return avgValue; }
+        @Override public Double getMinValue() { return minValue; }
+        @Override public Double getMaxValue() { return maxValue; }
+        @Override public Long getSampleCount() { return sampleCount; }
+    }
+}
@@ -0,0 +1,126 @@
+package se.hydroleaf.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HistoryAggregationTest {
+
+    private static final Instant BUCKET = Instant.parse("2025-01-01T00:00:00Z");
+
+    private record Bucket(Double avgValue, Double minValue, Double maxValue, Double lastValue,
+                          Long sampleCount, Double sumSqValue) implements RecordService.SensorAggregateResult {
+
+        @Override
+        public String getSensorType() {
+            return "ph";
+        }
+
+        @Override
+        public String getUnit() {
+            return "pH";
+        }
+
+        @Override
+        public Instant getBucketTime() {
+            return BUCKET;
+        }
+
+        @Override
+        public Double getAvgValue() {
+            return avgValue;
+        }
+
+        @Override
+        public Double getMinValue() {
+            return minValue;
+        }
+
+        @Override
+        public Double getMaxValue() {
+            return maxValue;
+        }
+
+        @Override
+        public Double getLastValue() {
+            return lastValue;
+        }
+
+        @Override
+        public Long getSampleCount() {
+            return sampleCount;
+        }
+
+        @Override
+        public Double getSumSqValue() {
+            return sumSqValue;
+        }
+    }
+
+    @Test
+    void parsesTheAggParameter() {
+        assertEquals(HistoryAggregation.AVG, HistoryAggregation.fromParam(null));
+        assertEquals(HistoryAggregation.AVG, HistoryAggregation.fromParam(" mean "));
+        assertEquals(HistoryAggregation.P95_APPROX, HistoryAggregation.fromParam("P95-approx"));
+        assertEquals(HistoryAggregation.P95_APPROX, HistoryAggregation.fromParam("p95"));
+        assertThrows(IllegalArgumentException.class, () -> HistoryAggregation.fromParam("median"));
+    }
+
+    @Test
+    void picksTheRequestedStatisticFromARollupBucket() {
+        Bucket bucket = new Bucket(6.0, 5.5, 6.8, 6.1, 4L, 144.5);
+
+        assertEquals(6.0, HistoryAggregation.AVG.select(bucket));
+        assertEquals(5.5, HistoryAggregation.MIN.select(bucket));
+        assertEquals(6.8, HistoryAggregation.MAX.select(bucket));
+        assertEquals(6.1, HistoryAggregation.LAST.select(bucket));
+    }
+
+    @Test
+    void p95EstimatesFromMeanAndStandardDeviation() {
+        // values 1, 2, 3, 4: mean 2.5, population variance 1.25
+        Bucket bucket = new Bucket(2.5, 1.0, 10.0, 4.0, 4L, 30.0);
+
+        assertEquals(2.5 + 1.645 * Math.sqrt(1.25), HistoryAggregation.P95_APPROX.select(bucket), 1e-9);
+    }
+
+    @Test
+    void p95IsCappedAtTheBucketMaximum() {
+        Bucket bucket = new Bucket(2.5, 1.0, 4.0, 4.0, 4L, 30.0);
+
+        assertEquals(4.0, HistoryAggregation.P95_APPROX.select(bucket));
+    }
+
+    @Test
+    void p95OfASingleSampleIsItsMaximum() {
+        Bucket bucket = new Bucket(3.0, 3.0, 3.0, 3.0, 1L, 9.0);
+
+        assertEquals(3.0, HistoryAggregation.P95_APPROX.select(bucket));
+    }
+
+    @Test
+    void rowsWrittenBeforeTheRollupColumnsFallBackToTheAverage() {
+        Bucket legacy = new Bucket(7.2, null, null, null, null, null);
+
+        for (HistoryAggregation aggregation : HistoryAggregation.values()) {
+            assertEquals(7.2, aggregation.select(legacy), aggregation.name());
+        }
+    }
+
+    @Test
+    void bucketsMixingOldAndNewRowsUseTheCombinedRollup() {
+        // one legacy row (7.0, counted once with its average) combined with a
+        // rollup row of three samples 6.0, 6.5, 8.0 by the aggregation queries
+        double sum = 7.0 + 6.0 + 6.5 + 8.0;
+        double sumSq = 7.0 * 7.0 + 6.0 * 6.0 + 6.5 * 6.5 + 8.0 * 8.0;
+        Bucket mixed = new Bucket(sum / 4, 6.0, 8.0, 8.0, 4L, sumSq);
+        double mean = sum / 4;
+        double estimate = mean + 1.645 * Math.sqrt(sumSq / 4 - mean * mean);
+
+        assertEquals(6.0, HistoryAggregation.MIN.select(mixed));
+        assertEquals(Math.min(estimate, 8.0), HistoryAggregation.P95_APPROX.select(mixed), 1e-9);
+    }
+}
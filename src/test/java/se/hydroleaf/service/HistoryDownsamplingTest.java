@@ -0,0 +1,83 @@
+package se.hydroleaf.service;
+
+import org.junit.jupiter.api.Test;
+import se.hydroleaf.repository.dto.history.TimestampValue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistoryDownsamplingTest {
+
+    private static final Instant FROM = Instant.parse("2025-01-01T00:00:00Z");
+    private static final int BUCKETS = 8640; // 30 days of 5m buckets
+
+    @Test
+    void lttbBoundsTheSeriesAndKeepsEndpointsAndSpikes() {
+        List<TimestampValue> out = run(HistoryDownsampling.LTTB, 200);
+
+        assertTrue(out.size() <= 200, "got " + out.size());
+        assertTrue(out.size() > 150, "got " + out.size());
+        assertEquals(at(0), out.get(0).timestamp());
+        assertEquals(at(BUCKETS - 1), out.get(out.size() - 1).timestamp());
+        assertTrue(out.stream().anyMatch(p -> ((Double) p.value()) == 500.0), "spike was dropped");
+        assertAscending(out);
+    }
+
+    @Test
+    void minMaxKeepsEveryBinExtremeInTimeOrder() {
+        List<TimestampValue> out = run(HistoryDownsampling.MIN_MAX, 100);
+
+        assertTrue(out.size() <= 100, "got " + out.size());
+        assertTrue(out.stream().anyMatch(p -> ((Double) p.value()) == 500.0), "spike was dropped");
+        assertTrue(out.stream().anyMatch(p -> ((Double) p.value()) == -500.0), "dip was dropped");
+        assertAscending(out);
+    }
+
+    @Test
+    void emptyAndMissingValuesAreSkipped() {
+        List<TimestampValue> out = new ArrayList<>();
+        HistoryDownsampling.Sampler sampler = HistoryDownsampling.LTTB.sampler(FROM, at(10), 3, out);
+        sampler.add(at(0), null);
+        sampler.add(at(1), 1.0);
+        sampler.add(at(2), null);
+        sampler.add(at(3), 2.0);
+        sampler.finish();
+
+        assertEquals(List.of(new TimestampValue(at(1), 1.0), new TimestampValue(at(3), 2.0)), out);
+    }
+
+    @Test
+    void rejectsTooFewPointsAndUnknownModes() {
+        assertThrows(IllegalArgumentException.class,
+                () -> HistoryDownsampling.LTTB.sampler(FROM, at(10), 2, new ArrayList<>()));
+        assertThrows(IllegalArgumentException.class, () -> HistoryDownsampling.fromParam("spline"));
+        assertEquals(HistoryDownsampling.MIN_MAX, HistoryDownsampling.fromParam("min-max"));
+        assertEquals(HistoryDownsampling.LTTB, HistoryDownsampling.fromParam(null));
+    }
+
+    private static List<TimestampValue> run(HistoryDownsampling mode, int maxPoints) {
+        List<TimestampValue> out = new ArrayList<>();
+        HistoryDownsampling.Sampler sampler = mode.sampler(FROM, at(BUCKETS), maxPoints, out);
+        for (int i = 0; i < BUCKETS; i++) {
+            double value = i == 4321 ? 500.0 : i == 1234 ? -500.0 : Math.sin(i / 100.0) * 10;
+            sampler.add(at(i), value);
+        }
+        sampler.finish();
+        return out;
+    }
+
+    private static void assertAscending(List<TimestampValue> out) {
+        for (int i = 1; i < out.size(); i++) {
+            assertTrue(out.get(i).timestamp().isAfter(out.get(i - 1).timestamp()));
+        }
+    }
+
+    private static Instant at(int bucket) {
+        return FROM.plusSeconds(300L * bucket);
+    }
+}
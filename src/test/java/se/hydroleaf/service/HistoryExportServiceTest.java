@@ -0,0 +1,110 @@
+package se.hydroleaf.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.hydroleaf.repository.DeviceRepository;
+import se.hydroleaf.repository.SensorValueHistoryExportReader;
+import se.hydroleaf.repository.dto.history.HistoryExportRow;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HistoryExportServiceTest {
+
+    private static final String DEVICE = "S01-R01-L01-G01";
+    private static final Instant FROM = Instant.parse("2025-01-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2025-12-31T00:00:00Z");
+
+    private final DeviceRepository deviceRepository = mock(DeviceRepository.class);
+    private final SensorValueHistoryExportReader reader = mock(SensorValueHistoryExportReader.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HistoryExportService service = new HistoryExportService(deviceRepository, reader, objectMapper);
+
+    @BeforeEach
+    void setUp() {
+        when(deviceRepository.existsById(DEVICE)).thenReturn(true);
+        doAnswer(inv -> {
+            Consumer<HistoryExportRow> sink = inv.getArgument(4);
+            HistoryExportRow row = new HistoryExportRow();
+            row.setValueTime(OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC));
+            row.setCompositeId(DEVICE);
+            row.setSensorType("lux");
+            row.setValue(12.5);
+            row.setMin(10.0);
+            row.setMax(15.0);
+            row.setLast(14.0);
+            row.setSampleCount(6);
+            sink.accept(row);
+            // the reader reuses one instance per row
+            row.setValueTime(row.getValueTime().plusMinutes(1));
+            row.setSensorType("rh,pct");
+            row.setValue(55.0);
+            row.setMin(Double.NaN);
+            row.setMax(Double.NaN);
+            row.setLast(Double.NaN);
+            row.setSampleCount(-1);
+            sink.accept(row);
+            return null;
+        }).when(reader).stream(eq(DEVICE), eq(FROM), eq(TO), any(), any());
+    }
+
+    @Test
+    void ndjsonWritesOneObjectPerLine() throws Exception {
+        String body = export(HistoryExportFormat.NDJSON);
+
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertEquals("2025-01-01T00:00:00Z", first.get("time").asText());
+        assertEquals(12.5, first.get("value").asDouble());
+        assertEquals(6, first.get("count").asLong());
+        JsonNode second = objectMapper.readTree(lines[1]);
+        assertEquals("2025-01-01T00:01:00Z", second.get("time").asText());
+        assertTrue(second.get("min").isNull());
+        assertTrue(second.get("count").isNull());
+    }
+
+    @Test
+    void csvHasHeaderEscapedFieldsAndEmptyNulls() throws Exception {
+        String body = export(HistoryExportFormat.CSV);
+
+        assertEquals("""
+                time,composite_id,sensor_type,value,min,max,last,sample_count
+                2025-01-01T00:00:00Z,S01-R01-L01-G01,lux,12.5,10.0,15.0,14.0,6
+                2025-01-01T00:01:00Z,S01-R01-L01-G01,"rh,pct",55.0,,,,
+                """, body);
+    }
+
+    @Test
+    void prepareRejectsUnknownDevicesAndOverlongRanges() {
+        assertThrows(IllegalArgumentException.class,
+                () -> service.prepare("nope", FROM, TO, null, HistoryExportFormat.CSV));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.prepare(DEVICE, FROM, FROM.plus(HistoryExportService.MAX_RANGE).plusSeconds(1), null, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.prepare(DEVICE, TO, FROM, null, null));
+    }
+
+    private String export(HistoryExportFormat format) throws Exception {
+        HistoryExportService.Export export = service.prepare(DEVICE, FROM, TO, List.of(), format);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.write(export, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
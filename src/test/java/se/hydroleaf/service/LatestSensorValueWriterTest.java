@@ -0,0 +1,102 @@
+package se.hydroleaf.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import se.hydroleaf.repository.LatestSensorValueUpsertRepository;
+import se.hydroleaf.repository.dto.LatestSensorValueUpsert;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class LatestSensorValueWriterTest {
+
+    private final LatestSensorValueUpsertRepository repository = mock(LatestSensorValueUpsertRepository.class);
+    private final LatestSensorValueWriter writer = new LatestSensorValueWriter(repository, Runnable::run, 1000);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void newestValueTimeWinsWithinOneWindow() {
+        Instant t0 = Instant.parse("2025-01-01T00:00:00Z");
+        writer.write("S01-R01-L01-G01", "lux", 2.0, "lux", t0.plusSeconds(10));
+        writer.write("S01-R01-L01-G01", "lux", 1.0, "lux", t0);
+        writer.write("S01-R01-L01-G01", "rh_pct", 40.0, "%", t0);
+
+        writer.flush();
+
+        ArgumentCaptor<List<LatestSensorValueUpsert>> captor = ArgumentCaptor.forClass(List.class);
+        verify(repository).upsertAll(captor.capture());
+        List<LatestSensorValueUpsert> rows = captor.getValue();
+        assertEquals(2, rows.size());
+        LatestSensorValueUpsert lux = rows.stream().filter(r -> r.sensorType().equals("lux")).findFirst().orElseThrow();
+        assertEquals(2.0, lux.value());
+        assertEquals(t0.plusSeconds(10), lux.valueTime());
+        assertEquals(0, writer.pendingCount());
+    }
+
+    @Test
+    void failedBatchFallsBackToRowByRow() {
+        doThrow(new IllegalStateException("fk violation")).when(repository).upsertAll(any());
+        Instant t0 = Instant.parse("2025-01-01T00:00:00Z");
+        writer.write("S01-R01-L01-G01", "lux", 2.0, "lux", t0);
+        writer.write("S01-R01-L01-G02", "lux", 3.0, "lux", t0);
+
+        writer.flush();
+
+        verify(repository, times(2)).upsert(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shutdownWaitsForARunningFlushAndWritesWhatArrivedMeanwhile() throws Exception {
+        Instant t0 = Instant.parse("2025-01-01T00:00:00Z");
+        CountDownLatch inFlush = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(inv -> {
+            for (LatestSensorValueUpsert row : (List<LatestSensorValueUpsert>) inv.getArgument(0)) {
+                written.add(row.compositeId());
+            }
+            if (inFlush.getCount() > 0) {
+                inFlush.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(repository).upsertAll(any());
+        writer.write("S01-R01-L01-G01", "lux", 2.0, "lux", t0);
+        Thread flusher = new Thread(writer::flush);
+        flusher.start();
+        assertTrue(inFlush.await(5, TimeUnit.SECONDS));
+
+        writer.write("S01-R01-L01-G02", "lux", 3.0, "lux", t0);
+        Thread stopper = new Thread(writer::shutdown);
+        stopper.start();
+        Thread.sleep(50);
+        release.countDown();
+        flusher.join(5_000);
+        stopper.join(5_000);
+
+        assertEquals(List.of("S01-R01-L01-G01", "S01-R01-L01-G02"), written);
+        assertEquals(0, writer.pendingCount());
+    }
+
+    @Test
+    void flushWithoutPendingValuesDoesNotTouchDatabase() {
+        writer.flush();
+
+        verifyNoInteractions(repository);
+    }
+}
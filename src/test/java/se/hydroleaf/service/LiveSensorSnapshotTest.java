@@ -0,0 +1,81 @@
+package se.hydroleaf.service;
+
+import org.junit.jupiter.api.Test;
+import se.hydroleaf.repository.LatestSensorValueAggregationRepository;
+import se.hydroleaf.repository.dto.snapshot.LatestSensorValueRow;
+import se.hydroleaf.repository.dto.snapshot.LiveNowRow;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LiveSensorSnapshotTest {
+
+    private static final Instant T0 = Instant.parse("2025-01-01T00:00:00Z");
+
+    private final LatestSensorValueAggregationRepository repository = mock(LatestSensorValueAggregationRepository.class);
+    private final LiveSensorSnapshot snapshot = new LiveSensorSnapshot(repository, false);
+
+    @Test
+    void newReadingReplacesTheDevicesPreviousValueInTheAverage() {
+        snapshot.record("S01", "L01", "S01-R01-L01-G01", "temperature", 20.0, "°C", T0);
+        snapshot.record("S01", "L01", "S01-R01-L01-G02", "temperature", 24.0, "°C", T0);
+        snapshot.record("S01", "L01", "S01-R01-L01-G01", "temperature", 22.0, "°C", T0.plusSeconds(5));
+
+        LiveNowRow row = snapshot.averages("s01", "l01", List.of("temperature")).get(0);
+        assertEquals(23.0, row.getAvgValue());
+        assertEquals(2L, row.getDeviceCount());
+        assertEquals(T0.plusSeconds(5), row.getRecordTime());
+    }
+
+    @Test
+    void olderReadingsAreIgnoredAndMovedDevicesLeaveTheirOldLayer() {
+        snapshot.record("S01", "L01", "S01-R01-L01-G01", "ph", 6.0, "pH", T0.plusSeconds(10));
+        snapshot.record("S01", "L01", "S01-R01-L01-G01", "ph", 9.0, "pH", T0);
+        assertEquals(6.0, snapshot.averages("S01", "L01", List.of("ph")).get(0).getAvgValue());
+
+        long version = snapshot.version();
+        snapshot.record("S01", "L02", "S01-R01-L01-G01", "ph", 7.0, "pH", T0.plusSeconds(20));
+
+        assertTrue(snapshot.averages("S01", "L01", List.of("ph")).isEmpty());
+        assertEquals(7.0, snapshot.averages("S01", "L02", List.of("ph")).get(0).getAvgValue());
+        assertTrue(snapshot.version() > version);
+    }
+
+    @Test
+    void startupLoadMergesWithReadingsAlreadyIngested() {
+        snapshot.record("S01", "L01", "S01-R01-L01-G01", "light", 300.0, "lux", T0.plusSeconds(60));
+        when(repository.fetchLatestSensorValues()).thenReturn(List.of(
+                new LatestSensorValueRow("S01", "L01", "S01-R01-L01-G01", "light", "lux", 100.0, T0),
+                new LatestSensorValueRow("S01", "L01", "S01-R01-L01-G02", "light", "lux", 500.0, T0)));
+        assertFalse(snapshot.isLoaded());
+
+        snapshot.load();
+
+        assertTrue(snapshot.isLoaded());
+        LiveNowRow row = snapshot.averages("S01", "L01", List.of("light")).get(0);
+        assertEquals(400.0, row.getAvgValue());
+        assertEquals(2L, row.getDeviceCount());
+    }
+
+    @Test
+    void evictedDevicesLeaveTheAverage() {
+        snapshot.record("S01", "L01", "S01-R01-L01-G01", "ph", 6.0, "pH", T0);
+        snapshot.record("S01", "L01", "S01-R01-L01-G01", "ec", 1.2, "mS/cm", T0);
+        snapshot.record("S01", "L01", "S01-R01-L01-G02", "ph", 7.0, "pH", T0);
+        long version = snapshot.version();
+
+        snapshot.evict("S01-R01-L01-G01");
+
+        LiveNowRow ph = snapshot.averages("S01", "L01", List.of("ph")).get(0);
+        assertEquals(7.0, ph.getAvgValue());
+        assertEquals(1L, ph.getDeviceCount());
+        assertTrue(snapshot.averages("S01", "L01", List.of("ec")).isEmpty());
+        assertTrue(snapshot.version() > version);
+    }
+}
@@ -6,7 +6,6 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import se.hydroleaf.model.LatestSensorValue;
-import se.hydroleaf.repository.ActuatorStatusRepository;
 import se.hydroleaf.repository.DeviceRepository;
 import se.hydroleaf.repository.LatestSensorValueRepository;
 import se.hydroleaf.repository.dto.history.AggregatedHistoryResponse;
@@ -20,6 +19,8 @@ import java.util.List;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
@@ -31,15 +32,24 @@ class RecordServiceAggregatedHistoryTest {
     @Mock
     DeviceRepository deviceRepository;
 
-    @Mock
-    ActuatorStatusRepository actuatorStatusRepository;
-
     @Mock
     LatestSensorValueRepository latestSensorValueRepository;
 
     @Mock
     SensorValueBuffer sensorValueBuffer;
 
+    @Mock
+    LatestSensorValueWriter latestSensorValueWriter;
+
+    @Mock
+    DeviceRegistry deviceRegistry;
+
+    @Mock
+    LiveSensorSnapshot liveSensorSnapshot;
+
+    @Mock
+    ActuatorStatusRecorder actuatorStatusRecorder;
+
     private CapturingAggregationReader aggregationReader;
     private RecordService recordService;
 
@@ -48,10 +58,13 @@ class RecordServiceAggregatedHistoryTest {
         aggregationReader = new CapturingAggregationReader();
         recordService = new RecordService(
                 deviceRepository,
-                actuatorStatusRepository,
                 aggregationReader,
                 latestSensorValueRepository,
-                sensorValueBuffer
+                sensorValueBuffer,
+                latestSensorValueWriter,
+                deviceRegistry,
+                liveSensorSnapshot,
+                actuatorStatusRecorder
         );
     }
 
@@ -114,12 +127,113 @@ class RecordServiceAggregatedHistoryTest {
         assertEquals(12.5d, value.value());
     }
 
+    @Test
+    void sensorTypeWithoutLatestValueResolvesCaseFromHistory() {
+        Instant from = Instant.parse("2023-11-01T00:00:00Z");
+        Instant to = Instant.parse("2023-11-01T01:00:00Z");
+
+        when(deviceRepository.existsById(eq(DEVICE_ID))).thenReturn(true);
+        aggregationReader.storedSensorTypes = List.of("PPM");
+        Instant bucketTime = Instant.parse("2023-11-01T00:05:00Z");
+        aggregationReader.setResultsForSensorType("PPM", List.of(
+                new TestAggregateResult("PPM", "ppm", bucketTime, 12.5d)
+        ));
+
+        AggregatedHistoryResponse response = recordService.aggregatedHistory(
+                DEVICE_ID,
+                from,
+                to,
+                "5m",
+                List.of("ppm")
+        );
+
+        assertEquals(List.of("ppm"), aggregationReader.capturedLowerSensorTypes);
+        assertEquals("PPM", aggregationReader.capturedSensorType);
+        assertEquals(1, response.sensors().size());
+        assertEquals(12.5d, response.sensors().get(0).data().get(0).value());
+    }
+
+    @Test
+    void multipleSensorTypesAreFetchedInOneCallInRequestedOrder() {
+        Instant from = Instant.parse("2023-11-01T00:00:00Z");
+        Instant to = Instant.parse("2023-11-01T01:00:00Z");
+
+        LatestSensorValue f1 = new LatestSensorValue();
+        f1.setSensorType("as7343_counts_F1");
+        LatestSensorValue clear = new LatestSensorValue();
+        clear.setSensorType("as7343_counts_CLEAR");
+
+        when(deviceRepository.existsById(eq(DEVICE_ID))).thenReturn(true);
+        when(latestSensorValueRepository.findByDevice_CompositeId(eq(DEVICE_ID)))
+                .thenReturn(List.of(f1, clear));
+
+        Instant t0 = Instant.parse("2023-11-01T00:00:00Z");
+        Instant t1 = Instant.parse("2023-11-01T00:05:00Z");
+        aggregationReader.setSetResults(List.of(
+                new TestAggregateResult("as7343_counts_CLEAR", "counts", t0, 2.0d),
+                new TestAggregateResult("as7343_counts_CLEAR", "counts", t1, 3.0d),
+                new TestAggregateResult("as7343_counts_F1", "counts", t0, 1.0d)
+        ));
+
+        AggregatedHistoryResponse response = recordService.aggregatedHistory(
+                DEVICE_ID,
+                from,
+                to,
+                "5m",
+                List.of("AS7343_COUNTS_F1", "as7343_counts_clear")
+        );
+
+        assertEquals(1, aggregationReader.setCalls);
+        assertEquals(List.of("as7343_counts_F1", "as7343_counts_CLEAR"), aggregationReader.capturedSensorTypes);
+        assertNull(aggregationReader.capturedSensorType);
+        assertEquals(2, response.sensors().size());
+        assertEquals("as7343_counts_F1", response.sensors().get(0).sensorType());
+        AggregatedSensorData clearSeries = response.sensors().get(1);
+        assertEquals("as7343_counts_CLEAR", clearSeries.sensorType());
+        assertEquals(List.of(t0, t1), clearSeries.data().stream().map(TimestampValue::timestamp).toList());
+    }
+
+    @Test
+    void maxPointsDownsamplesEachSeriesWhileCollating() {
+        Instant from = Instant.parse("2023-11-01T00:00:00Z");
+        Instant to = Instant.parse("2023-11-02T00:00:00Z");
+        when(deviceRepository.existsById(eq(DEVICE_ID))).thenReturn(true);
+
+        List<RecordService.SensorAggregateResult> rows = new java.util.ArrayList<>();
+        for (int i = 0; i < 288; i++) {
+            rows.add(new TestAggregateResult("lux", "lux", from.plusSeconds(300L * i), (double) (i % 7)));
+        }
+        aggregationReader.setDefaultResults(rows);
+
+        AggregatedHistoryResponse response = recordService.aggregatedHistory(
+                DEVICE_ID, from, to, "5m", null, null, null, null, null,
+                HistoryAggregation.AVG, 50, HistoryDownsampling.LTTB);
+
+        List<TimestampValue> data = response.sensors().get(0).data();
+        assertTrue(data.size() <= 50);
+        assertEquals(from, data.get(0).timestamp());
+        assertEquals(from.plusSeconds(300L * 287), data.get(data.size() - 1).timestamp());
+
+        AggregatedHistoryResponse untouched = recordService.aggregatedHistory(
+                DEVICE_ID, from, to, "5m", null, null, null, null, null,
+                HistoryAggregation.AVG, 288, HistoryDownsampling.LTTB);
+        assertEquals(288, untouched.sensors().get(0).data().size());
+
+        assertThrows(IllegalArgumentException.class, () -> recordService.aggregatedHistory(
+                DEVICE_ID, from, to, "5m", null, 10, null, null, null,
+                HistoryAggregation.AVG, 50, HistoryDownsampling.LTTB));
+    }
+
     private static final class CapturingAggregationReader implements RecordService.SensorAggregationReader {
 
         Instant capturedFrom;
         Instant capturedTo;
         String capturedBucket;
         String capturedSensorType;
+        List<String> capturedSensorTypes;
+        List<String> capturedLowerSensorTypes;
+        List<String> storedSensorTypes = Collections.emptyList();
+        int setCalls;
 
         private final java.util.Map<String, List<RecordService.SensorAggregateResult>> resultsBySensorType = new java.util.HashMap<>();
         private List<RecordService.SensorAggregateResult> defaultResults = Collections.emptyList();
@@ -128,6 +242,12 @@ class RecordServiceAggregatedHistoryTest {
             resultsBySensorType.put(sensorType, results);
         }
 
+        private List<RecordService.SensorAggregateResult> setResults = Collections.emptyList();
+
+        void setSetResults(List<RecordService.SensorAggregateResult> results) {
+            this.setResults = results;
+        }
+
         void setDefaultResults(List<RecordService.SensorAggregateResult> results) {
             this.defaultResults = results;
         }
@@ -144,6 +264,29 @@ class RecordServiceAggregatedHistoryTest {
             this.capturedSensorType = sensorType;
             return resultsBySensorType.getOrDefault(sensorType, defaultResults);
         }
+
+        @Override
+        public List<RecordService.SensorAggregateResult> aggregateAll(String compositeId,
+                                                                      Instant from,
+                                                                      Instant to,
+                                                                      String bucket,
+                                                                      java.util.Collection<String> sensorTypes) {
+            this.capturedFrom = from;
+            this.capturedTo = to;
+            this.capturedBucket = bucket;
+            this.capturedSensorTypes = List.copyOf(sensorTypes);
+            this.setCalls++;
+            return setResults;
+        }
+
+        @Override
+        public List<String> storedSensorTypes(String compositeId,
+                                              Instant from,
+                                              Instant to,
+                                              java.util.Collection<String> lowerSensorTypes) {
+            this.capturedLowerSensorTypes = List.copyOf(lowerSensorTypes);
+            return storedSensorTypes;
+        }
     }
 
     private record TestAggregateResult(String sensorType, String unit, Instant bucketTime, Double avgValue)
@@ -2,6 +2,7 @@ package se.hydroleaf.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,15 +10,20 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import se.hydroleaf.model.ActuatorStatus;
 import se.hydroleaf.model.Device;
 import se.hydroleaf.model.LatestSensorValue;
 import se.hydroleaf.model.TopicName;
 import se.hydroleaf.repository.ActuatorStatusRepository;
 import se.hydroleaf.repository.DeviceRepository;
+import se.hydroleaf.repository.LatestActuatorStatusRepository;
 import se.hydroleaf.repository.SensorValueHistoryRepository;
 import se.hydroleaf.repository.LatestSensorValueRepository;
 
 import java.time.Instant;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -31,8 +37,11 @@ class RecordServiceDeviceTests {
     @Autowired DeviceRepository deviceRepository;
     @Autowired SensorValueHistoryRepository sensorValueHistoryRepository;
     @Autowired ActuatorStatusRepository actuatorStatusRepository;
+    @Autowired LatestActuatorStatusRepository latestActuatorStatusRepository;
     @Autowired LatestSensorValueRepository latestSensorValueRepository;
     @Autowired SensorValueBuffer sensorValueBuffer;
+    @Autowired LatestSensorValueWriter latestSensorValueWriter;
+    @Autowired EntityManager entityManager;
 
     @BeforeEach
     void initData() {
@@ -58,10 +67,25 @@ class RecordServiceDeviceTests {
                 d.setDeviceId(parts[3]);
             }
             d.setTopic(TopicName.growSensors);
-            return deviceRepository.save(d);
+            // latest values are written through JDBC, so the device row must exist in the database
+            return deviceRepository.saveAndFlush(d);
         });
     }
 
+    /**
+     * Saves a record and runs the after-commit work it registered, as if its own
+     * transaction had committed; the test transaction itself is rolled back.
+     */
+    private void saveCommitted(String compositeId, JsonNode json, TopicName topic) {
+        List<TransactionSynchronization> before = TransactionSynchronizationManager.getSynchronizations();
+        recordService.saveRecord(compositeId, json, topic);
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (!before.contains(synchronization)) {
+                synchronization.afterCommit();
+            }
+        }
+    }
+
     @Test
     void saveRecord_persists_values_and_pump_for_existing_device() throws Exception {
         final String compositeId = "S02-R01-L02-G01";
@@ -86,7 +110,7 @@ class RecordServiceDeviceTests {
         JsonNode node = objectMapper.readTree(json);
 
         long pumpBefore = actuatorStatusRepository.count();
-        recordService.saveRecord(compositeId, node, TopicName.growSensors);
+        saveCommitted(compositeId, node, TopicName.growSensors);
 
         // buffer should delay persistence until flush
         assertEquals(0, sensorValueHistoryRepository.count());
@@ -97,6 +121,7 @@ class RecordServiceDeviceTests {
         assertEquals("L02", saved.getLayer());
         assertEquals(compositeId, saved.getCompositeId());
 
+        latestSensorValueWriter.flush();
         LatestSensorValue luxValue = latestSensorValueRepository
                 .findByDevice_CompositeIdAndSensorType(compositeId, "lux")
                 .orElseThrow();
@@ -116,6 +141,37 @@ class RecordServiceDeviceTests {
         assertEquals(Instant.parse("2025-01-01T00:00:00Z"), pumpRow.getTimestamp());
     }
 
+    @Test
+    void repeated_controller_state_updates_latest_status_but_records_only_changes() throws Exception {
+        final String compositeId = "S02-R01-L03-G01";
+        ensureDevice(compositeId);
+        String report = """
+                {"timestamp":"%s","controllers":[{"name":"airPump","state":%s}]}
+                """;
+
+        recordService.saveRecord(compositeId, objectMapper.readTree(report.formatted("2025-01-01T00:00:00Z", true)),
+                TopicName.growSensors);
+        recordService.saveRecord(compositeId, objectMapper.readTree(report.formatted("2025-01-01T00:00:10Z", true)),
+                TopicName.growSensors);
+        recordService.saveRecord(compositeId, objectMapper.readTree(report.formatted("2025-01-01T00:00:20Z", false)),
+                TopicName.growSensors);
+
+        entityManager.clear();
+        var history = actuatorStatusRepository.findAll().stream()
+                .filter(s -> compositeId.equals(s.getDevice().getCompositeId()))
+                .sorted(java.util.Comparator.comparing(ActuatorStatus::getTimestamp))
+                .toList();
+        assertEquals(2, history.size());
+        // the first interval is closed by the change, the open one ends at its last write
+        assertEquals(Instant.parse("2025-01-01T00:00:20Z"), history.get(0).getEndTime());
+        assertEquals(Instant.parse("2025-01-01T00:00:20Z"), history.get(1).getEndTime());
+        var latest = latestActuatorStatusRepository.findByCompositeIdAndActuatorType(compositeId, "airPump")
+                .orElseThrow();
+        assertFalse(latest.getState());
+        assertEquals(Instant.parse("2025-01-01T00:00:20Z"), latest.getStatusTime());
+        assertEquals(Instant.parse("2025-01-01T00:00:20Z"), latest.getChangedTime());
+    }
+
     @Test
     void buffered_readings_are_averaged_on_flush() throws Exception {
         final String compositeId = "S10-R01-L10-AVG";
@@ -127,8 +183,8 @@ class RecordServiceDeviceTests {
         String second = """
                 {"timestamp":"2025-01-01T00:00:30Z","lux":8.0}
                 """;
-        recordService.saveRecord(compositeId, objectMapper.readTree(first), TopicName.growSensors);
-        recordService.saveRecord(compositeId, objectMapper.readTree(second), TopicName.growSensors);
+        saveCommitted(compositeId, objectMapper.readTree(first), TopicName.growSensors);
+        saveCommitted(compositeId, objectMapper.readTree(second), TopicName.growSensors);
 
         // nothing persisted until flush
         assertEquals(0, sensorValueHistoryRepository.count());
@@ -153,7 +209,8 @@ class RecordServiceDeviceTests {
                   "air_temp_c": 21.5
                 }
                 """;
-        recordService.saveRecord(compositeId, objectMapper.readTree(first), TopicName.growSensors);
+        saveCommitted(compositeId, objectMapper.readTree(first), TopicName.growSensors);
+        latestSensorValueWriter.flush();
 
         LatestSensorValue v1 = latestSensorValueRepository
                 .findByDevice_CompositeIdAndSensorType(compositeId, "air_temp_c")
@@ -168,7 +225,9 @@ class RecordServiceDeviceTests {
                   "air_temp_c": 22.0
                 }
                 """;
-        recordService.saveRecord(compositeId, objectMapper.readTree(second), TopicName.growSensors);
+        saveCommitted(compositeId, objectMapper.readTree(second), TopicName.growSensors);
+        latestSensorValueWriter.flush();
+        entityManager.clear();
 
         LatestSensorValue v2 = latestSensorValueRepository
                 .findByDevice_CompositeIdAndSensorType(compositeId, "air_temp_c")
@@ -0,0 +1,104 @@
+package se.hydroleaf.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import se.hydroleaf.model.TopicName;
+import se.hydroleaf.repository.DeviceRepository;
+import se.hydroleaf.repository.LatestSensorValueRepository;
+import se.hydroleaf.service.DeviceRegistry.DeviceSnapshot;
+
+import java.time.Instant;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RecordServiceLiveSnapshotTest {
+
+    private static final String DEVICE = "S01-R01-L01-G01";
+    private static final Instant TS = Instant.parse("2025-01-01T00:00:00Z");
+
+    private final DeviceRegistry deviceRegistry = mock(DeviceRegistry.class);
+    private final LiveSensorSnapshot liveSensorSnapshot = mock(LiveSensorSnapshot.class);
+    private final SensorValueBuffer sensorValueBuffer = mock(SensorValueBuffer.class);
+    private final LatestSensorValueWriter latestSensorValueWriter = mock(LatestSensorValueWriter.class);
+    private final RecordService recordService = new RecordService(
+            mock(DeviceRepository.class),
+            mock(RecordService.SensorAggregationReader.class),
+            mock(LatestSensorValueRepository.class),
+            sensorValueBuffer,
+            latestSensorValueWriter,
+            deviceRegistry,
+            liveSensorSnapshot,
+            mock(ActuatorStatusRecorder.class));
+
+    private JsonNode json;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(deviceRegistry.resolve(DEVICE, TopicName.growSensors)).thenReturn(
+                new DeviceSnapshot(DEVICE, "S01", "R01", "L01", "G01", TopicName.growSensors));
+        json = new ObjectMapper().readTree("""
+                {"timestamp": "2025-01-01T00:00:00Z", "lux": 500.0, "rh_pct": 60.0}
+                """);
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void readingsAreStoredOnlyOnceTheRecordCommits() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        recordService.saveRecord(DEVICE, json, TopicName.growSensors);
+
+        verifyNothingStored();
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        verify(sensorValueBuffer).add(DEVICE, "lux", 500.0, TS);
+        verify(latestSensorValueWriter).write(DEVICE, "lux", 500.0, "lux", TS);
+        verify(liveSensorSnapshot).record("S01", "L01", DEVICE, "lux", 500.0, "lux", TS);
+        verify(sensorValueBuffer).add(DEVICE, "rh_pct", 60.0, TS);
+        verify(latestSensorValueWriter).write(DEVICE, "rh_pct", 60.0, "%", TS);
+        verify(liveSensorSnapshot).record("S01", "L01", DEVICE, "rh_pct", 60.0, "%", TS);
+    }
+
+    @Test
+    void rolledBackRecordsAreNeverStored() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        recordService.saveRecord(DEVICE, json, TopicName.growSensors);
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        verifyNothingStored();
+    }
+
+    @Test
+    void withoutATransactionReadingsAreRecordedImmediately() {
+        recordService.saveRecord(DEVICE, json, TopicName.growSensors);
+
+        verify(sensorValueBuffer).add(DEVICE, "lux", 500.0, TS);
+        verify(latestSensorValueWriter).write(DEVICE, "lux", 500.0, "lux", TS);
+        verify(liveSensorSnapshot).record("S01", "L01", DEVICE, "lux", 500.0, "lux", TS);
+    }
+
+    private void verifyNothingStored() {
+        verify(sensorValueBuffer, never()).add(anyString(), anyString(), anyDouble(), any());
+        verify(latestSensorValueWriter, never()).write(anyString(), anyString(), anyDouble(), any(), any());
+        verify(liveSensorSnapshot, never())
+                .record(anyString(), anyString(), anyString(), anyString(), anyDouble(), any(), any());
+    }
+}
@@ -0,0 +1,190 @@
+package se.hydroleaf.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hot-path cost of {@code SensorValueBuffer.add}: the previous
+ * {@code ConcurrentHashMap<Key, Accumulator>.compute} implementation against
+ * {@link SensorAccumulatorTable}, at 1, 4 and 16 writer threads. A background
+ * drain every {@code drainEveryOps} operations per thread keeps the flush path
+ * in the picture.
+ *
+ * <p>Run with {@code mvn -Pjmh test-compile exec:exec -Djmh.include=SensorAccumulator}.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SensorAccumulatorBenchmark {
+
+    private static final int DEVICES = 200;
+    private static final String[] SENSOR_TYPES = {"lux", "rh_pct", "temp_c", "ph", "ec_mS_cm", "do_mg_l", "co2_ppm", "water_temp_c"};
+
+    @State(Scope.Benchmark)
+    public static class Buffers {
+
+        @Param({"legacy", "striped"})
+        public String impl;
+
+        @Param({"4096"})
+        public int drainEveryOps;
+
+        String[] compositeIds;
+        LegacyBuffer legacy;
+        SensorAccumulatorTable table;
+        final ReentrantLock drainLock = new ReentrantLock();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            compositeIds = new String[DEVICES];
+            for (int i = 0; i < DEVICES; i++) {
+                compositeIds[i] = String.format("S01-R%02d-L%02d-G01", i / 10, i % 10);
+            }
+            legacy = new LegacyBuffer();
+            table = new SensorAccumulatorTable((id, type, value, ts) -> { });
+        }
+
+        void add(String compositeId, String sensorType, double value, Instant ts) {
+            if ("legacy".equals(impl)) {
+                legacy.add(compositeId, sensorType, value, ts);
+            } else {
+                table.add(compositeId, sensorType, value, ts);
+            }
+        }
+
+        /**
+         * Like the scheduled flush, only one thread drains at a time.
+         */
+        void drain() {
+            if (!drainLock.tryLock()) {
+                return;
+            }
+            try {
+                if ("legacy".equals(impl)) {
+                    legacy.drain();
+                } else {
+                    SensorAccumulatorTable.Snapshot snapshot = table.swap(() -> -1L);
+                    snapshot.forEach((id, type, firstMillis, count, sum, sumSq, min, max, last) -> { });
+                    snapshot.clear();
+                }
+            } finally {
+                drainLock.unlock();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+        Instant now = Instant.parse("2025-01-01T00:00:00Z");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void add1(Buffers buffers, Cursor cursor) {
+        step(buffers, cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void add4(Buffers buffers, Cursor cursor) {
+        step(buffers, cursor);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void add16(Buffers buffers, Cursor cursor) {
+        step(buffers, cursor);
+    }
+
+    private static void step(Buffers buffers, Cursor cursor) {
+        int n = cursor.next++ & Integer.MAX_VALUE;
+        buffers.add(buffers.compositeIds[n % DEVICES], SENSOR_TYPES[n & 7], n & 1023, cursor.now);
+        if (n % buffers.drainEveryOps == 0) {
+            buffers.drain();
+        }
+    }
+
+    /**
+     * Copy of the accumulation path {@code SensorValueBuffer} used before the
+     * striped table, kept here as the baseline.
+     */
+    static final class LegacyBuffer {
+
+        private record Key(String compositeId, String sensorType) { }
+
+        private static final class Accumulator {
+            double sum;
+            double sumSq;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            double last;
+            long lastTimestamp = Long.MIN_VALUE;
+            long count;
+            Instant firstTimestamp;
+
+            void accumulate(double value, Instant ts) {
+                sum += value;
+                sumSq += value * value;
+                count++;
+                if (value < min) {
+                    min = value;
+                }
+                if (value > max) {
+                    max = value;
+                }
+                long epochMillis = ts.toEpochMilli();
+                if (epochMillis >= lastTimestamp) {
+                    lastTimestamp = epochMillis;
+                    last = value;
+                }
+                if (firstTimestamp == null || ts.isBefore(firstTimestamp)) {
+                    firstTimestamp = ts;
+                }
+            }
+        }
+
+        private final ConcurrentMap<Key, Accumulator> buffer = new ConcurrentHashMap<>();
+
+        void add(String compositeId, String sensorType, double value, Instant timestamp) {
+            buffer.compute(new Key(compositeId, sensorType), (k, acc) -> {
+                if (acc == null) {
+                    acc = new Accumulator();
+                }
+                acc.accumulate(value, timestamp);
+                return acc;
+            });
+        }
+
+        Map<Key, Accumulator> drain() {
+            Map<Key, Accumulator> snapshot = new HashMap<>();
+            buffer.forEach((k, v) -> {
+                if (buffer.remove(k, v)) {
+                    snapshot.put(k, v);
+                }
+            });
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package se.hydroleaf.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SensorAccumulatorTableTest {
+
+    private static final Instant T0 = Instant.parse("2025-01-01T00:00:00Z");
+
+    @Test
+    void concurrentWritersAndSwapsLoseNoSamples() throws Exception {
+        SensorAccumulatorTable table = new SensorAccumulatorTable((id, type, value, ts) -> { });
+        int writers = 8;
+        int perWriter = 20_000;
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < perWriter; i++) {
+                    table.add("S01-R01-L0" + (i % 4) + "-G01", "type" + (writer % 3), 1.0, T0.plusMillis(i));
+                }
+            });
+        }
+        Map<String, Long> counts = new HashMap<>();
+        start.countDown();
+        pool.shutdown();
+        while (!pool.awaitTermination(1, TimeUnit.MILLISECONDS)) {
+            drainInto(table, counts);
+        }
+        drainInto(table, counts);
+
+        long total = counts.values().stream().mapToLong(Long::longValue).sum();
+        assertEquals((long) writers * perWriter, total);
+        assertEquals(12, counts.size());
+    }
+
+    @Test
+    void restoreMergesRetiredRollupsIntoLiveBank() {
+        SensorAccumulatorTable table = new SensorAccumulatorTable((id, type, value, ts) -> { });
+        table.add("S01-R01-L01-G01", "lux", 4.0, T0.plusSeconds(10));
+        SensorAccumulatorTable.Snapshot failed = table.swap(() -> 7L);
+        table.add("S01-R01-L01-G01", "lux", 2.0, T0);
+        failed.restore();
+
+        SensorAccumulatorTable.Snapshot next = table.swap(() -> 8L);
+        int rows = next.forEach((id, type, firstMillis, count, sum, sumSq, min, max, last) -> {
+            assertEquals(2, count);
+            assertEquals(6.0, sum);
+            assertEquals(20.0, sumSq);
+            assertEquals(2.0, min);
+            assertEquals(4.0, max);
+            assertEquals(4.0, last);
+            assertEquals(T0.toEpochMilli(), firstMillis);
+        });
+        assertEquals(1, rows);
+        assertEquals(8L, next.cut());
+        next.clear();
+        assertEquals(0, table.swap(() -> -1L).forEach((id, type, f, c, s, sq, mn, mx, l) -> { }));
+    }
+
+    private static void drainInto(SensorAccumulatorTable table, Map<String, Long> counts) {
+        SensorAccumulatorTable.Snapshot snapshot = table.swap(() -> -1L);
+        snapshot.forEach((id, type, firstMillis, count, sum, sumSq, min, max, last) ->
+                counts.merge(id + "/" + type, count, Long::sum));
+        snapshot.clear();
+    }
+}
@@ -0,0 +1,71 @@
+package se.hydroleaf.service;
+
+import org.junit.jupiter.api.Test;
+import se.hydroleaf.repository.SensorAggregationRepository;
+import se.hydroleaf.repository.SensorValueRollupJdbcWriter;
+import se.hydroleaf.repository.TimescaleContinuousAggregates;
+import se.hydroleaf.repository.TimescaleDbSupport;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SensorAggregationAdapterTest {
+
+    private static final String DEVICE = "S01-R01-L01-G01";
+    private static final Instant FROM = Instant.parse("2025-01-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2025-01-02T00:00:00Z");
+
+    private final SensorAggregationRepository repo = mock(SensorAggregationRepository.class);
+    private final TimescaleDbSupport timescale = mock(TimescaleDbSupport.class);
+    private final SensorValueRollupJdbcWriter rollups = mock(SensorValueRollupJdbcWriter.class);
+    private final TimescaleContinuousAggregates continuousAggregates = mock(TimescaleContinuousAggregates.class);
+    private final SensorAggregationAdapter adapter =
+            new SensorAggregationAdapter(repo, timescale, rollups, continuousAggregates);
+
+    @Test
+    void coarsestTierThatTilesTheBucketIsRead() {
+        when(rollups.isMaintained()).thenReturn(true);
+
+        adapter.aggregate(DEVICE, FROM, TO, "1h", "lux");
+        adapter.aggregate(DEVICE, FROM, TO, "90m", "lux");
+        adapter.aggregateAll(DEVICE, FROM, TO, "1d", List.of("lux", "rh_pct"));
+
+        verify(repo).aggregateRollup(DEVICE, FROM, TO, 3600, 3600, "lux");
+        verify(repo).aggregateRollup(DEVICE, FROM, TO, 5400, 300, "lux");
+        verify(repo).aggregateRollupForTypes(DEVICE, FROM, TO, 86400, 86400, List.of("lux", "rh_pct"));
+    }
+
+    @Test
+    void fineOrUnalignedRequestsGroupRawRows() {
+        when(rollups.isMaintained()).thenReturn(true);
+        Instant unaligned = FROM.plusSeconds(60);
+
+        adapter.aggregate(DEVICE, FROM, TO, "1m", "lux");
+        adapter.aggregate(DEVICE, unaligned, TO, "1h", "lux");
+
+        verify(repo).aggregateDateTrunc(DEVICE, FROM, TO, 60, "lux");
+        verify(repo).aggregateDateTrunc(DEVICE, unaligned, TO, 3600, "lux");
+        verify(repo, never()).aggregateRollup(anyString(), any(), any(), anyLong(), anyInt(), anyString());
+    }
+
+    @Test
+    void continuousAggregatesAreUsedOnTimescaleOnceReady() {
+        when(timescale.isAvailable()).thenReturn(true);
+
+        adapter.aggregate(DEVICE, FROM, TO, "1h", "lux");
+        when(continuousAggregates.isReady()).thenReturn(true);
+        adapter.aggregate(DEVICE, FROM, TO, "1h", "lux");
+
+        verify(repo).aggregateTimescale(DEVICE, FROM, TO, 3600, "lux");
+        verify(repo).aggregateContinuous(DEVICE, FROM, TO, 3600, 3600, "lux");
+    }
+}
@@ -0,0 +1,286 @@
+package se.hydroleaf.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.transaction.PlatformTransactionManager;
+import se.hydroleaf.config.TelemetryJournalProperties;
+import se.hydroleaf.repository.SensorValueHistoryJdbcWriter;
+import se.hydroleaf.repository.SensorValueRollupJdbcWriter;
+import se.hydroleaf.repository.TelemetryJournalCheckpoints;
+import se.hydroleaf.repository.dto.history.SensorValueHistoryRow;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class SensorValueBufferJournalTest {
+
+    private static final Instant T0 = Instant.parse("2025-01-01T00:00:00Z");
+    // 28 fixed bytes + "S01-R01-L01-G01" + "lux", padded to a multiple of four
+    private static final int RECORD_BYTES = 48;
+
+    @TempDir
+    Path dir;
+
+    private final List<SensorValueJournal> opened = new ArrayList<>();
+    private final SensorValueRollupJdbcWriter rollupWriter = mock(SensorValueRollupJdbcWriter.class);
+    private final TelemetryJournalCheckpoints checkpoints = mock(TelemetryJournalCheckpoints.class);
+
+    @AfterEach
+    void closeJournals() {
+        opened.forEach(SensorValueJournal::close);
+    }
+
+    @Test
+    void unflushedSamplesAreReplayedAfterRestart() {
+        SensorValueJournal journal = journal();
+        SensorValueBuffer buffer = buffer(mock(SensorValueHistoryJdbcWriter.class), journal);
+        buffer.add("S01-R01-L01-G01", "lux", 10.0, T0);
+        buffer.add("S01-R01-L01-G01", "lux", 30.0, T0.plusSeconds(5));
+        buffer.add("S01-R01-L01-G01", "rh_pct", 55.0, T0);
+        journal.close();
+
+        SensorValueHistoryJdbcWriter writer = mock(SensorValueHistoryJdbcWriter.class);
+        SensorValueBuffer restarted = buffer(writer, journal());
+        restarted.recover();
+        restarted.flush();
+
+        List<SensorValueHistoryRow> rows = captureInsert(writer);
+        assertEquals(2, rows.size());
+        SensorValueHistoryRow lux = rows.stream().filter(r -> r.sensorType().equals("lux")).findFirst().orElseThrow();
+        assertEquals(20.0, lux.value());
+        assertEquals(30.0, lux.last());
+        assertEquals(2, lux.count());
+        assertEquals(T0, lux.valueTime());
+    }
+
+    @Test
+    void flushRecordsTheCheckpointWithTheHistory() throws IOException {
+        SensorValueJournal journal = journal();
+        SensorValueBuffer buffer = buffer(mock(SensorValueHistoryJdbcWriter.class), journal);
+        buffer.add("S01-R01-L01-G01", "lux", 10.0, T0);
+
+        buffer.flush();
+
+        verify(checkpoints).markApplied(journal.id(), 0L);
+        assertEquals(1, segmentCount());
+    }
+
+    @Test
+    void segmentsCoveredByTheCheckpointAreNotReplayed() throws IOException {
+        SensorValueJournal journal = journal();
+        SensorValueBuffer buffer = buffer(mock(SensorValueHistoryJdbcWriter.class), journal);
+        buffer.add("S01-R01-L01-G01", "lux", 10.0, T0);
+        // Crash after the flush committed its checkpoint but before the segment was released.
+        journal.close();
+
+        SensorValueJournal reopened = journal();
+        assertEquals(journal.id(), reopened.id());
+        when(checkpoints.appliedThrough(eq(reopened.id()))).thenReturn(OptionalLong.of(0L));
+        SensorValueHistoryJdbcWriter writer = mock(SensorValueHistoryJdbcWriter.class);
+        SensorValueBuffer restarted = buffer(writer, reopened);
+        restarted.recover();
+        restarted.flush();
+
+        verifyNoInteractions(writer);
+        assertEquals(1, segmentCount());
+    }
+
+    @Test
+    void failedFlushKeepsSnapshotAndJournalForNextFlush() throws IOException {
+        SensorValueHistoryJdbcWriter writer = mock(SensorValueHistoryJdbcWriter.class);
+        doThrow(new IllegalStateException("db down")).doNothing().when(writer).insertAll(anyList());
+        SensorValueBuffer buffer = buffer(writer, journal());
+        buffer.add("S01-R01-L01-G01", "lux", 10.0, T0);
+
+        buffer.flush();
+        assertEquals(2, segmentCount());
+
+        buffer.add("S01-R01-L01-G01", "lux", 20.0, T0.plusSeconds(5));
+        buffer.flush();
+
+        ArgumentCaptor<List<SensorValueHistoryRow>> captor = rowsCaptor();
+        verify(writer, times(2)).insertAll(captor.capture());
+        SensorValueHistoryRow lux = captor.getValue().get(0);
+        assertEquals(2, lux.count());
+        assertEquals(15.0, lux.value());
+        assertEquals(1, segmentCount());
+    }
+
+    @Test
+    void historyAndRollupsAreWrittenFromTheSameRowsAndFailTogether() throws IOException {
+        SensorValueHistoryJdbcWriter writer = mock(SensorValueHistoryJdbcWriter.class);
+        doThrow(new IllegalStateException("rollup conflict")).doNothing().when(rollupWriter).refresh(anyList());
+        SensorValueBuffer buffer = buffer(writer, journal());
+        buffer.add("S01-R01-L01-G01", "lux", 10.0, T0);
+
+        buffer.flush();
+        assertEquals(2, segmentCount());
+        buffer.flush();
+
+        ArgumentCaptor<List<SensorValueHistoryRow>> history = rowsCaptor();
+        ArgumentCaptor<List<SensorValueHistoryRow>> rollups = rowsCaptor();
+        verify(writer, times(2)).insertAll(history.capture());
+        verify(rollupWriter, times(2)).refresh(rollups.capture());
+        assertEquals(history.getValue(), rollups.getValue());
+        assertEquals(1, rollups.getValue().get(0).count());
+        assertEquals(1, segmentCount());
+    }
+
+    @Test
+    void tornTailIsSkippedOnReplay() throws IOException {
+        SensorValueJournal journal = journal();
+        journal.append("S01-R01-L01-G01", "lux", 10.0, T0);
+        journal.append("S01-R01-L01-G01", "lux", 11.0, T0.plusSeconds(1));
+        journal.close();
+        Path segment = singleSegment();
+        byte[] bytes = Files.readAllBytes(segment);
+        // Clobber the checksum of the second record, as if the process died mid-write.
+        int secondChecksum = 4 + 2 * RECORD_BYTES - 4;
+        bytes[secondChecksum] ^= 0x55;
+        Files.write(segment, bytes);
+
+        List<Double> replayed = new ArrayList<>();
+        journal().replay((compositeId, sensorType, value, timestamp) -> replayed.add(value));
+
+        assertEquals(List.of(10.0), replayed);
+    }
+
+    @Test
+    void reservedButUnwrittenRecordDoesNotHideLaterRecords() throws IOException {
+        // The writer of the second record died after claiming its slot: only the length is there.
+        byte[] bytes = threeRecords();
+        Arrays.fill(bytes, 4 + RECORD_BYTES + 4, 4 + 2 * RECORD_BYTES, (byte) 0);
+        Files.write(singleSegment(), bytes);
+
+        assertEquals(List.of(10.0, 12.0), replayedValues());
+    }
+
+    @Test
+    void zeroLengthSlotIsSkippedToTheNextIntactRecord() throws IOException {
+        byte[] bytes = threeRecords();
+        Arrays.fill(bytes, 4 + RECORD_BYTES, 4 + 2 * RECORD_BYTES, (byte) 0);
+        Files.write(singleSegment(), bytes);
+
+        assertEquals(List.of(10.0, 12.0), replayedValues());
+    }
+
+    @Test
+    void concurrentAppendsAreAllReplayed() throws Exception {
+        SensorValueJournal journal = journal();
+        int threads = 8;
+        int perThread = 5_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            String sensorType = "type" + t;
+            pool.execute(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    journal.append("S01-R01-L01-G01", sensorType, i, T0.plusMillis(i));
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        journal.close();
+
+        Map<String, Integer> counts = new HashMap<>();
+        journal().replay((compositeId, sensorType, value, timestamp) -> counts.merge(sensorType, 1, Integer::sum));
+
+        assertEquals(threads, counts.size());
+        counts.values().forEach(count -> assertEquals(perThread, count));
+    }
+
+    private byte[] threeRecords() throws IOException {
+        SensorValueJournal journal = journal();
+        journal.append("S01-R01-L01-G01", "lux", 10.0, T0);
+        journal.append("S01-R01-L01-G01", "lux", 11.0, T0.plusSeconds(1));
+        journal.append("S01-R01-L01-G01", "lux", 12.0, T0.plusSeconds(2));
+        journal.close();
+        return Files.readAllBytes(singleSegment());
+    }
+
+    private Path singleSegment() throws IOException {
+        try (Stream<Path> files = segments()) {
+            return files.findFirst().orElseThrow();
+        }
+    }
+
+    private List<Double> replayedValues() {
+        List<Double> replayed = new ArrayList<>();
+        journal().replay((compositeId, sensorType, value, timestamp) -> replayed.add(value));
+        return replayed;
+    }
+
+    @Test
+    void emptyFlushDoesNotTouchWriterOrRollSegments() throws IOException {
+        SensorValueHistoryJdbcWriter writer = mock(SensorValueHistoryJdbcWriter.class);
+        SensorValueBuffer buffer = buffer(writer, journal());
+
+        buffer.flush();
+
+        verifyNoInteractions(writer);
+        assertEquals(1, segmentCount());
+    }
+
+    private SensorValueBuffer buffer(SensorValueHistoryJdbcWriter writer, SensorValueJournal journal) {
+        return new SensorValueBuffer(writer, rollupWriter, journal, checkpoints, event -> { },
+                mock(PlatformTransactionManager.class));
+    }
+
+    private SensorValueJournal journal() {
+        TelemetryJournalProperties properties = new TelemetryJournalProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(dir.toString());
+        properties.setFsync(TelemetryJournalProperties.FsyncPolicy.NONE);
+        SensorValueJournal journal = new SensorValueJournal(properties, mock(TaskScheduler.class));
+        journal.open();
+        opened.add(journal);
+        return journal;
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = segments()) {
+            return files.count();
+        }
+    }
+
+    private Stream<Path> segments() throws IOException {
+        return Files.list(dir).filter(path -> path.getFileName().toString().endsWith(".journal"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<SensorValueHistoryRow>> rowsCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+
+    private static List<SensorValueHistoryRow> captureInsert(SensorValueHistoryJdbcWriter writer) {
+        ArgumentCaptor<List<SensorValueHistoryRow>> captor = rowsCaptor();
+        verify(writer).insertAll(captor.capture());
+        return captor.getValue();
+    }
+}
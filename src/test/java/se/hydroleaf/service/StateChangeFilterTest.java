@@ -0,0 +1,89 @@
+package se.hydroleaf.service;
+
+import org.junit.jupiter.api.Test;
+import se.hydroleaf.config.StateHistoryProperties;
+import se.hydroleaf.service.StateChangeFilter.Decision;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StateChangeFilterTest {
+
+    private static final Instant T0 = Instant.parse("2025-01-01T00:00:00Z");
+
+    private static StateChangeFilter filter(Duration keepAlive) {
+        StateHistoryProperties properties = new StateHistoryProperties();
+        properties.setKeepAlive(keepAlive);
+        return new StateChangeFilter(properties, false);
+    }
+
+    @Test
+    void onlyChangesAndKeepAlivesPassPerDeviceAndChannel() {
+        StateChangeFilter filter = filter(Duration.ofMinutes(5));
+
+        assertEquals(Decision.CHANGED, filter.offer("dev-1", "status", "online", T0));
+        assertEquals(Decision.UNCHANGED, filter.offer("dev-1", "status", "online", T0.plusSeconds(60)));
+        assertEquals(Decision.CHANGED, filter.offer("dev-1", "pump", true, T0.plusSeconds(60)));
+        assertEquals(Decision.CHANGED, filter.offer("dev-2", "status", "online", T0.plusSeconds(60)));
+        assertEquals(Decision.KEEP_ALIVE, filter.offer("dev-1", "status", "online", T0.plusSeconds(300)));
+        assertEquals(Decision.UNCHANGED, filter.offer("dev-1", "status", "online", T0.plusSeconds(360)));
+        assertEquals(Decision.CHANGED, filter.offer("dev-1", "status", "offline", T0.plusSeconds(400)));
+        // reports older than the last one seen do not change the remembered state
+        assertEquals(Decision.LATE, filter.offer("dev-1", "status", "online", T0.plusSeconds(390)));
+        assertEquals(Decision.UNCHANGED, filter.offer("dev-1", "status", "offline", T0.plusSeconds(410)));
+    }
+
+    @Test
+    void zeroKeepAliveSuppressesEveryRepeat() {
+        StateChangeFilter filter = filter(Duration.ZERO);
+
+        assertEquals(Decision.CHANGED, filter.offer("dev-1", "status", "online", T0));
+        assertEquals(Decision.UNCHANGED, filter.offer("dev-1", "status", "online", T0.plus(Duration.ofDays(1))));
+    }
+
+    @Test
+    void unknownKeyIsComparedWithThePersistedStateOnce() {
+        StateChangeFilter filter = filter(Duration.ofMinutes(5));
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(Decision.KEEP_ALIVE, filter.offer("dev-1", "status", "online", T0,
+                () -> { loads.incrementAndGet(); return "online"; }));
+        assertEquals(Decision.UNCHANGED, filter.offer("dev-1", "status", "online", T0.plusSeconds(10),
+                () -> { loads.incrementAndGet(); return "online"; }));
+        assertEquals(1, loads.get());
+
+        assertEquals(Decision.CHANGED, filter.offer("dev-2", "status", "online", T0, () -> "offline"));
+        assertEquals(Decision.CHANGED, filter.offer("dev-3", "status", "online", T0, () -> null));
+    }
+
+    @Test
+    void disabledFilterPassesEverything() {
+        StateHistoryProperties properties = new StateHistoryProperties();
+        properties.setEnabled(false);
+        StateChangeFilter filter = new StateChangeFilter(properties, false);
+
+        assertEquals(Decision.CHANGED, filter.offer("dev-1", "status", "online", T0));
+        assertEquals(Decision.CHANGED, filter.offer("dev-1", "status", "online", T0.plusSeconds(1)));
+    }
+
+    @Test
+    void clusteredFilterReconcilesWithThePersistedState() {
+        StateChangeFilter filter = new StateChangeFilter(new StateHistoryProperties(), true);
+        String[] persisted = {null};
+
+        assertEquals(Decision.CHANGED, filter.offer("dev-1", "status", "online", T0, () -> persisted[0]));
+        persisted[0] = "online";
+        assertEquals(Decision.UNCHANGED, filter.offer("dev-1", "status", "online", T0.plusSeconds(10),
+                () -> persisted[0]));
+        // another instance recorded a change in between
+        persisted[0] = "offline";
+        assertEquals(Decision.CHANGED, filter.offer("dev-1", "status", "online", T0.plusSeconds(20),
+                () -> persisted[0]));
+        // without a persisted state to compare with the caller decides
+        assertEquals(Decision.CHANGED, filter.offer("dev-1", "pump", true, T0));
+        assertEquals(Decision.CHANGED, filter.offer("dev-1", "pump", true, T0.plusSeconds(1)));
+    }
+}
@@ -0,0 +1,46 @@
+package se.hydroleaf.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+import se.hydroleaf.model.WaterFlowStatus;
+import se.hydroleaf.repository.WaterFlowStatusRepository;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional
+class WaterFlowStatusServiceTest {
+
+    private static final Instant T0 = Instant.parse("2025-01-01T00:00:00Z");
+
+    @Autowired WaterFlowStatusService service;
+    @Autowired WaterFlowStatusRepository repository;
+
+    @Test
+    void lateReportIsRecordedOnlyWhenItChangedTheStatusAtItsTime() {
+        repository.deleteAll();
+        service.recordStatus("on", T0, "flow-1", "water_flow");
+        service.recordStatus("on", T0.plusSeconds(120), "flow-1", "water_flow");
+        // delivered late: off between the two reports of "on"
+        service.recordStatus("off", T0.plusSeconds(60), "flow-1", "water_flow");
+        // delivered late and equal to the status before it
+        service.recordStatus("on", T0.plusSeconds(30), "flow-1", "water_flow");
+
+        List<String> history = repository.findAll().stream()
+                .sorted(Comparator.comparing(WaterFlowStatus::getTimestamp))
+                .map(status -> status.getTimestamp().getEpochSecond() - T0.getEpochSecond() + ":" + status.getValue())
+                .toList();
+        assertEquals(List.of("0:on", "60:off"), history);
+        // the live state is still the newest report
+        service.recordStatus("on", T0.plusSeconds(180), "flow-1", "water_flow");
+        assertEquals(2, repository.count());
+    }
+}
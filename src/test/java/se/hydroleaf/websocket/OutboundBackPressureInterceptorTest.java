@@ -0,0 +1,130 @@
+package se.hydroleaf.websocket;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import se.hydroleaf.config.WebSocketOutboundProperties;
+import se.hydroleaf.mqtt.IndexedSubscriptionRegistry;
+import se.hydroleaf.mqtt.TopicPublisher;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboundBackPressureInterceptorTest {
+
+    private final Deque<Runnable> tasks = new ArrayDeque<>();
+    private final List<String> delivered = new ArrayList<>();
+    private final Clock clock = Clock.fixed(Instant.parse("2025-01-01T00:00:00Z"), ZoneOffset.UTC);
+    private final WebSocketOutboundProperties properties = new WebSocketOutboundProperties();
+    private final WebSocketSessionTracker tracker = new WebSocketSessionTracker(clock);
+    private final WebSocketSession session = mock(WebSocketSession.class);
+    private ExecutorSubscribableChannel channel;
+
+    @BeforeEach
+    void setUp() {
+        when(session.getId()).thenReturn("s1");
+        tracker.opened(session);
+        channel = new ExecutorSubscribableChannel(tasks::add);
+        channel.addInterceptor(new OutboundBackPressureInterceptor(tracker, properties, clock));
+        channel.subscribe(message -> delivered.add(new String((byte[]) message.getPayload(), StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void framesOfASessionAreReleasedOneAtATimeInOrder() {
+        channel.send(frame("s1", "event", "dev-1", "e1"));
+        channel.send(frame("s1", "event", "dev-1", "e2"));
+        channel.send(frame("s1", "event", "dev-1", "e3"));
+
+        assertEquals(1, tasks.size());
+        assertEquals(3, metrics().queuedFrames());
+
+        runAll();
+
+        assertEquals(List.of("e1", "e2", "e3"), delivered);
+        SessionOutbound.Metrics metrics = metrics();
+        assertEquals(0, metrics.queuedFrames());
+        assertEquals(3, metrics.sentFrames());
+        assertEquals(6, metrics.sentBytes());
+        assertEquals(0.6, metrics.bytesPerSecond(), 1e-9);
+    }
+
+    @Test
+    void telemetryIsConflatedPerDeviceWhileTheSessionIsBehind() {
+        channel.send(frame("s1", "event", "dev-1", "e1"));
+        channel.send(frame("s1", "telemetry", "dev-1", "t1"));
+        channel.send(frame("s1", "telemetry", "dev-2", "u1"));
+        channel.send(frame("s1", "telemetry", "dev-1", "t2"));
+        channel.send(frame("s1", "event", "dev-1", "e2"));
+        channel.send(frame("s1", "telemetry", "dev-1", "t3"));
+
+        runAll();
+
+        assertEquals(List.of("e1", "t3", "u1", "e2"), delivered);
+        assertEquals(2, metrics().droppedFrames());
+    }
+
+    @Test
+    void sessionFallingTooFarBehindIsClosed() throws Exception {
+        properties.setMaxQueuedFrames(2);
+        channel.send(frame("s1", "event", "dev-1", "e1"));
+        channel.send(frame("s1", "event", "dev-1", "e2"));
+        channel.send(frame("s1", "event", "dev-1", "e3"));
+        verify(session, never()).close(CloseStatus.SESSION_NOT_RELIABLE);
+
+        channel.send(frame("s1", "event", "dev-1", "e4"));
+        runAll();
+
+        verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(List.of("e1"), delivered);
+        assertEquals(3, metrics().droppedFrames());
+    }
+
+    @Test
+    void untrackedSessionsPassThrough() {
+        channel.send(frame("other", "telemetry", "dev-1", "t1"));
+        channel.send(frame("other", "telemetry", "dev-1", "t2"));
+
+        assertEquals(2, tasks.size());
+        runAll();
+        assertEquals(List.of("t1", "t2"), delivered);
+    }
+
+    private SessionOutbound.Metrics metrics() {
+        return tracker.metrics().get(0);
+    }
+
+    private void runAll() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static Message<byte[]> frame(String sessionId, String kind, String compositeId, String body) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId("sub-0");
+        accessor.setDestination("/topic/hydroleaf/" + kind);
+        accessor.setHeader(TopicPublisher.KIND_HEADER, kind);
+        accessor.setHeader(IndexedSubscriptionRegistry.COMPOSITE_ID_HEADER, compositeId);
+        return MessageBuilder.createMessage(body.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+}